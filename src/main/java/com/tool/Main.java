@@ -2,39 +2,104 @@ package com.tool;
 
 import com.tool.app.AuditController;
 import com.tool.app.AuditResult;
+import com.tool.app.IncrementalAudit;
+import com.tool.app.ResultCache;
+import com.tool.app.SourceWatcher;
 import com.tool.cli.CliArgs;
 import com.tool.reports.HTMLReportWriter;
 import com.tool.reports.JSONReportWriter;
+import com.tool.reports.NDJSONReportWriter;
+import com.tool.server.AuditServer;
 
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 
-import com.tool.util.DependencyCheckReportResolver;
+import com.tool.util.GitChangeSet;
 
 public class Main {
+    // Long enough to fold an IDE's save-all into one re-audit, short enough to feel immediate.
+    private static final Duration WATCH_DEBOUNCE = Duration.ofMillis(300);
+    // Jobs beyond this many waiting ones are turned away instead of piling up behind a busy server.
+    private static final int SERVER_QUEUE_CAPACITY = 64;
+
     public static void main(String[] args) {
+        int exitCode = run(args);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Run the tool with the given command line, without exiting the JVM.
+     * @return the process exit code, 0 on success, 2 for a bad command line and 1 for a failed audit
+     */
+    public static int run(String[] args) {
+        // Streaming NDJSON to stdout moves everything else to stderr, only for as long as this run lasts.
+        PrintStream originalOut = System.out;
+        ExecutorService metricExecutor = null;
+        NDJSONReportWriter ndjsonWriter = null;
+        SourceWatcher watcher = null;
         try {
             CliArgs cli = CliArgs.parse(args);
 
-            AuditController controller = new AuditController(cli.configPath());
-            Path dependencyReportPath = DependencyCheckReportResolver.ensureFreshReportExists(
-                cli.sourceRoot(),
-                cli.dependencyReportPath()
+            // Only spin up a pool when more than one metric is allowed to run at once.
+            if (cli.parallelism() > 1) {
+                metricExecutor = AuditController.newMetricExecutor(cli.parallelism());
+            }
+
+            ResultCache resultCache = cli.cacheDir() == null
+                ? null
+                : new ResultCache(cli.cacheDir(), cli.cacheMaxBytes());
+
+            if (cli.serve()) {
+                serve(cli, metricExecutor, resultCache);
+                return 0;
+            }
+
+            AuditController controller = new AuditController(
+                cli.configPath(),
+                metricExecutor,
+                cli.metricTimeout(),
+                cli.auditTimeout(),
+                resultCache
             );
 
-            System.out.println("Running Audit");
-            AuditResult auditResult = controller.runAudit(cli.sourceRoot(), dependencyReportPath);
+            if (cli.ndjsonOutput() != null) {
+                ndjsonWriter = openNdjson(cli.ndjsonOutput());
+                controller.addResultListener(ndjsonWriter::accept);
+            }
 
-            System.out.println("Audit complete generating reports...");
-            Path basePath = cli.outputPath();
+            // Only generated if a configured metric reads it, and in the background while the other metrics run.
+            controller.generateMissingDependencyReports(cli.dependencyReportMaxAge());
+            Path dependencyReportPath = cli.dependencyReportPath();
 
-            Path jsonPath = Paths.get(basePath.toString() + ".json");
-            JSONReportWriter jsonReport = new JSONReportWriter(jsonPath);
-            jsonReport.writeReport(auditResult);
+            GitChangeSet changes = null;
+            if (cli.changedSince() != null) {
+                changes = GitChangeSet.resolve(cli.sourceRoot(), cli.changedSince());
+                System.out.println("Files changed since " + changes.revision() + ": " + changes.changedCountUnder(cli.sourceRoot()));
+            }
+
+            if (cli.watch()) {
+                // Registered before the first audit, so files saved while it runs are picked up by the first re-audit.
+                watcher = new SourceWatcher(cli.sourceRoot(), WATCH_DEBOUNCE);
+            }
+
+            System.out.println("Running Audit");
+            IncrementalAudit incrementalAudit = new IncrementalAudit(controller, cli.sourceRoot(), dependencyReportPath);
+            AuditResult auditResult = cli.watch()
+                ? incrementalAudit.runFull()
+                : controller.runAudit(cli.sourceRoot(), dependencyReportPath, changes);
+
+            if (resultCache != null) {
+                System.out.println(resultCache.summary());
+            }
 
-            Path htmlPath = Paths.get(basePath.toString() + ".html");
-            HTMLReportWriter htmlReport = new HTMLReportWriter(htmlPath, cli.sourceRoot());
-            htmlReport.writeReport(auditResult);
+            System.out.println("Audit complete generating reports...");
+            Path htmlPath = writeReports(cli, auditResult);
 
             System.out.println("Audit completed successfully.\nReport can be found: " + cli.outputPath().toAbsolutePath() + ".html");
 
@@ -46,14 +111,114 @@ public class Main {
                     System.err.println("Could not open the HTML report automatically: " + e.getMessage());
                 }
             }
+
+            if (cli.watch()) {
+                watch(cli, incrementalAudit, watcher);
+            }
+            return 0;
         } catch (IllegalArgumentException ex) {
             System.err.println("Error: " + ex.getMessage());
             System.err.println();
             System.err.println(CliArgs.usage());
-            System.exit(2);
+            return 2;
         } catch (Exception ex) {
             System.err.println("Audit failed: " + ex.getMessage());
-            System.exit(1);
+            return 1;
+        } finally {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (Exception e) {
+                    System.err.println("Could not stop watching the source tree: " + e.getMessage());
+                }
+            }
+            if (metricExecutor != null) {
+                metricExecutor.shutdownNow();
+            }
+            if (ndjsonWriter != null) {
+                try {
+                    ndjsonWriter.close();
+                } catch (Exception e) {
+                    System.err.println("Could not close the NDJSON output: " + e.getMessage());
+                }
+            }
+            System.setOut(originalOut);
+        }
+    }
+
+    /**
+     * Open the NDJSON stream. When it goes to stdout everything else printed moves to stderr,
+     * so whatever reads the pipe only ever sees result lines.
+     */
+    private static NDJSONReportWriter openNdjson(String target) throws Exception {
+        if ("-".equals(target)) {
+            PrintStream stdout = System.out;
+            System.setOut(System.err);
+            return new NDJSONReportWriter(stdout);
         }
+        return new NDJSONReportWriter(Paths.get(target));
+    }
+
+    /**
+     * Run the audit server until the process is stopped.
+     */
+    private static void serve(CliArgs cli, ExecutorService metricExecutor, ResultCache resultCache) throws Exception {
+        AuditServer server = new AuditServer(
+            cli.configPath(),
+            cli.port(),
+            cli.serverWorkers(),
+            SERVER_QUEUE_CAPACITY,
+            metricExecutor,
+            cli.metricTimeout(),
+            cli.auditTimeout(),
+            resultCache
+        );
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+
+        System.out.println("Audit server listening on http://127.0.0.1:" + server.port() + "/audit, press Ctrl+C to stop.");
+        System.out.println("Send jobs as application/json with the header: Authorization: Bearer " + server.token());
+        new CountDownLatch(1).await();
+    }
+
+    /**
+     * Re-audit whenever java files under the source root change, until the process is stopped.
+     * The controller, config and parser stay loaded between runs, and only the changed files are parsed again.
+     * @param watcher registered before the first audit, so changes made while it ran come out of the first wait
+     */
+    private static void watch(CliArgs cli, IncrementalAudit incrementalAudit, SourceWatcher watcher) throws Exception {
+        System.out.println("Watching " + cli.sourceRoot().toAbsolutePath() + " for changes, press Ctrl+C to stop.");
+        while (true) {
+            SourceWatcher.Changes changes = watcher.awaitChanges();
+            long start = System.nanoTime();
+
+            AuditResult auditResult = changes.complete()
+                ? incrementalAudit.update(changes.files())
+                : incrementalAudit.runFull();
+            writeReports(cli, auditResult);
+
+            System.out.printf(
+                "Re-audited %d changed file(s) in %d ms, %d parsed.%n",
+                changes.files().size(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis(),
+                incrementalAudit.lastParseCount()
+            );
+        }
+    }
+
+    /**
+     * @return the path of the HTML report
+     */
+    private static Path writeReports(CliArgs cli, AuditResult auditResult) throws Exception {
+        Path basePath = cli.outputPath();
+
+        Path jsonPath = Paths.get(basePath.toString() + ".json");
+        JSONReportWriter jsonReport = new JSONReportWriter(jsonPath);
+        jsonReport.writeReport(auditResult);
+
+        Path htmlPath = Paths.get(basePath.toString() + ".html");
+        HTMLReportWriter htmlReport = new HTMLReportWriter(htmlPath, cli.sourceRoot());
+        htmlReport.writeReport(auditResult);
+        return htmlPath;
     }
 }
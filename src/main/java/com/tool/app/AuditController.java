@@ -2,22 +2,140 @@ package com.tool.app;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.tool.domain.Category;
 import com.tool.metrics.Metric;
 import com.tool.metrics.MetricResult;
+import com.tool.metrics.SourceMetric;
 import com.tool.util.ConfigLoader;
+import com.tool.util.DependencyCheckReportResolver;
+import com.tool.util.GitChangeSet;
 
 public class AuditController {
+    // Generating a report is mostly waiting on Maven, so it gets a thread of its own rather than a metric thread.
+    private static final ExecutorService REPORT_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "dependency-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final ArrayList<Category> categories;
+    private final ExecutorService executor;
+    private final Duration metricTimeout;
+    private final Duration auditTimeout;
+    private final ResultCache resultCache;
+    private final ExecutorService workExecutor;
+    private final List<Consumer<MetricResult>> resultListeners = new CopyOnWriteArrayList<>();
+    // Null only uses reports that were supplied, otherwise missing ones are generated.
+    private volatile Duration dependencyReportMaxAge;
 
     public AuditController(Path configPath) {
+        this(configPath, null, null, null);
+    }
+
+    public AuditController(Path configPath, ExecutorService executor, Duration metricTimeout, Duration auditTimeout) {
+        this(configPath, executor, metricTimeout, auditTimeout, null);
+    }
+
+    /**
+     * Create a controller that evaluates metrics concurrently on the given executor.
+     * @param configPath the path to the JSON configuration file
+     * @param executor the executor metrics are evaluated on, or null to evaluate them one at a time
+     * @param metricTimeout how long a single metric may run once it has started, or null for no limit
+     * @param auditTimeout how long the whole audit may run, or null for no limit
+     * @param resultCache cache of per-file results shared by every audit this controller runs, or null
+     */
+    public AuditController(
+        Path configPath,
+        ExecutorService executor,
+        Duration metricTimeout,
+        Duration auditTimeout,
+        ResultCache resultCache
+    ) {
+        this(configPath, executor, metricTimeout, auditTimeout, resultCache, null);
+    }
+
+    /**
+     * Create a controller whose metrics share one pool for their per-file work.
+     * @param configPath the path to the JSON configuration file
+     * @param executor the executor metrics are evaluated on, or null to evaluate them one at a time
+     * @param metricTimeout how long a single metric may run once it has started, or null for no limit
+     * @param auditTimeout how long the whole audit may run, or null for no limit
+     * @param resultCache cache of per-file results shared by every audit this controller runs, or null
+     * @param workExecutor pool for per-file work inside metrics, must not be the metric executor. Null lets
+     *                     each metric size its own pool.
+     */
+    public AuditController(
+        Path configPath,
+        ExecutorService executor,
+        Duration metricTimeout,
+        Duration auditTimeout,
+        ResultCache resultCache,
+        ExecutorService workExecutor
+    ) {
         if(configPath == null) {
             throw new IllegalArgumentException("Config path cannot be null");
         }
 
         this.categories = ConfigLoader.loadCategories(configPath);
+        this.executor = executor;
+        this.metricTimeout = metricTimeout;
+        this.auditTimeout = auditTimeout;
+        this.resultCache = resultCache;
+        this.workExecutor = workExecutor;
+    }
+
+    /**
+     * Create an executor suitable for concurrent audits. Threads are daemons so a metric that
+     * ignores its deadline can never keep the JVM alive.
+     * @param threads the number of metrics that may run at the same time
+     * @return a fixed size executor
+     */
+    public static ExecutorService newMetricExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Metric executor needs at least one thread");
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "audit-metric-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get told about every metric result as soon as it is known, rather than once the whole audit is done.
+     * Listeners may be called from several threads at once and in completion order, not config order.
+     * @param listener called once per metric result
+     */
+    public void addResultListener(Consumer<MetricResult> listener) {
+        resultListeners.add(listener);
+    }
+
+    /**
+     * Generate the Dependency-Check report when an audit needs one and none was supplied. It is produced in the
+     * background while the other metrics run, and only if a configured metric reads it.
+     * @param maxAge how long an earlier report is reused while the dependencies are unchanged, zero never reuses
+     */
+    public void generateMissingDependencyReports(Duration maxAge) {
+        this.dependencyReportMaxAge = maxAge;
     }
 
     public AuditResult runAudit(Path projectPath) {
@@ -25,6 +143,19 @@ public class AuditController {
     }
 
     public AuditResult runAudit(Path projectPath, Path dependencyReportPath) {
+        return runAudit(projectPath, dependencyReportPath, null);
+    }
+
+    /**
+     * Run the audit, optionally scoped to the files changed since a git revision.
+     * Source metrics still see every file so project-level scores stay correct, but untouched
+     * files come from the result cache and only changed files are reported on.
+     * @param projectPath the java source root
+     * @param dependencyReportPath the supplied Dependency-Check report, or null
+     * @param changes the files changed since a revision, or null to audit the whole tree
+     * @return the audit result
+     */
+    public AuditResult runAudit(Path projectPath, Path dependencyReportPath, GitChangeSet changes) {
         if(projectPath == null) {
             throw new IllegalArgumentException("Project path cannot be null");
         }
@@ -32,25 +163,343 @@ public class AuditController {
             throw new IllegalArgumentException("Project path does not exist: " + projectPath);
         }
 
+        return runAudit(newContext(projectPath, dependencyReportPath, createSourceIndex(projectPath, changes)));
+    }
+
+    /**
+     * @return a fresh context for one audit run, with its own cancellation token
+     */
+    ProjectContext newContext(Path projectPath, Path dependencyReportPath, SourceIndex sourceIndex) {
+        return new ProjectContext(
+            projectPath,
+            dependencyReport(projectPath, dependencyReportPath),
+            sourceIndex,
+            resultCache,
+            workExecutor,
+            new CancellationToken()
+        );
+    }
+
+    /**
+     * @return a fresh context for auditing the same project again, sharing the earlier context's dependency report
+     */
+    ProjectContext newContext(ProjectContext previous, SourceIndex sourceIndex) {
+        return new ProjectContext(
+            previous.sourceRoot(),
+            previous.dependencyReport(),
+            sourceIndex,
+            resultCache,
+            workExecutor,
+            new CancellationToken()
+        );
+    }
+
+    /**
+     * Start generating the Dependency-Check report if a configured metric reads it and generation is on.
+     * Metrics that do not read it never wait for it.
+     */
+    CompletableFuture<Path> dependencyReport(Path projectPath, Path suppliedReportPath) {
+        Duration maxAge = dependencyReportMaxAge;
+        if (maxAge == null || !needs(Metric.Input.DEPENDENCY_REPORT)) {
+            return CompletableFuture.completedFuture(suppliedReportPath);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return DependencyCheckReportResolver.ensureFreshReportExists(projectPath, suppliedReportPath, maxAge);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, REPORT_THREADS);
+    }
+
+    /**
+     * @return whether any configured metric reads that input
+     */
+    boolean needs(Metric.Input input) {
+        for (Category category : categories) {
+            for (Metric metric : category.metrics()) {
+                if (metric.inputs().contains(input)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    AuditResult runAudit(ProjectContext context) {
+        return runAudit(context, null);
+    }
+
+    /**
+     * @param previous an earlier audit of the same project whose results of metrics that do not read java sources
+     *                 are reused, or null to evaluate every metric
+     */
+    private AuditResult runAudit(ProjectContext context, AuditResult previous) {
+        if (executor != null) {
+            return runConcurrentAudit(context, previous);
+        }
+        return runSequentialAudit(context, previous);
+    }
+
+    /**
+     * @return the earlier result of a metric that does not read java sources, null if it has to be evaluated
+     */
+    private static MetricResult reusableResult(AuditResult previous, Category category, Metric metric) {
+        if (previous == null || metric instanceof SourceMetric) {
+            return null;
+        }
+        return previous.resultsFor(category).stream()
+            .filter(res -> res.metric() == metric)
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Evaluate the metrics one at a time in config order. A metric that throws becomes a failed result like it
+     * does in a concurrent audit. With a deadline set each metric gets a thread of its own to be timed on, and a
+     * metric that ignores its interrupt is left behind on that thread instead of holding up the next one.
+     */
+    private AuditResult runSequentialAudit(ProjectContext context, AuditResult previous) {
+        long auditStart = System.nanoTime();
+        ExecutorService timedExecutor = null;
+        if (metricTimeout != null || auditTimeout != null) {
+            AtomicInteger counter = new AtomicInteger();
+            timedExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "audit-metric-sequential-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         AuditResult result = new AuditResult();
         try {
             for (Category category : categories) {
                 System.out.println("Evaluating Category: "+ category.name());
                 for (Metric metric : category.metrics()) {
-                    System.out.println("Evaluating Metric: "+ metric.name());
-                    MetricResult res = metric.evaluate(projectPath, dependencyReportPath);
-                    result.addResult(res);
+                    MetricResult reused = reusableResult(previous, category, metric);
+                    if (reused != null) {
+                        result.addResult(reused);
+                        continue;
+                    }
+
+                    MetricTask task = new MetricTask(metric, context, metricTimeout, this::notifyListeners);
+                    if (timedExecutor == null) {
+                        task.run();
+                    } else {
+                        timedExecutor.execute(task);
+                    }
+                    result.addResult(task.await(auditStart, auditTimeout));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.cancellation().cancel("audit interrupted");
+            throw new RuntimeException("Failed to run audit: interrupted", e);
+        } finally {
+            if (timedExecutor != null) {
+                timedExecutor.shutdownNow();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Re-evaluate only the metrics that read java sources, reusing every other result from an earlier audit
+     * of the same project. Used when nothing but source files changed since that audit. The metrics run under
+     * the same parallelism and deadlines as a full audit, so one broken file cannot hang a watch session.
+     * @param context the project, normally with a source index seeded with the hashes of unchanged files
+     * @param previous the earlier audit
+     * @return a new result in config order
+     */
+    AuditResult rerunSourceMetrics(ProjectContext context, AuditResult previous) {
+        return runAudit(context, previous);
+    }
+
+    /**
+     * Submit every metric up front and collect the results in config order, so the report layout
+     * does not depend on which metric happened to finish first.
+     */
+    private AuditResult runConcurrentAudit(ProjectContext context, AuditResult previous) {
+        long auditStart = System.nanoTime();
+        // One entry per metric in config order, either a reused result or the task evaluating it.
+        ArrayList<MetricResult> reusedResults = new ArrayList<>();
+        ArrayList<MetricTask> tasks = new ArrayList<>();
+
+        for (Category category : categories) {
+            System.out.println("Scheduling Category: "+ category.name());
+            for (Metric metric : category.metrics()) {
+                MetricResult reused = reusableResult(previous, category, metric);
+                MetricTask task = null;
+                if (reused == null) {
+                    task = new MetricTask(metric, context, metricTimeout, this::notifyListeners);
+                    executor.execute(task);
                 }
+                reusedResults.add(reused);
+                tasks.add(task);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to run audit: " + e.getMessage(), e);
+        }
+
+        AuditResult result = new AuditResult();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                MetricTask task = tasks.get(i);
+                result.addResult(task == null ? reusedResults.get(i) : task.await(auditStart, auditTimeout));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.cancellation().cancel("audit interrupted");
+            tasks.stream().filter(Objects::nonNull).forEach(MetricTask::cancel);
+            throw new RuntimeException("Failed to run audit: interrupted", e);
         }
 
         return result;
     }
 
+    private void notifyListeners(MetricResult result) {
+        for (Consumer<MetricResult> listener : resultListeners) {
+            try {
+                listener.accept(result);
+            } catch (RuntimeException e) {
+                // A broken listener must not take the audit down with it.
+                System.err.println("Result listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Build one source index for every metric that reads java sources, asking the parser
+     * only for the features those metrics need.
+     * @return the shared index, or null when no configured metric reads sources
+     */
+    SourceIndex createSourceIndex(Path projectPath, GitChangeSet changes) {
+        int consumers = 0;
+        EnumSet<SourceIndex.Feature> features = EnumSet.noneOf(SourceIndex.Feature.class);
+
+        for (Category category : categories) {
+            for (Metric metric : category.metrics()) {
+                if (metric instanceof SourceMetric sourceMetric) {
+                    consumers++;
+                    features.addAll(sourceMetric.sourceFeatures());
+                }
+            }
+        }
+
+        return consumers == 0 ? null : new SourceIndex(projectPath, consumers, features, changes);
+    }
+
     @Override
     public String toString() {
         return String.format("CategoryManager{categories=%s}", categories.toString());
     }
+
+    /**
+     * A single metric evaluation. The metric deadline starts counting once the task actually gets a
+     * thread, so metrics queued behind a busy executor are not penalised for the wait.
+     * The result is handed to the listener exactly once, as soon as it is known.
+     */
+    private static final class MetricTask implements Runnable {
+        private final Metric metric;
+        private final ProjectContext context;
+        private final Duration metricTimeout;
+        private final CompletableFuture<MetricResult> future = new CompletableFuture<>();
+        // What the metric ends up as in the report, failures included. Completes exactly once.
+        private final CompletableFuture<MetricResult> outcome = new CompletableFuture<>();
+        private Thread worker;
+
+        private MetricTask(Metric metric, ProjectContext context, Duration metricTimeout, Consumer<MetricResult> listener) {
+            this.metric = metric;
+            this.context = context;
+            this.metricTimeout = metricTimeout;
+
+            future.whenComplete((res, error) -> {
+                // An audit deadline cancels the future, that failure is filled in by await instead.
+                if (!(error instanceof CancellationException)) {
+                    outcome.complete(toResult(res, error));
+                }
+            });
+            outcome.thenAccept(listener);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                // The audit deadline may have passed while this task was still queued.
+                if (future.isDone()) {
+                    return;
+                }
+                worker = Thread.currentThread();
+            }
+
+            if (metricTimeout != null) {
+                future.orTimeout(metricTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                future.whenComplete((res, error) -> {
+                    if (error instanceof TimeoutException) {
+                        interruptWorker();
+                    }
+                });
+            }
+
+            try {
+                System.out.println("Evaluating Metric: "+ metric.name());
+                future.complete(metric.evaluate(context));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    worker = null;
+                }
+                // Do not hand a stale interrupt from a timed out metric to the next task on this thread.
+                Thread.interrupted();
+            }
+        }
+
+        private MetricResult await(long auditStart, Duration auditTimeout) throws InterruptedException {
+            try {
+                if (auditTimeout == null) {
+                    return outcome.get();
+                }
+
+                long remaining = auditTimeout.toNanos() - (System.nanoTime() - auditStart);
+                return outcome.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Once the audit deadline has passed every metric still running is out of time.
+                context.cancellation().cancel("audit deadline exceeded");
+                cancel();
+                outcome.complete(MetricResult.failed(metric, String.format(
+                    "audit deadline of %d seconds exceeded before the metric finished",
+                    auditTimeout.toSeconds()
+                )));
+                // The metric may have finished in the meantime, whichever result came first is the one reported.
+                return outcome.join();
+            } catch (ExecutionException e) {
+                return toResult(null, e.getCause());
+            }
+        }
+
+        private MetricResult toResult(MetricResult res, Throwable error) {
+            if (error == null) {
+                return res;
+            }
+            if (error instanceof TimeoutException) {
+                return MetricResult.failed(metric, String.format(
+                    "metric deadline of %d seconds exceeded",
+                    metricTimeout.toSeconds()
+                ));
+            }
+            return MetricResult.failed(metric, error.getClass().getSimpleName() + ": " + error.getMessage());
+        }
+
+        private void cancel() {
+            future.cancel(false);
+            interruptWorker();
+        }
+
+        private synchronized void interruptWorker() {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
 }
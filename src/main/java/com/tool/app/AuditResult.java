@@ -1,31 +1,36 @@
 package com.tool.app;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.tool.domain.Category;
 import com.tool.metrics.MetricResult;
 
+/**
+ * Collects metric results grouped by category.
+ * Categories and results keep the order they were added in, and the result can be filled from several threads.
+ */
 public class AuditResult {
     private final Map<Category, List<MetricResult>> results;
 
     public AuditResult() {
-        this.results = new HashMap<>();
+        this.results = new LinkedHashMap<>();
     }
 
-    public void addResult(MetricResult result) {
+    public synchronized void addResult(MetricResult result) {
         Category category = result.metric().category();
         results.computeIfAbsent(category, k -> new ArrayList<>())
                .add(result);
     }
 
-    public List<MetricResult> resultsFor(Category category) {
-        return results.getOrDefault(category, List.of());
+    public synchronized List<MetricResult> resultsFor(Category category) {
+        List<MetricResult> categoryResults = results.get(category);
+        return categoryResults == null ? List.of() : new ArrayList<>(categoryResults);
     }
 
-    public List<Category> categories() {
+    public synchronized List<Category> categories() {
         return new ArrayList<>(results.keySet());
     }
-}
\ No newline at end of file
+}
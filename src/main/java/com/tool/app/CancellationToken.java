@@ -0,0 +1,90 @@
+package com.tool.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tells the metrics of one audit run to stop early, e.g. because the audit deadline passed or the caller went away.
+ * Metrics check it between units of work, and anything that blocks outside the JVM (like a build in a child
+ * process) registers a callback to be stopped with.
+ */
+public final class CancellationToken {
+
+    /**
+     * A callback registration, closing it removes the callback once the guarded work is done.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile String reason;
+
+    /**
+     * Cancel the run. Only the first call has any effect.
+     * @param reason why the run was cancelled, shown in failure messages
+     */
+    public void cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason == null ? "cancelled" : reason;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+
+        for (Runnable callback : toRun) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                System.err.println("Cancellation callback failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @return why the run was cancelled, or null if it was not
+     */
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * @throws CancellationException if the run was cancelled
+     */
+    public void throwIfCancelled() {
+        String current = reason;
+        if (current != null) {
+            throw new CancellationException(current);
+        }
+    }
+
+    /**
+     * Run a callback when the run is cancelled, straight away if it already was.
+     * @param callback what to do on cancellation, e.g. destroy a child process
+     * @return a registration to close once the callback is no longer needed
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (this) {
+            if (reason == null) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+
+        callback.run();
+        return () -> { };
+    }
+}
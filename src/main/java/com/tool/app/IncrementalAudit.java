@@ -0,0 +1,106 @@
+package com.tool.app;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the state of a long running audit session so each re-audit only redoes the work the changed files need.
+ * The controller, its config and the result cache stay warm. Source metrics are re-evaluated against an index
+ * that already knows the content hash of every unchanged file, so unchanged files are neither read nor parsed
+ * when the result cache holds their results. Every other metric keeps its result from the first audit.
+ */
+public class IncrementalAudit {
+    private final AuditController controller;
+    private final Path sourceRoot;
+    private final Path dependencyReportPath;
+    private final Map<Path, String> knownContentHashes = new HashMap<>();
+    private AuditResult lastResult;
+    // The context of the last full audit, re-audits share its dependency report instead of producing it again.
+    private ProjectContext lastFullContext;
+    private int lastParseCount;
+
+    /**
+     * @param controller the controller to run audits with, ideally one with a result cache
+     * @param sourceRoot the java source root being watched
+     * @param dependencyReportPath the supplied Dependency-Check report, or null
+     */
+    public IncrementalAudit(AuditController controller, Path sourceRoot, Path dependencyReportPath) {
+        if (controller == null) {
+            throw new IllegalArgumentException("Controller cannot be null");
+        }
+        if (sourceRoot == null) {
+            throw new IllegalArgumentException("Source root cannot be null");
+        }
+
+        this.controller = controller;
+        this.sourceRoot = sourceRoot;
+        this.dependencyReportPath = dependencyReportPath;
+    }
+
+    /**
+     * Run every metric. The first call of a session, or after the watcher lost track of changes.
+     * @return the audit result
+     */
+    public synchronized AuditResult runFull() {
+        knownContentHashes.clear();
+        SourceIndex index = controller.createSourceIndex(sourceRoot, null);
+        lastFullContext = controller.newContext(sourceRoot, dependencyReportPath, index);
+        lastResult = controller.runAudit(lastFullContext);
+        remember(index);
+        return lastResult;
+    }
+
+    /**
+     * Re-audit after some source files changed.
+     * @param changedFiles the files that were created, modified or deleted since the last audit
+     * @return the audit result
+     */
+    public synchronized AuditResult update(Set<Path> changedFiles) {
+        if (lastResult == null) {
+            return runFull();
+        }
+
+        for (Path file : changedFiles) {
+            knownContentHashes.remove(file.toAbsolutePath().normalize());
+        }
+
+        SourceIndex index = controller.createSourceIndex(sourceRoot, null);
+        if (index == null) {
+            // Nothing reads sources, so nothing can have changed.
+            lastParseCount = 0;
+            return lastResult;
+        }
+
+        HashMap<Path, String> seed = new HashMap<>();
+        for (Path file : index.files()) {
+            String hash = knownContentHashes.get(file.toAbsolutePath().normalize());
+            if (hash != null) {
+                seed.put(file, hash);
+            }
+        }
+        index.seedContentHashes(seed);
+
+        lastResult = controller.rerunSourceMetrics(controller.newContext(lastFullContext, index), lastResult);
+        remember(index);
+        return lastResult;
+    }
+
+    /**
+     * @return how many files the last audit had to parse
+     */
+    public synchronized int lastParseCount() {
+        return lastParseCount;
+    }
+
+    private void remember(SourceIndex index) {
+        if (index == null) {
+            lastParseCount = 0;
+            return;
+        }
+
+        lastParseCount = index.parseCount();
+        index.contentHashes().forEach((file, hash) -> knownContentHashes.put(file.toAbsolutePath().normalize(), hash));
+    }
+}
@@ -1,12 +1,61 @@
 package com.tool.app;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Shared runtime inputs for metrics.
+ * Shared runtime inputs for one audit run. Metrics keep no per-run state of their own, everything a run needs
+ * comes from here, so one metric instance can evaluate several projects at the same time.
  * Source-based metrics use sourceRoot while security metrics use dependencyReportPath.
+ * dependencyReport may still be generating while the audit runs, only the metrics that read it wait for it.
+ * It completes with null when there is no report, and is null itself only when nothing was supplied.
+ * sourceIndex is shared by every source metric in an audit and may be null when a metric is evaluated on its own.
+ * resultCache holds per-file results from earlier audits and is null when caching is turned off.
+ * executor runs per-file work shared by every audit in the process, null lets a metric size its own pool.
+ * It is never the pool the metrics themselves run on, so waiting on it from a metric cannot deadlock.
+ * cancellation is cancelled when the run should stop early, it is never null.
  */
 public record ProjectContext(
         Path sourceRoot,
-        Path dependencyReportPath
-) {}
+        CompletableFuture<Path> dependencyReport,
+        SourceIndex sourceIndex,
+        ResultCache resultCache,
+        ExecutorService executor,
+        CancellationToken cancellation
+) {
+    public ProjectContext {
+        if (cancellation == null) {
+            cancellation = new CancellationToken();
+        }
+    }
+
+    public ProjectContext(Path sourceRoot, Path dependencyReportPath, SourceIndex sourceIndex, ResultCache resultCache) {
+        this(sourceRoot, CompletableFuture.completedFuture(dependencyReportPath), sourceIndex, resultCache, null, null);
+    }
+
+    public static ProjectContext of(Path sourceRoot, Path dependencyReportPath) {
+        return new ProjectContext(sourceRoot, dependencyReportPath, null, null);
+    }
+
+    /**
+     * Wait for the Dependency-Check report if it is still being generated.
+     * @return the report, or null if there is none
+     * @throws Exception whatever generating it failed with
+     */
+    public Path dependencyReportPath() throws Exception {
+        if (dependencyReport == null) {
+            return null;
+        }
+
+        try {
+            return dependencyReport.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.tool.app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * On-disk, content addressed store for per-file metric results.
+ * Entries are looked up by a namespace (metric type plus a version that changes whenever the stored
+ * format or the calculation changes) and a key, normally the content hash of the file the result
+ * belongs to. Identical copies of a file therefore share one entry.
+ *
+ * Writes go to a temporary file that is atomically moved into place, so a crash can never leave a
+ * half written entry behind. The total size is capped and the least recently used entries are evicted.
+ */
+public class ResultCache {
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ConcurrentHashMap<Path, EntryInfo> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong accessClock = new AtomicLong();
+
+    /**
+     * Open (or create) a cache directory.
+     * @param directory where entries are stored
+     * @param maxBytes the size cap, once exceeded the least recently used entries are evicted
+     * @throws IOException if the directory cannot be created or read
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory cannot be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size cap must be greater than zero");
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        loadExistingEntries();
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long sizeBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Look up a stored value.
+     * @param namespace the metric type and version the value was stored under
+     * @param key the content hash (or other key) of the input the value was computed from
+     * @return the stored value, or empty on a miss
+     */
+    public Optional<String> get(String namespace, String key) {
+        Path entryPath = entryPath(namespace, key);
+        EntryInfo info = entries.get(entryPath);
+        if (info == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        try {
+            JSONObject entry = new JSONObject(Files.readString(entryPath, StandardCharsets.UTF_8));
+
+            // Guard against a digest collision or an entry that was replaced under us.
+            if (!namespace.equals(entry.optString("namespace")) || !key.equals(entry.optString("key"))) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+
+            info.lastAccess = accessClock.incrementAndGet();
+            touch(entryPath);
+            hits.incrementAndGet();
+            return Optional.of(entry.getString("value"));
+        } catch (IOException | JSONException e) {
+            // A damaged entry is just a miss, drop it so it gets rewritten.
+            remove(entryPath);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Store a value, replacing any previous value under the same namespace and key.
+     * Failures are reported but never fail the audit, the cache is only an optimisation.
+     * @param namespace the metric type and version the value belongs to
+     * @param key the content hash (or other key) of the input the value was computed from
+     * @param value the value to store
+     */
+    public void put(String namespace, String key, String value) {
+        Path entryPath = entryPath(namespace, key);
+        String content = new JSONObject()
+            .put("namespace", namespace)
+            .put("key", key)
+            .put("value", value)
+            .toString();
+
+        try {
+            Files.createDirectories(entryPath.getParent());
+            Path temp = Files.createTempFile(entryPath.getParent(), "entry-", TEMP_SUFFIX);
+            try {
+                Files.writeString(temp, content, StandardCharsets.UTF_8);
+                moveIntoPlace(temp, entryPath);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            long size = Files.size(entryPath);
+            EntryInfo previous = entries.put(entryPath, new EntryInfo(size, accessClock.incrementAndGet()));
+            totalBytes.addAndGet(size - (previous == null ? 0 : previous.size));
+        } catch (IOException e) {
+            System.err.println("Could not write result cache entry: " + e.getMessage());
+            return;
+        }
+
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * @return a one line summary of how useful the cache was, for printing at the end of an audit
+     */
+    public String summary() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        double hitRate = lookups == 0 ? 0.0 : (100.0 * hitCount) / lookups;
+
+        return String.format(
+            Locale.ROOT,
+            "Result cache: %d hits, %d misses (%.1f%% hit rate), %d entries, %.1f MB in %s",
+            hitCount,
+            misses.get(),
+            hitRate,
+            entries.size(),
+            totalBytes.get() / (1024.0 * 1024.0),
+            directory
+        );
+    }
+
+    /**
+     * Hash a file the same way git hashes blobs, so content ids from a checkout can be used as keys directly.
+     * @param content the raw file content
+     * @return the lower case hex SHA-1 of the git blob header plus the content
+     */
+    public static String contentHash(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private Path entryPath(String namespace, String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            String name = HexFormat.of().formatHex(digest.digest());
+
+            // Two levels keep directories small on big trees.
+            return directory.resolve(name.substring(0, 2)).resolve(name + ENTRY_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void loadExistingEntries() throws IOException {
+        ArrayList<Path> existing = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile).forEach(existing::add);
+        }
+
+        // Order by last use so the access clock carries on where the previous run left off.
+        ArrayList<Map.Entry<Path, FileTime>> dated = new ArrayList<>();
+        for (Path path : existing) {
+            String name = path.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from a run that died mid write.
+                Files.deleteIfExists(path);
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                dated.add(Map.entry(path, Files.getLastModifiedTime(path)));
+            }
+        }
+        dated.sort(Map.Entry.comparingByValue());
+
+        for (Map.Entry<Path, FileTime> entry : dated) {
+            long size = Files.size(entry.getKey());
+            entries.put(entry.getKey(), new EntryInfo(size, accessClock.incrementAndGet()));
+            totalBytes.addAndGet(size);
+        }
+    }
+
+    /**
+     * Drop the least recently used entries until the cache is back under 90% of its cap,
+     * leaving some headroom so a busy run does not evict on every write.
+     */
+    private synchronized void evict() {
+        long target = maxBytes - (maxBytes / 10);
+        if (totalBytes.get() <= target) {
+            return;
+        }
+
+        ArrayList<Map.Entry<Path, EntryInfo>> byAge = new ArrayList<>(entries.entrySet());
+        byAge.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        for (Map.Entry<Path, EntryInfo> entry : byAge) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            remove(entry.getKey());
+        }
+    }
+
+    private void remove(Path entryPath) {
+        EntryInfo info = entries.remove(entryPath);
+        if (info != null) {
+            totalBytes.addAndGet(-info.size);
+        }
+
+        try {
+            Files.deleteIfExists(entryPath);
+        } catch (IOException ignored) {
+            // Eviction is best-effort, the entry is already forgotten.
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path entryPath) throws IOException {
+        try {
+            Files.move(temp, entryPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entryPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void touch(Path entryPath) {
+        try {
+            // The modified time doubles as the last use, so LRU order survives between runs.
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Only affects eviction order.
+        }
+    }
+
+    private static final class EntryInfo {
+        private final long size;
+        private volatile long lastAccess;
+
+        private EntryInfo(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
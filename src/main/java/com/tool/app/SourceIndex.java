@@ -0,0 +1,234 @@
+package com.tool.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+
+import com.tool.util.GitChangeSet;
+
+/**
+ * Shared view of the java sources under a project, built once per audit.
+ * Files are enumerated once and each file is parsed at most once no matter how many source metrics read it.
+ * A parsed CompilationUnit is kept until every registered consumer has released it, then it is dropped.
+ */
+public class SourceIndex {
+
+    /**
+     * Optional parser output. Leaving a feature out makes the ASTs noticeably smaller on large trees.
+     */
+    public enum Feature {
+        /** Tokens, which JavaParser also needs to keep node positions such as line numbers. */
+        TOKENS,
+        /** Comments attributed to the nodes they belong to. */
+        COMMENTS
+    }
+
+    private final Path sourceRoot;
+    private final int consumers;
+    private final Set<Feature> features;
+    private final GitChangeSet changes;
+    private final ThreadLocal<JavaParser> parsers;
+    private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, String> contentHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger parseCount = new AtomicInteger();
+    private List<Path> files;
+
+    /**
+     * @param sourceRoot the directory (or single file) holding the java sources
+     * @param consumers how many metrics will read each file before its AST can be dropped
+     * @param features the parser features at least one consumer needs
+     */
+    public SourceIndex(Path sourceRoot, int consumers, Set<Feature> features) {
+        this(sourceRoot, consumers, features, null);
+    }
+
+    /**
+     * @param sourceRoot the directory (or single file) holding the java sources
+     * @param consumers how many metrics will read each file before its AST can be dropped
+     * @param features the parser features at least one consumer needs
+     * @param changes the files changed since a git revision, or null to treat every file as changed.
+     *                Unchanged files take their content hash from git instead of being read.
+     */
+    public SourceIndex(Path sourceRoot, int consumers, Set<Feature> features, GitChangeSet changes) {
+        if (sourceRoot == null) {
+            throw new IllegalArgumentException("Source root cannot be null");
+        }
+        if (consumers < 1) {
+            throw new IllegalArgumentException("Source index needs at least one consumer");
+        }
+
+        this.sourceRoot = sourceRoot;
+        this.consumers = consumers;
+        this.features = features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features);
+        this.changes = changes;
+
+        ParserConfiguration configuration = new ParserConfiguration()
+            .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+            .setStoreTokens(this.features.contains(Feature.TOKENS))
+            .setAttributeComments(this.features.contains(Feature.COMMENTS));
+
+        // JavaParser instances are not thread safe, so every thread that parses gets its own.
+        this.parsers = ThreadLocal.withInitial(() -> new JavaParser(configuration));
+    }
+
+    public Path sourceRoot() {
+        return sourceRoot;
+    }
+
+    public Set<Feature> features() {
+        return Collections.unmodifiableSet(features);
+    }
+
+    /**
+     * @return the change set this index is scoped to, or null when the whole tree is audited
+     */
+    public GitChangeSet changes() {
+        return changes;
+    }
+
+    /**
+     * Whether findings for a file should be reported. Unchanged files still count towards
+     * project-level scores, but a diff scoped audit only reports on what the change touched.
+     * @param file a file returned by {@link #files()}
+     * @return true if the file changed, or if the index is not scoped to a change set
+     */
+    public boolean isChanged(Path file) {
+        return changes == null || changes.isChanged(file);
+    }
+
+    /**
+     * @return how many files have actually been parsed so far
+     */
+    public int parseCount() {
+        return parseCount.get();
+    }
+
+    /**
+     * Lists the java files under the source root in walk order. The tree is only walked the first time.
+     * @return the java source files
+     */
+    public synchronized List<Path> files() {
+        if (files == null) {
+            try (Stream<Path> paths = Files.walk(sourceRoot)) {
+                files = paths
+                    .filter(p -> p.toString().endsWith(".java"))
+                    .toList();
+            } catch (IOException e) {
+                e.printStackTrace();
+                files = List.of();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Hash the content of a file so per-file results can be looked up in a {@link ResultCache}.
+     * The hash is computed once per audit and shared by every metric that asks for it.
+     * @param file a file returned by {@link #files()}
+     * @return the git style blob hash of the file content
+     * @throws IOException if the file cannot be read
+     */
+    public String contentHash(Path file) throws IOException {
+        String known = contentHashes.get(file);
+        if (known != null) {
+            return known;
+        }
+
+        // Git already knows the hash of every file the change did not touch.
+        if (changes != null) {
+            Optional<String> blobId = changes.blobId(file);
+            if (blobId.isPresent()) {
+                contentHashes.put(file, blobId.get());
+                return blobId.get();
+            }
+        }
+
+        String hash = ResultCache.contentHash(Files.readAllBytes(file));
+        contentHashes.put(file, hash);
+        return hash;
+    }
+
+    /**
+     * Hand over content hashes that are already known, e.g. from a previous audit of files that have not changed since.
+     * @param known content hashes keyed by the paths {@link #files()} returns
+     */
+    public void seedContentHashes(Map<Path, String> known) {
+        contentHashes.putAll(known);
+    }
+
+    /**
+     * @return every content hash computed or seeded so far, keyed by file
+     */
+    public Map<Path, String> contentHashes() {
+        return Map.copyOf(contentHashes);
+    }
+
+    /**
+     * Get the parsed form of a file, parsing it if no other consumer has done so yet.
+     * Every call must be paired with a call to {@link #release(Path)}.
+     * @param file a file returned by {@link #files()}
+     * @return the compilation unit, or empty if the file could not be read or parsed
+     */
+    public Optional<CompilationUnit> acquire(Path file) {
+        Entry entry = entries.computeIfAbsent(file, k -> new Entry(consumers));
+        synchronized (entry) {
+            if (!entry.parsed) {
+                entry.unit = parse(file);
+                entry.parsed = true;
+            }
+            return Optional.ofNullable(entry.unit);
+        }
+    }
+
+    /**
+     * Tell the index one consumer is done with a file. Consumers that skip a file still release it,
+     * so the AST can be dropped as soon as the last interested metric is finished with it.
+     * @param file a file returned by {@link #files()}
+     */
+    public void release(Path file) {
+        Entry entry = entries.computeIfAbsent(file, k -> new Entry(consumers));
+        synchronized (entry) {
+            entry.remaining--;
+            if (entry.remaining <= 0) {
+                entry.unit = null;
+                entry.parsed = false;
+                entries.remove(file, entry);
+            }
+        }
+    }
+
+    private CompilationUnit parse(Path file) {
+        parseCount.incrementAndGet();
+        try {
+            ParseResult<CompilationUnit> result = parsers.get().parse(file);
+            return result.getResult().orElse(null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private int remaining;
+        private boolean parsed;
+        private CompilationUnit unit;
+
+        private Entry(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+}
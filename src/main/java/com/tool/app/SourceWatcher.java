@@ -0,0 +1,157 @@
+package com.tool.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a source tree for changes to java files. Bursts of events, such as an IDE saving every open
+ * file at once, are collected until the tree has been quiet for the debounce interval.
+ */
+public class SourceWatcher implements Closeable {
+
+    /**
+     * A settled batch of changes.
+     * @param files the java files created, modified or deleted
+     * @param complete false when the platform dropped events, so any file may have changed
+     */
+    public record Changes(Set<Path> files, boolean complete) {}
+
+    private final Duration debounce;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * @param sourceRoot the directory to watch, including everything below it
+     * @param debounce how long the tree has to be quiet before a batch is handed out
+     * @throws IOException if the tree cannot be registered
+     */
+    public SourceWatcher(Path sourceRoot, Duration debounce) throws IOException {
+        if (sourceRoot == null || !Files.isDirectory(sourceRoot)) {
+            throw new IllegalArgumentException("Watch mode needs a source directory: " + sourceRoot);
+        }
+        if (debounce == null || debounce.isNegative()) {
+            throw new IllegalArgumentException("Debounce interval cannot be negative");
+        }
+
+        this.debounce = debounce;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        registerTree(sourceRoot, new LinkedHashSet<>());
+    }
+
+    /**
+     * Block until at least one java file changed and the tree has settled.
+     * @return the changes
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Changes awaitChanges() throws InterruptedException {
+        LinkedHashSet<Path> changed = new LinkedHashSet<>();
+        boolean complete = true;
+
+        try {
+            WatchKey key = watchService.take();
+            while (true) {
+                complete &= drain(key, changed);
+
+                // Events that only touched other files do not start the quiet period.
+                if (changed.isEmpty() && complete) {
+                    key = watchService.take();
+                    continue;
+                }
+
+                key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    return new Changes(Set.copyOf(changed), complete);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException("Source watcher was closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * @return false if events were lost
+     */
+    private boolean drain(WatchKey key, Set<Path> changed) {
+        Path directory = directories.get(key);
+        boolean complete = true;
+        if (directory == null) {
+            key.cancel();
+            return complete;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                complete = false;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // Files can land in a new directory before it is registered, so report what is already there.
+                try {
+                    registerTree(path, changed);
+                } catch (IOException e) {
+                    complete = false;
+                }
+            } else if (isJavaFile(path)) {
+                changed.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            // The directory is gone. Its files drop out of the next audit because the tree is walked again.
+            directories.remove(key);
+        }
+        return complete;
+    }
+
+    private void registerTree(Path root, Set<Path> existingFiles) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE
+                );
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isJavaFile(file)) {
+                    existingFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isJavaFile(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(".java");
+    }
+}
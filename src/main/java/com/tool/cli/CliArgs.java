@@ -2,6 +2,7 @@ package com.tool.cli;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,22 +12,58 @@ public class CliArgs {
     private final String projectName;
     private final Path sourceRoot;
     private final Path dependencyReportPath; //Path to the dep report. Security metric needs this to run, if null security is skipped
+    private final Duration dependencyReportMaxAge; //How long a generated report is reused while the dependencies are unchanged
     private final Path configPath;
     private final Path outputPath;
     private final boolean shouldOpenReport;
+    private final int parallelism; //How many metrics may run at once, 1 keeps the old one-at-a-time behaviour
+    private final Duration metricTimeout;
+    private final Duration auditTimeout;
+    private final Path cacheDir; //Where per-file results are cached between runs, null turns caching off
+    private final long cacheMaxBytes;
+    private final String changedSince; //Git revision to scope the audit to, null audits the whole tree
+    private final boolean watch; //Keep running and re-audit whenever a java file changes
+    private final boolean serve; //Run as a local audit server instead of auditing once
+    private final int port;
+    private final int serverWorkers;
+    private final String ndjsonOutput; //Where results are streamed as NDJSON while the audit runs, "-" for stdout, null for nowhere
 
     private CliArgs(String projectName,
                     Path sourceRoot,
                     Path dependencyReportPath,
+                    Duration dependencyReportMaxAge,
                     Path configPath,
                     Path outputPath,
-                    boolean shouldOpenReport) {
+                    boolean shouldOpenReport,
+                    int parallelism,
+                    Duration metricTimeout,
+                    Duration auditTimeout,
+                    Path cacheDir,
+                    long cacheMaxBytes,
+                    String changedSince,
+                    boolean watch,
+                    boolean serve,
+                    int port,
+                    int serverWorkers,
+                    String ndjsonOutput) {
         this.projectName = projectName;
         this.sourceRoot = sourceRoot;
         this.dependencyReportPath = dependencyReportPath;   //Store this to be used later for security metric
+        this.dependencyReportMaxAge = dependencyReportMaxAge;
         this.configPath = configPath;
         this.outputPath = outputPath;
         this.shouldOpenReport = shouldOpenReport;
+        this.parallelism = parallelism;
+        this.metricTimeout = metricTimeout;
+        this.auditTimeout = auditTimeout;
+        this.cacheDir = cacheDir;
+        this.cacheMaxBytes = cacheMaxBytes;
+        this.changedSince = changedSince;
+        this.watch = watch;
+        this.serve = serve;
+        this.port = port;
+        this.serverWorkers = serverWorkers;
+        this.ndjsonOutput = ndjsonOutput;
     }
 
     public static CliArgs parse(String[] args) {
@@ -36,21 +73,28 @@ public class CliArgs {
             throw new IllegalArgumentException(usage());
         }
 
+        //"serve" as the first argument starts the audit server, jobs then name their own source
+        boolean serve = args != null && args.length > 0 && "serve".equals(args[0]);
+
         String source = firstPresent(values, "--source", "-s");
-        if (source == null) {
+        if (source == null && !serve) {
             throw new IllegalArgumentException("--source is required.");
         }
 
-        Path sourcePath = Paths.get(source);
+        Path sourcePath = source == null ? null : Paths.get(source);
         Path dependencyReportPath = resolveDependencyReportPath( //Looking for OWASP Dependency report path. Multiple names supported. Helps for testing
                 sourcePath,
                 firstPresent(values, "--dependency-report", "--depcheck-report", "--dependencycheck-report", "-d")
         );
+        Duration dependencyReportMaxAge = parseHours(
+                values.getOrDefault("--dependency-report-max-age", "24"),
+                "--dependency-report-max-age"
+        );
 
         Path configPath = ConfigLoader.resolveConfigPath(values.get("--config"));
         Path outputPath = Paths.get(values.getOrDefault("--output", "reports/quality-report"));
 
-        String defaultProject = sourcePath.getFileName() != null
+        String defaultProject = sourcePath != null && sourcePath.getFileName() != null
                 ? sourcePath.getFileName().toString()
                 : "project";
 
@@ -58,7 +102,62 @@ public class CliArgs {
 
         boolean shouldOpenReport = Boolean.parseBoolean(values.getOrDefault("--should-open-report", "true"));
 
-        return new CliArgs(projectName, sourcePath, dependencyReportPath, configPath, outputPath, shouldOpenReport);
+        int parallelism = parsePositiveInt(values.getOrDefault("--parallelism", "1"), "--parallelism");
+        Duration metricTimeout = parseSeconds(values.get("--metric-timeout"), "--metric-timeout");
+        Duration auditTimeout = parseSeconds(values.get("--audit-timeout"), "--audit-timeout");
+
+        String changedSince = values.get("--changed-since");
+        if ("true".equals(changedSince)) {
+            throw new IllegalArgumentException("--changed-since needs a git revision, e.g. origin/main");
+        }
+
+        boolean watch = Boolean.parseBoolean(values.getOrDefault("--watch", "false"));
+        if (serve && (watch || changedSince != null)) {
+            throw new IllegalArgumentException("serve cannot be combined with --watch or --changed-since.");
+        }
+
+        int port = parsePort(values.getOrDefault("--port", "8787"));
+        int serverWorkers = parsePositiveInt(values.getOrDefault("--workers", "2"), "--workers");
+        if (watch && changedSince != null) {
+            throw new IllegalArgumentException("--watch and --changed-since cannot be combined.");
+        }
+
+        String ndjsonOutput = values.get("--ndjson");
+        if ("true".equals(ndjsonOutput)) {
+            throw new IllegalArgumentException("--ndjson needs a file path, or - for stdout");
+        }
+        if (serve && ndjsonOutput != null) {
+            throw new IllegalArgumentException("serve cannot be combined with --ndjson.");
+        }
+
+        //Diff scoped and watch audits are only fast when untouched files come from the cache, so they always get one
+        String cacheDirValue = values.get("--cache-dir");
+        Path cacheDir = cacheDirValue == null ? null : Paths.get(cacheDirValue);
+        if (cacheDir == null && (changedSince != null || watch)) {
+            cacheDir = defaultCacheDir();
+        }
+        long cacheMaxBytes = parsePositiveInt(values.getOrDefault("--cache-max-mb", "256"), "--cache-max-mb") * 1024L * 1024L;
+
+        return new CliArgs(
+                projectName,
+                sourcePath,
+                dependencyReportPath,
+                dependencyReportMaxAge,
+                configPath,
+                outputPath,
+                shouldOpenReport,
+                parallelism,
+                metricTimeout,
+                auditTimeout,
+                cacheDir,
+                cacheMaxBytes,
+                changedSince,
+                watch,
+                serve,
+                port,
+                serverWorkers,
+                ndjsonOutput
+        );
     }
 
     private static Map<String, String> parseArgs(String[] args) {
@@ -76,7 +175,8 @@ public class CliArgs {
             String key = args[i];
             String value = "true";
 
-            if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+            //A lone dash is a value, it means stdout
+            if (i + 1 < args.length && (!args[i + 1].startsWith("-") || "-".equals(args[i + 1]))) {
                 value = args[i + 1];
                 i++;
             }
@@ -96,6 +196,55 @@ public class CliArgs {
         return null;
     }
 
+    private static int parsePositiveInt(String raw, String flag) {
+        try {
+            int value = Integer.parseInt(raw.trim());
+            if (value < 1) {
+                throw new IllegalArgumentException(flag + " must be at least 1.");
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(flag + " must be a whole number: " + raw);
+        }
+    }
+
+    private static int parsePort(String raw) {
+        try {
+            int value = Integer.parseInt(raw.trim());
+            if (value < 0 || value > 65535) {
+                throw new IllegalArgumentException("--port must be between 0 and 65535.");
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--port must be a whole number: " + raw);
+        }
+    }
+
+    //Timeouts are given in whole seconds, a missing flag means no deadline
+    private static Duration parseSeconds(String raw, String flag) {
+        if (raw == null) {
+            return null;
+        }
+        return Duration.ofSeconds(parsePositiveInt(raw, flag));
+    }
+
+    //Zero is allowed here, it means never reuse
+    private static Duration parseHours(String raw, String flag) {
+        try {
+            int value = Integer.parseInt(raw.trim());
+            if (value < 0) {
+                throw new IllegalArgumentException(flag + " must not be negative.");
+            }
+            return Duration.ofHours(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(flag + " must be a whole number: " + raw);
+        }
+    }
+
+    private static Path defaultCacheDir() {
+        return Paths.get(System.getProperty("user.home"), ".quality-auditor", "cache");
+    }
+
     //If user provides a path, its turned into object, otherwise it returns null
     private static Path resolveDependencyReportPath(Path sourcePath, String raw) {
         if (raw != null && !raw.isBlank()) {
@@ -117,6 +266,10 @@ public class CliArgs {
         return dependencyReportPath;
     }
 
+    public Duration dependencyReportMaxAge() {
+        return dependencyReportMaxAge;
+    }
+
     public Path configPath() {
         return configPath;
     }
@@ -129,6 +282,50 @@ public class CliArgs {
         return shouldOpenReport;
     }
 
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public Duration metricTimeout() {
+        return metricTimeout;
+    }
+
+    public Duration auditTimeout() {
+        return auditTimeout;
+    }
+
+    public Path cacheDir() {
+        return cacheDir;
+    }
+
+    public long cacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public String changedSince() {
+        return changedSince;
+    }
+
+    public boolean watch() {
+        return watch;
+    }
+
+    public boolean serve() {
+        return serve;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public int serverWorkers() {
+        return serverWorkers;
+    }
+
+    public String ndjsonOutput() {
+        return ndjsonOutput;
+    }
+
     public static String usage() {
         return """
             Usage:
@@ -136,8 +333,24 @@ public class CliArgs {
                 --project <name> \\
                 --source <path-to-java-source-root> \\
                 [--dependency-report <path-to-dependency-check-report.json>] \\
+                [--dependency-report-max-age <hours>] \\
                 [--config <path-to-config.json>] \\
-                [--output <path-to-output-report.html>]
+                [--output <path-to-output-report.html>] \\
+                [--parallelism <metrics-at-once>] \\
+                [--metric-timeout <seconds>] \\
+                [--audit-timeout <seconds>] \\
+                [--cache-dir <path-to-result-cache>] \\
+                [--cache-max-mb <megabytes>] \\
+                [--changed-since <git-revision>] \\
+                [--watch] \\
+                [--ndjson <path-or-dash>]
+
+              java -jar quality-auditor-tool.jar serve \\
+                [--port <port>] \\
+                [--workers <audits-at-once>] \\
+                [--config <path-to-config.json>] \\
+                [--parallelism <metrics-at-once>] \\
+                [--cache-dir <path-to-result-cache>]
 
             Required:
               --source            Path to Java source directory (e.g. src/main/java)
@@ -145,8 +358,29 @@ public class CliArgs {
             Optional:
               --project           Project label in report
               --dependency-report OWASP Dependency-Check JSON report file
+              --dependency-report-max-age
+                                  Hours a generated Dependency-Check report is reused while no pom.xml or resolved
+                                  dependency changed (default 24, 0 always regenerates)
               --config            Path to JSON config file (defaults to built-in config if not provided)
               --output            Report output folder
+              --parallelism       Number of metrics evaluated at the same time (default 1)
+              --metric-timeout    Seconds a single metric may run before it is reported as failed
+              --audit-timeout     Seconds the whole audit may run before unfinished metrics are reported as failed
+              --cache-dir         Directory for cached per-file results, unchanged files are not parsed again
+              --cache-max-mb      Size cap for the result cache in megabytes (default 256)
+              --changed-since     Only report on files changed since this git revision, untouched files are
+                                  served from the result cache (default ~/.quality-auditor/cache)
+              --watch             Keep running and re-audit the sources whenever a .java file changes,
+                                  rewriting the reports each time (uses the same default cache)
+              --ndjson            Stream each metric result and its findings as newline delimited JSON the moment
+                                  it is known, to a file or to stdout with - (progress output then goes to stderr)
+
+            Serve mode:
+              serve               Keep running and accept audits on http://127.0.0.1:<port>/audit as POSTed
+                                  JSON {"source": "...", "dependency_report": "..."}, answering with the JSON report.
+                                  The config is reloaded whenever the file changes.
+              --port              Localhost port to listen on (default 8787)
+              --workers           Audits run at the same time, further jobs queue (default 2)
             """;
     }
 }
\ No newline at end of file
@@ -2,7 +2,10 @@ package com.tool.metrics;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
 
+import com.tool.app.ProjectContext;
 import com.tool.domain.Category;
 import com.tool.domain.Threshold;
 
@@ -10,6 +13,10 @@ import com.tool.domain.Threshold;
  * Abstract class representing a metric that can be evaluated on a project.
  * Each metric has a name, description, and a list of thresholds that determine
  * the severity of the findings based on the score.
+ *
+ * A metric only holds its configuration. Everything a single evaluation needs lives in the
+ * {@link ProjectContext} or in local variables, so one instance built by the config loader can
+ * evaluate several projects at the same time.
  */
 public abstract class Metric {
     private final ArrayList<Threshold> thresholds;
@@ -17,6 +24,15 @@ public abstract class Metric {
     private final String description;
     private Category category;
 
+    /**
+     * What a metric reads besides its own configuration. Inputs that are expensive to produce are only
+     * produced for an audit when one of its metrics asks for them.
+     */
+    public enum Input {
+        SOURCES,
+        DEPENDENCY_REPORT
+    }
+
     /**
      * Create a new metric with the given thresholds, name, and description.
      * @param thresholds the thresholds for this metric, ordered from highest severity to lowest severity
@@ -58,7 +74,14 @@ public abstract class Metric {
     }
 
     /**
-     * Evaluate the metric for the given project path and store the score and findings internally.
+     * @return the inputs this metric reads from the {@link ProjectContext}, most metrics only need the sources
+     */
+    public Set<Input> inputs() {
+        return EnumSet.of(Input.SOURCES);
+    }
+
+    /**
+     * Evaluate the metric for the given project path on its own, outside of an audit run.
      * @param projectPath the path to the project being audited
      * @return a MetricResult containing the score and findings for this metric
      */
@@ -67,4 +90,15 @@ public abstract class Metric {
     public MetricResult evaluate(Path projectPath, Path dependencyReportPath) throws Exception {
         return evaluate(projectPath);
     }
+
+    /**
+     * Evaluate the metric against the inputs of one audit run. This is what the audit calls and must be
+     * safe to call concurrently. Long running metrics should stop early once the context's cancellation
+     * token is cancelled. Metrics that only need paths can rely on the fallback to the path based methods.
+     * @param context the inputs shared by every metric in the audit
+     * @return a MetricResult containing the score and findings for this metric
+     */
+    public MetricResult evaluate(ProjectContext context) throws Exception {
+        return evaluate(context.sourceRoot(), context.dependencyReportPath());
+    }
 }
@@ -3,6 +3,7 @@ package com.tool.metrics;
 import java.util.ArrayList;
 
 import com.tool.domain.Finding;
+import com.tool.domain.Severity;
 import com.tool.domain.Threshold;
 
 /**
@@ -14,15 +15,41 @@ public class MetricResult {
     private final double score;
     private final Threshold mostSevereThreshold;
     private final ArrayList<Finding> findings;
+    private final boolean failed;
 
     public MetricResult(Metric metric, double score, ArrayList<Finding> findings,
                         ArrayList<Threshold> thresholds) {
+        this(metric, score, findings, thresholds, false);
+    }
+
+    private MetricResult(Metric metric, double score, ArrayList<Finding> findings,
+                         ArrayList<Threshold> thresholds, boolean failed) {
         this.metric = metric;
         this.score = score;
         this.findings = findings;
+        this.failed = failed;
         this.mostSevereThreshold = evaluateSeverity(thresholds);
     }
 
+    /**
+     * Create the result for a metric that could not be evaluated, e.g. because it threw or ran past its deadline.
+     * The result is not checked against any threshold and carries a single critical finding with the reason.
+     * @param metric the metric that failed
+     * @param reason a short description of why the metric failed
+     * @return a failed MetricResult
+     */
+    public static MetricResult failed(Metric metric, String reason) {
+        ArrayList<Finding> findings = new ArrayList<>();
+        findings.add(new Finding(
+            Severity.CRITICAL,
+            "Metric evaluation failed: " + reason,
+            "project-wide",
+            metric.name(),
+            null
+        ));
+        return new MetricResult(metric, 0.0, findings, new ArrayList<>(), true);
+    }
+
     public Metric metric(){
         return metric;
     }
@@ -39,6 +66,10 @@ public class MetricResult {
         return mostSevereThreshold;
     }
 
+    public boolean failed() {
+        return failed;
+    }
+
     /**
      * Evaluate the severity of the metric result based on the provided thresholds. 
      * @param thresholds the thresholds to evaluate against, ordered from highest severity to lowest severity
@@ -56,6 +87,9 @@ public class MetricResult {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        if (failed) {
+            sb.append("Failed: true\n");
+        }
         sb.append("Score: ").append(score).append("\n");
         sb.append("Most Severe Threshold Met: ").append(mostSevereThreshold != null ? mostSevereThreshold.severity() : "None").append("\n");
         sb.append("Findings:\n");
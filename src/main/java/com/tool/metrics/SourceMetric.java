@@ -0,0 +1,17 @@
+package com.tool.metrics;
+
+import java.util.Set;
+
+import com.tool.app.SourceIndex;
+
+/**
+ * Implemented by metrics that read parsed java sources.
+ * An audit builds a single SourceIndex for all source metrics so every file is parsed once.
+ */
+public interface SourceMetric {
+
+    /**
+     * @return the parser features this metric reads, the shared index only keeps what some metric asks for
+     */
+    Set<SourceIndex.Feature> sourceFeatures();
+}
@@ -0,0 +1,67 @@
+package com.tool.metrics.availability;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes throwaway workspaces off the target threads, so walking a large tree never holds up the next build.
+ * The single cleanup thread is not a daemon, so the JVM finishes pending deletes before it exits, and it goes
+ * away on its own once the queue has been idle for a moment.
+ */
+final class BackgroundCleanup {
+    private static final ExecutorService CLEANUP = new ThreadPoolExecutor(
+        0,
+        1,
+        1L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        runnable -> new Thread(runnable, "portability-cleanup")
+    );
+
+    private BackgroundCleanup() {}
+
+    static void deleteLater(Path path) {
+        if (path == null) {
+            return;
+        }
+        CLEANUP.execute(() -> deleteQuietly(path));
+    }
+
+    static void deleteQuietly(Path path) {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Snapshot copies are read-only, which some platforms refuse to delete.
+                        file.toFile().setWritable(true);
+                        Files.deleteIfExists(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+            // Temporary workspace cleanup is best-effort.
+        }
+    }
+}
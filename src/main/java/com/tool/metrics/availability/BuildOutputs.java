@@ -0,0 +1,107 @@
+package com.tool.metrics.availability;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The build output directories (e.g. every module's target/) of one workspace, kept aside so other targets can
+ * run against them instead of compiling the same sources again.
+ *
+ * Timestamps are copied along, so a build tool looking at them still finds the outputs newer than the sources.
+ */
+final class BuildOutputs {
+
+    private BuildOutputs() {
+    }
+
+    /**
+     * Copy the output directories out of a workspace that is about to go away.
+     * @param workspace the workspace the baseline built in
+     * @param outputDirNames names of output directories, found at any depth
+     * @return a directory holding the outputs at their relative paths, delete it with
+     *         {@link BackgroundCleanup#deleteLater} when done. Null if the workspace has no output directories.
+     */
+    static Path capture(Path workspace, Set<String> outputDirNames) throws IOException {
+        Path outputs = Files.createTempDirectory("portability-build-");
+        boolean[] found = {false};
+        try {
+            Files.walkFileTree(workspace, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (!dir.equals(workspace) && outputDirNames.contains(dir.getFileName().toString())) {
+                        copyTree(dir, outputs.resolve(workspace.relativize(dir)));
+                        found[0] = true;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            BackgroundCleanup.deleteLater(outputs);
+            throw e;
+        }
+
+        if (!found[0]) {
+            BackgroundCleanup.deleteLater(outputs);
+            return null;
+        }
+        return outputs;
+    }
+
+    /**
+     * Lay captured outputs over a workspace, replacing whatever is there.
+     */
+    static void seed(Path outputs, Path workspace) throws IOException {
+        copyTree(outputs, workspace);
+    }
+
+    /**
+     * Move the output directories of a workspace out of the way, so the next build has to write fresh ones.
+     * They are renamed rather than deleted, a container may have left files in them the audit cannot delete.
+     */
+    static void setAside(Path workspace, Set<String> outputDirNames) throws IOException {
+        List<Path> found = new ArrayList<>();
+        Files.walkFileTree(workspace, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(workspace) && outputDirNames.contains(dir.getFileName().toString())) {
+                    found.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path dir : found) {
+            Files.move(dir, dir.resolveSibling(dir.getFileName() + ".set-aside"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void copyTree(Path from, Path to) throws IOException {
+        Files.walkFileTree(from, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(to.resolve(from.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(
+                    file,
+                    to.resolve(from.relativize(file)),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES
+                );
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
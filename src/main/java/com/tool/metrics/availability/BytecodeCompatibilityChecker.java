@@ -0,0 +1,184 @@
+package com.tool.metrics.availability;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import com.tool.metrics.availability.ClassFileSummary.MemberRef;
+
+/**
+ * Checks compiled classes against the API of a Java release without building or running anything: class file
+ * versions the release cannot load, and JDK classes, fields and methods it does not have.
+ *
+ * Only references into the JDK are checked. Classes under java/ always belong to it, anything else only once the
+ * release is known to declare the class, so libraries that happen to use a javax package are left alone.
+ */
+final class BytecodeCompatibilityChecker {
+    // Class file major version of Java 1, every later release adds one.
+    private static final int MAJOR_VERSION_OFFSET = 44;
+    // Invoked with whatever descriptor the call site has, so only the name can be checked.
+    private static final Set<String> SIGNATURE_POLYMORPHIC_OWNERS = Set.of(
+        "java/lang/invoke/MethodHandle",
+        "java/lang/invoke/VarHandle"
+    );
+
+    /**
+     * What the compiled classes of a project need from the JDK.
+     * @param classCount classes scanned
+     * @param maxMajor the highest class file major version seen
+     * @param newestClass a class with that version
+     * @param ownClasses classes of the project itself
+     * @param referencedClasses classes the project refers to
+     * @param referencedMembers fields and methods the project refers to
+     */
+    record Scan(
+        int classCount,
+        int maxMajor,
+        String newestClass,
+        Set<String> ownClasses,
+        Set<String> referencedClasses,
+        Set<MemberRef> referencedMembers
+    ) {
+        int requiredRelease() {
+            return maxMajor - MAJOR_VERSION_OFFSET;
+        }
+    }
+
+    /**
+     * @param release the Java release checked against
+     * @param apiChecked false if this JDK has no API signatures for the release, only the class versions were checked
+     * @param problems what the release is missing, empty if nothing
+     */
+    record Verdict(int release, boolean apiChecked, List<String> problems) {
+        boolean certainToFail() {
+            return !problems.isEmpty();
+        }
+    }
+
+    private BytecodeCompatibilityChecker() {
+    }
+
+    /**
+     * Read every class file under the given directories. Multi-release classes under META-INF and module-info are
+     * left out, they are compiled for other releases on purpose.
+     */
+    static Scan scan(List<Path> classDirs) throws IOException {
+        int classCount = 0;
+        int maxMajor = 0;
+        String newestClass = null;
+        HashSet<String> ownClasses = new HashSet<>();
+        HashSet<String> referencedClasses = new HashSet<>();
+        HashSet<MemberRef> referencedMembers = new HashSet<>();
+
+        for (Path classDir : classDirs) {
+            List<Path> classFiles;
+            try (Stream<Path> files = Files.walk(classDir)) {
+                classFiles = files
+                    .filter(file -> file.getFileName().toString().endsWith(".class"))
+                    .filter(file -> !file.getFileName().toString().equals("module-info.class"))
+                    .filter(file -> !classDir.relativize(file).startsWith("META-INF"))
+                    .toList();
+            }
+
+            for (Path classFile : classFiles) {
+                ClassFileSummary summary;
+                try {
+                    summary = ClassFileSummary.parse(Files.readAllBytes(classFile));
+                } catch (IOException e) {
+                    throw new IOException("Could not read " + classFile + ": " + e.getMessage(), e);
+                }
+
+                classCount++;
+                if (summary.major() > maxMajor) {
+                    maxMajor = summary.major();
+                    newestClass = summary.name();
+                }
+                ownClasses.add(summary.name());
+                referencedClasses.addAll(summary.referencedClasses());
+                referencedMembers.addAll(summary.referencedMembers());
+            }
+        }
+
+        return new Scan(classCount, maxMajor, newestClass, ownClasses, referencedClasses, referencedMembers);
+    }
+
+    static Verdict check(Scan scan, int release) {
+        TreeSet<String> problems = new TreeSet<>();
+        if (scan.classCount() > 0 && scan.requiredRelease() > release) {
+            problems.add(String.format(
+                "%s is compiled for Java %d (class file %d), Java %d only loads class files up to %d",
+                scan.newestClass(),
+                scan.requiredRelease(),
+                scan.maxMajor(),
+                release,
+                release + MAJOR_VERSION_OFFSET
+            ));
+        }
+
+        Optional<JdkApi> api = JdkApi.forRelease(release);
+        if (api.isEmpty()) {
+            return new Verdict(release, false, List.copyOf(problems));
+        }
+
+        for (String referenced : scan.referencedClasses()) {
+            if (!scan.ownClasses().contains(referenced)
+                && referenced.startsWith("java/")
+                && api.get().lookup(referenced).isEmpty()) {
+                problems.add("missing class " + referenced);
+            }
+        }
+
+        for (MemberRef member : scan.referencedMembers()) {
+            if (scan.ownClasses().contains(member.owner())) {
+                continue;
+            }
+            // A missing owner is already reported as a missing class, or belongs to a library.
+            if (api.get().lookup(member.owner()).isPresent() && !declares(api.get(), member.owner(), member, new HashSet<>())) {
+                problems.add("missing member " + member);
+            }
+        }
+
+        return new Verdict(release, true, new ArrayList<>(problems));
+    }
+
+    /**
+     * Look the member up the way the JVM resolves it: the class, its superclasses, then its interfaces.
+     */
+    private static boolean declares(JdkApi api, String className, MemberRef member, Set<String> visited) {
+        if (className == null || !visited.add(className)) {
+            return false;
+        }
+
+        Optional<ClassFileSummary> summary = api.lookup(className);
+        if (summary.isEmpty()) {
+            return false;
+        }
+
+        if (SIGNATURE_POLYMORPHIC_OWNERS.contains(className)) {
+            String prefix = member.name() + ":";
+            if (summary.get().apiMembers().stream().anyMatch(key -> key.startsWith(prefix))) {
+                return true;
+            }
+        } else if (summary.get().apiMembers().contains(member.key())) {
+            return true;
+        }
+
+        if (declares(api, summary.get().superName(), member, visited)) {
+            return true;
+        }
+        for (String iface : summary.get().interfaces()) {
+            if (declares(api, iface, member, visited)) {
+                return true;
+            }
+        }
+        // Interfaces do not extend Object, but calls through them still reach its methods.
+        return declares(api, "java/lang/Object", member, visited);
+    }
+}
@@ -0,0 +1,175 @@
+package com.tool.metrics.availability;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a class file the bytecode pre-check needs: its version, its place in the type hierarchy, the
+ * members it declares and the classes and members it refers to. Code and attributes are skipped, not parsed.
+ *
+ * @param major the class file major version, e.g. 61 for Java 17
+ * @param name internal name, e.g. java/lang/String
+ * @param superName internal name of the superclass, null for java/lang/Object and module-info
+ * @param interfaces internal names of the directly implemented interfaces
+ * @param accessFlags the class access flags
+ * @param apiMembers public and protected fields and methods, as name:descriptor
+ * @param referencedClasses every class named in the constant pool, array element types included
+ * @param referencedMembers every field and method the constant pool refers to
+ */
+record ClassFileSummary(
+    int major,
+    String name,
+    String superName,
+    List<String> interfaces,
+    int accessFlags,
+    Set<String> apiMembers,
+    Set<String> referencedClasses,
+    Set<MemberRef> referencedMembers
+) {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PROTECTED = 0x0004;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * A field or method reference from the constant pool.
+     * @param owner internal name of the class the member is looked up in
+     * @param name the member name
+     * @param descriptor its JVM descriptor
+     */
+    record MemberRef(String owner, String name, String descriptor) {
+        String key() {
+            return memberKey(name, descriptor);
+        }
+
+        @Override
+        public String toString() {
+            return owner + "." + name + descriptor;
+        }
+    }
+
+    static String memberKey(String name, String descriptor) {
+        return name + ":" + descriptor;
+    }
+
+    boolean isPublic() {
+        return (accessFlags & ACC_PUBLIC) != 0;
+    }
+
+    /**
+     * @throws IOException if the bytes are not a class file
+     */
+    static ClassFileSummary parse(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor
+        int major = in.readUnsignedShort();
+
+        int poolSize = in.readUnsignedShort();
+        int[] tags = new int[poolSize];
+        String[] utf8 = new String[poolSize];
+        int[] first = new int[poolSize];
+        int[] second = new int[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 7, 8, 16, 19, 20 -> first[i] = in.readUnsignedShort();
+                case 3, 4 -> in.readInt();
+                case 5, 6 -> {
+                    in.readLong();
+                    i++; // Longs and doubles take two slots.
+                }
+                case 9, 10, 11, 12, 17, 18 -> {
+                    first[i] = in.readUnsignedShort();
+                    second[i] = in.readUnsignedShort();
+                }
+                case 15 -> {
+                    in.readUnsignedByte();
+                    first[i] = in.readUnsignedShort();
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        String name = utf8[first[in.readUnsignedShort()]];
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : utf8[first[superIndex]];
+        int interfaceCount = in.readUnsignedShort();
+        ArrayList<String> interfaces = new ArrayList<>();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(utf8[first[in.readUnsignedShort()]]);
+        }
+
+        HashSet<String> apiMembers = new HashSet<>();
+        // Fields, then methods, both laid out the same way.
+        for (int kind = 0; kind < 2; kind++) {
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                int memberFlags = in.readUnsignedShort();
+                String memberName = utf8[in.readUnsignedShort()];
+                String descriptor = utf8[in.readUnsignedShort()];
+                if ((memberFlags & (ACC_PUBLIC | ACC_PROTECTED)) != 0) {
+                    apiMembers.add(memberKey(memberName, descriptor));
+                }
+                skipAttributes(in);
+            }
+        }
+
+        HashSet<String> referencedClasses = new HashSet<>();
+        HashSet<MemberRef> referencedMembers = new HashSet<>();
+        for (int i = 1; i < poolSize; i++) {
+            if (tags[i] == 7) {
+                String referenced = elementType(utf8[first[i]]);
+                if (referenced != null) {
+                    referencedClasses.add(referenced);
+                }
+            } else if (tags[i] == 9 || tags[i] == 10 || tags[i] == 11) {
+                String owner = elementType(utf8[first[first[i]]]);
+                int nameAndType = second[i];
+                if (owner != null) {
+                    referencedMembers.add(new MemberRef(owner, utf8[first[nameAndType]], utf8[second[nameAndType]]));
+                }
+            }
+        }
+
+        return new ClassFileSummary(
+            major,
+            name,
+            superName,
+            List.copyOf(interfaces),
+            accessFlags,
+            apiMembers,
+            referencedClasses,
+            referencedMembers
+        );
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUnsignedShort();
+            in.skipNBytes(Integer.toUnsignedLong(in.readInt()));
+        }
+    }
+
+    /**
+     * @return the class an array type is made of, or the name itself. Null for arrays of primitives.
+     */
+    private static String elementType(String className) {
+        if (!className.startsWith("[")) {
+            return className;
+        }
+        String element = className.substring(className.lastIndexOf('[') + 1);
+        return element.startsWith("L") && element.endsWith(";") ? element.substring(1, element.length() - 1) : null;
+    }
+}
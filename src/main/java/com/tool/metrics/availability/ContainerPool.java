@@ -0,0 +1,321 @@
+package com.tool.metrics.availability;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one long-lived container per image (and resource limits) so Docker targets skip container creation
+ * and keep their build caches, e.g. the Maven repository, warm between runs.
+ *
+ * Each run gets its own directory under /workspaces in the container, the workspace is copied in with
+ * {@code docker cp} and the target command runs through {@code docker exec}. A container is replaced after
+ * {@code maxUses} runs and removed once it has been idle for {@code idleTimeout}. A run that timed out or was
+ * cancelled may have left its build running inside, so that container is removed straight away.
+ *
+ * There is one pool per docker command and pool settings in the JVM, shared by every metric configured with them.
+ * A metric built again for a reloaded config therefore keeps using the same containers instead of leaving the old
+ * ones behind, and the reaper thread and shutdown hook exist once per pool rather than once per metric.
+ */
+final class ContainerPool implements Closeable {
+    private static final String WORKSPACES = "/workspaces";
+    private static final int DOCKER_TIMEOUT_SECONDS = 120;
+    private static final Map<PoolSettings, ContainerPool> POOLS = new ConcurrentHashMap<>();
+
+    private record PoolSettings(String dockerCommand, int maxUses, Duration idleTimeout, List<String> runOptions) {}
+
+    /**
+     * A pooled container and the runs currently using it. Guarded by the pool.
+     */
+    static final class Container {
+        private final String id;
+        private final String key;
+        private int uses;
+        private int inFlight;
+        private long idleSince;
+        private boolean retired;
+
+        private Container(String id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    /**
+     * One run's claim on a container.
+     * @param container the container to run in
+     * @param workdir the run's own directory inside it
+     */
+    record Lease(Container container, String workdir) {}
+
+    private final String dockerCommand;
+    private final int maxUses;
+    private final Duration idleTimeout;
+    private final List<String> runOptions;
+    private final Map<String, Container> current = new HashMap<>();
+    private final List<Container> all = new ArrayList<>();
+    private final Set<String> starting = new HashSet<>();
+    private final AtomicLong runCounter = new AtomicLong();
+    private final ScheduledExecutorService reaper;
+
+    /**
+     * The pool for these settings, started the first time they are asked for.
+     * @param dockerCommand the docker executable
+     * @param maxUses runs a container serves before it is replaced
+     * @param idleTimeout how long an unused container is kept
+     * @param runOptions extra docker run options every container is started with, e.g. cache mounts
+     */
+    static ContainerPool shared(String dockerCommand, int maxUses, Duration idleTimeout, List<String> runOptions) {
+        if (maxUses < 1) {
+            throw new IllegalArgumentException("portability_pass_rate container_max_uses must be at least 1");
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("portability_pass_rate container_idle_seconds must be at least 1");
+        }
+
+        return POOLS.computeIfAbsent(
+            new PoolSettings(dockerCommand, maxUses, idleTimeout, List.copyOf(runOptions)),
+            settings -> new ContainerPool(dockerCommand, maxUses, idleTimeout, runOptions)
+        );
+    }
+
+    private ContainerPool(String dockerCommand, int maxUses, Duration idleTimeout, List<String> runOptions) {
+        this.dockerCommand = dockerCommand;
+        this.maxUses = maxUses;
+        this.idleTimeout = idleTimeout;
+        this.runOptions = List.copyOf(runOptions);
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "portability-container-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(idleTimeout.toSeconds(), 30));
+        reaper.scheduleAtFixedRate(this::removeIdle, period, period, TimeUnit.SECONDS);
+
+        // Pooled containers outlive the audit that started them, make sure they do not outlive the process.
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Claim a container and copy the workspace into it.
+     * @throws IOException if no container could be started or the workspace could not be copied in
+     */
+    Lease acquire(String image, int cpus, int memoryMb, Path workspace) throws IOException {
+        Container container = claim(image, cpus, memoryMb);
+        String workdir = WORKSPACES + "/run-" + runCounter.incrementAndGet();
+        try {
+            docker("cp", workspace.toAbsolutePath() + "/.", container.id + ":" + workdir);
+        } catch (IOException e) {
+            release(new Lease(container, workdir), false);
+            throw e;
+        }
+        return new Lease(container, workdir);
+    }
+
+    /**
+     * @return the command that runs a target's command inside the leased container
+     */
+    List<String> execCommand(Lease lease, List<String> command) {
+        ArrayList<String> exec = new ArrayList<>();
+        exec.add(dockerCommand);
+        exec.add("exec");
+        exec.add("-w");
+        exec.add(lease.workdir());
+        exec.add(lease.container().id);
+        exec.addAll(command);
+        return exec;
+    }
+
+    /**
+     * Give the container back.
+     * @param healthy false if the run may have left processes behind, the container is then removed
+     */
+    void release(Lease lease, boolean healthy) {
+        Container container = lease.container();
+        if (healthy) {
+            try {
+                docker("exec", container.id, "rm", "-rf", lease.workdir());
+            } catch (IOException e) {
+                healthy = false;
+            }
+        }
+
+        boolean remove;
+        synchronized (this) {
+            container.inFlight--;
+            container.idleSince = System.nanoTime();
+            if (!healthy) {
+                retire(container);
+            }
+            remove = container.retired && container.inFlight == 0 && all.remove(container);
+        }
+        if (remove) {
+            removeQuietly(container);
+        }
+    }
+
+    @Override
+    public void close() {
+        reaper.shutdownNow();
+        List<Container> containers;
+        synchronized (this) {
+            containers = new ArrayList<>(all);
+            all.clear();
+            current.clear();
+        }
+        containers.forEach(this::removeQuietly);
+    }
+
+    private Container claim(String image, int cpus, int memoryMb) throws IOException {
+        String key = image + "|" + cpus + "|" + memoryMb;
+        synchronized (this) {
+            while (true) {
+                Container container = current.get(key);
+                if (container != null && isExpired(container)) {
+                    retire(container);
+                    container = null;
+                }
+                if (container != null) {
+                    takeUse(container);
+                    return container;
+                }
+                // Targets racing for the same image wait for the one container instead of each starting their own.
+                if (starting.add(key)) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a container for " + image, e);
+                }
+            }
+        }
+
+        try {
+            ArrayList<String> run = new ArrayList<>(List.of("run", "-d", "--rm", "-w", WORKSPACES, "--cpus", Integer.toString(cpus)));
+            if (memoryMb > 0) {
+                run.add("--memory");
+                run.add(memoryMb + "m");
+            }
+            run.addAll(runOptions);
+            run.addAll(List.of("--entrypoint", "sleep", image, "infinity"));
+            String id = docker(run.toArray(String[]::new)).trim();
+            if (id.isEmpty()) {
+                throw new IOException("docker run did not report a container id for " + image);
+            }
+
+            Container container = new Container(id, key);
+            synchronized (this) {
+                all.add(container);
+                current.put(key, container);
+                takeUse(container);
+            }
+            return container;
+        } finally {
+            synchronized (this) {
+                starting.remove(key);
+                notifyAll();
+            }
+        }
+    }
+
+    private void takeUse(Container container) {
+        container.uses++;
+        container.inFlight++;
+        if (container.uses >= maxUses) {
+            // Still finishes this run, but nobody new gets it.
+            retire(container);
+        }
+    }
+
+    private void retire(Container container) {
+        container.retired = true;
+        current.remove(container.key, container);
+    }
+
+    private boolean isExpired(Container container) {
+        return container.inFlight == 0 && System.nanoTime() - container.idleSince > idleTimeout.toNanos();
+    }
+
+    private void removeIdle() {
+        List<Container> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Container container : all) {
+                if (container.inFlight == 0 && (container.retired || isExpired(container))) {
+                    expired.add(container);
+                }
+            }
+            for (Container container : expired) {
+                retire(container);
+                all.remove(container);
+            }
+        }
+        expired.forEach(this::removeQuietly);
+    }
+
+    private void removeQuietly(Container container) {
+        try {
+            docker("rm", "-f", container.id);
+        } catch (IOException e) {
+            System.err.println("[PORTABILITY] Could not remove container " + container.id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run a short docker management command.
+     * @return what it printed
+     * @throws IOException if it could not be started, timed out or failed
+     */
+    private String docker(String... args) throws IOException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(dockerCommand);
+        command.addAll(List.of(args));
+
+        // Output goes to a file so a chatty command cannot block on a full pipe while we wait for it.
+        Path output = Files.createTempFile("portability-docker-", ".log");
+        try {
+            Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+
+            boolean finished;
+            try {
+                finished = process.waitFor(DOCKER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running docker " + args[0], e);
+            }
+
+            if (!finished) {
+                process.destroyForcibly();
+                throw new IOException("docker " + args[0] + " timed out");
+            }
+
+            String printed = Files.readString(output, StandardCharsets.UTF_8);
+            if (process.exitValue() != 0) {
+                throw new IOException("docker " + args[0] + " failed: " + printed.trim());
+            }
+            return printed;
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.tool.metrics.availability;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * A Maven local repository owned by the auditor and shared by every portability build, so isolated workspaces
+ * and containers stop downloading the same dependencies over and over. LOCAL builds download into it, containers
+ * get it mounted read-only behind a repository of their own, so only LOCAL builds warm it.
+ *
+ * The first build into a cold repository holds it exclusively, other processes included, so the bulk download
+ * happens once. As soon as one build ran to its own exit, passed or failed, its dependencies were resolved: the
+ * repository counts as warm from then on and builds share it, leaving the odd new artifact to Maven's own resolver
+ * locking. A project that never passes would otherwise serialize every build forever. Inside this JVM a
+ * read/write lock does the same job, because file locks cannot be held twice by one process.
+ */
+final class DependencyCache {
+    private static final Map<Path, DependencyCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * One build's hold on the repository.
+     */
+    final class Lease implements AutoCloseable {
+        private final boolean exclusive;
+        private boolean resolved;
+
+        private Lease(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+
+        /**
+         * Mark the build as having got past dependency resolution, a cold repository is warm from then on.
+         */
+        void resolved() {
+            resolved = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (exclusive) {
+                try {
+                    if (resolved) {
+                        Files.createDirectories(warmMarker.getParent());
+                        Files.writeString(warmMarker, "warm");
+                    }
+                } finally {
+                    releaseExclusive();
+                }
+            } else {
+                releaseShared();
+            }
+        }
+    }
+
+    private final Path repository;
+    private final Path lockFile;
+    private final Path warmMarker;
+    private final ReentrantReadWriteLock localLock = new ReentrantReadWriteLock(true);
+    private FileChannel exclusiveChannel;
+    private FileLock exclusiveFileLock;
+    private int sharedHolders;
+    private FileChannel sharedChannel;
+    private FileLock sharedFileLock;
+
+    private DependencyCache(Path directory) {
+        this.repository = directory.resolve("repository");
+        this.lockFile = directory.resolve(".lock");
+        this.warmMarker = directory.resolve(".warm");
+    }
+
+    /**
+     * @param directory the cache directory, the repository lives in its repository/ folder
+     * @return the one cache instance for that directory in this JVM
+     */
+    static DependencyCache forDirectory(Path directory) {
+        return CACHES.computeIfAbsent(directory.toAbsolutePath().normalize(), DependencyCache::new);
+    }
+
+    Path repository() {
+        return repository;
+    }
+
+    /**
+     * @return the bytes in the repository right now, this walks all of it
+     */
+    long size() {
+        return sizeOf(repository);
+    }
+
+    /**
+     * Block until the repository may be used.
+     * @throws InterruptedException if interrupted while waiting, nothing is held then
+     */
+    Lease acquire() throws IOException, InterruptedException {
+        Files.createDirectories(repository);
+
+        if (!Files.exists(warmMarker)) {
+            Lock writeLock = localLock.writeLock();
+            writeLock.lockInterruptibly();
+            boolean locked = false;
+            try {
+                // Another build may have warmed it while we waited.
+                if (!Files.exists(warmMarker)) {
+                    exclusiveChannel = openLockFile();
+                    try {
+                        exclusiveFileLock = exclusiveChannel.lock();
+                    } catch (IOException e) {
+                        exclusiveChannel.close();
+                        throw e;
+                    }
+                    if (!Files.exists(warmMarker)) {
+                        locked = true;
+                        return new Lease(true);
+                    }
+                    releaseExclusiveFileLock();
+                }
+            } finally {
+                if (!locked) {
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        Lock readLock = localLock.readLock();
+        readLock.lockInterruptibly();
+        try {
+            acquireSharedFileLock();
+            return new Lease(false);
+        } catch (IOException | RuntimeException e) {
+            readLock.unlock();
+            throw e;
+        }
+    }
+
+    private synchronized void acquireSharedFileLock() throws IOException {
+        if (sharedHolders == 0) {
+            sharedChannel = openLockFile();
+            try {
+                sharedFileLock = sharedChannel.lock(0, Long.MAX_VALUE, true);
+            } catch (IOException e) {
+                sharedChannel.close();
+                throw e;
+            }
+        }
+        sharedHolders++;
+    }
+
+    private void releaseShared() throws IOException {
+        try {
+            synchronized (this) {
+                sharedHolders--;
+                if (sharedHolders == 0) {
+                    sharedFileLock.release();
+                    sharedChannel.close();
+                }
+            }
+        } finally {
+            localLock.readLock().unlock();
+        }
+    }
+
+    private void releaseExclusive() throws IOException {
+        try {
+            releaseExclusiveFileLock();
+        } finally {
+            localLock.writeLock().unlock();
+        }
+    }
+
+    private void releaseExclusiveFileLock() throws IOException {
+        try {
+            exclusiveFileLock.release();
+        } finally {
+            exclusiveChannel.close();
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        // Shared locks need a readable channel.
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static long sizeOf(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    // Maven may be moving it into place right now.
+                    return 0L;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0L;
+        }
+    }
+}
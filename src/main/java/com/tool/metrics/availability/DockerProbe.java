@@ -0,0 +1,124 @@
+package com.tool.metrics.availability;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.tool.app.CancellationToken;
+import com.tool.util.ProcessRunner;
+
+/**
+ * Whether the Docker daemon answers, asked in the background and remembered for a while.
+ *
+ * One probe per docker executable and timeout is shared by every evaluation in this JVM, so a daemon that is down
+ * costs one timeout per TTL instead of one per audit. A reloaded config with another timeout gets a probe of its own. Evaluations asking while a probe runs wait for that same probe.
+ */
+final class DockerProbe {
+    private static final Map<ProbeSettings, DockerProbe> PROBES = new ConcurrentHashMap<>();
+    private static final ExecutorService PROBE_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "portability-docker-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param available whether the daemon answered
+     * @param message the server version, or why it is not available
+     * @param latency how long the probe took
+     * @param checkedAt when the probe finished
+     */
+    record Status(boolean available, String message, Duration latency, Instant checkedAt) {}
+
+    private record ProbeSettings(String dockerCommand, Duration timeout) {}
+
+    private final String dockerCommand;
+    private final Duration timeout;
+    private final ProcessRunner processRunner = new ProcessRunner(4096, 4096, null);
+    private CompletableFuture<Status> current;
+
+    private DockerProbe(String dockerCommand, Duration timeout) {
+        this.dockerCommand = dockerCommand;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param timeout how long the daemon may take to answer
+     * @return the shared probe for that docker executable and timeout
+     */
+    static DockerProbe forCommand(String dockerCommand, Duration timeout) {
+        return PROBES.computeIfAbsent(
+            new ProbeSettings(dockerCommand, timeout),
+            settings -> new DockerProbe(settings.dockerCommand(), settings.timeout())
+        );
+    }
+
+    /**
+     * @param ttl how old a finished probe may be and still be used
+     * @return the cached status if it is fresh enough, otherwise a probe that is running
+     */
+    synchronized CompletableFuture<Status> status(Duration ttl) {
+        if (current != null) {
+            Status finished = current.getNow(null);
+            boolean running = !current.isDone();
+            if (running || (finished != null && finished.checkedAt().plus(ttl).isAfter(Instant.now()))) {
+                return current;
+            }
+        }
+
+        current = CompletableFuture.supplyAsync(this::probe, PROBE_THREADS);
+        return current;
+    }
+
+    private Status probe() {
+        long startedAt = System.nanoTime();
+        Status answer = ask();
+        return new Status(answer.available(), answer.message(), Duration.ofNanos(System.nanoTime() - startedAt), Instant.now());
+    }
+
+    /**
+     * @return whether the daemon answered, latency and time are filled in by {@link #probe}
+     */
+    private Status ask() {
+        try {
+            // If Docker is missing, that should show up as an infra issue, not as the whole metric exploding.
+            ProcessRunner.Result result = processRunner.run(
+                List.of(dockerCommand, "info", "--format", "{{.ServerVersion}}"),
+                null,
+                timeout,
+                null,
+                new CancellationToken()
+            );
+
+            if (!result.started()) {
+                return unavailable(result.message());
+            }
+            if (result.timedOut()) {
+                return unavailable("Docker daemon check timed out");
+            }
+            if (result.exitCode() != 0) {
+                return unavailable("Docker daemon check failed: " + firstChars(result.output(), 400));
+            }
+
+            String version = firstChars(result.output().trim(), 120);
+            return new Status(true, version.isBlank() ? "Docker daemon available" : version, null, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return unavailable("Docker check was interrupted");
+        } catch (RuntimeException e) {
+            return unavailable("Docker check failed: " + e.getMessage());
+        }
+    }
+
+    private static Status unavailable(String message) {
+        return new Status(false, message, null, null);
+    }
+
+    private static String firstChars(String value, int maxChars) {
+        return value.length() <= maxChars ? value : value.substring(0, maxChars) + "\n...truncated...\n";
+    }
+}
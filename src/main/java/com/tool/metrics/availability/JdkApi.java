@@ -0,0 +1,148 @@
+package com.tool.metrics.availability;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The public API of one Java release, read from the JDK this tool runs on.
+ *
+ * The running release comes from the {@code jrt:/} file system. Older releases come from {@code lib/ct.sym}, the
+ * same API signatures javac uses for {@code --release}. Its entries live under directories named after every
+ * release they apply to, one character per release (7, 8, 9, A for 10, B for 11 and so on). Newer releases than
+ * the running one are unknown.
+ */
+final class JdkApi {
+    private static final Map<Integer, Optional<JdkApi>> RELEASES = new ConcurrentHashMap<>();
+
+    private final int release;
+    // For the running release.
+    private final FileSystem jrt;
+    // For older ones: internal class name to its entry in ct.sym.
+    private final ZipFile ctSym;
+    private final Map<String, ZipEntry> ctSymEntries;
+    private final Map<String, Optional<ClassFileSummary>> classes = new ConcurrentHashMap<>();
+
+    private JdkApi(int release, FileSystem jrt, ZipFile ctSym, Map<String, ZipEntry> ctSymEntries) {
+        this.release = release;
+        this.jrt = jrt;
+        this.ctSym = ctSym;
+        this.ctSymEntries = ctSymEntries;
+    }
+
+    /**
+     * @return the API of that release, empty if this JDK has no signatures for it. Loaded once per JVM.
+     */
+    static Optional<JdkApi> forRelease(int release) {
+        return RELEASES.computeIfAbsent(release, JdkApi::load);
+    }
+
+    static int runningRelease() {
+        return Runtime.version().feature();
+    }
+
+    int release() {
+        return release;
+    }
+
+    /**
+     * @param className internal name, e.g. java/lang/String
+     * @return the class as that release declares it, empty if it does not have it
+     */
+    Optional<ClassFileSummary> lookup(String className) {
+        return classes.computeIfAbsent(className, this::read);
+    }
+
+    private Optional<ClassFileSummary> read(String className) {
+        try {
+            byte[] bytes = jrt != null ? readFromJrt(className) : readFromCtSym(className);
+            return bytes == null ? Optional.empty() : Optional.of(ClassFileSummary.parse(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + className + " from the JDK " + release + " API", e);
+        }
+    }
+
+    private byte[] readFromJrt(String className) throws IOException {
+        int slash = className.lastIndexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+
+        Path packageDir = jrt.getPath("/packages", className.substring(0, slash).replace('/', '.'));
+        if (!Files.isDirectory(packageDir)) {
+            return null;
+        }
+        try (Stream<Path> modules = Files.list(packageDir)) {
+            for (Path module : (Iterable<Path>) modules::iterator) {
+                Path classFile = jrt.getPath("/modules", module.getFileName().toString(), className + ".class");
+                if (Files.exists(classFile)) {
+                    return Files.readAllBytes(classFile);
+                }
+            }
+        }
+        return null;
+    }
+
+    private byte[] readFromCtSym(String className) throws IOException {
+        ZipEntry entry = ctSymEntries.get(className);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (ctSym) {
+            return ctSym.getInputStream(entry).readAllBytes();
+        }
+    }
+
+    private static Optional<JdkApi> load(int release) {
+        if (release == runningRelease()) {
+            return Optional.of(new JdkApi(release, FileSystems.getFileSystem(URI.create("jrt:/")), null, null));
+        }
+        if (release > runningRelease() || release < 7) {
+            return Optional.empty();
+        }
+
+        Path ctSymPath = Path.of(System.getProperty("java.home"), "lib", "ct.sym");
+        if (!Files.isRegularFile(ctSymPath)) {
+            return Optional.empty();
+        }
+
+        char releaseChar = Character.toUpperCase(Character.forDigit(release, Character.MAX_RADIX));
+        try {
+            ZipFile ctSym = new ZipFile(ctSymPath.toFile());
+            HashMap<String, ZipEntry> entries = new HashMap<>();
+            Enumeration<? extends ZipEntry> all = ctSym.entries();
+            while (all.hasMoreElements()) {
+                ZipEntry entry = all.nextElement();
+                // <releases>/<module>/<package path>/<class>.sig
+                String name = entry.getName();
+                int releasesEnd = name.indexOf('/');
+                int moduleEnd = releasesEnd < 0 ? -1 : name.indexOf('/', releasesEnd + 1);
+                if (moduleEnd < 0 || !name.endsWith(".sig") || name.substring(0, releasesEnd).indexOf(releaseChar) < 0) {
+                    continue;
+                }
+                entries.put(name.substring(moduleEnd + 1, name.length() - ".sig".length()), entry);
+            }
+
+            if (entries.isEmpty()) {
+                ctSym.close();
+                return Optional.empty();
+            }
+            return Optional.of(new JdkApi(release, null, ctSym, entries));
+        } catch (IOException e) {
+            System.err.println("[PORTABILITY] Could not read " + ctSymPath + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package com.tool.metrics.availability;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -10,31 +9,94 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.tool.app.CancellationToken;
+import com.tool.app.ProjectContext;
+import com.tool.app.ResultCache;
 import com.tool.domain.Finding;
 import com.tool.domain.Severity;
 import com.tool.domain.Threshold;
 import com.tool.metrics.Metric;
 import com.tool.metrics.MetricResult;
+import com.tool.util.ProcessRunner;
 
 public class PortabilityPassRateMetric extends Metric {
     private static final String PROJECT_WIDE_FILE = "project-wide";
-    private static final int MAX_OUTPUT_CHARS = 200_000;
+    // Enough of the start to see what ran, and of the end to see why it failed. The rest is in the log file.
+    private static final int OUTPUT_HEAD_BYTES = 16 * 1024;
+    private static final int OUTPUT_TAIL_BYTES = 64 * 1024;
     private static final int DOCKER_CHECK_TIMEOUT_SECONDS = 10;
+    // The shared repository is mounted read-only here, containers download into a repository of their own on top.
+    private static final String CONTAINER_REPOSITORY = "/var/cache/quality-auditor/m2";
+    private static final String CONTAINER_LOCAL_REPOSITORY = "/tmp/quality-auditor/m2";
+    private static final String TARGET_CACHE_NAMESPACE = "portability_target/v1";
+    private static final Pattern IMAGE_JDK_VERSION = Pattern.compile(
+        "(?:jdk|temurin|openjdk|java|corretto|zulu)[-_:]?(\\d{1,2})(?!\\d)",
+        Pattern.CASE_INSENSITIVE
+    );
+    private static final int MAX_PRECHECK_PROBLEMS_SHOWN = 10;
+    private static final DateTimeFormatter LOG_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS", Locale.ROOT);
+    private static final int KEPT_LOGS_PER_TARGET = 10;
+    // Maven phases and goals that leave compiled test classes behind for compile_once's default test_command.
+    private static final Set<String> MAVEN_TEST_CLASS_PHASES = Set.of(
+        "test-compile", "process-test-classes", "test", "package", "verify", "install", "deploy", "compiler:testCompile"
+    );
 
     private final ArrayList<Target> targets;
     private final boolean countSkippedAsFailure;
     private final boolean isolateWorkspaces;
     private final Set<String> workspaceExcludes;
+    private final WorkspaceMode workspaceMode;
+    private final Path snapshotDir;
+    private final String dockerCommand;
+    // Shared with every other metric using the same docker executable.
+    private final DockerProbe dockerProbe;
+    private final Duration dockerProbeTtl;
+    private final Path targetLogDir;
+    private final ProcessRunner processRunner = new ProcessRunner(OUTPUT_HEAD_BYTES, OUTPUT_TAIL_BYTES, null);
+    // Null unless reuse_containers is on. Kept for the life of the metric so containers stay warm between audits.
+    private final ContainerPool containerPool;
+    // Null unless share_dependency_cache is on.
+    private final DependencyCache dependencyCache;
+    private final boolean cacheTargetResults;
+    private final Duration targetCacheMaxAge;
+    private final boolean forceRerun;
+    // Null unless fail_fast is on. Once the weighted risk cannot end up below this, the remaining targets are cancelled.
+    private final Double failFastRisk;
+    // Null unless compile_once is configured.
+    private final CompileOnce compileOnce;
+    private final BytecodePrecheck bytecodePrecheck;
+    // Shared by every audit this instance runs, so concurrent audits do not overcommit the machine either.
+    private final TargetScheduler scheduler;
 
     public PortabilityPassRateMetric(ArrayList<Threshold> thresholds, JSONObject settings) {
         super(
@@ -50,39 +112,135 @@ public class PortabilityPassRateMetric extends Metric {
         this.countSkippedAsFailure = settings.optBoolean("count_skipped_as_failure", false);
         this.isolateWorkspaces = settings.optBoolean("isolate_workspaces", true);
         this.workspaceExcludes = loadWorkspaceExcludes(settings.optJSONArray("workspace_excludes"));
+        this.workspaceMode = WorkspaceMode.valueOf(
+            settings.optString("workspace_mode", "COPY").trim().toUpperCase(Locale.ROOT)
+        );
+        String snapshotDirValue = settings.optString("snapshot_dir", null);
+        this.bytecodePrecheck = BytecodePrecheck.valueOf(
+            settings.optString("bytecode_precheck", "OFF").trim().toUpperCase(Locale.ROOT)
+        );
+        this.snapshotDir = snapshotDirValue == null || snapshotDirValue.isBlank() ? null : Path.of(snapshotDirValue);
+        this.dockerCommand = settings.optString("docker_command", "docker");
+        long dockerProbeTimeoutSeconds = settings.optLong("docker_probe_timeout_seconds", DOCKER_CHECK_TIMEOUT_SECONDS);
+        if (dockerProbeTimeoutSeconds <= 0) {
+            throw new IllegalArgumentException("portability_pass_rate docker_probe_timeout_seconds must be > 0");
+        }
+        this.dockerProbe = DockerProbe.forCommand(dockerCommand, Duration.ofSeconds(dockerProbeTimeoutSeconds));
+        this.dockerProbeTtl = Duration.ofSeconds(settings.optLong("docker_probe_ttl_seconds", 60));
+        this.targetLogDir = targetLogDir(settings.optString("target_log_dir", null));
+        this.cacheTargetResults = settings.optBoolean("cache_target_results", false);
+        this.targetCacheMaxAge = Duration.ofSeconds(settings.optLong("target_cache_max_age_seconds", 86_400));
+        this.forceRerun = settings.optBoolean("force_rerun", false);
+        this.failFastRisk = settings.optBoolean("fail_fast", false)
+            ? failFastRisk(thresholds, settings.optString("fail_fast_severity", "CRITICAL"))
+            : null;
+        this.dependencyCache = settings.optBoolean("share_dependency_cache", false)
+            ? DependencyCache.forDirectory(dependencyCacheDir(settings.optString("dependency_cache_dir", null)))
+            : null;
+        this.containerPool = settings.optBoolean("reuse_containers", false)
+            ? ContainerPool.shared(
+                dockerCommand,
+                settings.optInt("container_max_uses", 20),
+                Duration.ofSeconds(settings.optInt("container_idle_seconds", 600)),
+                // Pooled containers are started once, so the cache has to be mounted up front.
+                dependencyCache == null
+                    ? List.of()
+                    : List.of("-v", sharedRepositoryMount())
+            )
+            : null;
+        this.scheduler = new TargetScheduler(
+            settings.optInt("cpu_slots", Runtime.getRuntime().availableProcessors()),
+            settings.optInt("memory_slots_mb", 0)
+        );
         this.targets = loadTargets(settings);
 
         if (this.targets.isEmpty()) {
             throw new IllegalArgumentException("portability_pass_rate requires at least one target in settings.targets");
         }
+
+        this.compileOnce = loadCompileOnce(settings.optJSONObject("compile_once"));
     }
 
     @Override
     public MetricResult evaluate(Path projectPath) throws Exception {
+        return evaluate(ProjectContext.of(projectPath, null));
+    }
+
+    @Override
+    public MetricResult evaluate(ProjectContext context) throws Exception {
+        Path projectPath = context.sourceRoot();
         if (projectPath == null) {
             throw new IllegalArgumentException("Project path cannot be null");
         }
 
+        CancellationToken cancellation = context.cancellation();
         Path executionRoot = findExecutionRoot(projectPath);
         ArrayList<Finding> findings = new ArrayList<>();
         String hostOs = detectHostOs();
-        DockerStatus dockerStatus = probeDocker();
+        Instant evaluationStarted = Instant.now();
+        // Probe in the background while the workspace is prepared, Docker targets wait for it when they start.
+        boolean usesDocker = targets.stream().anyMatch(target -> target.mode == Mode.DOCKER);
+        CompletableFuture<DockerProbe.Status> dockerStatus = usesDocker
+            ? dockerProbe.status(dockerProbeTtl)
+            : CompletableFuture.completedFuture(null);
+
+        // Target results are only cached alongside the per-file results, i.e. when the audit has a cache at all.
+        ResultCache resultCache = cacheTargetResults ? context.resultCache() : null;
+        String workspaceFingerprint = null;
+        if (resultCache != null) {
+            try {
+                workspaceFingerprint = fingerprintWorkspace(executionRoot);
+            } catch (IOException e) {
+                System.err.println("[PORTABILITY] Could not fingerprint the workspace, running every target: " + e.getMessage());
+                resultCache = null;
+            }
+        }
+
+        // Seconds of reading class files can save minutes of builds that are bound to fail.
+        ArrayList<Finding> precheckFindings = new ArrayList<>();
+        Map<String, String> precheckFailures = bytecodePrecheck == BytecodePrecheck.OFF
+            ? Map.of()
+            : runBytecodePrecheck(executionRoot, precheckFindings);
+
+        // Measured once per evaluation rather than per target, walking a large repository is not free.
+        long repositoryBytesBefore = dependencyCache == null ? 0L : dependencyCache.size();
+
+        // Fail-fast cancels the targets without cancelling the audit, so they get a token of their own.
+        CancellationToken targetCancellation = new CancellationToken();
+        CompletableFuture<Path> baselineOutputs = new CompletableFuture<>();
+        if (compileOnce == null) {
+            baselineOutputs.complete(null);
+        }
+        ArrayList<TargetRun> runs;
+        try (
+            CancellationToken.Registration ignored = cancellation.onCancel(() -> targetCancellation.cancel(cancellation.reason()));
+            WorkspaceSnapshot snapshot = createSnapshot(executionRoot)
+        ) {
+            runs = runTargets(new RunContext(
+                executionRoot,
+                snapshot,
+                hostOs,
+                dockerStatus,
+                cancellation,
+                targetCancellation,
+                baselineOutputs,
+                bytecodePrecheck == BytecodePrecheck.ENFORCE ? precheckFailures : Map.of(),
+                resultCache,
+                workspaceFingerprint
+            ));
+        } finally {
+            BackgroundCleanup.deleteLater(baselineOutputs.getNow(null));
+        }
 
         double totalWeight = 0.0;
         double failedWeight = 0.0;
 
         // Keep the score weighted, but only for targets that are actually meant to count.
-        for (Target target : targets) {
-            System.out.println(String.format(
-                Locale.ROOT,
-                "[PORTABILITY] Starting target '%s' (%s, support=%s, weight=%.2f)",
-                target.name,
-                target.mode,
-                target.supportLevel,
-                target.weight
-            ));
-
-            TargetOutcome outcome = executeTarget(target, executionRoot, hostOs, dockerStatus);
+        // Runs are in config order whatever order they finished in, so the sums always come out the same.
+        // Targets fail-fast cancelled keep their weight as if they passed, so the score is the bound fail-fast stopped at.
+        for (TargetRun run : runs) {
+            Target target = run.target;
+            TargetOutcome outcome = run.outcome;
             boolean countedInScore = target.countsTowardScore()
                 && (outcome.status != Status.SKIPPED || countSkippedAsFailure);
 
@@ -96,42 +254,423 @@ public class PortabilityPassRateMetric extends Metric {
                 failedWeight += target.weight;
             }
 
-            findings.add(createFinding(target, outcome, executionRoot, countedInScore));
+            findings.add(createFinding(run, countedInScore));
+        }
+
+        findings.addAll(precheckFindings);
+        if (dependencyCache != null) {
+            long repositoryBytesAfter = dependencyCache.size();
+            findings.add(new Finding(
+                Severity.INFO,
+                String.format(
+                    Locale.ROOT,
+                    "Dependency cache: the shared repository held %s before the targets ran and grew by %s while they ran. "
+                        + "How much of it each build reused instead of downloading is not measured.",
+                    formatBytes(repositoryBytesBefore),
+                    formatBytes(Math.max(0, repositoryBytesAfter - repositoryBytesBefore))
+                ),
+                PROJECT_WIDE_FILE,
+                "dependency-cache",
+                null
+            ));
+        }
+        if (usesDocker) {
+            findings.add(dockerProbeFinding(dockerStatus.getNow(null), evaluationStarted));
         }
 
         double riskScore = totalWeight == 0.0 ? 0.0 : clamp01(failedWeight / totalWeight);
         return new MetricResult(this, riskScore, findings, thresholds());
     }
 
-    private TargetOutcome executeTarget(
-        Target target,
-        Path executionRoot,
-        String hostOs,
-        DockerStatus dockerStatus
-    ) throws Exception {
-        if (!target.oses.isEmpty() && !target.oses.contains(hostOs)) {
+    /**
+     * Run every target, as many at once as the scheduler has slots for.
+     * @return one run per target, in config order
+     */
+    private ArrayList<TargetRun> runTargets(RunContext run) throws Exception {
+        // Targets mostly wait on child processes, so a thread each is cheap. The scheduler bounds the real work.
+        ExecutorService pool = Executors.newFixedThreadPool(targets.size(), runnable -> {
+            Thread thread = new Thread(runnable, "portability-target");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        RiskTracker riskTracker = new RiskTracker(targets, countSkippedAsFailure);
+        try {
+            ArrayList<Future<TargetRun>> pending = new ArrayList<>();
+            for (Target target : targets) {
+                pending.add(pool.submit(() -> {
+                    TargetRun targetRun;
+                    try {
+                        targetRun = runTarget(target, run);
+                    } finally {
+                        // However the baseline ended, the targets waiting for its build must not wait forever.
+                        if (isBaseline(target)) {
+                            run.baselineOutputs.complete(null);
+                        }
+                    }
+                    if (failFastRisk != null && riskTracker.record(targetRun) >= failFastRisk) {
+                        run.targetCancellation.cancel(String.format(
+                            Locale.ROOT,
+                            "fail-fast, the weighted risk cannot drop below %.2f whatever the remaining targets do",
+                            failFastRisk
+                        ));
+                    }
+                    return targetRun;
+                }));
+            }
+
+            ArrayList<TargetRun> runs = new ArrayList<>();
+            for (Future<TargetRun> targetRun : pending) {
+                try {
+                    runs.add(targetRun.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception exception) {
+                        throw exception;
+                    }
+                    throw (Error) cause;
+                }
+            }
+            return runs;
+        } finally {
+            // Interrupting the targets still running or waiting for slots kills their builds.
+            pool.shutdownNow();
+        }
+    }
+
+    private TargetRun runTarget(Target target, RunContext run) throws Exception {
+        try {
+            return runTargetOnce(target, run);
+        } catch (CancellationException e) {
+            // Only fail-fast ends up here as a result, a cancelled audit has no use for one.
+            if (run.cancellation.isCancelled()) {
+                throw e;
+            }
+            Instant now = Instant.now();
+            return new TargetRun(target, TargetOutcome.cancelled(e.getMessage()), now, now);
+        }
+    }
+
+    private TargetRun runTargetOnce(Target target, RunContext run) throws Exception {
+        String precheckFailure = run.precheckFailures.get(target.name);
+        if (precheckFailure != null) {
+            Instant now = Instant.now();
+            return new TargetRun(
+                target,
+                TargetOutcome.compatibilityFailed("bytecode-precheck", "Failed the bytecode pre-check", precheckFailure),
+                now,
+                now
+            );
+        }
+
+        String cacheKey = run.resultCache == null ? null : targetCacheKey(target, run);
+        if (cacheKey != null && !forceRerun) {
+            // A cache hit needs no slots, so it never waits behind running builds.
+            TargetRun cached = loadCachedRun(target, run.resultCache, cacheKey);
+            if (cached != null) {
+                System.out.println("[PORTABILITY] Reusing cached result for target '" + target.name + "'");
+                return cached;
+            }
+        }
+
+        // Wait for the baseline before taking any slots, it may need them to build.
+        Path baselineOutputs = reusesBaseline(target) ? run.baselineOutputs.get() : null;
+
+        try (TargetScheduler.Lease ignored = scheduler.acquire(target.mode == Mode.LOCAL, target.cpus, target.memoryMb)) {
+            // Targets can take minutes each, so do not start another one for an audit that gave up.
+            run.targetCancellation.throwIfCancelled();
+            System.out.println(String.format(
+                Locale.ROOT,
+                "[PORTABILITY] Starting target '%s' (%s, support=%s, weight=%.2f, cpus=%d)",
+                target.name,
+                target.mode,
+                target.supportLevel,
+                target.weight,
+                target.cpus
+            ));
+
+            Instant started = Instant.now();
+            TargetOutcome outcome = executeTarget(target, run, baselineOutputs);
+            TargetRun targetRun = new TargetRun(target, outcome, started, Instant.now());
+            if (cacheKey != null && isCacheable(outcome)) {
+                storeCachedRun(run.resultCache, cacheKey, targetRun);
+            }
+            return targetRun;
+        }
+    }
+
+    /**
+     * Check the project's compiled classes against the API of every target's Java release.
+     * @param findings gets one finding per checked target, or one saying why nothing was checked
+     * @return target name to why it is certain to fail, for targets that are
+     */
+    private Map<String, String> runBytecodePrecheck(Path executionRoot, List<Finding> findings) {
+        List<Target> checkable = targets.stream().filter(target -> target.jdkVersion != null).toList();
+        if (checkable.isEmpty()) {
+            findings.add(precheckFinding(Severity.INFO, "Bytecode pre-check skipped: no target sets jdk_version or uses an image that names one."));
+            return Map.of();
+        }
+
+        BytecodeCompatibilityChecker.Scan scan;
+        try {
+            List<Path> classDirs = findClassDirs(executionRoot);
+            if (classDirs.isEmpty()) {
+                findings.add(precheckFinding(Severity.INFO, "Bytecode pre-check skipped: no compiled classes under target/, build the project first."));
+                return Map.of();
+            }
+            scan = BytecodeCompatibilityChecker.scan(classDirs);
+        } catch (IOException e) {
+            findings.add(precheckFinding(Severity.INFO, "Bytecode pre-check skipped: " + e.getMessage()));
+            return Map.of();
+        }
+
+        HashMap<String, String> failures = new HashMap<>();
+        HashMap<Integer, BytecodeCompatibilityChecker.Verdict> verdicts = new HashMap<>();
+        for (Target target : checkable) {
+            BytecodeCompatibilityChecker.Verdict verdict = verdicts.computeIfAbsent(
+                target.jdkVersion,
+                release -> BytecodeCompatibilityChecker.check(scan, release)
+            );
+
+            String checked = String.format(
+                Locale.ROOT,
+                "Bytecode pre-check for target '%s' (Java %d): %d classes, newest class file %d (Java %d)%s.",
+                target.name,
+                verdict.release(),
+                scan.classCount(),
+                scan.maxMajor(),
+                scan.requiredRelease(),
+                verdict.apiChecked() ? "" : ", class versions only as this JDK has no API signatures for that release"
+            );
+            if (!verdict.certainToFail()) {
+                findings.add(precheckFinding(Severity.INFO, checked + " Nothing missing."));
+                continue;
+            }
+
+            List<String> problems = verdict.problems();
+            String shown = String.join("; ", problems.subList(0, Math.min(problems.size(), MAX_PRECHECK_PROBLEMS_SHOWN)));
+            if (problems.size() > MAX_PRECHECK_PROBLEMS_SHOWN) {
+                shown += "; and " + (problems.size() - MAX_PRECHECK_PROBLEMS_SHOWN) + " more";
+            }
+            failures.put(target.name, shown);
+            findings.add(precheckFinding(Severity.MINOR, checked + " Certain to fail: " + shown + "."));
+        }
+        return failures;
+    }
+
+    private Finding precheckFinding(Severity severity, String message) {
+        return new Finding(severity, message, PROJECT_WIDE_FILE, "bytecode-precheck", null);
+    }
+
+    /**
+     * The Maven output directories of every module, e.g. target/classes and target/test-classes.
+     */
+    private List<Path> findClassDirs(Path executionRoot) throws IOException {
+        ArrayList<Path> classDirs = new ArrayList<>();
+        Files.walkFileTree(executionRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(executionRoot) && (name.startsWith(".") || "node_modules".equals(name))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Path parent = dir.getParent();
+                if (("classes".equals(name) || "test-classes".equals(name))
+                    && parent != null
+                    && "target".equals(parent.getFileName().toString())) {
+                    classDirs.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return classDirs;
+    }
+
+    /**
+     * Hash every file the targets would see, with the same excludes their workspaces use.
+     */
+    private String fingerprintWorkspace(Path executionRoot) throws IOException {
+        ArrayList<Path> files = new ArrayList<>();
+        Files.walkFileTree(executionRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                Path relative = executionRoot.relativize(dir);
+                if (!relative.toString().isEmpty() && shouldSkip(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path relative = executionRoot.relativize(file);
+                if (!shouldSkip(relative)) {
+                    files.add(relative);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Walk order depends on the file system, the fingerprint must not.
+        files.sort(Comparator.comparing(path -> path.toString().replace('\\', '/')));
+
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        for (Path relative : files) {
+            digest.update(relative.toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream in = Files.newInputStream(executionRoot.resolve(relative))) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the key of a target's result, it changes with the workspace, the target definition and the host JDK
+     */
+    private String targetCacheKey(Target target, RunContext run) {
+        JSONObject definition = new JSONObject()
+            .put("workspace", run.workspaceFingerprint)
+            .put("name", target.name)
+            .put("mode", target.mode.name())
+            .put("image", target.dockerImage == null ? "" : target.dockerImage)
+            .put("command", new JSONArray(target.command))
+            .put("os", new JSONArray(target.oses))
+            .put("timeout_seconds", target.timeoutSeconds)
+            .put("cpus", target.cpus)
+            .put("memory_mb", target.memoryMb)
+            .put("host_os", run.hostOs)
+            .put("compile_once", reusesBaseline(target) ? compileOnce.definition : "")
+            // LOCAL targets build with whatever JDK the host points at.
+            .put("java_home", System.getenv().getOrDefault("JAVA_HOME", ""));
+
+        MessageDigest digest = sha256();
+        digest.update(definition.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Only results that say something about the code are worth keeping. Infrastructure trouble and timeouts
+     * may well be gone next time.
+     */
+    private boolean isCacheable(TargetOutcome outcome) {
+        return outcome.status == Status.PASSED
+            || (outcome.status == Status.COMPATIBILITY_FAILED && "exit-code".equals(outcome.detail));
+    }
+
+    private TargetRun loadCachedRun(Target target, ResultCache resultCache, String cacheKey) {
+        Optional<String> cached = resultCache.get(TARGET_CACHE_NAMESPACE, cacheKey);
+        if (cached.isEmpty()) {
+            return null;
+        }
+
+        try {
+            JSONObject entry = new JSONObject(cached.get());
+            Instant started = Instant.parse(entry.getString("started"));
+            Instant finished = Instant.parse(entry.getString("finished"));
+            if (Duration.between(finished, Instant.now()).compareTo(targetCacheMaxAge) > 0) {
+                return null;
+            }
+
+            TargetOutcome outcome = new TargetOutcome(
+                Status.valueOf(entry.getString("status")),
+                entry.getString("detail"),
+                entry.getString("message"),
+                entry.getString("output"),
+                "Cached result, the workspace and target are unchanged since this run."
+            );
+            return new TargetRun(target, outcome, started, finished);
+        } catch (RuntimeException e) {
+            // An entry from an older format is just a miss.
+            return null;
+        }
+    }
+
+    private void storeCachedRun(ResultCache resultCache, String cacheKey, TargetRun run) {
+        resultCache.put(TARGET_CACHE_NAMESPACE, cacheKey, new JSONObject()
+            .put("status", run.outcome.status.name())
+            .put("detail", run.outcome.detail)
+            .put("message", run.outcome.message)
+            .put("output", lastChars(run.outcome.output, 1200))
+            .put("started", run.started.toString())
+            .put("finished", run.finished.toString())
+            .toString());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * In snapshot mode, build the shared base every isolated target's workspace is linked from.
+     * @return the snapshot, or null when targets get full copies
+     */
+    private WorkspaceSnapshot createSnapshot(Path executionRoot) {
+        if (workspaceMode != WorkspaceMode.SNAPSHOT || targets.stream().noneMatch(target -> target.isolateWorkspace)) {
+            return null;
+        }
+
+        try {
+            // A snapshot directory inside the project must not end up in its own snapshot.
+            Path ownDir = snapshotDir == null ? null : snapshotDir.toAbsolutePath().normalize();
+            return WorkspaceSnapshot.create(
+                executionRoot,
+                snapshotDir,
+                relative -> shouldSkip(relative) || (ownDir != null && executionRoot.resolve(relative).startsWith(ownDir))
+            );
+        } catch (IOException e) {
+            // Full copies are slower but still isolate the targets.
+            System.err.println("[PORTABILITY] Could not snapshot the workspace, copying it per target instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private TargetOutcome executeTarget(Target target, RunContext run, Path baselineOutputs) throws Exception {
+        if (!target.oses.isEmpty() && !target.oses.contains(run.hostOs)) {
             return TargetOutcome.skipped("target not applicable for host OS");
         }
 
-        if (target.mode == Mode.DOCKER && !dockerStatus.available) {
-            return TargetOutcome.infrastructureFailed("docker-unavailable", dockerStatus.message, "");
+        if (target.mode == Mode.DOCKER) {
+            DockerProbe.Status docker = run.dockerStatus.get();
+            if (!docker.available()) {
+                return TargetOutcome.infrastructureFailed("docker-unavailable", docker.message(), "");
+            }
         }
 
+        Path executionRoot = run.executionRoot;
+        WorkspaceSnapshot snapshot = run.snapshot;
         Path workspace = executionRoot;
         Path temporaryWorkspace = null;
 
         try {
             // This keeps one target from leaving junk behind for the next one.
             if (target.isolateWorkspace) {
-                temporaryWorkspace = copyWorkspace(executionRoot, target.name);
+                temporaryWorkspace = snapshot == null
+                    ? copyWorkspace(executionRoot, target.name)
+                    // A container may run as root, which writes through the read-only base, so it gets its own copy.
+                    : snapshot.newWorkspace("portability-" + sanitize(target.name) + "-", target.mode == Mode.DOCKER);
                 workspace = temporaryWorkspace;
             }
 
-            if (target.mode == Mode.DOCKER) {
-                return runDockerTarget(target, workspace);
+            if (reusesBaseline(target)) {
+                return runAgainstBaseline(target, workspace, baselineOutputs, run.targetCancellation);
             }
 
-            return runLocalTarget(target, workspace);
+            TargetOutcome outcome = runWithDependencyCache(target, workspace, run.targetCancellation);
+            if (isBaseline(target) && outcome.status == Status.PASSED) {
+                captureBaselineOutputs(workspace, run.baselineOutputs);
+            }
+            return outcome;
         } catch (IOException e) {
             return TargetOutcome.infrastructureFailed(
                 "workspace-prepare-failed",
@@ -139,49 +678,246 @@ public class PortabilityPassRateMetric extends Metric {
                 ""
             );
         } finally {
-            deleteQuietly(temporaryWorkspace);
+            BackgroundCleanup.deleteLater(temporaryWorkspace);
+        }
+    }
+
+    private boolean isBaseline(Target target) {
+        return compileOnce != null && compileOnce.baseline.equals(target.name);
+    }
+
+    private boolean reusesBaseline(Target target) {
+        return compileOnce != null && !compileOnce.baseline.equals(target.name);
+    }
+
+    private void captureBaselineOutputs(Path workspace, CompletableFuture<Path> baselineOutputs) {
+        try {
+            baselineOutputs.complete(BuildOutputs.capture(workspace, compileOnce.outputDirs));
+        } catch (IOException e) {
+            // The other targets build from scratch then, which is slower but just as correct.
+            System.err.println("[PORTABILITY] Could not keep the baseline build: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run the test phase against the baseline's build instead of compiling again, then optionally recompile the main
+     * sources on this target's JDK to catch compilers that disagree.
+     * @param baselineOutputs the baseline's build outputs, null if it did not pass
+     */
+    private TargetOutcome runAgainstBaseline(
+        Target target,
+        Path workspace,
+        Path baselineOutputs,
+        CancellationToken cancellation
+    ) throws Exception {
+        if (baselineOutputs == null) {
+            return runWithDependencyCache(target, workspace, cancellation)
+                .withNote("Baseline '" + compileOnce.baseline + "' left no build to reuse, built from scratch.");
+        }
+
+        BuildOutputs.seed(baselineOutputs, workspace);
+        TargetOutcome outcome = runWithDependencyCache(target.withCommand(null, compileOnce.testCommand), workspace, cancellation);
+
+        if (outcome.status == Status.PASSED && compileOnce.releaseCheckCommand != null) {
+            // The seeded classes are newer than the sources, a compiler looking at them would have nothing to do.
+            BuildOutputs.setAside(workspace, compileOnce.outputDirs);
+            TargetOutcome releaseCheck = runWithDependencyCache(
+                target.withCommand("release-check", compileOnce.releaseCheckCommand),
+                workspace,
+                cancellation
+            );
+            if (releaseCheck.status == Status.COMPATIBILITY_FAILED) {
+                outcome = releaseCheck.withDetail("release-check");
+            } else if (releaseCheck.status != Status.PASSED) {
+                outcome = releaseCheck;
+            }
         }
+
+        return outcome.withNote("Ran against the build of '" + compileOnce.baseline + "'.");
     }
 
-    private TargetOutcome runLocalTarget(Target target, Path workspace) throws Exception {
-        CommandResult result = runCommand(normalizeLocalCommand(target.command), workspace, target.timeoutSeconds);
+    private TargetOutcome runWithDependencyCache(Target target, Path workspace, CancellationToken cancellation) throws Exception {
+        if (dependencyCache == null) {
+            return runTargetCommand(target, workspace, false, cancellation);
+        }
+
+        DependencyCache.Lease lease;
+        try {
+            lease = dependencyCache.acquire();
+        } catch (IOException e) {
+            return TargetOutcome.infrastructureFailed("dependency-cache", "Failed to lock the dependency cache: " + e.getMessage(), "");
+        }
+
+        try (lease) {
+            TargetOutcome outcome = runTargetCommand(target, workspace, true, cancellation);
+            // A build that exited on its own got past resolving its dependencies, even if it then failed to compile
+            // or test. Timeouts and infrastructure failures may have stopped it mid download. Containers only read
+            // the shared repository, so they leave it as cold as they found it.
+            boolean exitedOnItsOwn = outcome.status == Status.PASSED
+                || (outcome.status == Status.COMPATIBILITY_FAILED && !"timeout".equals(outcome.detail));
+            if (exitedOnItsOwn && target.mode != Mode.DOCKER) {
+                lease.resolved();
+            }
+            return outcome;
+        }
+    }
+
+    private TargetOutcome runTargetCommand(
+        Target target,
+        Path workspace,
+        boolean sharedRepository,
+        CancellationToken cancellation
+    ) throws Exception {
+        if (target.mode == Mode.DOCKER) {
+            return runDockerTarget(target, workspace, sharedRepository, cancellation);
+        }
+        return runLocalTarget(target, workspace, sharedRepository, cancellation);
+    }
+
+    private TargetOutcome runLocalTarget(
+        Target target,
+        Path workspace,
+        boolean sharedRepository,
+        CancellationToken cancellation
+    ) throws Exception {
+        List<String> command = sharedRepository
+            ? withRepository(target.command, dependencyCache.repository().toAbsolutePath().toString(), null)
+            : target.command;
+        ProcessRunner.Result result = runCommand(
+            normalizeLocalCommand(command),
+            workspace,
+            target.timeoutSeconds,
+            logFileFor(target),
+            cancellation
+        );
         return classify(result);
     }
 
-    private TargetOutcome runDockerTarget(Target target, Path workspace) throws Exception {
+    private TargetOutcome runDockerTarget(
+        Target target,
+        Path workspace,
+        boolean sharedRepository,
+        CancellationToken cancellation
+    ) throws Exception {
+        List<String> targetCommand = sharedRepository
+            ? withRepository(target.command, CONTAINER_LOCAL_REPOSITORY, CONTAINER_REPOSITORY)
+            : target.command;
+        // The baseline's build has to land in the workspace for the others to reuse, a pooled container keeps it.
+        if (containerPool != null && !isBaseline(target)) {
+            return runPooledDockerTarget(target, targetCommand, workspace, cancellation);
+        }
+
+        // Killing the docker client leaves the container running, so name it to be able to kill that too.
+        String containerName = "portability-" + sanitize(target.name) + "-" + UUID.randomUUID();
         ArrayList<String> command = new ArrayList<>();
-        command.add("docker");
+        command.add(dockerCommand);
         command.add("run");
         command.add("--rm");
+        command.add("--name");
+        command.add(containerName);
         command.add("-v");
-        command.add(dockerMount(workspace));
+        command.add(dockerMount(workspace, "/workspace"));
+        if (sharedRepository) {
+            command.add("-v");
+            command.add(sharedRepositoryMount());
+        }
         command.add("-w");
         command.add("/workspace");
+        // Keep the container inside the slots it was scheduled with.
+        command.add("--cpus");
+        command.add(Integer.toString(Math.min(target.cpus, scheduler.cpuSlots())));
+        if (target.memoryMb > 0) {
+            command.add("--memory");
+            command.add(target.memoryMb + "m");
+        }
         command.add(target.dockerImage);
-        command.addAll(target.command);
+        command.addAll(targetCommand);
 
-        CommandResult result = runCommand(command, null, target.timeoutSeconds);
-        return classify(result);
+        ProcessRunner.Result result = null;
+        try {
+            result = runCommand(command, null, target.timeoutSeconds, logFileFor(target), cancellation);
+            return classify(result);
+        } finally {
+            // Cancelled, interrupted or timed out: the build may still be running in the container.
+            if (result == null || result.timedOut()) {
+                killContainer(containerName);
+            }
+        }
     }
 
-    private TargetOutcome classify(CommandResult result) {
-        if (!result.started) {
-            return TargetOutcome.infrastructureFailed("spawn-failed", result.message, result.output);
+    private TargetOutcome runPooledDockerTarget(
+        Target target,
+        List<String> targetCommand,
+        Path workspace,
+        CancellationToken cancellation
+    ) throws Exception {
+        ContainerPool.Lease lease;
+        try {
+            lease = containerPool.acquire(
+                target.dockerImage,
+                Math.min(target.cpus, scheduler.cpuSlots()),
+                target.memoryMb,
+                workspace
+            );
+        } catch (IOException e) {
+            return TargetOutcome.infrastructureFailed("container-pool", e.getMessage(), "");
         }
 
-        if (result.timedOut) {
-            return TargetOutcome.compatibilityFailed("timeout", "Timed out while running target command", result.output);
+        boolean healthy = false;
+        try {
+            ProcessRunner.Result result = runCommand(
+                containerPool.execCommand(lease, targetCommand),
+                null,
+                target.timeoutSeconds,
+                logFileFor(target),
+                cancellation
+            );
+            // Killing docker exec does not stop the build inside, so only a run that ended on its own leaves
+            // the container fit for reuse.
+            healthy = result.started() && !result.timedOut();
+            return classify(result);
+        } finally {
+            containerPool.release(lease, healthy);
         }
+    }
 
-        if (result.exitCode == 0) {
+    private void killContainer(String containerName) {
+        try {
+            // rm -f also covers a container that was created but never started, --rm only cleans up after a run.
+            ProcessRunner.Result result = processRunner.run(
+                List.of(dockerCommand, "rm", "-f", containerName),
+                null,
+                Duration.ofSeconds(DOCKER_CHECK_TIMEOUT_SECONDS * 3L),
+                null,
+                new CancellationToken()
+            );
+            if (result.started() && result.exitCode() != 0 && !result.output().contains("No such container")) {
+                System.err.println("[PORTABILITY] Could not kill container " + containerName + ": " + result.output().trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private TargetOutcome classify(ProcessRunner.Result result) {
+        if (!result.started()) {
+            return TargetOutcome.infrastructureFailed("spawn-failed", result.message(), result.output());
+        }
+
+        TargetOutcome outcome;
+        if (result.timedOut()) {
+            outcome = TargetOutcome.compatibilityFailed("timeout", "Timed out while running target command", result.output());
+        } else if (result.exitCode() == 0) {
             return TargetOutcome.passed();
+        } else {
+            outcome = TargetOutcome.compatibilityFailed(
+                "exit-code",
+                "Exit code " + result.exitCode(),
+                result.output()
+            );
         }
 
-        return TargetOutcome.compatibilityFailed(
-            "exit-code",
-            "Exit code " + result.exitCode,
-            result.output
-        );
+        return result.logFile() == null ? outcome : outcome.withNote("Full log: " + result.logFile() + ".");
     }
 
     private List<String> normalizeLocalCommand(List<String> command) {
@@ -190,17 +926,7 @@ public class PortabilityPassRateMetric extends Metric {
         }
 
         // Windows can be a bit annoying with Maven, so just run it through cmd and move on.
-        String executable = command.get(0).toLowerCase(Locale.ROOT);
-        boolean looksLikeMaven =
-            "mvn".equals(executable)
-                || "mvn.cmd".equals(executable)
-                || "mvn.bat".equals(executable)
-                || "./mvnw".equals(executable)
-                || "mvnw".equals(executable)
-                || "mvnw.cmd".equals(executable)
-                || "mvnw.bat".equals(executable);
-
-        if (!looksLikeMaven) {
+        if (!looksLikeMaven(command)) {
             return command;
         }
 
@@ -211,100 +937,79 @@ public class PortabilityPassRateMetric extends Metric {
         return wrapped;
     }
 
-    private CommandResult runCommand(List<String> command, Path workingDir, int timeoutSeconds) throws Exception {
-        ProcessBuilder builder = new ProcessBuilder(command);
-        builder.redirectErrorStream(true);
-
-        if (workingDir != null) {
-            builder.directory(workingDir.toFile());
+    /**
+     * Point a Maven command at the shared repository. Anything else is left alone.
+     * @param repository the local repository Maven downloads into
+     * @param readOnlyTail a repository Maven 3.9+ only reads from after the local one, null for none
+     */
+    private List<String> withRepository(List<String> command, String repository, String readOnlyTail) {
+        if (!looksLikeMaven(command)) {
+            return command;
         }
 
-        Process process;
-        try {
-            process = builder.start();
-        } catch (IOException e) {
-            return CommandResult.spawnFailed(
-                "Failed to start command: " + String.join(" ", command) + " (" + e.getMessage() + ")"
-            );
+        ArrayList<String> withRepository = new ArrayList<>();
+        withRepository.add(command.get(0));
+        withRepository.add("-Dmaven.repo.local=" + repository);
+        if (readOnlyTail != null) {
+            withRepository.add("-Dmaven.repo.local.tail=" + readOnlyTail);
+        } else {
+            // Builds share a warm repository, let Maven 3.9+ lock artifacts it still has to download.
+            withRepository.add("-Daether.syncContext.named.factory=file-lock");
+            withRepository.add("-Daether.syncContext.named.nameMapper=file-gav");
         }
+        withRepository.addAll(command.subList(1, command.size()));
+        return withRepository;
+    }
 
-        StringBuilder output = new StringBuilder();
-        Thread reader = startReader(process, output);
-
-        boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
-        if (!finished) {
-            process.destroyForcibly();
-            process.waitFor(5, TimeUnit.SECONDS);
-            reader.join(1000);
-            return CommandResult.timedOut(output.toString());
+    private boolean looksLikeMaven(List<String> command) {
+        if (command.isEmpty()) {
+            return false;
         }
 
-        reader.join(1000);
-        return CommandResult.completed(process.exitValue(), output.toString());
+        String executable = command.get(0).toLowerCase(Locale.ROOT);
+        return "mvn".equals(executable)
+            || "mvn.cmd".equals(executable)
+            || "mvn.bat".equals(executable)
+            || "./mvnw".equals(executable)
+            || "mvnw".equals(executable)
+            || "mvnw.cmd".equals(executable)
+            || "mvnw.bat".equals(executable);
     }
 
-    private Thread startReader(Process process, StringBuilder output) {
-        Thread reader = new Thread(() -> {
-            try (BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)
-            )) {
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    // The output is useful for debugging, but there is no point letting it blow up forever.
-                    if (output.length() < MAX_OUTPUT_CHARS) {
-                        output.append(line).append('\n');
-                    }
-                }
-
-                if (output.length() > MAX_OUTPUT_CHARS) {
-                    output.setLength(MAX_OUTPUT_CHARS);
-                    output.append("\n...output truncated...\n");
-                }
-            } catch (IOException e) {
-                if (output.length() < MAX_OUTPUT_CHARS) {
-                    output.append("\n[output-read-failed] ").append(e.getMessage()).append('\n');
-                }
-            }
-        });
-
-        reader.setDaemon(true);
-        reader.start();
-        return reader;
+    private ProcessRunner.Result runCommand(
+        List<String> command,
+        Path workingDir,
+        int timeoutSeconds,
+        Path logFile,
+        CancellationToken cancellation
+    ) throws Exception {
+        return processRunner.run(command, workingDir, Duration.ofSeconds(timeoutSeconds), logFile, cancellation);
     }
 
-    private DockerStatus probeDocker() {
-        try {
-            // If Docker is missing, that should show up as an infra issue, not as the whole metric exploding.
-            CommandResult result = runCommand(
-                List.of("docker", "info", "--format", "{{.ServerVersion}}"),
-                null,
-                DOCKER_CHECK_TIMEOUT_SECONDS
-            );
-
-            if (!result.started) {
-                return DockerStatus.unavailable(result.message);
-            }
-            if (result.timedOut) {
-                return DockerStatus.unavailable("Docker daemon check timed out");
-            }
-            if (result.exitCode != 0) {
-                return DockerStatus.unavailable("Docker daemon check failed: " + truncate(result.output, 400));
-            }
-
-            String version = truncate(result.output.trim(), 120);
-            if (version.isBlank()) {
-                return DockerStatus.available("Docker daemon available");
-            }
-            return DockerStatus.available(version);
-        } catch (Exception e) {
-            return DockerStatus.unavailable("Docker check failed: " + e.getMessage());
+    private Finding dockerProbeFinding(DockerProbe.Status status, Instant evaluationStarted) {
+        if (status == null) {
+            // No Docker target needed it in the end, e.g. they were all cached.
+            return new Finding(Severity.INFO, "Docker probe: still running, no target waited for it.", PROJECT_WIDE_FILE, "docker-probe", null);
         }
+
+        String message = String.format(
+            Locale.ROOT,
+            "Docker probe: %s (%s), took %d ms%s.",
+            status.available() ? "available" : "unavailable",
+            status.message(),
+            status.latency().toMillis(),
+            status.checkedAt().isBefore(evaluationStarted) ? ", reused from " + status.checkedAt() : ""
+        );
+        return new Finding(Severity.INFO, message, PROJECT_WIDE_FILE, "docker-probe", null);
     }
 
     private ArrayList<Target> loadTargets(JSONObject settings) {
         JSONArray targetArray = settings.getJSONArray("targets");
         ArrayList<Target> loadedTargets = new ArrayList<>();
 
+        // Without explicit limits every target gets an equal share of the CPU slots, so they all start at once.
+        int defaultCpus = Math.max(1, scheduler.cpuSlots() / Math.max(1, targetArray.length()));
+
         for (int i = 0; i < targetArray.length(); i++) {
             JSONObject targetObject = targetArray.getJSONObject(i);
 
@@ -345,10 +1050,24 @@ public class PortabilityPassRateMetric extends Metric {
                 ? targetObject.getBoolean("isolate_workspace")
                 : isolateWorkspaces;
 
+            int cpus = targetObject.optInt("cpus", defaultCpus);
+            if (cpus < 1) {
+                throw new IllegalArgumentException("Target '" + name + "' cpus must be at least 1");
+            }
+
+            int memoryMb = targetObject.optInt("memory_mb", 0);
+            if (memoryMb < 0) {
+                throw new IllegalArgumentException("Target '" + name + "' memory_mb must be >= 0");
+            }
+
             Severity failSeverity = Severity.valueOf(
                 targetObject.optString("fail_severity", "MAJOR").trim().toUpperCase(Locale.ROOT)
             );
 
+            Integer jdkVersion = targetObject.has("jdk_version")
+                ? Integer.valueOf(targetObject.getInt("jdk_version"))
+                : jdkVersionFromImage(dockerImage);
+
             loadedTargets.add(new Target(
                 name,
                 mode,
@@ -359,7 +1078,10 @@ public class PortabilityPassRateMetric extends Metric {
                 targetObject.optInt("timeout_seconds", 600),
                 weight,
                 failSeverity,
-                shouldIsolate
+                shouldIsolate,
+                cpus,
+                memoryMb,
+                jdkVersion
             ));
         }
 
@@ -437,30 +1159,6 @@ public class PortabilityPassRateMetric extends Metric {
         return false;
     }
 
-    private void deleteQuietly(Path path) {
-        if (path == null || !Files.exists(path)) {
-            return;
-        }
-
-        try {
-            Files.walkFileTree(path, new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Files.deleteIfExists(file);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    Files.deleteIfExists(dir);
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException ignored) {
-            // Temporary workspace cleanup is best-effort.
-        }
-    }
-
     private String detectHostOs() {
         String osName = System.getProperty("os.name", "unknown").toLowerCase(Locale.ROOT);
         if (osName.contains("win")) {
@@ -475,21 +1173,181 @@ public class PortabilityPassRateMetric extends Metric {
         return "unknown";
     }
 
-    private String dockerMount(Path workspace) {
-        String absolutePath = workspace.toAbsolutePath().normalize().toString();
+    /**
+     * @return the Java release an image name gives away, e.g. 17 for maven:3-eclipse-temurin-17, or null
+     */
+    private Integer jdkVersionFromImage(String dockerImage) {
+        if (dockerImage == null) {
+            return null;
+        }
+        Matcher matcher = IMAGE_JDK_VERSION.matcher(dockerImage);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
+    private CompileOnce loadCompileOnce(JSONObject compileOnceObject) {
+        if (compileOnceObject == null) {
+            return null;
+        }
+
+        String baseline = compileOnceObject.getString("baseline");
+        Target baselineTarget = targets.stream()
+            .filter(target -> target.name.equals(baseline))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(
+                "portability_pass_rate compile_once baseline '" + baseline + "' is not a configured target"
+            ));
+
+        for (Target target : targets) {
+            if (!target.name.equals(baseline) && !target.isolateWorkspace) {
+                throw new IllegalArgumentException(
+                    "portability_pass_rate compile_once lays the baseline's build over each target's workspace, target '"
+                        + target.name + "' would get it laid over the project itself, isolate its workspace"
+                );
+            }
+        }
+
+        JSONArray testCommandArray = compileOnceObject.optJSONArray("test_command");
+        if (testCommandArray == null && !buildsMavenTestClasses(baselineTarget.command)) {
+            throw new IllegalArgumentException(
+                "portability_pass_rate compile_once baseline '" + baseline + "' does not build the test classes, so the "
+                    + "default test_command would have no tests to run. Build up to test-compile on it or set test_command"
+            );
+        }
+        // An empty test run must not pass, every target would otherwise pass without running anything.
+        List<String> testCommand = stringList(testCommandArray, List.of("mvn", "-q", "surefire:test", "-DfailIfNoTests=true"));
+
+        List<String> releaseCheckCommand = null;
+        if (compileOnceObject.optBoolean("release_check", false)) {
+            JSONArray releaseCheckArray = compileOnceObject.optJSONArray("release_check_command");
+            if (releaseCheckArray == null && baselineTarget.jdkVersion == null) {
+                throw new IllegalArgumentException(
+                    "portability_pass_rate compile_once release_check needs a jdk_version on baseline '" + baseline
+                        + "' or a release_check_command"
+                );
+            }
+            releaseCheckCommand = releaseCheckArray == null
+                ? List.of("mvn", "-q", "compiler:compile", "-Dmaven.compiler.release=" + baselineTarget.jdkVersion)
+                : stringList(releaseCheckArray, List.of());
+        }
+        Set<String> outputDirs = new HashSet<>(stringList(compileOnceObject.optJSONArray("output_dirs"), List.of("target")));
+        if (testCommand.isEmpty() || (releaseCheckCommand != null && releaseCheckCommand.isEmpty()) || outputDirs.isEmpty()) {
+            throw new IllegalArgumentException("portability_pass_rate compile_once commands and output_dirs must not be empty");
+        }
+
+        // What the reusing targets' results depend on besides their own definition.
+        String definition = new JSONObject()
+            .put("settings", compileOnceObject)
+            .put("baseline_image", baselineTarget.dockerImage == null ? "" : baselineTarget.dockerImage)
+            .put("baseline_command", new JSONArray(baselineTarget.command))
+            .toString();
+        return new CompileOnce(baseline, testCommand, releaseCheckCommand, outputDirs, definition);
+    }
+
+    /**
+     * @return false only for a maven command that stops before test-compile, anything else cannot be told from here
+     */
+    private static boolean buildsMavenTestClasses(List<String> command) {
+        if (command.isEmpty() || !Path.of(command.get(0)).getFileName().toString().startsWith("mvn")) {
+            return true;
+        }
+        return command.stream().anyMatch(MAVEN_TEST_CLASS_PHASES::contains);
+    }
+
+    private List<String> stringList(JSONArray array, List<String> defaultValue) {
+        if (array == null) {
+            return defaultValue;
+        }
+
+        ArrayList<String> values = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            values.add(array.getString(i));
+        }
+        return values;
+    }
+
+    private Double failFastRisk(ArrayList<Threshold> thresholds, String severityName) {
+        Severity severity = Severity.valueOf(severityName.trim().toUpperCase(Locale.ROOT));
+        return thresholds.stream()
+            .filter(threshold -> threshold.severity() == severity)
+            .map(Threshold::value)
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(
+                "portability_pass_rate fail_fast needs a " + severity.name().toLowerCase(Locale.ROOT) + " threshold"
+            ));
+    }
+
+    private Path targetLogDir(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), ".quality-auditor", "portability-logs");
+    }
+
+    /**
+     * A log of its own for every run of a target, so audits running the same target at the same time (serve mode)
+     * never write into or point at each other's log. Only the newest few logs of each target are kept.
+     */
+    private Path logFileFor(Target target) {
+        String prefix = sanitize(target.name) + "-";
+        String run = LOG_TIMESTAMP.format(LocalDateTime.now()) + "-" + UUID.randomUUID().toString().substring(0, 8);
+        pruneLogs(prefix);
+        return targetLogDir.resolve(prefix + run + ".log");
+    }
+
+    private void pruneLogs(String prefix) {
+        if (!Files.isDirectory(targetLogDir)) {
+            return;
+        }
+
+        // Only this target's logs, not those of a target whose name merely starts the same way.
+        Pattern ownLogs = Pattern.compile(Pattern.quote(prefix) + "\\d{8}-\\d{6}-\\d{3}-[0-9a-f]{8}\\.log");
+        // The timestamp sorts, so name order is age order.
+        try (Stream<Path> logs = Files.list(targetLogDir)) {
+            List<Path> older = logs
+                .filter(log -> ownLogs.matcher(log.getFileName().toString()).matches())
+                .sorted(Comparator.reverseOrder())
+                .skip(KEPT_LOGS_PER_TARGET - 1)
+                .toList();
+            for (Path log : older) {
+                Files.deleteIfExists(log);
+            }
+        } catch (IOException e) {
+            // Old logs are only clutter.
+        }
+    }
+
+    private Path dependencyCacheDir(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), ".quality-auditor", "m2");
+    }
+
+    /**
+     * Containers usually run as root, files they wrote into the shared repository would be root-owned and in the way
+     * of the LOCAL builds downloading next to them. So they only get to read it.
+     */
+    private String sharedRepositoryMount() {
+        return dockerMount(dependencyCache.repository(), CONTAINER_REPOSITORY) + ":ro";
+    }
+
+    private String dockerMount(Path hostPath, String containerPath) {
+        String absolutePath = hostPath.toAbsolutePath().normalize().toString();
 
         if (absolutePath.length() >= 2 && absolutePath.charAt(1) == ':') {
             String drive = String.valueOf(Character.toLowerCase(absolutePath.charAt(0)));
             String rest = absolutePath.substring(2).replace('\\', '/');
-            return drive + ":" + rest + ":/workspace";
+            return drive + ":" + rest + ":" + containerPath;
         }
 
-        return absolutePath + ":/workspace";
+        return absolutePath + ":" + containerPath;
     }
 
-    private Finding createFinding(Target target, TargetOutcome outcome, Path executionRoot, boolean countedInScore) {
+    private Finding createFinding(TargetRun run, boolean countedInScore) {
+        Target target = run.target;
+        TargetOutcome outcome = run.outcome;
         Severity severity;
-        if (outcome.status == Status.PASSED || outcome.status == Status.SKIPPED) {
+        if (outcome.status == Status.PASSED || outcome.status == Status.SKIPPED || outcome.status == Status.CANCELLED) {
             severity = Severity.INFO;
         } else if (outcome.status == Status.INFRASTRUCTURE_FAILED) {
             severity = Severity.MAJOR;
@@ -499,10 +1357,10 @@ public class PortabilityPassRateMetric extends Metric {
 
         // Infra failures are still worth reporting, they just should not pretend to affect the weighted risk.
         boolean showScoringFlag = outcome.status != Status.INFRASTRUCTURE_FAILED && countedInScore;
-        String message = formatTargetMessage(target, outcome, showScoringFlag);
+        String message = formatTargetMessage(run, showScoringFlag);
 
         if (outcome.status == Status.INFRASTRUCTURE_FAILED) {
-            message = formatTargetMessage(target, outcome, false);
+            message = formatTargetMessage(run, false);
         }
 
         return new Finding(
@@ -514,7 +1372,9 @@ public class PortabilityPassRateMetric extends Metric {
         );
     }
 
-    private String formatTargetMessage(Target target, TargetOutcome outcome, boolean countedInScore) {
+    private String formatTargetMessage(TargetRun run, boolean countedInScore) {
+        Target target = run.target;
+        TargetOutcome outcome = run.outcome;
         String scoreNote = countedInScore
             ? String.format(Locale.ROOT, "counted in weighted risk (weight=%.2f)", target.weight)
             : String.format(
@@ -526,23 +1386,25 @@ public class PortabilityPassRateMetric extends Metric {
 
         switch (outcome.status) {
             case PASSED:
-                return String.format(Locale.ROOT, "Target '%s' PASSED. %s", target.name, scoreNote);
+                return String.format(Locale.ROOT, "Target '%s' PASSED. %s %s", target.name, scoreNote, formatTiming(run));
             case COMPATIBILITY_FAILED:
                 return String.format(
                     Locale.ROOT,
-                    "Target '%s' COMPATIBILITY FAILED (%s). %s %s",
+                    "Target '%s' COMPATIBILITY FAILED (%s). %s %s %s",
                     target.name,
                     outcome.detail,
                     scoreNote,
-                    truncate(outcome.output, 1200)
+                    formatTiming(run),
+                    lastChars(outcome.output, 1200)
                 );
             case INFRASTRUCTURE_FAILED:
                 return String.format(
                     Locale.ROOT,
-                    "Target '%s' INFRASTRUCTURE FAILED (%s). %s",
+                    "Target '%s' INFRASTRUCTURE FAILED (%s). %s %s",
                     target.name,
                     outcome.message,
-                    truncate(outcome.output, 1200)
+                    formatTiming(run),
+                    lastChars(outcome.output, 1200)
                 );
             case SKIPPED:
                 return String.format(
@@ -552,20 +1414,46 @@ public class PortabilityPassRateMetric extends Metric {
                     outcome.message,
                     scoreNote
                 );
+            case CANCELLED:
+                return String.format(
+                    Locale.ROOT,
+                    "Target '%s' CANCELLED (%s). %s%s.",
+                    target.name,
+                    outcome.message,
+                    scoreNote,
+                    countedInScore ? ", as if it had passed" : ""
+                );
             default:
                 throw new IllegalStateException("Unknown target status: " + outcome.status);
         }
     }
 
+    private String formatTiming(TargetRun run) {
+        return String.format(
+            Locale.ROOT,
+            "Started %s, finished %s (%.1f s).",
+            run.started,
+            run.finished,
+            Duration.between(run.started, run.finished).toMillis() / 1000.0
+        ) + (run.outcome.note.isEmpty() ? "" : " " + run.outcome.note);
+    }
+
+    private String formatBytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
     private String sanitize(String value) {
         return value.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-");
     }
 
-    private String truncate(String value, int maxChars) {
+    /**
+     * Build tools print the error last, so failure output is cut from the front.
+     */
+    private String lastChars(String value, int maxChars) {
         if (value == null || value.length() <= maxChars) {
             return value == null ? "" : value;
         }
-        return value.substring(0, maxChars) + "\n...truncated...\n";
+        return "\n...truncated...\n" + value.substring(value.length() - maxChars);
     }
 
     private double clamp01(double value) {
@@ -583,6 +1471,19 @@ public class PortabilityPassRateMetric extends Metric {
         DOCKER
     }
 
+    private enum WorkspaceMode {
+        COPY,
+        SNAPSHOT
+    }
+
+    private enum BytecodePrecheck {
+        OFF,
+        // Report what the pre-check found next to the targets, run them all anyway.
+        REPORT,
+        // Fail targets that are certain to fail without running them.
+        ENFORCE
+    }
+
     private enum SupportLevel {
         REQUIRED,
         SUPPORTED,
@@ -593,7 +1494,8 @@ public class PortabilityPassRateMetric extends Metric {
         PASSED,
         COMPATIBILITY_FAILED,
         INFRASTRUCTURE_FAILED,
-        SKIPPED
+        SKIPPED,
+        CANCELLED
     }
 
     private static final class Target {
@@ -607,6 +1509,10 @@ public class PortabilityPassRateMetric extends Metric {
         private final double weight;
         private final Severity failSeverity;
         private final boolean isolateWorkspace;
+        private final int cpus;
+        private final int memoryMb;
+        // The Java release the target builds with, null if unknown.
+        private final Integer jdkVersion;
 
         private Target(
             String name,
@@ -618,7 +1524,10 @@ public class PortabilityPassRateMetric extends Metric {
             int timeoutSeconds,
             double weight,
             Severity failSeverity,
-            boolean isolateWorkspace
+            boolean isolateWorkspace,
+            int cpus,
+            int memoryMb,
+            Integer jdkVersion
         ) {
             this.name = name;
             this.mode = mode;
@@ -630,6 +1539,31 @@ public class PortabilityPassRateMetric extends Metric {
             this.weight = weight;
             this.failSeverity = failSeverity;
             this.isolateWorkspace = isolateWorkspace;
+            this.cpus = cpus;
+            this.memoryMb = memoryMb;
+            this.jdkVersion = jdkVersion;
+        }
+
+        /**
+         * The same target running another command, e.g. only the test phase.
+         * @param suffix appended to the name, so logs and containers do not clash with the target's own, or null
+         */
+        private Target withCommand(String suffix, List<String> otherCommand) {
+            return new Target(
+                suffix == null ? name : name + "-" + suffix,
+                mode,
+                supportLevel,
+                oses,
+                dockerImage,
+                new ArrayList<>(otherCommand),
+                timeoutSeconds,
+                weight,
+                failSeverity,
+                isolateWorkspace,
+                cpus,
+                memoryMb,
+                jdkVersion
+            );
         }
 
         private boolean countsTowardScore() {
@@ -642,12 +1576,26 @@ public class PortabilityPassRateMetric extends Metric {
         private final String detail;
         private final String message;
         private final String output;
+        private final String note;
 
         private TargetOutcome(Status status, String detail, String message, String output) {
+            this(status, detail, message, output, "");
+        }
+
+        private TargetOutcome(Status status, String detail, String message, String output, String note) {
             this.status = status;
             this.detail = detail;
             this.message = message;
             this.output = output;
+            this.note = note;
+        }
+
+        private TargetOutcome withDetail(String newDetail) {
+            return new TargetOutcome(status, newDetail, message, output, note);
+        }
+
+        private TargetOutcome withNote(String extra) {
+            return new TargetOutcome(status, detail, message, output, note.isEmpty() ? extra : note + " " + extra);
         }
 
         private static TargetOutcome passed() {
@@ -665,51 +1613,126 @@ public class PortabilityPassRateMetric extends Metric {
         private static TargetOutcome infrastructureFailed(String detail, String message, String output) {
             return new TargetOutcome(Status.INFRASTRUCTURE_FAILED, detail, message, output);
         }
-    }
-
-    private static final class DockerStatus {
-        private final boolean available;
-        private final String message;
-
-        private DockerStatus(boolean available, String message) {
-            this.available = available;
-            this.message = message;
-        }
 
-        private static DockerStatus available(String message) {
-            return new DockerStatus(true, message);
+        private static TargetOutcome cancelled(String reason) {
+            return new TargetOutcome(Status.CANCELLED, "cancelled", reason, "");
         }
+    }
 
-        private static DockerStatus unavailable(String message) {
-            return new DockerStatus(false, message);
+    /**
+     * Compile once on the baseline target, then only run the test phase against that build on every other target.
+     */
+    private static final class CompileOnce {
+        private final String baseline;
+        private final List<String> testCommand;
+        // Null unless release_check is on.
+        private final List<String> releaseCheckCommand;
+        private final Set<String> outputDirs;
+        private final String definition;
+
+        private CompileOnce(
+            String baseline,
+            List<String> testCommand,
+            List<String> releaseCheckCommand,
+            Set<String> outputDirs,
+            String definition
+        ) {
+            this.baseline = baseline;
+            this.testCommand = testCommand;
+            this.releaseCheckCommand = releaseCheckCommand;
+            this.outputDirs = outputDirs;
+            this.definition = definition;
         }
     }
 
-    private static final class CommandResult {
-        private final boolean started;
-        private final boolean timedOut;
-        private final int exitCode;
-        private final String output;
-        private final String message;
-
-        private CommandResult(boolean started, boolean timedOut, int exitCode, String output, String message) {
-            this.started = started;
-            this.timedOut = timedOut;
-            this.exitCode = exitCode;
-            this.output = output;
-            this.message = message;
+    /**
+     * The lowest weighted risk still reachable while targets finish, i.e. if every target still running passes.
+     * Cancelled targets stay in the possible weight, the final score counts them the same way.
+     */
+    private static final class RiskTracker {
+        private final boolean countSkippedAsFailure;
+        private double possibleWeight;
+        private double failedWeight;
+
+        private RiskTracker(List<Target> targets, boolean countSkippedAsFailure) {
+            this.countSkippedAsFailure = countSkippedAsFailure;
+            for (Target target : targets) {
+                if (target.countsTowardScore()) {
+                    possibleWeight += target.weight;
+                }
+            }
         }
 
-        private static CommandResult spawnFailed(String message) {
-            return new CommandResult(false, false, -1, "", message);
+        /**
+         * @return the lowest weighted risk still reachable now that this target finished
+         */
+        private synchronized double record(TargetRun run) {
+            if (run.target.countsTowardScore()) {
+                Status status = run.outcome.status;
+                if (status == Status.COMPATIBILITY_FAILED || (status == Status.SKIPPED && countSkippedAsFailure)) {
+                    failedWeight += run.target.weight;
+                } else if (status == Status.SKIPPED) {
+                    possibleWeight -= run.target.weight;
+                }
+            }
+            return possibleWeight <= 0.0 ? 0.0 : failedWeight / possibleWeight;
         }
+    }
 
-        private static CommandResult timedOut(String output) {
-            return new CommandResult(true, true, -1, output, "Timed out while running command");
+    /**
+     * Everything the targets of one evaluation share.
+     */
+    private static final class RunContext {
+        private final Path executionRoot;
+        private final WorkspaceSnapshot snapshot;
+        private final String hostOs;
+        private final CompletableFuture<DockerProbe.Status> dockerStatus;
+        // The audit's token, and the one the targets run under, which fail-fast may cancel on its own.
+        private final CancellationToken cancellation;
+        private final CancellationToken targetCancellation;
+        // The baseline's build outputs under compile_once, completed with null if there are none to reuse.
+        private final CompletableFuture<Path> baselineOutputs;
+        // Targets the bytecode pre-check failed, with why. Empty unless it is enforced.
+        private final Map<String, String> precheckFailures;
+        private final ResultCache resultCache;
+        private final String workspaceFingerprint;
+
+        private RunContext(
+            Path executionRoot,
+            WorkspaceSnapshot snapshot,
+            String hostOs,
+            CompletableFuture<DockerProbe.Status> dockerStatus,
+            CancellationToken cancellation,
+            CancellationToken targetCancellation,
+            CompletableFuture<Path> baselineOutputs,
+            Map<String, String> precheckFailures,
+            ResultCache resultCache,
+            String workspaceFingerprint
+        ) {
+            this.executionRoot = executionRoot;
+            this.snapshot = snapshot;
+            this.hostOs = hostOs;
+            this.dockerStatus = dockerStatus;
+            this.cancellation = cancellation;
+            this.targetCancellation = targetCancellation;
+            this.baselineOutputs = baselineOutputs;
+            this.precheckFailures = precheckFailures;
+            this.resultCache = resultCache;
+            this.workspaceFingerprint = workspaceFingerprint;
         }
+    }
 
-        private static CommandResult completed(int exitCode, String output) {
-            return new CommandResult(true, false, exitCode, output, "");
+    private static final class TargetRun {
+        private final Target target;
+        private final TargetOutcome outcome;
+        private final Instant started;
+        private final Instant finished;
+
+        private TargetRun(Target target, TargetOutcome outcome, Instant started, Instant finished) {
+            this.target = target;
+            this.outcome = outcome;
+            this.started = started;
+            this.finished = finished;
         }
     }
 }
@@ -0,0 +1,93 @@
+package com.tool.metrics.availability;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hands out CPU and memory slots to portability targets so several can build at once without overcommitting
+ * the machine. LOCAL targets share the host toolchain and working directories, so only one of them runs at a time.
+ *
+ * Slots are always taken in the same order (local, CPU, memory) and given back in reverse, so two targets waiting
+ * on each other's slots can never deadlock. The semaphores are fair, targets start in the order they asked.
+ */
+final class TargetScheduler {
+
+    /**
+     * The slots held by one running target, closing it gives them back.
+     */
+    interface Lease extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final int cpuSlots;
+    private final int memorySlotsMb;
+    private final Semaphore cpus;
+    private final Semaphore memory;
+    private final Semaphore local = new Semaphore(1, true);
+
+    /**
+     * @param cpuSlots how many CPUs all running targets may use together
+     * @param memorySlotsMb how many megabytes of memory all running targets may use together, 0 for no limit
+     */
+    TargetScheduler(int cpuSlots, int memorySlotsMb) {
+        if (cpuSlots < 1) {
+            throw new IllegalArgumentException("portability_pass_rate cpu_slots must be at least 1");
+        }
+        if (memorySlotsMb < 0) {
+            throw new IllegalArgumentException("portability_pass_rate memory_slots_mb must be >= 0");
+        }
+
+        this.cpuSlots = cpuSlots;
+        this.memorySlotsMb = memorySlotsMb;
+        this.cpus = new Semaphore(cpuSlots, true);
+        this.memory = memorySlotsMb == 0 ? null : new Semaphore(memorySlotsMb, true);
+    }
+
+    int cpuSlots() {
+        return cpuSlots;
+    }
+
+    /**
+     * Block until the slots are free.
+     * @param isLocal whether the target runs on the host rather than in a container
+     * @param requestedCpus the CPUs the target is limited to
+     * @param requestedMemoryMb the memory the target is limited to, 0 if it is not limited
+     * @return the lease to close once the target finished
+     * @throws InterruptedException if the thread is interrupted while waiting, no slots are held then
+     */
+    Lease acquire(boolean isLocal, int requestedCpus, int requestedMemoryMb) throws InterruptedException {
+        // A target asking for more than the whole budget would wait forever, give it everything instead.
+        int cpuPermits = Math.min(requestedCpus, cpuSlots);
+        int memoryPermits = memory == null ? 0 : Math.min(requestedMemoryMb, memorySlotsMb);
+
+        if (isLocal) {
+            local.acquire();
+        }
+        try {
+            cpus.acquire(cpuPermits);
+            try {
+                if (memoryPermits > 0) {
+                    memory.acquire(memoryPermits);
+                }
+            } catch (InterruptedException e) {
+                cpus.release(cpuPermits);
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            if (isLocal) {
+                local.release();
+            }
+            throw e;
+        }
+
+        return () -> {
+            if (memoryPermits > 0) {
+                memory.release(memoryPermits);
+            }
+            cpus.release(cpuPermits);
+            if (isLocal) {
+                local.release();
+            }
+        };
+    }
+}
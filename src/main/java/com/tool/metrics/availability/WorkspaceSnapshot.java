@@ -0,0 +1,164 @@
+package com.tool.metrics.availability;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A read-only copy of the project shared by every target of one evaluation, and thin per-target workspaces on top.
+ *
+ * The base is always a copy, never a link to the project, so nothing a build does can reach the user's checkout
+ * and edits saved while the audit runs do not leak into builds that already started. Its files are read-only.
+ * Target workspaces get their own real directories and hard-link their files to the base, so preparing one costs
+ * a directory tree of metadata rather than a full copy. A build can still replace a linked file, it just cannot
+ * rewrite it in place. Build outputs such as target/ are excluded from the base and land in the workspace's own
+ * directories.
+ *
+ * Where the read-only bit does not stop writes (the audit runs as root, or the file system ignores it) and for
+ * targets that ask for it, e.g. Docker containers that may run as root, the workspace is a private copy instead.
+ */
+final class WorkspaceSnapshot implements Closeable {
+    private final Path base;
+    private final List<Path> directories;
+    private final List<Path> files;
+    // Linked workspaces are only as isolated as the read-only bit on the base makes them.
+    private final boolean readOnlyEnforced;
+    private volatile boolean canLinkFromBase = true;
+
+    private WorkspaceSnapshot(Path base, List<Path> directories, List<Path> files, boolean readOnlyEnforced) {
+        this.base = base;
+        this.directories = directories;
+        this.files = files;
+        this.readOnlyEnforced = readOnlyEnforced;
+    }
+
+    /**
+     * @param sourceRoot the project to snapshot
+     * @param snapshotDir where the base and the workspaces go, null for the system temp directory
+     * @param skip relative paths to leave out, e.g. .git and build outputs
+     */
+    static WorkspaceSnapshot create(Path sourceRoot, Path snapshotDir, Predicate<Path> skip) throws IOException {
+        Path base;
+        if (snapshotDir == null) {
+            base = Files.createTempDirectory("portability-base-");
+        } else {
+            Files.createDirectories(snapshotDir);
+            base = Files.createTempDirectory(snapshotDir, "portability-base-");
+        }
+
+        ArrayList<Path> directories = new ArrayList<>();
+        ArrayList<Path> files = new ArrayList<>();
+
+        try {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path relative = sourceRoot.relativize(dir);
+                    if (relative.toString().isEmpty()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (skip.test(relative)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    Files.createDirectories(base.resolve(relative));
+                    directories.add(relative);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Path relative = sourceRoot.relativize(file);
+                    if (skip.test(relative)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    Path snapshotFile = base.resolve(relative);
+                    Files.copy(file, snapshotFile, StandardCopyOption.COPY_ATTRIBUTES);
+                    snapshotFile.toFile().setReadOnly();
+                    files.add(relative);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            BackgroundCleanup.deleteLater(base);
+            throw e;
+        }
+
+        return new WorkspaceSnapshot(base, directories, files, readOnlyEnforced(base));
+    }
+
+    /**
+     * @return whether a read-only file in that directory really cannot be written, which is not the case for root
+     */
+    private static boolean readOnlyEnforced(Path directory) {
+        try {
+            Path probe = Files.createTempFile(directory, ".read-only-probe-", ".tmp");
+            try {
+                probe.toFile().setReadOnly();
+                return !Files.isWritable(probe);
+            } finally {
+                probe.toFile().setWritable(true);
+                Files.deleteIfExists(probe);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lay out a workspace for one target next to the base.
+     * @param prefix name prefix of the workspace directory
+     * @param privateCopy copy every file instead of linking it, for builds the read-only bit does not hold back
+     * @return the workspace, delete it with {@link BackgroundCleanup#deleteLater} when done
+     */
+    Path newWorkspace(String prefix, boolean privateCopy) throws IOException {
+        boolean link = !privateCopy && readOnlyEnforced;
+        Path workspace = Files.createTempDirectory(base.getParent(), prefix);
+        try {
+            for (Path directory : directories) {
+                Files.createDirectories(workspace.resolve(directory));
+            }
+            for (Path file : files) {
+                Path baseFile = base.resolve(file);
+                Path workspaceFile = workspace.resolve(file);
+                if (link && canLinkFromBase && tryLink(workspaceFile, baseFile)) {
+                    continue;
+                }
+                if (link) {
+                    // Most likely a file system without hard links, every other file would fail the same way.
+                    canLinkFromBase = false;
+                }
+                Files.copy(baseFile, workspaceFile, StandardCopyOption.COPY_ATTRIBUTES);
+                // A private copy, so unlike the base it may be written to.
+                workspaceFile.toFile().setWritable(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            BackgroundCleanup.deleteLater(workspace);
+            throw e;
+        }
+        return workspace;
+    }
+
+    @Override
+    public void close() {
+        BackgroundCleanup.deleteLater(base);
+    }
+
+    private static boolean tryLink(Path link, Path existing) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+}
@@ -3,117 +3,229 @@ package com.tool.metrics.maintainability;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-import com.github.javaparser.*;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 
+import com.tool.app.CancellationToken;
+import com.tool.app.ProjectContext;
+import com.tool.app.ResultCache;
+import com.tool.app.SourceIndex;
 import com.tool.domain.Finding;
 import com.tool.domain.Threshold;
 import com.tool.metrics.Metric;
 import com.tool.metrics.MetricResult;
+import com.tool.metrics.SourceMetric;
 
-public class CyclomaticComplexityMetric extends Metric {
-    private int methodCount;
-    private int totalComplexity;
-    private ArrayList<Finding> violations;
+public class CyclomaticComplexityMetric extends Metric implements SourceMetric {
+    // Bump the version whenever the way method complexity is counted changes, so old cache entries are ignored.
+    private static final String CACHE_NAMESPACE = "cyclomatic_complexity/v1";
 
+    private final int parallelism;
 
     public CyclomaticComplexityMetric(ArrayList<Threshold> thresholds) {
+        this(thresholds, null);
+    }
+
+    /**
+     * @param thresholds the complexity thresholds, ordered from highest severity to lowest severity
+     * @param settings optional settings block. "parallelism" sets how many files are parsed at once,
+     *                 1 parses on the calling thread and 0 uses every available processor.
+     */
+    public CyclomaticComplexityMetric(ArrayList<Threshold> thresholds, JSONObject settings) {
         super(
             thresholds,
             "Cyclomatic Complexity",
             "Measures the number of linearly independent paths through a program's source code."
         );
+
+        int configured = settings == null ? 1 : settings.optInt("parallelism", 1);
+        if (configured < 0) {
+            throw new IllegalArgumentException("cyclomatic_complexity parallelism must be >= 0");
+        }
+        this.parallelism = configured == 0 ? Runtime.getRuntime().availableProcessors() : configured;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public Set<SourceIndex.Feature> sourceFeatures() {
+        // Line numbers for the findings come from node positions, which JavaParser only keeps with tokens.
+        return EnumSet.of(SourceIndex.Feature.TOKENS);
     }
 
     @Override
     public MetricResult evaluate(Path projectPath) {
-        // Configure parser settings
-        ParserConfiguration cfg = new ParserConfiguration()
-                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
-        JavaParser parser = new JavaParser(cfg);
+        return evaluate(ProjectContext.of(projectPath, null));
+    }
 
-        // Reset State
-        totalComplexity = 0;
-        methodCount = 0;
-        violations = new ArrayList<>();
+    @Override
+    public MetricResult evaluate(ProjectContext context) {
+        // Evaluated on its own this metric is the only consumer, so it gets a private index.
+        SourceIndex index = context.sourceIndex() != null
+            ? context.sourceIndex()
+            : new SourceIndex(context.sourceRoot(), 1, sourceFeatures());
 
         // Calculate project complexity
-        calculateProjectComplexity(parser, projectPath);
+        FileSource source = new FileSource(index, context.resultCache(), context.cancellation());
+        List<Path> sourceFiles = index.files();
+        ComplexityTally tally;
+        if (parallelism <= 1 || sourceFiles.size() <= 1) {
+            tally = calculateProjectComplexity(source, sourceFiles);
+        } else if (context.executor() != null) {
+            tally = calculateProjectComplexityInParallel(source, sourceFiles, context.executor());
+        } else {
+            ExecutorService pool = new ForkJoinPool(parallelism);
+            try {
+                tally = calculateProjectComplexityInParallel(source, sourceFiles, pool);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
 
         // Find average
         double averageComplexity = 0;
-        if(methodCount > 0){
-            averageComplexity = (double) totalComplexity / methodCount;
+        if(tally.methodCount > 0){
+            averageComplexity = (double) tally.totalComplexity / tally.methodCount;
         }
 
-        return new MetricResult(this, averageComplexity, violations, thresholds());
+        return new MetricResult(this, averageComplexity, tally.violations, thresholds());
     }
 
     /**
-     * Calculates the cyclomatic complexity of java project 
-     * @param parser A preconfigured Java parser  
-     * @param projectPath The root project path
+     * Calculates the cyclomatic complexity of java project one file at a time on the calling thread.
+     * @param source Where parsed files and cached results come from
+     * @param sourceFiles The java files to evaluate, in the order findings should be reported
      */
-    private void calculateProjectComplexity(JavaParser parser, Path projectPath){
-        try (Stream<Path> paths = Files.walk(projectPath)) {
-            for (Path path : paths
-                .filter(p -> p.toString().endsWith(".java"))
-                .toList()) {
-
-                ParseResult<CompilationUnit> result = parser.parse(path);
-
-                if (result.getResult().isEmpty()) {
-                    continue;
-                }
+    private ComplexityTally calculateProjectComplexity(FileSource source, List<Path> sourceFiles) {
+        ComplexityTally tally = new ComplexityTally(thresholds());
+        for (Path path : sourceFiles) {
+            tally.add(calculateFileComplexity(source, path));
+        }
+        return tally;
+    }
 
-                CompilationUnit cu = result.getResult().get();
-                List<MethodDeclaration> methods = cu.findAll(MethodDeclaration.class);
+    /**
+     * Calculates the cyclomatic complexity of java project on a pool.
+     * Files are split into contiguous chunks, each chunk fills its own tally and the tallies are
+     * merged in file order, so the findings come out in the same order as a sequential run.
+     * @param source Where parsed files and cached results come from, parsing uses one parser per worker thread
+     * @param sourceFiles The java files to evaluate, in the order findings should be reported
+     * @param pool The pool to run the chunks on, it may be shared with other audits
+     */
+    private ComplexityTally calculateProjectComplexityInParallel(FileSource source, List<Path> sourceFiles, ExecutorService pool) {
+        // A few chunks per thread keeps the pool busy when some files are much bigger than others.
+        int chunkSize = Math.max(1, sourceFiles.size() / (parallelism * 4));
+        ArrayList<Future<ComplexityTally>> chunks = new ArrayList<>();
+        for (int start = 0; start < sourceFiles.size(); start += chunkSize) {
+            List<Path> chunk = sourceFiles.subList(start, Math.min(start + chunkSize, sourceFiles.size()));
+            chunks.add(pool.submit(() -> calculateProjectComplexity(source, chunk)));
+        }
 
-                calculateMethodComplexities(methods, path);        
+        ComplexityTally tally = new ComplexityTally(thresholds());
+        try {
+            for (Future<ComplexityTally> chunk : chunks) {
+                tally.merge(chunk.get());
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return tally;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calculating cyclomatic complexity", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException cancelled) {
+                throw cancelled;
+            }
+            throw new IllegalStateException("Failed to calculate cyclomatic complexity: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Nothing left to do once one chunk failed, and a shared pool should not keep working for nobody.
+            chunks.forEach(chunk -> chunk.cancel(true));
         }
     }
 
     /**
-     * Calculates the cyclomatic complexities of each method updating 
-     * the total complexity, methodCount and adds any violations. 
-     * @param methods The methods of a class which will be evaluated
+     * Calculates the complexity of each method in a single java file.
+     * Files whose content was already measured in an earlier audit are served from the cache without parsing.
+     * In a diff scoped audit that covers every untouched file that was measured before the change.
+     * @param source Where parsed files and cached results come from
      * @param path The path of the class
+     * @return the method complexities of the file, empty if it could not be parsed
      */
-    private void calculateMethodComplexities (List<MethodDeclaration> methods, Path path){
-        for (MethodDeclaration method : methods) {
-            int complexity = calculateMethodComplexity(method);
-
-            totalComplexity += complexity;
-            methodCount++;
-
-            // Threshold method evaluation 
-            for (Threshold threshold : thresholds()) {
-                if (complexity > threshold.value()) {
-                    String msg = "The method \"" + method.getNameAsString() + "\" has a cyclomatic complexity of " + complexity;
-
-                    violations.add(new Finding(
-                        threshold.severity(),
-                        msg,
-                        path + ":" +
-                        method.getBegin().map(p -> p.line).orElse(-1),
-                        method.getNameAsString(),
-                        method.getBegin().map(p -> p.line).orElse(-1)
-                    ));
-
-                    // Report only the highest threshold.
-                    break;  
+    private FileComplexity calculateFileComplexity(FileSource source, Path path) {
+        SourceIndex index = source.index();
+        try {
+            source.cancellation().throwIfCancelled();
+
+            String contentHash = null;
+            if (source.cache() != null) {
+                try {
+                    contentHash = index.contentHash(path);
+                    Optional<String> cached = source.cache().get(CACHE_NAMESPACE, contentHash);
+                    if (cached.isPresent()) {
+                        return new FileComplexity(path, decodeMethods(cached.get()), index.isChanged(path));
+                    }
+                } catch (IOException e) {
+                    // Unreadable files are reported by the parser below.
+                    contentHash = null;
                 }
             }
+
+            Optional<CompilationUnit> cu = index.acquire(path);
+            if (cu.isEmpty()) {
+                return new FileComplexity(path, List.of(), index.isChanged(path));
+            }
+
+            List<MethodDeclaration> methods = cu.get().findAll(MethodDeclaration.class);
+
+            ArrayList<MethodComplexity> complexities = new ArrayList<>();
+            for (MethodDeclaration method : methods) {
+                complexities.add(new MethodComplexity(
+                    method.getNameAsString(),
+                    method.getBegin().map(p -> p.line).orElse(-1),
+                    calculateMethodComplexity(method)
+                ));
+            }
+
+            if (contentHash != null) {
+                source.cache().put(CACHE_NAMESPACE, contentHash, encodeMethods(complexities));
+            }
+            return new FileComplexity(path, complexities, index.isChanged(path));
+        } finally {
+            index.release(path);
+        }
+    }
+
+    private String encodeMethods(List<MethodComplexity> methods) {
+        JSONArray array = new JSONArray();
+        for (MethodComplexity method : methods) {
+            array.put(new JSONArray()
+                .put(method.name())
+                .put(method.line())
+                .put(method.complexity()));
+        }
+        return array.toString();
+    }
+
+    private List<MethodComplexity> decodeMethods(String value) {
+        JSONArray array = new JSONArray(value);
+        ArrayList<MethodComplexity> methods = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONArray method = array.getJSONArray(i);
+            methods.add(new MethodComplexity(method.getString(0), method.getInt(1), method.getInt(2)));
         }
+        return methods;
     }
 
     private int calculateMethodComplexity(MethodDeclaration method) {
@@ -184,4 +296,69 @@ public class CyclomaticComplexityMetric extends Metric {
         visitor.visit(method, null);
         return visitor.complexity;
     }
-}
\ No newline at end of file
+
+    private record MethodComplexity(String name, int line, int complexity) {}
+
+    // Unchanged files in a diff scoped audit still count towards the average, but are not reported on.
+    private record FileComplexity(Path path, List<MethodComplexity> methods, boolean reportFindings) {}
+
+    private record FileSource(SourceIndex index, ResultCache cache, CancellationToken cancellation) {}
+
+    /**
+     * Running totals for one worker. Tallies are only ever touched by a single thread until they are merged.
+     */
+    private static final class ComplexityTally {
+        private final ArrayList<Threshold> thresholds;
+        private int methodCount;
+        private int totalComplexity;
+        private final ArrayList<Finding> violations = new ArrayList<>();
+
+        private ComplexityTally(ArrayList<Threshold> thresholds) {
+            this.thresholds = thresholds;
+        }
+
+        /**
+         * Adds the method complexities of a file, updating the total complexity,
+         * methodCount and adding any violations.
+         * @param file The evaluated file
+         */
+        private void add(FileComplexity file) {
+            for (MethodComplexity method : file.methods()) {
+                totalComplexity += method.complexity();
+                methodCount++;
+
+                if (!file.reportFindings()) {
+                    continue;
+                }
+
+                // Threshold method evaluation
+                for (Threshold threshold : thresholds) {
+                    if (method.complexity() > threshold.value()) {
+                        String msg = "The method \"" + method.name() + "\" has a cyclomatic complexity of " + method.complexity();
+
+                        violations.add(new Finding(
+                            threshold.severity(),
+                            msg,
+                            file.path() + ":" + method.line(),
+                            method.name(),
+                            method.line()
+                        ));
+
+                        // Report only the highest threshold.
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Appends a tally covering the files that come after this one.
+         * @param other The tally to merge into this one
+         */
+        private void merge(ComplexityTally other) {
+            methodCount += other.methodCount;
+            totalComplexity += other.totalComplexity;
+            violations.addAll(other.violations);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.tool.metrics.security;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.tool.app.CancellationToken;
+
+//SHA-1 and SHA-256 of artifacts (jars), the hashes advisories and repositories identify artifacts by.
+//Files are hashed in parallel, each through memory mapped windows in one pass for both digests. Results are kept in a small
+//tab separated file keyed by path, size and modification time, so an artifact that did not change is never hashed again,
+//not in this audit and not in later ones
+final class ArtifactFingerprinter {
+    //Big enough that a jar is one or two mappings, small enough not to hog address space on 32 bit
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+    //One fingerprinter per cache file in this JVM, so audits running at the same time share it
+    private static final Map<Path, ArtifactFingerprinter> BY_CACHE_FILE = new ConcurrentHashMap<>();
+
+    //The hashes of one artifact, hex encoded
+    record Fingerprint(String sha1, String sha256, long size) {}
+
+    private record CacheEntry(long size, long modifiedMillis, Fingerprint fingerprint) {}
+
+    private final Path cacheFile;
+    private final Map<Path, CacheEntry> cache = new ConcurrentHashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+    private int hashedCount;
+
+    private ArtifactFingerprinter(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    //The shared fingerprinter for that cache file
+    static ArtifactFingerprinter forCacheFile(Path cacheFile) {
+        return BY_CACHE_FILE.computeIfAbsent(cacheFile.toAbsolutePath().normalize(), ArtifactFingerprinter::new);
+    }
+
+    //Fingerprints of the given artifacts, missing files are left out. Hashing runs on the pool, cached ones never leave
+    //the calling thread. The cache file is updated before this returns if anything new was hashed
+    Map<Path, Fingerprint> fingerprint(List<Path> artifacts, ExecutorService pool, CancellationToken cancellation) throws IOException {
+        loadCache();
+
+        LinkedHashMap<Path, Fingerprint> fingerprints = new LinkedHashMap<>();
+        LinkedHashMap<Path, Future<Fingerprint>> hashing = new LinkedHashMap<>();
+        for (Path artifact : artifacts) {
+            Path path = artifact.toAbsolutePath().normalize();
+            if (fingerprints.containsKey(path) || hashing.containsKey(path) || !Files.isRegularFile(path)) {
+                continue;
+            }
+
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            CacheEntry cached = cache.get(path);
+            if (cached != null && cached.size() == size && cached.modifiedMillis() == modified) {
+                fingerprints.put(path, cached.fingerprint());
+                continue;
+            }
+
+            fingerprints.put(path, null); //Keeps the order of the input
+            hashing.put(path, pool.submit(() -> {
+                cancellation.throwIfCancelled();
+                Fingerprint fingerprint = hash(path);
+                cache.put(path, new CacheEntry(size, modified, fingerprint));
+                return fingerprint;
+            }));
+        }
+
+        try {
+            for (Map.Entry<Path, Future<Fingerprint>> entry : hashing.entrySet()) {
+                fingerprints.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fingerprinting artifacts", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException cancelled) {
+                throw cancelled;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Failed to fingerprint artifacts: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            hashing.values().forEach(future -> future.cancel(true));
+        }
+
+        if (!hashing.isEmpty()) {
+            synchronized (this) {
+                hashedCount += hashing.size();
+                dirty = true;
+            }
+            saveCache();
+        }
+        return fingerprints;
+    }
+
+    //How many artifacts had to be hashed since this fingerprinter was created, the rest came from the cache
+    synchronized int hashedCount() {
+        return hashedCount;
+    }
+
+    //Both digests in one pass over the file
+    static Fingerprint hash(Path file) throws IOException {
+        MessageDigest sha1 = digest("SHA-1");
+        MessageDigest sha256 = digest("SHA-256");
+
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            for (long position = 0; position < size; position += WINDOW_BYTES) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+                sha1.update(window.duplicate());
+                sha256.update(window);
+            }
+        }
+
+        HexFormat hex = HexFormat.of();
+        return new Fingerprint(hex.formatHex(sha1.digest()), hex.formatHex(sha256.digest()), size);
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " is not available", e);
+        }
+    }
+
+    //Lines of: size, modified millis, sha1, sha256, path. A broken line is skipped, the artifact is just hashed again
+    private synchronized void loadCache() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.isRegularFile(cacheFile)) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    continue;
+                }
+                try {
+                    long size = Long.parseLong(fields[0]);
+                    cache.put(Path.of(fields[4]), new CacheEntry(
+                            size,
+                            Long.parseLong(fields[1]),
+                            new Fingerprint(fields[2], fields[3], size)
+                    ));
+                } catch (RuntimeException e) {
+                    //Skipped
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[SECURITY] Could not read the fingerprint cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    //Written to a temp file and moved in place. Artifacts that are gone are dropped so the file does not grow forever
+    private synchronized void saveCache() {
+        if (!dirty) {
+            return;
+        }
+
+        List<Map.Entry<Path, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+        entries.removeIf(entry -> !Files.exists(entry.getKey()));
+        entries.sort(Map.Entry.comparingByKey());
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temp = Files.createTempFile(cacheFile.getParent(), ".fingerprints-", ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<Path, CacheEntry> entry : entries) {
+                        CacheEntry cached = entry.getValue();
+                        writer.write(cached.size() + "\t" + cached.modifiedMillis() + "\t" + cached.fingerprint().sha1()
+                                + "\t" + cached.fingerprint().sha256() + "\t" + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+                try {
+                    Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            //Only a cache, the hashes are still right for this audit
+            System.err.println("[SECURITY] Could not write the fingerprint cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+}
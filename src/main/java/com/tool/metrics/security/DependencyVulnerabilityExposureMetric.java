@@ -1,21 +1,34 @@
 // In this file we read the report, find the vulnerable dependencies, calc (Thats short for calcualate) the score and produce the findings for the report
 package com.tool.metrics.security;
 
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import com.tool.app.ProjectContext;
 import com.tool.domain.Finding;
 import com.tool.domain.Severity;
 import com.tool.domain.Threshold;
 import com.tool.metrics.Metric;
 import com.tool.metrics.MetricResult;
+import com.tool.util.MavenProjects;
 
 //Meausre the score using the json report.
 //0 = good, any number from 1-100 means there are vulnerabilties
@@ -32,9 +45,79 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
     private static final int UNKNOWN_PENALTY = 5;
     private static final int MAX_TOP_FINDINGS = 25; //Limits the total number of findings, can be removed but even 25 x the lowest 3x means that you are critical so 25 is a workable/readable limit
 
+    //Order of the individual findings: Sev rank (Highest to lowest), CVSS score (Highest to lowest), CVE ID, then report order
+    private static final Comparator<DependencyVulnerability> MOST_SEVERE_FIRST = Comparator
+            .comparingInt((DependencyVulnerability v) -> v.severity().rank()).reversed()
+            .thenComparing((DependencyVulnerability v) -> v.cvssScore() == null ? -1.0 : v.cvssScore(), Comparator.reverseOrder())
+            .thenComparing(DependencyVulnerability::cveId)
+            .thenComparingLong(DependencyVulnerability::position);
+
+    private static final int MAX_LISTED_UNRESOLVED = 10;
+
+    //Where the vulnerabilities come from. DEPENDENCY_CHECK reads the OWASP report, OFFLINE matches the poms against a local
+    //vulnerability index in process, no maven or report needed
+    private enum Engine {
+        DEPENDENCY_CHECK,
+        OFFLINE
+    }
+
+    private final Engine engine;
+    private final Path vulnerabilityDatabase;
+    private final Path osvDump;
+    private final Path localRepository;
+    private final Set<String> scopes;
+    private final boolean includeTransitive;
+    private final boolean verifyChecksums;
+    private final Path fingerprintCache;
+
     //Creates the metric and passes the info
     public DependencyVulnerabilityExposureMetric(ArrayList<Threshold> thresholds) {
+        this(thresholds, null);
+    }
+
+    //Settings are optional, without them the OWASP report is used
+    public DependencyVulnerabilityExposureMetric(ArrayList<Threshold> thresholds, JSONObject settings) {
         super(thresholds, NAME, DESCRIPTION);
+        if (settings == null) {
+            settings = new JSONObject();
+        }
+
+        String engineValue = settings.optString("engine", "dependency_check").trim().toUpperCase(Locale.ROOT);
+        try {
+            this.engine = Engine.valueOf(engineValue);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("dependency_vulnerability_exposure engine must be dependency_check or offline, not " + engineValue.toLowerCase(Locale.ROOT));
+        }
+
+        Path qualityAuditorHome = Path.of(System.getProperty("user.home"), ".quality-auditor");
+        this.vulnerabilityDatabase = Path.of(settings.optString("vulnerability_database",
+                qualityAuditorHome.resolve("vulnerability-index.bin").toString()));
+        String osvDumpValue = settings.optString("osv_dump", null);
+        this.osvDump = osvDumpValue == null || osvDumpValue.isBlank() ? null : Path.of(osvDumpValue);
+        this.localRepository = Path.of(settings.optString("local_repository",
+                Path.of(System.getProperty("user.home"), ".m2", "repository").toString()));
+        this.includeTransitive = settings.optBoolean("include_transitive", true);
+        this.verifyChecksums = settings.optBoolean("verify_checksums", true);
+        this.fingerprintCache = Path.of(settings.optString("fingerprint_cache",
+                qualityAuditorHome.resolve("artifact-fingerprints.tsv").toString()));
+
+        JSONArray scopeArray = settings.optJSONArray("scopes");
+        HashSet<String> configuredScopes = new HashSet<>();
+        if (scopeArray == null) {
+            configuredScopes.add("compile");
+            configuredScopes.add("runtime");
+        } else {
+            for (int i = 0; i < scopeArray.length(); i++) {
+                configuredScopes.add(scopeArray.getString(i).trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.scopes = Set.copyOf(configuredScopes);
+    }
+
+    //The OWASP report is only needed by the report engine, so the audit only generates it when that one is configured
+    @Override
+    public Set<Input> inputs() {
+        return engine == Engine.OFFLINE ? Set.of(Input.SOURCES) : Set.of(Input.DEPENDENCY_REPORT);
     }
 
     //
@@ -43,9 +126,19 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
         return evaluate(projectPath, null);
     }
 
-    //Eval dependency using OWASP check report
     @Override
     public MetricResult evaluate(Path projectPath, Path dependencyReportPath) throws Exception {
+        return evaluate(ProjectContext.of(projectPath, dependencyReportPath));
+    }
+
+    //Eval dependency using OWASP check report, or the local index with the offline engine
+    @Override
+    public MetricResult evaluate(ProjectContext context) throws Exception {
+        if (engine == Engine.OFFLINE) {
+            return evaluateOffline(context);
+        }
+
+        Path dependencyReportPath = context.dependencyReportPath();
         if (dependencyReportPath == null) { //If no report was provided, skip and give 100
             ArrayList<Finding> skippedFindings = new ArrayList<>();
             skippedFindings.add(new Finding(
@@ -62,6 +155,118 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
         }
 
         ScanSummary summary = parseDependencyCheckReport(dependencyReportPath); //Parse the report and collect counts + details
+        return new MetricResult(this, clamp(summary.penalty(), 0, 100), summaryFindings(summary, dependencyReportPath.toString()), thresholds());
+    }
+
+    //Resolves the dependencies from the poms and local repository and looks each one up in the index.
+    //Feeds the same summary as the report so the score means the same thing
+    private MetricResult evaluateOffline(ProjectContext context) throws Exception {
+        Path sourceRoot = context.sourceRoot();
+        Path projectRoot = MavenProjects.findProjectRoot(sourceRoot);
+        if (projectRoot == null) {
+            throw new IllegalArgumentException("Offline vulnerability matching needs a pom.xml at or above " + sourceRoot);
+        }
+
+        VulnerabilityIndex index = VulnerabilityIndex.load(vulnerabilityDatabase, osvDump);
+        PomDependencyResolver.Resolution resolution =
+                new PomDependencyResolver(localRepository, scopes, includeTransitive).resolve(projectRoot);
+
+        ReportScan scan = new ReportScan();
+        for (PomDependencyResolver.Coordinate coordinate : resolution.coordinates()) {
+            scan.totalDependencies++;
+            MavenVersion version = MavenVersion.parse(coordinate.version());
+            Set<String> seen = new HashSet<>(); //The same advisory can list a package twice
+            for (VulnerabilityIndex.Advisory advisory : index.lookup(coordinate.key())) {
+                if (!advisory.affects(version) || !seen.add(advisory.id())) {
+                    continue;
+                }
+                VulnerabilitySeverity severity = resolveSeverity(advisory.severity(), advisory.cvssScore());
+                scan.count(severity);
+                scan.top.offer(new DependencyVulnerability(
+                        advisory.id(),
+                        coordinate.toString(),
+                        advisory.description(),
+                        advisory.cvssScore(),
+                        severity,
+                        scan.vulnerabilityCount++
+                ));
+            }
+        }
+
+        ScanSummary summary = scan.toSummary();
+        ArrayList<Finding> findings = summaryFindings(summary, index.path().toString());
+        if (!resolution.unresolved().isEmpty()) {
+            List<String> listed = resolution.unresolved().subList(0, Math.min(MAX_LISTED_UNRESOLVED, resolution.unresolved().size()));
+            findings.add(1, new Finding(
+                    Severity.INFO,
+                    String.format(
+                            Locale.US,
+                            "%d dependencies have no version that could be worked out offline and were not checked: %s%s",
+                            resolution.unresolved().size(),
+                            String.join(", ", listed),
+                            resolution.unresolved().size() > listed.size() ? ", ..." : ""
+                    ),
+                    projectRoot.resolve("pom.xml").toString(),
+                    "project-wide",
+                    null
+            ));
+        }
+        if (verifyChecksums) {
+            findings.addAll(checksumFindings(resolution.coordinates(), context));
+        }
+        return new MetricResult(this, clamp(summary.penalty(), 0, 100), findings, thresholds());
+    }
+
+    //The advisories are matched by coordinates, which only says something if the jar in the local repository really is that
+    //artifact. Hashes each jar (cached, so only new or changed jars are read) and compares it to the .sha1 maven downloaded with it.
+    //Jars without a recorded checksum are not reported, a mismatch is, but does not change the score
+    private ArrayList<Finding> checksumFindings(List<PomDependencyResolver.Coordinate> coordinates, ProjectContext context) throws Exception {
+        ArrayList<Path> jars = new ArrayList<>();
+        for (PomDependencyResolver.Coordinate coordinate : coordinates) {
+            jars.add(localRepository.resolve(coordinate.groupId().replace('.', '/'))
+                    .resolve(coordinate.artifactId())
+                    .resolve(coordinate.version())
+                    .resolve(coordinate.artifactId() + "-" + coordinate.version() + ".jar"));
+        }
+
+        ArtifactFingerprinter fingerprinter = ArtifactFingerprinter.forCacheFile(fingerprintCache);
+        Map<Path, ArtifactFingerprinter.Fingerprint> fingerprints;
+        if (context.executor() != null) {
+            fingerprints = fingerprinter.fingerprint(jars, context.executor(), context.cancellation());
+        } else {
+            ExecutorService pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                fingerprints = fingerprinter.fingerprint(jars, pool, context.cancellation());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        ArrayList<Finding> findings = new ArrayList<>();
+        for (Map.Entry<Path, ArtifactFingerprinter.Fingerprint> entry : fingerprints.entrySet()) {
+            Path recorded = entry.getKey().resolveSibling(entry.getKey().getFileName() + ".sha1");
+            if (!Files.isRegularFile(recorded)) {
+                continue;
+            }
+            //Some repositories write "<hash>  <file name>", only the hash counts
+            String[] content = Files.readString(recorded, StandardCharsets.UTF_8).trim().split("\\s+");
+            if (content[0].isEmpty() || content[0].equalsIgnoreCase(entry.getValue().sha1())) {
+                continue;
+            }
+            findings.add(new Finding(
+                    Severity.MAJOR,
+                    "Artifact does not match its recorded SHA-1 (" + content[0].toLowerCase(Locale.ROOT) + " expected, "
+                            + entry.getValue().sha1() + " found), its vulnerabilities may not be the ones reported for its version",
+                    entry.getKey().toString(),
+                    "project-wide",
+                    null
+            ));
+        }
+        return findings;
+    }
+
+    //Summary, overall and individual findings. Source is where the vulnerabilities came from
+    private ArrayList<Finding> summaryFindings(ScanSummary summary, String source) {
         double score = clamp(summary.penalty(), 0, 100);
 
         ArrayList<Finding> findings = new ArrayList<>();    //Calc final score
@@ -71,7 +276,7 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
                         Locale.US,
                         "Security summary: dependencies=%d, vulnerabilities=%d, critical=%d, high=%d, medium=%d, low=%d, unknown=%d, penalty=%d, exposure=%.0f",
                         summary.totalDependencies(),
-                        summary.vulnerabilities().size(),
+                        summary.vulnerabilityCount(),
                         summary.criticalCount(),
                         summary.highCount(),
                         summary.mediumCount(),
@@ -80,7 +285,7 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
                         summary.penalty(),
                         score
                 ),
-                dependencyReportPath.toString(),
+                source,
                 "project-wide",
                 null
         ));
@@ -90,7 +295,7 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
             findings.add(new Finding(
                     Severity.CRITICAL,
                     "Critical dependency vulnerabilities detected: " + summary.criticalCount(),
-                    dependencyReportPath.toString(),
+                    source,
                     "project-wide",
                     null
             ));
@@ -98,93 +303,204 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
             findings.add(new Finding(
                     Severity.MAJOR,
                     "High severity dependency vulnerabilities detected: " + summary.highCount(),
-                    dependencyReportPath.toString(),
+                    source,
                     "project-wide",
                     null
             ));
         }
 
-        //Individual findings
-        //Sorted by Sev rank (Highest to lowest), CVSS score (Highest to lowest) and CVE ID
-        summary.vulnerabilities().stream()
-                .sorted(Comparator
-                        .comparingInt((DependencyVulnerability v) -> v.severity().rank()).reversed()
-                        .thenComparing((DependencyVulnerability v) -> v.cvssScore() == null ? -1.0 : v.cvssScore(), Comparator.reverseOrder())
-                        .thenComparing(DependencyVulnerability::cveId))
-                .limit(MAX_TOP_FINDINGS)
+        //Individual findings, already the most severe ones in order
+        summary.topVulnerabilities().stream()
                 .map(this::toFinding)
                 .forEach(findings::add);
 
-        return new MetricResult(this, score, findings, thresholds());
+        return findings;
     }
 
     //Parse the report
-    //Extracts total number of depen, all vulnerb, sev counts, depend names, CVE IDs, CVSS scores and vulner discriptions
+    //Reports of big services are hundreds of MB, so it is read as a stream one dependency at a time rather than as one JSONObject.
+    //Sev counts are added up on the way and only the top vulnerabilities (with their descriptions) are kept
     private ScanSummary parseDependencyCheckReport(Path reportPath) throws Exception {
-        JSONObject root = new JSONObject(Files.readString(reportPath)); //Report into root json object
-        JSONArray dependencies = root.optJSONArray("dependencies"); //dependencies stored in dependencies array
-        
-        //If null return empty array instead of crashing
-        if (dependencies == null) {
-            return new ScanSummary(0, List.of(), 0, 0, 0, 0, 0);
-        }
-
-        List<DependencyVulnerability> vulnerabilities = new ArrayList<>();
-        int critical = 0;
-        int high = 0;
-        int medium = 0;
-        int low = 0;
-        int unknown = 0;
-
-        for (int i = 0; i < dependencies.length(); i++) {
-            JSONObject dependency = dependencies.optJSONObject(i);
-            if (dependency == null) {
-                continue;
+        try (Reader reader = new BufferedReader(Files.newBufferedReader(reportPath, StandardCharsets.UTF_8), 64 * 1024)) {
+            JSONTokener tokener = new JSONTokener(reader);
+            ReportScan scan = new ReportScan();
+
+            expect(tokener, '{');
+            if (!nextMember(tokener, '}', true)) {
+                return scan.toSummary();
             }
+            do {
+                String key = nextKey(tokener);
+                if ("dependencies".equals(key) && tokener.nextClean() == '[') {
+                    parseDependencies(tokener, scan);
+                } else if ("dependencies".equals(key)) {
+                    //Not an array, same as a report without dependencies
+                    tokener.back();
+                    skipValue(tokener);
+                } else {
+                    skipValue(tokener);
+                }
+            } while (nextMember(tokener, '}', false));
 
-            //Dependency report uses different fields depending on type. This gets a readable name
-            String dependencyName = firstNonBlank(
-                    dependency.optString("fileName", null),
-                    dependency.optString("displayFileName", null),
-                    dependency.optString("filePath", null),
-                    "UNKNOWN_DEPENDENCY"
-            );
+            return scan.toSummary();   //Returns everything as a single summary object
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Dependency-Check report is not valid JSON: " + reportPath + " (" + e.getMessage() + ")", e);
+        }
+    }
 
-            JSONArray vulns = dependency.optJSONArray("vulnerabilities");
-            if (vulns == null) {
+    //Walks dependencies[], the opening [ is already read
+    private void parseDependencies(JSONTokener tokener, ReportScan scan) {
+        if (!nextMember(tokener, ']', true)) {
+            return;
+        }
+        do {
+            scan.totalDependencies++;
+            if (tokener.nextClean() != '{') {
+                tokener.back();
+                skipValue(tokener);
                 continue;
             }
+            parseDependency(tokener, scan);
+        } while (nextMember(tokener, ']', false));
+    }
 
-            for (int j = 0; j < vulns.length(); j++) {
-                JSONObject vulnerability = vulns.optJSONObject(j);
-                if (vulnerability == null) {       //Stops invalid or malformed
-                    continue;
+    //One dependency, the opening { is already read. Its vulnerabilities are offered to the top list once the object is done,
+    //the name fields can come after them. Until then they wait in a top list of their own so that stays bounded too
+    private void parseDependency(JSONTokener tokener, ReportScan scan) {
+        String fileName = null;
+        String displayFileName = null;
+        String filePath = null;
+        TopVulnerabilities vulnerabilities = new TopVulnerabilities();
+
+        if (nextMember(tokener, '}', true)) {
+            do {
+                String key = nextKey(tokener);
+                switch (key) {
+                    case "fileName" -> fileName = nextString(tokener);
+                    case "displayFileName" -> displayFileName = nextString(tokener);
+                    case "filePath" -> filePath = nextString(tokener);
+                    case "vulnerabilities" -> parseVulnerabilities(tokener, scan, vulnerabilities);
+                    default -> skipValue(tokener);
                 }
+            } while (nextMember(tokener, '}', false));
+        }
 
-                String cveId = firstNonBlank(vulnerability.optString("name", null), "UNKNOWN");
-                Double cvssScore = extractCvssScore(vulnerability);
-                VulnerabilitySeverity severity = resolveSeverity(vulnerability.optString("severity", null), cvssScore);
-                String description = vulnerability.optString("description", "No description provided.");
-
-                vulnerabilities.add(new DependencyVulnerability(
-                        cveId,
-                        dependencyName,
-                        description,
-                        cvssScore,
-                        severity
-                ));
+        //Dependency report uses different fields depending on type. This gets a readable name
+        String dependencyName = firstNonBlank(fileName, displayFileName, filePath, "UNKNOWN_DEPENDENCY");
+        for (DependencyVulnerability vulnerability : vulnerabilities.sorted()) {
+            scan.top.offer(vulnerability.withDependency(dependencyName));
+        }
+    }
 
-                switch (severity) {
-                    case CRITICAL -> critical++;
-                    case HIGH -> high++;
-                    case MEDIUM -> medium++;
-                    case LOW -> low++;
-                    case UNKNOWN -> unknown++;
-                }
+    //vulnerabilities[] of one dependency. Each one is small so it is read as a JSONObject, its description is only kept
+    //while it can still make the top list
+    private void parseVulnerabilities(JSONTokener tokener, ReportScan scan, TopVulnerabilities dependencyVulnerabilities) {
+        if (tokener.nextClean() != '[') {
+            tokener.back();
+            skipValue(tokener);
+            return;
+        }
+        if (!nextMember(tokener, ']', true)) {
+            return;
+        }
+        do {
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject vulnerability)) {       //Stops invalid or malformed
+                continue;
+            }
+
+            String cveId = firstNonBlank(vulnerability.optString("name", null), "UNKNOWN");
+            Double cvssScore = extractCvssScore(vulnerability);
+            VulnerabilitySeverity severity = resolveSeverity(vulnerability.optString("severity", null), cvssScore);
+
+            scan.count(severity);
+
+            DependencyVulnerability candidate = new DependencyVulnerability(
+                    cveId,
+                    null,
+                    null,
+                    cvssScore,
+                    severity,
+                    scan.vulnerabilityCount++
+            );
+            if (scan.top.wouldKeep(candidate) && dependencyVulnerabilities.wouldKeep(candidate)) {
+                dependencyVulnerabilities.offer(candidate.withDescription(
+                        vulnerability.optString("description", "No description provided.")));
             }
+        } while (nextMember(tokener, ']', false));
+    }
+
+    private static void expect(JSONTokener tokener, char expected) {
+        char c = tokener.nextClean();
+        if (c != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "' but found '" + c + "'");
+        }
+    }
+
+    //True if another member follows in the current object/array. first is for right after the opening bracket
+    private static boolean nextMember(JSONTokener tokener, char close, boolean first) {
+        char c = tokener.nextClean();
+        if (c == close) {
+            return false;
+        }
+        if (first) {
+            tokener.back();
+            return true;
+        }
+        if (c != ',') {
+            throw tokener.syntaxError("Expected ',' or '" + close + "' but found '" + c + "'");
+        }
+        return true;
+    }
+
+    //Reads "key": and leaves the tokener at the value
+    private static String nextKey(JSONTokener tokener) {
+        char quote = tokener.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw tokener.syntaxError("Expected a key");
+        }
+        String key = tokener.nextString(quote);
+        expect(tokener, ':');
+        return key;
+    }
+
+    //A string value, null for anything else
+    private static String nextString(JSONTokener tokener) {
+        char c = tokener.nextClean();
+        if (c == '"' || c == '\'') {
+            return tokener.nextString(c);
         }
+        tokener.back();
+        skipValue(tokener);
+        return null;
+    }
 
-        return new ScanSummary(dependencies.length(), vulnerabilities, critical, high, medium, low, unknown);   //Returns everything as a single summary object
+    //Skips a value without building it, evidence and package lists are most of the report
+    private static void skipValue(JSONTokener tokener) {
+        char c = tokener.nextClean();
+        switch (c) {
+            case '"', '\'' -> tokener.nextString(c);
+            case '{' -> {
+                if (nextMember(tokener, '}', true)) {
+                    do {
+                        nextKey(tokener);
+                        skipValue(tokener);
+                    } while (nextMember(tokener, '}', false));
+                }
+            }
+            case '[' -> {
+                if (nextMember(tokener, ']', true)) {
+                    do {
+                        skipValue(tokener);
+                    } while (nextMember(tokener, ']', false));
+                }
+            }
+            default -> {
+                //Numbers, true, false and null
+                tokener.back();
+                tokener.nextValue();
+            }
+        }
     }
 
     //Convert into a report finding
@@ -305,19 +621,81 @@ public class DependencyVulnerabilityExposureMetric extends Metric {
     }
 
     //Single vulnerability from the report
+    //Position is its place in the report, so ties come out in report order
     private record DependencyVulnerability(
             String cveId,
             String dependency,
             String description,
             Double cvssScore,
-            VulnerabilitySeverity severity
-    ) {}
+            VulnerabilitySeverity severity,
+            long position
+    ) {
+        DependencyVulnerability withDependency(String dependency) {
+            return new DependencyVulnerability(cveId, dependency, description, cvssScore, severity, position);
+        }
+
+        DependencyVulnerability withDescription(String description) {
+            return new DependencyVulnerability(cveId, dependency, description, cvssScore, severity, position);
+        }
+    }
+
+    //The most severe vulnerabilities seen so far, at most MAX_TOP_FINDINGS.
+    //The heap has the least severe of them on top, so it is the one pushed out
+    private static final class TopVulnerabilities {
+        private final PriorityQueue<DependencyVulnerability> heap = new PriorityQueue<>(MOST_SEVERE_FIRST.reversed());
+
+        //Whether the vulnerability would still make the list, checked before its description is kept
+        boolean wouldKeep(DependencyVulnerability vulnerability) {
+            return heap.size() < MAX_TOP_FINDINGS || MOST_SEVERE_FIRST.compare(vulnerability, heap.peek()) < 0;
+        }
+
+        void offer(DependencyVulnerability vulnerability) {
+            if (!wouldKeep(vulnerability)) {
+                return;
+            }
+            heap.add(vulnerability);
+            if (heap.size() > MAX_TOP_FINDINGS) {
+                heap.poll();
+            }
+        }
+
+        List<DependencyVulnerability> sorted() {
+            return heap.stream().sorted(MOST_SEVERE_FIRST).toList();
+        }
+    }
+
+    //Running totals while the report is read
+    private static final class ReportScan {
+        private final TopVulnerabilities top = new TopVulnerabilities();
+        private int totalDependencies;
+        private int vulnerabilityCount;
+        private int critical;
+        private int high;
+        private int medium;
+        private int low;
+        private int unknown;
+
+        void count(VulnerabilitySeverity severity) {
+            switch (severity) {
+                case CRITICAL -> critical++;
+                case HIGH -> high++;
+                case MEDIUM -> medium++;
+                case LOW -> low++;
+                case UNKNOWN -> unknown++;
+            }
+        }
+
+        ScanSummary toSummary() {
+            return new ScanSummary(totalDependencies, vulnerabilityCount, top.sorted(), critical, high, medium, low, unknown);
+        }
+    }
 
     //results from the dependency check report
-    //Record stores the raw list, sev totals for the final score
+    //Record stores the sev totals for the final score and the top vulnerabilities for the findings
     private record ScanSummary(
             int totalDependencies,
-            List<DependencyVulnerability> vulnerabilities,
+            int vulnerabilityCount,
+            List<DependencyVulnerability> topVulnerabilities,
             int criticalCount,
             int highCount,
             int mediumCount,
@@ -0,0 +1,251 @@
+package com.tool.metrics.security;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+//A maven version, ordered the way maven orders them (1.0-alpha < 1.0-rc1 < 1.0 = 1.0.0 = 1.0-final < 1.0-sp1 < 1.0.1)
+//Same rules as maven's ComparableVersion: the version is split into numbers and qualifiers on '.', '-' and every
+//switch between digits and letters, each '-' (or switch) starts a nested list, trailing zeros and release qualifiers dont count
+final class MavenVersion implements Comparable<MavenVersion> {
+    private final String value;
+    private final ListItem items;
+
+    private MavenVersion(String value, ListItem items) {
+        this.value = value;
+        this.items = items;
+    }
+
+    static MavenVersion parse(String version) {
+        if (version == null || version.isBlank()) {
+            throw new IllegalArgumentException("Version cannot be blank");
+        }
+
+        String lower = version.trim().toLowerCase(Locale.ROOT);
+        ListItem root = new ListItem();
+        ListItem list = root;
+        Deque<ListItem> stack = new ArrayDeque<>();
+        stack.push(list);
+
+        boolean isDigit = false;
+        int start = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '.') {
+                list.add(i == start ? IntItem.ZERO : parseItem(isDigit, lower.substring(start, i)));
+                start = i + 1;
+            } else if (c == '-') {
+                list.add(i == start ? IntItem.ZERO : parseItem(isDigit, lower.substring(start, i)));
+                start = i + 1;
+                ListItem nested = new ListItem();
+                list.add(nested);
+                list = nested;
+                stack.push(list);
+            } else if (Character.isDigit(c)) {
+                if (!isDigit && i > start) {
+                    //1.0alpha1 reads as 1.0-alpha-1
+                    list.add(new StringItem(lower.substring(start, i), true));
+                    start = i;
+                    ListItem nested = new ListItem();
+                    list.add(nested);
+                    list = nested;
+                    stack.push(list);
+                }
+                isDigit = true;
+            } else {
+                if (isDigit && i > start) {
+                    list.add(parseItem(true, lower.substring(start, i)));
+                    start = i;
+                    ListItem nested = new ListItem();
+                    list.add(nested);
+                    list = nested;
+                    stack.push(list);
+                }
+                isDigit = false;
+            }
+        }
+        if (lower.length() > start) {
+            list.add(parseItem(isDigit, lower.substring(start)));
+        }
+
+        while (!stack.isEmpty()) {
+            stack.pop().normalize();
+        }
+        return new MavenVersion(version.trim(), root);
+    }
+
+    private static Item parseItem(boolean isDigit, String token) {
+        return isDigit ? new IntItem(new BigInteger(token)) : new StringItem(token, false);
+    }
+
+    @Override
+    public int compareTo(MavenVersion other) {
+        return items.compareTo(other.items);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MavenVersion version && compareTo(version) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return items.toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    private interface Item {
+        //Compared to nothing, i.e. the other version has no item here. Null items (0, release) compare equal to nothing
+        int compareTo(Item other);
+
+        boolean isNull();
+    }
+
+    private record IntItem(BigInteger number) implements Item {
+        static final IntItem ZERO = new IntItem(BigInteger.ZERO);
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return number.signum() == 0 ? 0 : 1;
+            }
+            if (other instanceof IntItem item) {
+                return number.compareTo(item.number);
+            }
+            //1.1 > 1-sp and 1.1 > 1-1
+            return 1;
+        }
+
+        @Override
+        public boolean isNull() {
+            return number.signum() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return number.toString();
+        }
+    }
+
+    private static final class StringItem implements Item {
+        private static final List<String> QUALIFIERS = List.of("alpha", "beta", "milestone", "rc", "snapshot", "", "sp");
+        private static final String RELEASE_VERSION_INDEX = String.valueOf(QUALIFIERS.indexOf(""));
+
+        private final String value;
+
+        private StringItem(String value, boolean followedByDigit) {
+            if (followedByDigit && value.length() == 1) {
+                //1.0a1 is alpha 1, 1.0b2 beta 2, 1.0m3 milestone 3
+                value = switch (value.charAt(0)) {
+                    case 'a' -> "alpha";
+                    case 'b' -> "beta";
+                    case 'm' -> "milestone";
+                    default -> value;
+                };
+            }
+            this.value = switch (value) {
+                case "ga", "final", "release" -> "";
+                case "cr" -> "rc";
+                default -> value;
+            };
+        }
+
+        //Known qualifiers in their order, unknown ones after all of them in alphabetical order
+        private static String comparableQualifier(String qualifier) {
+            int index = QUALIFIERS.indexOf(qualifier);
+            return index == -1 ? QUALIFIERS.size() + "-" + qualifier : String.valueOf(index);
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return comparableQualifier(value).compareTo(RELEASE_VERSION_INDEX);
+            }
+            if (other instanceof StringItem item) {
+                return comparableQualifier(value).compareTo(comparableQualifier(item.value));
+            }
+            //1-alpha < 1.1 and 1-alpha < 1-1
+            return -1;
+        }
+
+        @Override
+        public boolean isNull() {
+            return value.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final class ListItem implements Item {
+        private final ArrayList<Item> items = new ArrayList<>();
+
+        void add(Item item) {
+            items.add(item);
+        }
+
+        //Drop trailing nulls so 1.0.0 equals 1 and 1-ga equals 1
+        void normalize() {
+            for (int i = items.size() - 1; i >= 0; i--) {
+                Item last = items.get(i);
+                if (last.isNull()) {
+                    items.remove(i);
+                } else if (!(last instanceof ListItem)) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return items.isEmpty() ? 0 : items.get(0).compareTo(null);
+            }
+            if (other instanceof IntItem) {
+                return -1;
+            }
+            if (other instanceof StringItem) {
+                return 1;
+            }
+
+            Iterator<Item> left = items.iterator();
+            Iterator<Item> right = ((ListItem) other).items.iterator();
+            while (left.hasNext() || right.hasNext()) {
+                Item l = left.hasNext() ? left.next() : null;
+                Item r = right.hasNext() ? right.next() : null;
+                int result = l == null ? (r == null ? 0 : -r.compareTo(null)) : l.compareTo(r);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean isNull() {
+            return items.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("(");
+            for (Item item : items) {
+                if (builder.length() > 1) {
+                    builder.append(item instanceof ListItem ? '-' : '.');
+                }
+                builder.append(item);
+            }
+            return builder.append(')').toString();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.tool.metrics.security;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//A maven version range such as [1.0,2.0), (,1.5],[2.0,) or [1.2]. A plain version (1.2) is a soft requirement, it only
+//contains that one version. Used both for dependency versions in poms and for the affected versions of an advisory
+final class MavenVersionRange {
+    private final String spec;
+    private final List<Restriction> restrictions;
+    private final boolean range;
+
+    //One interval, a null bound is unbounded
+    private record Restriction(MavenVersion lower, boolean lowerInclusive, MavenVersion upper, boolean upperInclusive) {
+        boolean contains(MavenVersion version) {
+            if (lower != null) {
+                int compared = version.compareTo(lower);
+                if (compared < 0 || (compared == 0 && !lowerInclusive)) {
+                    return false;
+                }
+            }
+            if (upper != null) {
+                int compared = version.compareTo(upper);
+                if (compared > 0 || (compared == 0 && !upperInclusive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private MavenVersionRange(String spec, List<Restriction> restrictions, boolean range) {
+        this.spec = spec;
+        this.restrictions = restrictions;
+        this.range = range;
+    }
+
+    static MavenVersionRange parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Version range cannot be blank");
+        }
+
+        String remaining = spec.trim();
+        if (remaining.charAt(0) != '[' && remaining.charAt(0) != '(') {
+            MavenVersion version = MavenVersion.parse(remaining);
+            return new MavenVersionRange(remaining, List.of(new Restriction(version, true, version, true)), false);
+        }
+
+        ArrayList<Restriction> restrictions = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            int close = indexOfClose(remaining);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unbounded version range: " + spec);
+            }
+            restrictions.add(parseRestriction(remaining.substring(0, close + 1), spec));
+
+            remaining = remaining.substring(close + 1).trim();
+            if (remaining.startsWith(",")) {
+                remaining = remaining.substring(1).trim();
+            } else if (!remaining.isEmpty()) {
+                throw new IllegalArgumentException("Only ',' may separate version ranges: " + spec);
+            }
+        }
+        return new MavenVersionRange(spec.trim(), List.copyOf(restrictions), true);
+    }
+
+    private static int indexOfClose(String value) {
+        int bracket = value.indexOf(']');
+        int paren = value.indexOf(')');
+        if (bracket < 0) {
+            return paren;
+        }
+        return paren < 0 ? bracket : Math.min(bracket, paren);
+    }
+
+    private static Restriction parseRestriction(String restriction, String spec) {
+        boolean lowerInclusive = restriction.charAt(0) == '[';
+        boolean upperInclusive = restriction.charAt(restriction.length() - 1) == ']';
+        String inner = restriction.substring(1, restriction.length() - 1).trim();
+
+        int comma = inner.indexOf(',');
+        if (comma < 0) {
+            //[1.0] is exactly 1.0
+            if (!lowerInclusive || !upperInclusive || inner.isEmpty()) {
+                throw new IllegalArgumentException("A single version range must be written [version]: " + spec);
+            }
+            MavenVersion version = MavenVersion.parse(inner);
+            return new Restriction(version, true, version, true);
+        }
+
+        String lower = inner.substring(0, comma).trim();
+        String upper = inner.substring(comma + 1).trim();
+        MavenVersion lowerVersion = lower.isEmpty() ? null : MavenVersion.parse(lower);
+        MavenVersion upperVersion = upper.isEmpty() ? null : MavenVersion.parse(upper);
+        if (lowerVersion != null && upperVersion != null && lowerVersion.compareTo(upperVersion) > 0) {
+            throw new IllegalArgumentException("Version range lower bound is above its upper bound: " + spec);
+        }
+        return new Restriction(lowerVersion, lowerInclusive, upperVersion, upperInclusive);
+    }
+
+    //True for bracketed ranges, false for a plain version
+    boolean isRange() {
+        return range;
+    }
+
+    boolean contains(MavenVersion version) {
+        for (Restriction restriction : restrictions) {
+            if (restriction.contains(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //The highest of the given versions inside the range, null if none are
+    MavenVersion highestMatch(Iterable<MavenVersion> versions) {
+        MavenVersion highest = null;
+        for (MavenVersion version : versions) {
+            if (contains(version) && (highest == null || version.compareTo(highest) > 0)) {
+                highest = version;
+            }
+        }
+        return highest;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
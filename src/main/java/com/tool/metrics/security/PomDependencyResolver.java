@@ -0,0 +1,473 @@
+package com.tool.metrics.security;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.tool.util.MavenProjects;
+
+//Works out the dependency coordinates of a maven project without running maven: the pom.xml files of the reactor give the
+//direct dependencies, the poms in the local repository give parents, BOMs and transitive dependencies.
+//Good enough to match against advisories, not a full maven model. Profiles and plugin dependencies are not looked at
+final class PomDependencyResolver {
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+    private static final Set<String> TRANSITIVE_SCOPES = Set.of("compile", "runtime");
+
+    private final Path localRepository;
+    private final Set<String> scopes;
+    private final boolean includeTransitive;
+    // Effective models read from the local repository, keyed by g:a:v. Null when the pom is not there.
+    private final Map<String, Model> repositoryModels = new HashMap<>();
+
+    //A resolved dependency
+    record Coordinate(String groupId, String artifactId, String version) {
+        String key() {
+            return groupId + ":" + artifactId;
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    //What came out: the coordinates and the dependencies whose version could not be worked out
+    record Resolution(List<Coordinate> coordinates, List<String> unresolved) {}
+
+    private record Dependency(String groupId, String artifactId, String version, String scope, String type,
+                              boolean optional, Set<String> exclusions) {}
+
+    //A pom with its parents merged in and its properties filled in
+    private record Model(String groupId, String artifactId, String version, Map<String, String> properties,
+                         List<Dependency> dependencies, Map<String, Dependency> managed) {}
+
+    //A pom as written, before inheritance
+    private record RawPom(Element project, String parentGroupId, String parentArtifactId, String parentVersion,
+                          String parentRelativePath) {}
+
+    PomDependencyResolver(Path localRepository, Set<String> scopes, boolean includeTransitive) {
+        this.localRepository = localRepository;
+        this.scopes = Set.copyOf(scopes);
+        this.includeTransitive = includeTransitive;
+    }
+
+    Resolution resolve(Path projectRoot) throws Exception {
+        List<Path> poms = MavenProjects.findPoms(projectRoot);
+        LinkedHashMap<Path, Model> reactor = new LinkedHashMap<>();
+        for (Path pom : poms) {
+            reactor.put(pom, load(pom));
+        }
+
+        //Modules depending on each other are not third party
+        Set<String> reactorKeys = new HashSet<>();
+        for (Model model : reactor.values()) {
+            reactorKeys.add(model.groupId() + ":" + model.artifactId());
+        }
+
+        LinkedHashMap<String, Coordinate> resolved = new LinkedHashMap<>();
+        List<String> unresolved = new ArrayList<>();
+        ArrayDeque<Pending> queue = new ArrayDeque<>();
+
+        for (Model module : reactor.values()) {
+            for (Dependency dependency : module.dependencies()) {
+                String scope = dependency.scope() == null ? "compile" : dependency.scope();
+                String key = dependency.groupId() + ":" + dependency.artifactId();
+                if (!scopes.contains(scope) || reactorKeys.contains(key) || "pom".equals(dependency.type())) {
+                    continue;
+                }
+                queue.add(new Pending(withManagedVersion(dependency, null, module.managed()), module.managed()));
+            }
+        }
+
+        //Breadth first so the nearest declaration wins, like maven
+        while (!queue.isEmpty()) {
+            Pending pending = queue.poll();
+            Dependency dependency = pending.dependency();
+            String key = dependency.groupId() + ":" + dependency.artifactId();
+            if (resolved.containsKey(key)) {
+                continue;
+            }
+
+            String version = resolveVersion(dependency);
+            if (version == null) {
+                if (!unresolved.contains(key)) {
+                    unresolved.add(key);
+                }
+                continue;
+            }
+            Coordinate coordinate = new Coordinate(dependency.groupId(), dependency.artifactId(), version);
+            resolved.put(key, coordinate);
+
+            if (!includeTransitive) {
+                continue;
+            }
+            Model model = repositoryModel(coordinate.groupId(), coordinate.artifactId(), coordinate.version());
+            if (model == null) {
+                continue;
+            }
+            for (Dependency child : model.dependencies()) {
+                String childKey = child.groupId() + ":" + child.artifactId();
+                String childScope = child.scope() == null ? "compile" : child.scope();
+                if (child.optional() || !TRANSITIVE_SCOPES.contains(childScope) || "pom".equals(child.type())
+                        || excluded(dependency.exclusions(), child) || reactorKeys.contains(childKey)
+                        || resolved.containsKey(childKey)) {
+                    continue;
+                }
+                //The scope it ends up with in the project decides whether it counts, same as a direct one
+                String mediatedScope = mediateScope(dependency.scope(), childScope);
+                if (!scopes.contains(mediatedScope)) {
+                    continue;
+                }
+                //The project's own dependencyManagement beats what the dependency manages itself
+                Dependency managed = withManagedVersion(child, pending.rootManaged(), model.managed());
+                HashSet<String> exclusions = new HashSet<>(dependency.exclusions());
+                exclusions.addAll(managed.exclusions());
+                queue.add(new Pending(new Dependency(managed.groupId(), managed.artifactId(), managed.version(),
+                        mediatedScope, managed.type(), false, exclusions), pending.rootManaged()));
+            }
+        }
+
+        return new Resolution(List.copyOf(resolved.values()), List.copyOf(unresolved));
+    }
+
+    private record Pending(Dependency dependency, Map<String, Dependency> rootManaged) {}
+
+    //Maven's scope table: provided and test stick, runtime beats compile, e.g. a compile dependency of a test one is test
+    private static String mediateScope(String parentScope, String childScope) {
+        String parent = parentScope == null ? "compile" : parentScope;
+        if ("provided".equals(parent) || "test".equals(parent)) {
+            return parent;
+        }
+        return "runtime".equals(parent) || "runtime".equals(childScope) ? "runtime" : "compile";
+    }
+
+    private static boolean excluded(Set<String> exclusions, Dependency dependency) {
+        return exclusions.contains(dependency.groupId() + ":" + dependency.artifactId())
+                || exclusions.contains(dependency.groupId() + ":*")
+                || exclusions.contains("*:" + dependency.artifactId())
+                || exclusions.contains("*:*");
+    }
+
+    private static Dependency withManagedVersion(Dependency dependency, Map<String, Dependency> first, Map<String, Dependency> second) {
+        String key = dependency.groupId() + ":" + dependency.artifactId();
+        Dependency managed = first == null ? null : first.get(key);
+        if (managed == null || managed.version() == null) {
+            //Without an override the version written on the dependency counts, then the dependency's own management
+            if (dependency.version() != null) {
+                return dependency;
+            }
+            managed = second == null ? null : second.get(key);
+        }
+        if (managed == null || managed.version() == null) {
+            return dependency;
+        }
+
+        HashSet<String> exclusions = new HashSet<>(dependency.exclusions());
+        exclusions.addAll(managed.exclusions());
+        return new Dependency(dependency.groupId(), dependency.artifactId(), managed.version(), dependency.scope(),
+                dependency.type(), dependency.optional(), exclusions);
+    }
+
+    //A plain version as is, a range becomes the highest version of it in the local repository
+    private String resolveVersion(Dependency dependency) {
+        String version = dependency.version();
+        if (version == null || version.isBlank() || version.contains("${")) {
+            return null;
+        }
+
+        MavenVersionRange range;
+        try {
+            range = MavenVersionRange.parse(version);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!range.isRange()) {
+            return version.trim();
+        }
+
+        MavenVersion highest = range.highestMatch(installedVersions(dependency.groupId(), dependency.artifactId()));
+        return highest == null ? null : highest.toString();
+    }
+
+    private List<MavenVersion> installedVersions(String groupId, String artifactId) {
+        Path artifactDir = artifactDir(groupId, artifactId);
+        List<MavenVersion> versions = new ArrayList<>();
+        if (!Files.isDirectory(artifactDir)) {
+            return versions;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(artifactDir, Files::isDirectory)) {
+            for (Path entry : entries) {
+                try {
+                    versions.add(MavenVersion.parse(entry.getFileName().toString()));
+                } catch (IllegalArgumentException e) {
+                    //Not a version folder
+                }
+            }
+        } catch (IOException e) {
+            //Treated as not installed
+        }
+        return versions;
+    }
+
+    private Path artifactDir(String groupId, String artifactId) {
+        return localRepository.resolve(groupId.replace('.', '/')).resolve(artifactId);
+    }
+
+    private Model repositoryModel(String groupId, String artifactId, String version) throws Exception {
+        String key = groupId + ":" + artifactId + ":" + version;
+        if (repositoryModels.containsKey(key)) {
+            return repositoryModels.get(key);
+        }
+
+        //Put first so a parent cycle ends here
+        repositoryModels.put(key, null);
+        Path pom = artifactDir(groupId, artifactId).resolve(version).resolve(artifactId + "-" + version + ".pom");
+        Model model = Files.isRegularFile(pom) ? load(pom) : null;
+        repositoryModels.put(key, model);
+        return model;
+    }
+
+    //Reads a pom with everything it inherits
+    private Model load(Path pomPath) throws Exception {
+        RawPom raw = read(pomPath);
+        Model parent = null;
+        if (raw.parentArtifactId() != null) {
+            parent = parentFromRelativePath(pomPath, raw);
+            if (parent == null && raw.parentVersion() != null) {
+                parent = repositoryModel(raw.parentGroupId(), raw.parentArtifactId(), raw.parentVersion());
+            }
+        }
+
+        Element project = raw.project();
+        String groupId = firstNonNull(childText(project, "groupId"), raw.parentGroupId());
+        String artifactId = childText(project, "artifactId");
+        String version = firstNonNull(childText(project, "version"), raw.parentVersion());
+
+        LinkedHashMap<String, String> properties = new LinkedHashMap<>();
+        if (parent != null) {
+            properties.putAll(parent.properties());
+        }
+        Element propertiesElement = child(project, "properties");
+        if (propertiesElement != null) {
+            for (Element property : children(propertiesElement)) {
+                properties.put(property.getTagName(), property.getTextContent().trim());
+            }
+        }
+        putIfPresent(properties, "project.groupId", groupId);
+        putIfPresent(properties, "project.artifactId", artifactId);
+        putIfPresent(properties, "project.version", version);
+        putIfPresent(properties, "pom.version", version);
+        putIfPresent(properties, "project.parent.groupId", raw.parentGroupId());
+        putIfPresent(properties, "project.parent.version", raw.parentVersion());
+
+        groupId = interpolate(groupId, properties);
+        version = interpolate(version, properties);
+
+        LinkedHashMap<String, Dependency> managed = new LinkedHashMap<>();
+        Element management = child(project, "dependencyManagement");
+        List<Dependency> ownManaged = management == null ? List.of() : dependencies(child(management, "dependencies"), properties);
+        for (Dependency dependency : ownManaged) {
+            if ("import".equals(dependency.scope()) && "pom".equals(dependency.type())) {
+                //A BOM, its managed versions count as if written here, after the ones that are
+                Model bom = dependency.version() == null
+                        ? null
+                        : repositoryModel(dependency.groupId(), dependency.artifactId(), dependency.version());
+                if (bom != null) {
+                    bom.managed().forEach(managed::putIfAbsent);
+                }
+                continue;
+            }
+            managed.put(dependency.groupId() + ":" + dependency.artifactId(), dependency);
+        }
+        if (parent != null) {
+            parent.managed().forEach(managed::putIfAbsent);
+        }
+
+        List<Dependency> dependencies = new ArrayList<>();
+        if (parent != null) {
+            dependencies.addAll(parent.dependencies());
+        }
+        dependencies.addAll(dependencies(child(project, "dependencies"), properties));
+
+        return new Model(groupId, artifactId, version, properties, dependencies, managed);
+    }
+
+    //The parent pom in the reactor, if the relative path (../pom.xml by default) is the parent that is asked for
+    private Model parentFromRelativePath(Path pomPath, RawPom raw) throws Exception {
+        String relativePath = raw.parentRelativePath() == null ? "../pom.xml" : raw.parentRelativePath();
+        if (relativePath.isBlank()) {
+            return null;
+        }
+
+        Path parentPom = pomPath.toAbsolutePath().getParent().resolve(relativePath).normalize();
+        if (Files.isDirectory(parentPom)) {
+            parentPom = parentPom.resolve("pom.xml");
+        }
+        if (!Files.isRegularFile(parentPom)) {
+            return null;
+        }
+
+        RawPom parent = read(parentPom);
+        String parentGroupId = firstNonNull(childText(parent.project(), "groupId"), parent.parentGroupId());
+        if (!raw.parentArtifactId().equals(childText(parent.project(), "artifactId"))
+                || (raw.parentGroupId() != null && !raw.parentGroupId().equals(parentGroupId))) {
+            return null;
+        }
+        return load(parentPom);
+    }
+
+    private static List<Dependency> dependencies(Element dependenciesElement, Map<String, String> properties) {
+        List<Dependency> dependencies = new ArrayList<>();
+        if (dependenciesElement == null) {
+            return dependencies;
+        }
+
+        for (Element dependency : children(dependenciesElement)) {
+            if (!"dependency".equals(dependency.getTagName())) {
+                continue;
+            }
+            String groupId = interpolate(childText(dependency, "groupId"), properties);
+            String artifactId = interpolate(childText(dependency, "artifactId"), properties);
+            if (groupId == null || artifactId == null) {
+                continue;
+            }
+
+            Set<String> exclusions = new HashSet<>();
+            Element exclusionsElement = child(dependency, "exclusions");
+            if (exclusionsElement != null) {
+                for (Element exclusion : children(exclusionsElement)) {
+                    exclusions.add(firstNonNull(childText(exclusion, "groupId"), "*") + ":"
+                            + firstNonNull(childText(exclusion, "artifactId"), "*"));
+                }
+            }
+
+            dependencies.add(new Dependency(
+                    groupId,
+                    artifactId,
+                    interpolate(childText(dependency, "version"), properties),
+                    interpolate(childText(dependency, "scope"), properties),
+                    firstNonNull(interpolate(childText(dependency, "type"), properties), "jar"),
+                    "true".equals(interpolate(childText(dependency, "optional"), properties)),
+                    exclusions
+            ));
+        }
+        return dependencies;
+    }
+
+    //Fills in ${...}, properties may use other properties. Unknown ones are left as they are
+    private static String interpolate(String value, Map<String, String> properties) {
+        if (value == null) {
+            return null;
+        }
+
+        String current = value;
+        for (int depth = 0; depth < 10 && current.contains("${"); depth++) {
+            Matcher matcher = PROPERTY.matcher(current);
+            StringBuilder replaced = new StringBuilder();
+            boolean changed = false;
+            while (matcher.find()) {
+                String replacement = properties.get(matcher.group(1));
+                if (replacement != null) {
+                    changed = true;
+                }
+                matcher.appendReplacement(replaced, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+            }
+            matcher.appendTail(replaced);
+            current = replaced.toString();
+            if (!changed) {
+                break;
+            }
+        }
+        return current;
+    }
+
+    private static RawPom read(Path pomPath) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        //Poms come from anywhere, no DTDs or external entities
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        factory.setExpandEntityReferences(false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        //Errors end up in the exception, not on stderr
+        builder.setErrorHandler(new DefaultHandler());
+
+        Document document;
+        try {
+            document = builder.parse(pomPath.toFile());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not read " + pomPath + ": " + e.getMessage(), e);
+        }
+
+        Element project = document.getDocumentElement();
+        Element parent = child(project, "parent");
+        return new RawPom(
+                project,
+                parent == null ? null : childText(parent, "groupId"),
+                parent == null ? null : childText(parent, "artifactId"),
+                parent == null ? null : childText(parent, "version"),
+                parent == null ? null : childText(parent, "relativePath")
+        );
+    }
+
+    private static Element child(Element parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        for (Element element : children(parent)) {
+            if (name.equals(element.getTagName())) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    private static String childText(Element parent, String name) {
+        Element element = child(parent, name);
+        if (element == null) {
+            return null;
+        }
+        String text = element.getTextContent().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static void putIfPresent(Map<String, String> properties, String key, String value) {
+        if (value != null) {
+            properties.put(key, value);
+        }
+    }
+
+    private static String firstNonNull(String first, String second) {
+        return first != null ? first : second;
+    }
+}
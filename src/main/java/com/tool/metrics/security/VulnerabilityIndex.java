@@ -0,0 +1,543 @@
+package com.tool.metrics.security;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+//Advisories for maven packages, kept on disk as one sorted file that is memory mapped, so a lookup is a binary search over
+//the package table plus decoding the few advisories of that package. Built from an OSV dump (e.g. osv.dev's Maven/all.zip).
+//
+//Layout, big endian:
+//  header    int magic, int version, int package count
+//  table     per package, sorted by the UTF-8 bytes of groupId:artifactId: int key offset, int key length,
+//            int first advisory offset, int advisory count
+//  keys      the package keys
+//  advisories per advisory: str id, str severity, float cvss (NaN if unknown), str description,
+//            str affected ranges (maven range syntax, empty if none), short version count, str versions...
+//  (str is an unsigned short length and that many UTF-8 bytes)
+final class VulnerabilityIndex {
+    private static final int MAGIC = 0x51415649; // "QAVI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int TABLE_ENTRY_BYTES = 16;
+    private static final int MAX_DESCRIPTION_CHARS = 1000;
+    // Opened indexes, reopened when the file changes.
+    private static final Map<Path, VulnerabilityIndex> OPEN = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final FileTime modified;
+    private final MappedByteBuffer buffer;
+    private final int packageCount;
+
+    //One advisory as it applies to one package
+    record Advisory(String id, String severity, Double cvssScore, String description, String ranges, List<String> versions) {
+        boolean affects(MavenVersion version) {
+            return (!ranges.isEmpty() && MavenVersionRange.parse(ranges).contains(version))
+                    || versions.contains(version.toString());
+        }
+    }
+
+    private VulnerabilityIndex(Path path, FileTime modified, MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a vulnerability index: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Vulnerability index " + path + " has version " + buffer.getInt(4) + ", rebuild it from the OSV dump");
+        }
+        this.path = path;
+        this.modified = modified;
+        this.buffer = buffer;
+        this.packageCount = buffer.getInt(8);
+    }
+
+    //Opens the index, building it first from the dump when there is one and the index is missing or older than it
+    static synchronized VulnerabilityIndex load(Path indexPath, Path osvDump) throws IOException {
+        Path path = indexPath.toAbsolutePath().normalize();
+        if (osvDump != null) {
+            if (!Files.exists(osvDump)) {
+                throw new IllegalArgumentException("OSV dump not found: " + osvDump);
+            }
+            if (!Files.exists(path) || newestModification(osvDump).compareTo(Files.getLastModifiedTime(path)) > 0) {
+                System.out.println("[SECURITY] Building vulnerability index " + path + " from " + osvDump);
+                build(osvDump, path);
+            }
+        }
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Vulnerability index not found: " + path + ". Set osv_dump to build it.");
+        }
+
+        FileTime modified = Files.getLastModifiedTime(path);
+        VulnerabilityIndex open = OPEN.get(path);
+        if (open != null && open.modified.equals(modified)) {
+            return open;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //The mapping stays valid after the channel is closed
+            VulnerabilityIndex index = new VulnerabilityIndex(path, modified, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            OPEN.put(path, index);
+            return index;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int packageCount() {
+        return packageCount;
+    }
+
+    //Advisories for groupId:artifactId, empty if there are none
+    List<Advisory> lookup(String packageKey) {
+        byte[] key = packageKey.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = packageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_BYTES + middle * TABLE_ENTRY_BYTES;
+            int compared = compareKey(buffer.getInt(entry), buffer.getInt(entry + 4), key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return readAdvisories(buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+            }
+        }
+        return List.of();
+    }
+
+    private int compareKey(int offset, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int compared = Byte.toUnsignedInt(buffer.get(offset + i)) - Byte.toUnsignedInt(key[i]);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return length - key.length;
+    }
+
+    private List<Advisory> readAdvisories(int offset, int count) {
+        int[] position = {offset};
+        List<Advisory> advisories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = readString(position);
+            String severity = readString(position);
+            float cvss = buffer.getFloat(position[0]);
+            position[0] += 4;
+            String description = readString(position);
+            String ranges = readString(position);
+            int versionCount = Short.toUnsignedInt(buffer.getShort(position[0]));
+            position[0] += 2;
+            List<String> versions = new ArrayList<>(versionCount);
+            for (int v = 0; v < versionCount; v++) {
+                versions.add(readString(position));
+            }
+            advisories.add(new Advisory(
+                    id,
+                    severity.isEmpty() ? null : severity,
+                    Float.isNaN(cvss) ? null : (double) cvss,
+                    description,
+                    ranges,
+                    versions
+            ));
+        }
+        return advisories;
+    }
+
+    private String readString(int[] position) {
+        int length = Short.toUnsignedInt(buffer.getShort(position[0]));
+        byte[] bytes = new byte[length];
+        buffer.get(position[0] + 2, bytes);
+        position[0] += 2 + length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Reads every advisory of the dump (a folder of .json files, a .zip of them, or one .json file holding one advisory
+    //or an array of them) and writes the index. Written to a temp file and moved in place, readers never see half an index
+    static void build(Path osvDump, Path indexPath) throws IOException {
+        HashMap<String, List<Advisory>> byPackage = new HashMap<>();
+
+        if (Files.isDirectory(osvDump)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(osvDump)) {
+                files = walk.filter(file -> file.getFileName().toString().endsWith(".json")).sorted().toList();
+            }
+            for (Path file : files) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    readAdvisories(reader, byPackage);
+                }
+            }
+        } else if (osvDump.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(osvDump.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().endsWith(".json")) {
+                        continue;
+                    }
+                    try (Reader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+                        readAdvisories(reader, byPackage);
+                    }
+                }
+            }
+        } else {
+            try (Reader reader = Files.newBufferedReader(osvDump, StandardCharsets.UTF_8)) {
+                readAdvisories(reader, byPackage);
+            }
+        }
+
+        write(byPackage, indexPath);
+    }
+
+    private static void readAdvisories(Reader reader, Map<String, List<Advisory>> byPackage) {
+        JSONTokener tokener = new JSONTokener(reader);
+        char first = tokener.nextClean();
+        if (first == '[') {
+            //One element at a time, an array of the whole ecosystem is big
+            if (tokener.nextClean() == ']') {
+                return;
+            }
+            tokener.back();
+            while (true) {
+                Object value = tokener.nextValue();
+                if (value instanceof JSONObject advisory) {
+                    addAdvisory(advisory, byPackage);
+                }
+                char next = tokener.nextClean();
+                if (next == ']') {
+                    return;
+                }
+                if (next != ',') {
+                    throw tokener.syntaxError("Expected ',' or ']'");
+                }
+            }
+        }
+        tokener.back();
+        if (tokener.nextValue() instanceof JSONObject advisory) {
+            addAdvisory(advisory, byPackage);
+        }
+    }
+
+    //One OSV advisory, one entry per maven package it affects
+    private static void addAdvisory(JSONObject osv, Map<String, List<Advisory>> byPackage) {
+        JSONArray affected = osv.optJSONArray("affected");
+        if (affected == null || osv.has("withdrawn")) {
+            return;
+        }
+
+        String id = osv.optString("id", "UNKNOWN");
+        //Findings are by CVE where there is one
+        JSONArray aliases = osv.optJSONArray("aliases");
+        if (aliases != null) {
+            for (int i = 0; i < aliases.length(); i++) {
+                if (aliases.optString(i, "").startsWith("CVE-")) {
+                    id = aliases.getString(i);
+                    break;
+                }
+            }
+        }
+
+        String description = osv.optString("summary", "").isBlank() ? osv.optString("details", "") : osv.optString("summary");
+        description = description.isBlank() ? "No description provided." : description.strip();
+        if (description.length() > MAX_DESCRIPTION_CHARS) {
+            description = description.substring(0, MAX_DESCRIPTION_CHARS) + "...";
+        }
+
+        JSONObject databaseSpecific = osv.optJSONObject("database_specific");
+        String advisorySeverity = databaseSpecific == null ? null : databaseSpecific.optString("severity", null);
+        Double cvss = cvssScore(osv.optJSONArray("severity"));
+
+        for (int i = 0; i < affected.length(); i++) {
+            JSONObject entry = affected.optJSONObject(i);
+            JSONObject affectedPackage = entry == null ? null : entry.optJSONObject("package");
+            if (affectedPackage == null || !"Maven".equalsIgnoreCase(affectedPackage.optString("ecosystem"))) {
+                continue;
+            }
+            String name = affectedPackage.optString("name", "");
+            if (name.indexOf(':') < 0) {
+                continue;
+            }
+
+            JSONObject ecosystemSpecific = entry.optJSONObject("ecosystem_specific");
+            String severity = ecosystemSpecific != null && ecosystemSpecific.has("severity")
+                    ? ecosystemSpecific.optString("severity")
+                    : advisorySeverity;
+            Double packageCvss = entry.has("severity") ? cvssScore(entry.optJSONArray("severity")) : cvss;
+
+            List<String> versions = new ArrayList<>();
+            JSONArray versionArray = entry.optJSONArray("versions");
+            if (versionArray != null) {
+                for (int v = 0; v < versionArray.length() && versions.size() < 0xFFFF; v++) {
+                    String version = versionArray.optString(v, "");
+                    if (!version.isBlank()) {
+                        versions.add(version);
+                    }
+                }
+            }
+
+            String ranges = ranges(entry.optJSONArray("ranges"));
+            if (ranges.isEmpty() && versions.isEmpty()) {
+                continue;
+            }
+            byPackage.computeIfAbsent(name, key -> new ArrayList<>())
+                    .add(new Advisory(id, severity, packageCvss, description, ranges, versions));
+        }
+    }
+
+    //OSV range events (introduced, fixed, last_affected, limit) as maven ranges, e.g. [1.0,1.2.3),[2.0,2.0.5)
+    private static String ranges(JSONArray ranges) {
+        if (ranges == null) {
+            return "";
+        }
+
+        List<String> restrictions = new ArrayList<>();
+        for (int i = 0; i < ranges.length(); i++) {
+            JSONObject range = ranges.optJSONObject(i);
+            //GIT ranges are commits, not versions
+            if (range == null || "GIT".equals(range.optString("type"))) {
+                continue;
+            }
+            JSONArray events = range.optJSONArray("events");
+            if (events == null) {
+                continue;
+            }
+
+            String introduced = null;
+            for (int e = 0; e < events.length(); e++) {
+                JSONObject event = events.optJSONObject(e);
+                if (event == null) {
+                    continue;
+                }
+                if (event.has("introduced")) {
+                    introduced = event.optString("introduced");
+                } else if (introduced != null && (event.has("fixed") || event.has("limit"))) {
+                    restrictions.add(lowerBound(introduced) + "," + event.optString(event.has("fixed") ? "fixed" : "limit") + ")");
+                    introduced = null;
+                } else if (introduced != null && event.has("last_affected")) {
+                    restrictions.add(lowerBound(introduced) + "," + event.optString("last_affected") + "]");
+                    introduced = null;
+                }
+            }
+            if (introduced != null) {
+                restrictions.add(lowerBound(introduced) + ",)");
+            }
+        }
+
+        //A broken range in the dump must not break every lookup of that package later
+        restrictions.removeIf(restriction -> {
+            try {
+                MavenVersionRange.parse(restriction);
+                return false;
+            } catch (IllegalArgumentException e) {
+                return true;
+            }
+        });
+        return String.join(",", restrictions);
+    }
+
+    private static String lowerBound(String introduced) {
+        return introduced.isBlank() || "0".equals(introduced) ? "(" : "[" + introduced;
+    }
+
+    //A numeric score if OSV has one, else the base score of a CVSS v3 vector. V2 and v4 vectors are left unknown
+    private static Double cvssScore(JSONArray severities) {
+        if (severities == null) {
+            return null;
+        }
+        for (int i = 0; i < severities.length(); i++) {
+            JSONObject severity = severities.optJSONObject(i);
+            if (severity == null) {
+                continue;
+            }
+            String score = severity.optString("score", "");
+            try {
+                return Double.parseDouble(score);
+            } catch (NumberFormatException e) {
+                //A vector
+            }
+            if (score.startsWith("CVSS:3.")) {
+                Double base = cvssV3BaseScore(score);
+                if (base != null) {
+                    return base;
+                }
+            }
+        }
+        return null;
+    }
+
+    //CVSS v3.0/v3.1 base score from its vector, per the FIRST specification. Null if a base metric is missing
+    static Double cvssV3BaseScore(String vector) {
+        HashMap<String, String> metrics = new HashMap<>();
+        for (String part : vector.split("/")) {
+            int colon = part.indexOf(':');
+            if (colon > 0) {
+                metrics.put(part.substring(0, colon), part.substring(colon + 1));
+            }
+        }
+
+        boolean scopeChanged = "C".equals(metrics.get("S"));
+        Double attackVector = weight(metrics.get("AV"), "N", 0.85, "A", 0.62, "L", 0.55, "P", 0.2);
+        Double attackComplexity = weight(metrics.get("AC"), "L", 0.77, "H", 0.44);
+        Double privileges = weight(metrics.get("PR"), "N", 0.85, "L", scopeChanged ? 0.68 : 0.62, "H", scopeChanged ? 0.5 : 0.27);
+        Double userInteraction = weight(metrics.get("UI"), "N", 0.85, "R", 0.62);
+        Double confidentiality = weight(metrics.get("C"), "H", 0.56, "L", 0.22, "N", 0.0);
+        Double integrity = weight(metrics.get("I"), "H", 0.56, "L", 0.22, "N", 0.0);
+        Double availability = weight(metrics.get("A"), "H", 0.56, "L", 0.22, "N", 0.0);
+        if (Arrays.asList(attackVector, attackComplexity, privileges, userInteraction, confidentiality, integrity, availability).contains(null)
+                || !metrics.containsKey("S")) {
+            return null;
+        }
+
+        double impactSubScore = 1 - (1 - confidentiality) * (1 - integrity) * (1 - availability);
+        double impact = scopeChanged
+                ? 7.52 * (impactSubScore - 0.029) - 3.25 * Math.pow(impactSubScore - 0.02, 15)
+                : 6.42 * impactSubScore;
+        double exploitability = 8.22 * attackVector * attackComplexity * privileges * userInteraction;
+        if (impact <= 0) {
+            return 0.0;
+        }
+        return roundUp(Math.min((scopeChanged ? 1.08 : 1.0) * (impact + exploitability), 10));
+    }
+
+    private static Double weight(String value, Object... choices) {
+        for (int i = 0; i < choices.length; i += 2) {
+            if (choices[i].equals(value)) {
+                return (Double) choices[i + 1];
+            }
+        }
+        return null;
+    }
+
+    //The spec's Roundup, to one decimal and without floating point surprises
+    private static double roundUp(double value) {
+        long scaled = Math.round(value * 100_000);
+        if (scaled % 10_000 == 0) {
+            return scaled / 100_000.0;
+        }
+        return (Math.floorDiv(scaled, 10_000) + 1) / 10.0;
+    }
+
+    private static void write(Map<String, List<Advisory>> byPackage, Path indexPath) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (String key : byPackage.keySet()) {
+            keys.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        keys.sort(Arrays::compareUnsigned);
+
+        int keysStart = HEADER_BYTES + keys.size() * TABLE_ENTRY_BYTES;
+        int keysLength = keys.stream().mapToInt(key -> key.length).sum();
+
+        ByteArrayOutputStream advisoryBytes = new ByteArrayOutputStream();
+        DataOutputStream advisories = new DataOutputStream(advisoryBytes);
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream table = new DataOutputStream(tableBytes);
+
+        int keyOffset = keysStart;
+        for (byte[] key : keys) {
+            List<Advisory> packageAdvisories = byPackage.get(new String(key, StandardCharsets.UTF_8));
+            table.writeInt(keyOffset);
+            table.writeInt(key.length);
+            table.writeInt(keysStart + keysLength + advisories.size());
+            table.writeInt(packageAdvisories.size());
+            keyOffset += key.length;
+
+            for (Advisory advisory : packageAdvisories) {
+                writeString(advisories, advisory.id());
+                writeString(advisories, advisory.severity() == null ? "" : advisory.severity());
+                advisories.writeFloat(advisory.cvssScore() == null ? Float.NaN : advisory.cvssScore().floatValue());
+                writeString(advisories, advisory.description());
+                writeString(advisories, advisory.ranges());
+                advisories.writeShort(advisory.versions().size());
+                for (String version : advisory.versions()) {
+                    writeString(advisories, version);
+                }
+            }
+        }
+
+        Path parent = indexPath.getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, ".vulnerability-index-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(keys.size());
+                tableBytes.writeTo(out);
+                for (byte[] key : keys) {
+                    out.write(key);
+                }
+                advisoryBytes.writeTo(out);
+            }
+            try {
+                Files.move(temp, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    //Length prefixed UTF-8, cut to what an unsigned short can count
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > 0xFFFF) {
+            length = 0xFFFF;
+            //Do not cut a multi byte character in half
+            while ((bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        out.writeShort(length);
+        out.write(bytes, 0, length);
+    }
+
+    //When the dump last changed, for a folder the newest file in it
+    private static FileTime newestModification(Path osvDump) throws IOException {
+        if (!Files.isDirectory(osvDump)) {
+            return Files.getLastModifiedTime(osvDump);
+        }
+        FileTime newest = Files.getLastModifiedTime(osvDump);
+        try (Stream<Path> walk = Files.walk(osvDump)) {
+            for (Path file : (Iterable<Path>) walk::iterator) {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (modified.compareTo(newest) > 0) {
+                    newest = modified;
+                }
+            }
+        }
+        return newest;
+    }
+}
@@ -1,11 +1,15 @@
 package com.tool.reports;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 import com.tool.app.AuditResult;
 import com.tool.domain.Category;
@@ -17,12 +21,20 @@ import com.tool.metrics.MetricResult;
 import com.tool.metrics.availability.PortabilityPassRateMetric;
 import com.tool.util.ResourceUtil;
 
+/**
+ * Writes the HTML report straight to the report file while it walks categories, metrics and findings,
+ * so memory use does not grow with the number of findings.
+ */
 public class HTMLReportWriter extends ReportWriter {
     private static final String PROJECT_WIDE_FILE = "project-wide";
     private static final String PROJECT_WIDE_LABEL = "Project Wide";
+    private static final Pattern LOCATION_SUFFIX = Pattern.compile(":(\\d+)(?::\\d+)?$");
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    private final StringBuilder htmlContent;
-    private final Path projectRoot;
+    // Highest first, the order findings are listed in.
+    private static final Severity[] SEVERITY_ORDER = Severity.values();
+
+    private final Path normalizedProjectRoot;
 
     public HTMLReportWriter(Path reportPath) {
         this(reportPath, null);
@@ -30,16 +42,32 @@ public class HTMLReportWriter extends ReportWriter {
 
     public HTMLReportWriter(Path reportPath, Path projectRoot) {
         super(reportPath);
-        this.htmlContent = new StringBuilder();
-        this.projectRoot = projectRoot;
+        this.normalizedProjectRoot = projectRoot == null ? null : projectRoot.toAbsolutePath().normalize();
     }
 
     public void writeReport(AuditResult auditResult) throws Exception {
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+
+        try (Writer out = new BufferedWriter(
+            new OutputStreamWriter(Files.newOutputStream(reportPath), StandardCharsets.UTF_8),
+            BUFFER_SIZE
+        )) {
+            writeDocument(out, auditResult);
+        }
 
-        writeHTMLContent(auditResult);
+        // Copy css
+        Path cssPath = reportPath.getParent().resolve("quality-report.css");
+        Files.copy(
+            ResourceUtil.getResourcePath("HTMLReport.css"),
+            cssPath,
+            java.nio.file.StandardCopyOption.REPLACE_EXISTING
+        );
+}
 
-        StringBuilder html = new StringBuilder();
-        html.append("""
+    private void writeDocument(Writer out, AuditResult auditResult) throws IOException {
+        out.write("""
                 <!doctype html>
                 <html lang="en">
                 <head>
@@ -64,9 +92,9 @@ public class HTMLReportWriter extends ReportWriter {
                             <div class="sidebar-label">Inspection Modules</div>
                 """);
 
-        html.append(htmlContent);
+        writeHTMLContent(out, auditResult);
 
-        html.append("""
+        out.write("""
                     </div>
 
                     <a href="#" class="go-top" id="goTop" aria-label="Back to top">&#8593;</a>
@@ -84,59 +112,45 @@ public class HTMLReportWriter extends ReportWriter {
                 </body>
                 </html>
                 """);
+    }
 
-        if (reportPath.getParent() != null) {
-            Files.createDirectories(reportPath.getParent());
-        }
-
-        Files.writeString(reportPath, html.toString());
-
-        // Copy css
-        Path cssPath = reportPath.getParent().resolve("quality-report.css");
-        Files.copy(
-            ResourceUtil.getResourcePath("HTMLReport.css"),
-            cssPath,
-            java.nio.file.StandardCopyOption.REPLACE_EXISTING
-        );
-}
-
-    private void writeHTMLContent(AuditResult auditResult) {
+    private void writeHTMLContent(Writer out, AuditResult auditResult) throws IOException {
         List<Category> categories = auditResult.categories();
 
         if (categories.isEmpty()) {
-            writeEmptyState();
+            writeEmptyState(out);
             return;
         }
 
-        writeSidebarLinks(categories);
-        htmlContent.append("</nav><main class='main'>");
-        writePageHeader();
-        writeCategorySections(auditResult, categories);
-        htmlContent.append("</main>");
+        writeSidebarLinks(out, categories);
+        out.write("</nav><main class='main'>");
+        writePageHeader(out);
+        writeCategorySections(out, auditResult, categories);
+        out.write("</main>");
     }
 
-    private void writeEmptyState() {
-        htmlContent.append("</nav><main class='main'>");
-        htmlContent.append("<div class='empty'>No project data</div>");
-        htmlContent.append("</main>");
+    private void writeEmptyState(Writer out) throws IOException {
+        out.write("</nav><main class='main'>");
+        out.write("<div class='empty'>No project data</div>");
+        out.write("</main>");
     }
 
-    private void writeSidebarLinks(List<Category> categories) {
+    private void writeSidebarLinks(Writer out, List<Category> categories) throws IOException {
         int idx = 0;
         for (Category category : categories) {
             idx++;
-            htmlContent.append("<a href='#cat-")
-                    .append(categoryAnchor(category))
-                    .append("' class='sidebar-link'>")
-                    .append(String.format("%02d", idx))
-                    .append(" &nbsp;")
-                    .append(escapeHtml(category.name()))
-                    .append("</a>");
+            out.write("<a href='#cat-");
+            out.write(categoryAnchor(category));
+            out.write("' class='sidebar-link'>");
+            writeTwoDigits(out, idx);
+            out.write(" &nbsp;");
+            escapeHtml(out, category.name());
+            out.write("</a>");
         }
     }
 
-    private void writePageHeader() {
-        htmlContent.append("""
+    private void writePageHeader(Writer out) throws IOException {
+        out.write("""
                 <div class='page-header'>
                     <div class='page-eyebrow'>Diagnostic Report</div>
                     <div class='page-title'>Software Quality<br><span>Audit Report</span></div>
@@ -144,175 +158,196 @@ public class HTMLReportWriter extends ReportWriter {
                 """);
     }
 
-    private void writeCategorySections(AuditResult auditResult, List<Category> categories) {
+    private void writeCategorySections(Writer out, AuditResult auditResult, List<Category> categories) throws IOException {
         int catIdx = 0;
         for (Category category : categories) {
             if (catIdx != 0) {
-                htmlContent.append("</div>");
+                out.write("</div>");
             }
             catIdx++;
-            writeCategorySection(auditResult, category, catIdx);
+            writeCategorySection(out, auditResult, category, catIdx);
         }
-        htmlContent.append("</div>");
+        out.write("</div>");
     }
 
-    private void writeCategorySection(AuditResult auditResult, Category category, int catIdx) {
-        htmlContent.append("<div class='category-section'>");
-        writeCategoryHeader(category, catIdx);
-        htmlContent.append("<div class='category-desc'>")
-                .append(escapeHtml(category.description()))
-                .append("</div>");
+    private void writeCategorySection(Writer out, AuditResult auditResult, Category category, int catIdx) throws IOException {
+        out.write("<div class='category-section'>");
+        writeCategoryHeader(out, category, catIdx);
+        out.write("<div class='category-desc'>");
+        escapeHtml(out, category.description());
+        out.write("</div>");
 
         for (MetricResult metricResult : auditResult.resultsFor(category)) {
-            writeMetricCard(metricResult);
+            writeMetricCard(out, metricResult);
         }
     }
 
-    private void writeCategoryHeader(Category category, int catIdx) {
-        htmlContent.append("<div class='category-header' id='cat-")
-                .append(categoryAnchor(category))
-                .append("'>");
-        htmlContent.append("<span class='category-number'>")
-                .append(String.format("%02d", catIdx))
-                .append("</span>");
-        htmlContent.append("<span class='category-title'>")
-                .append(escapeHtml(category.name()))
-                .append("</span>");
-        htmlContent.append("<div class='category-rule'></div>");
-        htmlContent.append("</div>");
+    private void writeCategoryHeader(Writer out, Category category, int catIdx) throws IOException {
+        out.write("<div class='category-header' id='cat-");
+        out.write(categoryAnchor(category));
+        out.write("'>");
+        out.write("<span class='category-number'>");
+        writeTwoDigits(out, catIdx);
+        out.write("</span>");
+        out.write("<span class='category-title'>");
+        escapeHtml(out, category.name());
+        out.write("</span>");
+        out.write("<div class='category-rule'></div>");
+        out.write("</div>");
     }
 
-    private void writeMetricCard(MetricResult metricResult) {
+    private void writeMetricCard(Writer out, MetricResult metricResult) throws IOException {
         Metric metric = metricResult.metric();
         Threshold highestThreshold = metricResult.mostSevereThreshold();
-        String sevClass = severityClass(highestThreshold);
+        String sevClass = metricResult.failed() ? "sev-critical" : severityClass(highestThreshold);
 
-        htmlContent.append("<div class='metric-card ").append(sevClass).append("'>");
-        writeMetricHeader(metric, metricResult, highestThreshold);
-        htmlContent.append("<p class='metric-description'>")
-                .append(escapeHtml(metric.description()))
-                .append("</p>");
+        out.write("<div class='metric-card ");
+        out.write(sevClass);
+        out.write("'>");
+        writeMetricHeader(out, metric, metricResult, highestThreshold);
+        out.write("<p class='metric-description'>");
+        escapeHtml(out, metric.description());
+        out.write("</p>");
 
-        writeMetricThresholds(metricResult);
+        writeMetricThresholds(out, metricResult);
 
         if (!metricResult.findings().isEmpty()) {
-            writeFindingsTable(metricResult.findings());
+            writeFindingsTable(out, metricResult.findings());
         }
 
-        htmlContent.append("</div>");
+        out.write("</div>");
     }
 
-    private void writeMetricHeader(Metric metric, MetricResult metricResult, Threshold highestThreshold) {
-        htmlContent.append("<div class='metric-header'>");
-        htmlContent.append("<div class='metric-name'>")
-                .append(escapeHtml(metric.name()))
-                .append("</div>");
-        writeMetricBadges(metric, metricResult, highestThreshold);
-        htmlContent.append("</div>");
+    private void writeMetricHeader(Writer out, Metric metric, MetricResult metricResult, Threshold highestThreshold) throws IOException {
+        out.write("<div class='metric-header'>");
+        out.write("<div class='metric-name'>");
+        escapeHtml(out, metric.name());
+        out.write("</div>");
+        writeMetricBadges(out, metric, metricResult, highestThreshold);
+        out.write("</div>");
     }
 
-    private void writeMetricBadges(Metric metric, MetricResult metricResult, Threshold highestThreshold) {
+    private void writeMetricBadges(Writer out, Metric metric, MetricResult metricResult, Threshold highestThreshold) throws IOException {
         String badgeClass = highestThreshold == null ? "success" : highestThreshold.toString().toLowerCase();
         String badgeText  = highestThreshold == null ? "Pass" : highestThreshold.toString();
 
-        htmlContent.append("<div class='badge-group'>");
-        htmlContent.append("<span class='badge badge-score'>")
-                .append(formatScoreLabel(metric))
-                .append(": ")
-                .append(formatScore(metricResult))
-                .append("</span>");
-        htmlContent.append("<span class='badge badge-").append(badgeClass).append("'>")
-                .append(escapeHtml(badgeText))
-                .append("</span>");
-        htmlContent.append("</div>");
+        if (metricResult.failed()) {
+            badgeClass = "critical";
+            badgeText = "Failed";
+        }
+
+        out.write("<div class='badge-group'>");
+        out.write("<span class='badge badge-score'>");
+        out.write(formatScoreLabel(metric));
+        out.write(": ");
+        out.write(formatScore(metricResult));
+        out.write("</span>");
+        out.write("<span class='badge badge-");
+        out.write(badgeClass);
+        out.write("'>");
+        escapeHtml(out, badgeText);
+        out.write("</span>");
+        out.write("</div>");
     }
 
-    private void writeMetricThresholds(MetricResult metricResult) {
+    private void writeMetricThresholds(Writer out, MetricResult metricResult) throws IOException {
         ArrayList<Threshold> thresholds = metricResult.metric().thresholds();
         if (thresholds.isEmpty()) return;
 
-        htmlContent.append("<div class='metric-thresholds'>");
-        htmlContent.append("<span class='threshold-label'>Thresholds</span>");
+        out.write("<div class='metric-thresholds'>");
+        out.write("<span class='threshold-label'>Thresholds</span>");
 
         for (Threshold threshold : thresholds) {
             String sevKey = threshold.toString().toLowerCase();
-            htmlContent.append("<span class='threshold-item sev-").append(sevKey).append("'>")
-                    .append("<span class='threshold-sev'>").append(escapeHtml(threshold.toString())).append("</span>")
-                    .append("<span class='threshold-sep'>&#x2265;</span>")
-                    .append("<span class='threshold-val'>").append(threshold.value()).append("</span>")
-                    .append("</span>");
+            out.write("<span class='threshold-item sev-");
+            out.write(sevKey);
+            out.write("'>");
+            out.write("<span class='threshold-sev'>");
+            escapeHtml(out, threshold.toString());
+            out.write("</span>");
+            out.write("<span class='threshold-sep'>&#x2265;</span>");
+            out.write("<span class='threshold-val'>");
+            out.write(String.valueOf(threshold.value()));
+            out.write("</span>");
+            out.write("</span>");
         }
 
-        htmlContent.append("</div>");
+        out.write("</div>");
     }
 
-    private void writeFindingsTable(List<Finding> findings) {
-        List<Finding> sorted = findings.stream()
-                .sorted(Comparator.comparingInt(f -> f.severity().ordinal()))
-                .collect(Collectors.toList());
-
-        htmlContent.append("<div class='findings-table-wrap'>");
-        htmlContent.append("<table>");
-        htmlContent.append("<thead><tr>")
-                .append("<th>Severity</th>")
-                .append("<th>Source File</th>")
-                .append("<th>Line</th>")
-                .append("<th>Function / Method</th>")
-                .append("<th>Diagnostic Message</th>")
-                .append("</tr></thead>");
-        htmlContent.append("<tbody>");
-
-        for (Finding finding : sorted) {
-            writeFindingRow(finding);
+    private void writeFindingsTable(Writer out, List<Finding> findings) throws IOException {
+        out.write("<div class='findings-table-wrap'>");
+        out.write("<table>");
+        out.write("<thead><tr>");
+        out.write("<th>Severity</th>");
+        out.write("<th>Source File</th>");
+        out.write("<th>Line</th>");
+        out.write("<th>Function / Method</th>");
+        out.write("<th>Diagnostic Message</th>");
+        out.write("</tr></thead>");
+        out.write("<tbody>");
+
+        // One pass per severity lists the findings most severe first, in their original order
+        // within a severity, without building a sorted copy of a possibly huge list.
+        for (Severity severity : SEVERITY_ORDER) {
+            for (Finding finding : findings) {
+                if (finding.severity() == severity) {
+                    writeFindingRow(out, finding);
+                }
+            }
         }
 
-        htmlContent.append("</tbody></table></div>");
+        out.write("</tbody></table></div>");
     }
 
-    private void writeFindingRow(Finding finding) {
-        htmlContent.append("<tr>");
-        htmlContent.append("<td>")
-                .append(writeSeverityBadge(finding.severity(), finding.severity().toString()))
-                .append("</td>");
-        htmlContent.append("<td style='position:relative'>")
-                .append(renderFileCell(finding.file()))
-                .append("</td>");
-        htmlContent.append("<td>")
-                .append(escapeHtml(safeValue(finding.line())))
-                .append("</td>");
-        htmlContent.append("<td>")
-                .append(escapeHtml(safeValue(finding.function())))
-                .append("</td>");
-        htmlContent.append("<td>")
-                .append(escapeHtml(safeValue(finding.message())))
-                .append("</td>");
-        htmlContent.append("</tr>");
+    private void writeFindingRow(Writer out, Finding finding) throws IOException {
+        out.write("<tr>");
+        out.write("<td>");
+        writeSeverityBadge(out, finding.severity(), finding.severity().toString());
+        out.write("</td>");
+        out.write("<td style='position:relative'>");
+        writeFileCell(out, finding.file());
+        out.write("</td>");
+        out.write("<td>");
+        escapeHtml(out, safeValue(finding.line()));
+        out.write("</td>");
+        out.write("<td>");
+        escapeHtml(out, safeValue(finding.function()));
+        out.write("</td>");
+        out.write("<td>");
+        escapeHtml(out, safeValue(finding.message()));
+        out.write("</td>");
+        out.write("</tr>");
     }
 
-    private String renderFileCell(String rawPath) {
+    private void writeFileCell(Writer out, String rawPath) throws IOException {
         if (isProjectWideFile(rawPath)) {
-            return PROJECT_WIDE_LABEL;
+            out.write(PROJECT_WIDE_LABEL);
+            return;
         }
 
         if (rawPath == null || rawPath.isBlank()) {
-            return "N/A";
+            out.write("N/A");
+            return;
         }
 
         String normalizedPath = stripLocationSuffix(rawPath);
         String fileName = getFileName(normalizedPath);
         String relativePath = getRelativePath(normalizedPath);
 
-        String escapedFileName = escapeHtml(fileName);
-        String escapedRelativePath = escapeHtml(relativePath);
-
         if (fileName.equals(relativePath)) {
-            return escapedFileName;
+            escapeHtml(out, fileName);
+            return;
         }
 
-        return "<details class='file-path-details'>"
-                + "<summary class='file-path-summary'>" + escapedFileName + "</summary>"
-                + "<code class='file-path-full'>" + escapedRelativePath + "</code>"
-                + "</details>";
+        out.write("<details class='file-path-details'>");
+        out.write("<summary class='file-path-summary'>");
+        escapeHtml(out, fileName);
+        out.write("</summary>");
+        out.write("<code class='file-path-full'>");
+        escapeHtml(out, relativePath);
+        out.write("</code>");
+        out.write("</details>");
     }
 
     private boolean isProjectWideFile(String rawPath) {
@@ -325,13 +360,13 @@ public class HTMLReportWriter extends ReportWriter {
             return true;
         }
 
-        if (projectRoot == null) {
+        if (normalizedProjectRoot == null) {
             return false;
         }
 
         try {
             return Path.of(trimmedPath).toAbsolutePath().normalize()
-                    .equals(projectRoot.toAbsolutePath().normalize());
+                    .equals(normalizedProjectRoot);
         } catch (Exception e) {
             return false;
         }
@@ -342,7 +377,7 @@ public class HTMLReportWriter extends ReportWriter {
             return null;
         }
 
-        return rawPath.trim().replaceFirst(":(\\d+)(?::\\d+)?$", "");
+        return LOCATION_SUFFIX.matcher(rawPath.trim()).replaceFirst("");
     }
 
     private String getFileName(String rawPath) {
@@ -367,8 +402,8 @@ public class HTMLReportWriter extends ReportWriter {
         try {
             Path filePath = Path.of(rawPath).normalize();
 
-            if (projectRoot != null) {
-                Path root = projectRoot.toAbsolutePath().normalize();
+            if (normalizedProjectRoot != null) {
+                Path root = normalizedProjectRoot;
                 Path absolutePath = filePath.isAbsolute()
                         ? filePath.toAbsolutePath().normalize()
                         : root.resolve(filePath).normalize();
@@ -394,27 +429,51 @@ public class HTMLReportWriter extends ReportWriter {
         return text.isEmpty() || "null".equalsIgnoreCase(text) ? "N/A" : text;
     }
 
-    private String escapeHtml(String text) {
+    /**
+     * Escape text in a single pass, writing the runs between special characters straight from the string.
+     */
+    private void escapeHtml(Writer out, String text) throws IOException {
         if (text == null) {
-            return "";
+            return;
         }
 
-        return text
-                .replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
+        int runStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+
+            if (entity != null) {
+                out.write(text, runStart, i - runStart);
+                out.write(entity);
+                runStart = i + 1;
+            }
+        }
+        out.write(text, runStart, text.length() - runStart);
+    }
+
+    private void writeTwoDigits(Writer out, int value) throws IOException {
+        if (value < 10) {
+            out.write('0');
+        }
+        out.write(Integer.toString(value));
     }
 
     private String categoryAnchor(Category category) {
         return category.name().replace(" ", "-");
     }
 
-    private String writeSeverityBadge(Severity severity, String label) {
-        return "<span class='badge badge-" + severity.toString().toLowerCase() + "'>"
-                + escapeHtml(label)
-                + "</span>";
+    private void writeSeverityBadge(Writer out, Severity severity, String label) throws IOException {
+        out.write("<span class='badge badge-");
+        out.write(severity.toString().toLowerCase());
+        out.write("'>");
+        escapeHtml(out, label);
+        out.write("</span>");
     }
 
     private String severityClass(Threshold threshold) {
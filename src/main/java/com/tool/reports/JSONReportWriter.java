@@ -1,82 +1,194 @@
-package com.tool.reports;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import com.tool.app.AuditResult;
-import com.tool.domain.Category;
-import com.tool.metrics.MetricResult;
-
-public class JSONReportWriter extends ReportWriter {
-
-    public JSONReportWriter(Path reportPath){
-        super(reportPath);
-    }
-
-    @Override
-    public void writeReport(AuditResult auditResult) throws Exception {
-        JSONObject root = new JSONObject();
-        JSONArray categoriesArray = new JSONArray();
-
-        for (Category category : auditResult.categories()) {
-            categoriesArray.put(categoryToJSON(auditResult, category));
-        }
-
-        root.put("categories", categoriesArray);
-
-        Files.writeString(reportPath, root.toString(4));
-    }
-
-    private JSONObject categoryToJSON(AuditResult auditResult, Category category) {
-        JSONObject categoryJson = new JSONObject();
-
-        categoryJson.put("name", category.name());
-        categoryJson.put("description", category.description());
-
-        JSONArray metricsArray = new JSONArray();
-        for (MetricResult result : auditResult.resultsFor(category)) {
-            metricsArray.put(resultToJSON(result));
-        }
-
-        categoryJson.put("metrics", metricsArray);
-
-        return categoryJson;
-    }
-
-    private JSONObject resultToJSON(MetricResult result) {
-        JSONObject json = new JSONObject();
-
-        json.put("metric", result.metric().name());
-        json.put("description", result.metric().description());
-        json.put("score", result.score());
-
-        // Threshold
-        if (result.mostSevereThreshold() != null) {
-            JSONObject thresholdJson = new JSONObject();
-            thresholdJson.put("severity", result.mostSevereThreshold().severity());
-            json.put("threshold", thresholdJson);
-        } else {
-            json.put("threshold", JSONObject.NULL);
-        }
-
-        // Findings
-        JSONArray findingsArray = new JSONArray();
-        for (var finding : result.findings()) {
-            JSONObject findingJson = new JSONObject();
-
-            findingJson.put("message", finding.message());
-            findingJson.put("file", finding.file());
-            findingJson.put("function", finding.function());
-            findingJson.put("line", finding.line());
-
-            findingsArray.put(findingJson);
-        }
-
-        json.put("findings", findingsArray);
-
-        return json;
-    }
+package com.tool.reports;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+
+import com.tool.app.AuditResult;
+import com.tool.domain.Category;
+import com.tool.domain.Finding;
+import com.tool.metrics.MetricResult;
+
+/**
+ * Writes the JSON report one value at a time instead of building it as a document first,
+ * so memory use does not grow with the number of findings.
+ * Keys whose value is null are left out, the same as org.json does.
+ */
+public class JSONReportWriter extends ReportWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String INDENT = "    ";
+
+    public JSONReportWriter(Path reportPath){
+        super(reportPath);
+    }
+
+    @Override
+    public void writeReport(AuditResult auditResult) throws Exception {
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+
+        try (Writer writer = new BufferedWriter(
+            new OutputStreamWriter(Files.newOutputStream(reportPath), StandardCharsets.UTF_8),
+            BUFFER_SIZE
+        )) {
+            write(auditResult, writer);
+        }
+    }
+
+    /**
+     * Write the report to any writer, e.g. an HTTP response, instead of a report file.
+     * @param auditResult the result to write
+     * @param writer where the JSON goes, it is flushed but not closed
+     */
+    public static void write(AuditResult auditResult, Writer writer) throws IOException {
+        writer.write("{\n");
+        indent(writer, 1);
+        writer.write("\"categories\": [");
+
+        boolean first = true;
+        for (Category category : auditResult.categories()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writeCategory(writer, auditResult, category);
+        }
+
+        if (!first) {
+            writer.write("\n");
+            indent(writer, 1);
+        }
+        writer.write("]\n}\n");
+        writer.flush();
+    }
+
+    private static void writeCategory(Writer writer, AuditResult auditResult, Category category) throws IOException {
+        indent(writer, 2);
+        writer.write("{\n");
+        field(writer, 3, "name", category.name());
+        field(writer, 3, "description", category.description());
+
+        indent(writer, 3);
+        writer.write("\"metrics\": [");
+        boolean first = true;
+        for (MetricResult result : auditResult.resultsFor(category)) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writeResult(writer, result);
+        }
+        if (!first) {
+            writer.write("\n");
+            indent(writer, 3);
+        }
+        writer.write("]\n");
+
+        indent(writer, 2);
+        writer.write("}");
+    }
+
+    private static void writeResult(Writer writer, MetricResult result) throws IOException {
+        indent(writer, 4);
+        writer.write("{\n");
+        field(writer, 5, "metric", result.metric().name());
+        field(writer, 5, "description", result.metric().description());
+
+        indent(writer, 5);
+        writer.write("\"score\": ");
+        writer.write(JSONObject.numberToString(result.score()));
+        writer.write(",\n");
+
+        indent(writer, 5);
+        writer.write("\"failed\": ");
+        writer.write(Boolean.toString(result.failed()));
+        writer.write(",\n");
+
+        // Threshold
+        indent(writer, 5);
+        writer.write("\"threshold\": ");
+        if (result.mostSevereThreshold() != null) {
+            writer.write("{\"severity\": ");
+            JSONObject.quote(result.mostSevereThreshold().severity().name(), writer);
+            writer.write("}");
+        } else {
+            writer.write("null");
+        }
+        writer.write(",\n");
+
+        // Findings
+        indent(writer, 5);
+        writer.write("\"findings\": [");
+        boolean first = true;
+        for (Finding finding : result.findings()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writeFinding(writer, finding);
+        }
+        if (!first) {
+            writer.write("\n");
+            indent(writer, 5);
+        }
+        writer.write("]\n");
+
+        indent(writer, 4);
+        writer.write("}");
+    }
+
+    private static void writeFinding(Writer writer, Finding finding) throws IOException {
+        indent(writer, 6);
+        writer.write("{");
+
+        boolean first = true;
+        first = optionalField(writer, "message", finding.message(), first);
+        first = optionalField(writer, "file", finding.file(), first);
+        first = optionalField(writer, "function", finding.function(), first);
+        if (finding.line() != null) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            indent(writer, 7);
+            writer.write("\"line\": ");
+            writer.write(finding.line().toString());
+        }
+
+        if (!first) {
+            writer.write("\n");
+            indent(writer, 6);
+        }
+        writer.write("}");
+    }
+
+    private static boolean optionalField(Writer writer, String key, String value, boolean first) throws IOException {
+        if (value == null) {
+            return first;
+        }
+
+        writer.write(first ? "\n" : ",\n");
+        indent(writer, 7);
+        JSONObject.quote(key, writer);
+        writer.write(": ");
+        JSONObject.quote(value, writer);
+        return false;
+    }
+
+    private static void field(Writer writer, int depth, String key, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        indent(writer, depth);
+        JSONObject.quote(key, writer);
+        writer.write(": ");
+        JSONObject.quote(value, writer);
+        writer.write(",\n");
+    }
+
+    private static void indent(Writer writer, int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
 }
\ No newline at end of file
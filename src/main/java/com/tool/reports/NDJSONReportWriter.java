@@ -0,0 +1,121 @@
+package com.tool.reports;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+
+import com.tool.app.AuditResult;
+import com.tool.domain.Category;
+import com.tool.domain.Finding;
+import com.tool.metrics.MetricResult;
+
+/**
+ * Writes results as newline delimited JSON, one object per line, so a CI job or dashboard can pick up each
+ * metric the moment it finishes instead of waiting for the whole report.
+ *
+ * Every metric result is one {"type": "metric"} line followed by one {"type": "finding"} line per finding.
+ * Lines are flushed as they are written. Keys whose value is null are left out.
+ */
+public class NDJSONReportWriter extends ReportWriter implements Closeable {
+    private final Writer writer;
+
+    /**
+     * @param reportPath the file to write, replaced if it exists
+     * @throws IOException if the file cannot be opened
+     */
+    public NDJSONReportWriter(Path reportPath) throws IOException {
+        super(reportPath);
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(reportPath), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write to a stream instead of a file, e.g. stdout. The stream is flushed after every result but never closed.
+     * @param out where the lines go
+     */
+    public NDJSONReportWriter(OutputStream out) {
+        super(null);
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    @Override
+    public void writeReport(AuditResult auditResult) throws IOException {
+        for (Category category : auditResult.categories()) {
+            for (MetricResult result : auditResult.resultsFor(category)) {
+                writeResult(result);
+            }
+        }
+    }
+
+    /**
+     * Write one metric result and its findings. Safe to call from several threads, lines never interleave.
+     * @param result the result to write
+     * @throws IOException if the output cannot be written
+     */
+    public synchronized void writeResult(MetricResult result) throws IOException {
+        String category = result.metric().category() == null ? null : result.metric().category().name();
+        String metric = result.metric().name();
+
+        JSONObject line = new JSONObject()
+            .put("type", "metric")
+            .put("category", category)
+            .put("metric", metric)
+            .put("score", result.score())
+            .put("failed", result.failed());
+        if (result.mostSevereThreshold() != null) {
+            line.put("threshold", new JSONObject().put("severity", result.mostSevereThreshold().severity()));
+        }
+        writeLine(line);
+
+        for (Finding finding : result.findings()) {
+            writeLine(new JSONObject()
+                .put("type", "finding")
+                .put("category", category)
+                .put("metric", metric)
+                .put("severity", finding.severity())
+                .put("message", finding.message())
+                .put("file", finding.file())
+                .put("function", finding.function())
+                .put("line", finding.line()));
+        }
+        writer.flush();
+    }
+
+    /**
+     * For use as a {@link com.tool.app.AuditController#addResultListener} listener, which only takes unchecked exceptions.
+     * @param result the result to write
+     */
+    public void accept(MetricResult result) {
+        try {
+            writeResult(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write NDJSON result for " + result.metric().name(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeLine(JSONObject line) throws IOException {
+        line.write(writer);
+        writer.write('\n');
+    }
+}
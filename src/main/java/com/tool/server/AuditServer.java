@@ -0,0 +1,349 @@
+package com.tool.server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tool.app.AuditController;
+import com.tool.app.AuditResult;
+import com.tool.app.ResultCache;
+import com.tool.reports.JSONReportWriter;
+
+/**
+ * Keeps the JVM, the audit controller and the result cache warm between audits and accepts audit jobs over a
+ * localhost HTTP endpoint.
+ *
+ * POST /audit with {"source": "...", "dependency_report": "..."} runs an audit and streams back the same JSON
+ * the JSON report file holds. GET /health reports how busy the server is.
+ *
+ * An audit runs the configured builds in whatever directory it names, so a job is only accepted with the
+ * per-process token as {@code Authorization: Bearer <token>}, with {@code Content-Type: application/json},
+ * with a localhost Host header and without an Origin header. That keeps web pages out, whether they post across
+ * sites (which browsers allow for text/plain bodies) or rebind their own host name to 127.0.0.1.
+ *
+ * At most {@code workers} audits run at once and at most {@code queueCapacity} wait, anything beyond that is
+ * turned away with 503. The config file is reloaded before the next job whenever it changes on disk. Metrics hold no per-run state,
+ * so jobs share one controller and its metric instances.
+ */
+public class AuditServer implements Closeable {
+    private static final Set<String> LOCAL_HOSTS = Set.of("127.0.0.1", "localhost", "[::1]");
+
+    private final Path configPath;
+    private final ExecutorService metricExecutor;
+    private final Duration metricTimeout;
+    private final Duration auditTimeout;
+    private final ResultCache resultCache;
+    private final HttpServer httpServer;
+    private final ExecutorService exchangeExecutor;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ForkJoinPool workExecutor;
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final String token;
+
+    private AuditController controller;
+    private FileTime configModified;
+
+    /**
+     * Bind the server. Nothing is accepted until {@link #start()} is called.
+     * @param configPath the config every job is audited with
+     * @param port the localhost port to listen on, 0 picks a free one
+     * @param workers how many audits may run at once
+     * @param queueCapacity how many audits may wait for a worker
+     * @param metricExecutor executor for concurrent metric evaluation inside one audit, or null
+     * @param metricTimeout per metric deadline, or null
+     * @param auditTimeout per audit deadline, or null
+     * @param resultCache cache of per-file results shared by every job, or null
+     * @throws IOException if the port cannot be bound
+     */
+    public AuditServer(
+        Path configPath,
+        int port,
+        int workers,
+        int queueCapacity,
+        ExecutorService metricExecutor,
+        Duration metricTimeout,
+        Duration auditTimeout,
+        ResultCache resultCache
+    ) throws IOException {
+        if (configPath == null) {
+            throw new IllegalArgumentException("Config path cannot be null");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("Audit server needs at least one worker");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Queue capacity cannot be negative");
+        }
+
+        this.configPath = configPath;
+        this.metricExecutor = metricExecutor;
+        this.metricTimeout = metricTimeout;
+        this.auditTimeout = auditTimeout;
+        this.resultCache = resultCache;
+
+        byte[] tokenBytes = new byte[32];
+        new SecureRandom().nextBytes(tokenBytes);
+        this.token = HexFormat.of().formatHex(tokenBytes);
+
+        // Concurrent jobs share one pool for per-file work instead of each sizing a pool to the whole machine.
+        this.workExecutor = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        // Load once up front so a broken config stops the server from starting rather than failing every job.
+        reloadConfigIfChanged();
+
+        this.jobExecutor = new ThreadPoolExecutor(
+            workers,
+            workers,
+            0L,
+            TimeUnit.MILLISECONDS,
+            queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+            daemonThreads("audit-job-"),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        // Exchanges only wait on jobs and copy bytes, the job pool is what bounds the real work.
+        this.exchangeExecutor = Executors.newCachedThreadPool(daemonThreads("audit-http-"));
+
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.httpServer.setExecutor(exchangeExecutor);
+        this.httpServer.createContext("/audit", this::handleAudit);
+        this.httpServer.createContext("/health", this::handleHealth);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return the token audit jobs must send as {@code Authorization: Bearer <token>}, new for every server
+     */
+    public String token() {
+        return token;
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        jobExecutor.shutdownNow();
+        exchangeExecutor.shutdownNow();
+        workExecutor.shutdownNow();
+    }
+
+    private void handleAudit(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use POST to submit an audit");
+                return;
+            }
+            if (!isLocalRequest(exchange)) {
+                sendError(exchange, 403, "Audits are only accepted from local clients, not from web pages");
+                return;
+            }
+            if (!hasToken(exchange)) {
+                sendError(exchange, 401, "Send the token the server printed at startup as Authorization: Bearer <token>");
+                return;
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType == null || !"application/json".equalsIgnoreCase(contentType.split(";")[0].trim())) {
+                sendError(exchange, 415, "Audit jobs must be sent as application/json");
+                return;
+            }
+
+            Path sourceRoot;
+            Path dependencyReportPath;
+            try (InputStream body = exchange.getRequestBody()) {
+                JSONObject job = new JSONObject(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                sourceRoot = Path.of(job.getString("source"));
+                String report = job.optString("dependency_report", null);
+                dependencyReportPath = report == null || report.isBlank() ? null : Path.of(report);
+            } catch (JSONException e) {
+                sendError(exchange, 400, "Expected a JSON body with a \"source\" path: " + e.getMessage());
+                return;
+            }
+
+            Future<AuditResult> job;
+            try {
+                job = jobExecutor.submit(() -> currentController().runAudit(sourceRoot, dependencyReportPath));
+            } catch (RejectedExecutionException e) {
+                sendError(exchange, 503, "All audit workers are busy, try again later");
+                return;
+            }
+
+            AuditResult result;
+            try {
+                result = job.get();
+            } catch (InterruptedException e) {
+                job.cancel(true);
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "Audit server is shutting down");
+                return;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                int status = cause instanceof IllegalArgumentException ? 400 : 500;
+                sendError(exchange, status, cause.getMessage());
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            // A length of zero means chunked, so the report is streamed as it is written.
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                JSONReportWriter.write(result, writer);
+            } catch (Exception e) {
+                // Headers are already out, all that can be done is cut the response short.
+                System.err.println("Could not stream audit result: " + e.getMessage());
+            }
+            completedJobs.incrementAndGet();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!isLocalRequest(exchange)) {
+                sendError(exchange, 403, "Health is only reported to local clients, not to web pages");
+                return;
+            }
+
+            JSONObject health = new JSONObject()
+                .put("status", "ok")
+                .put("active_jobs", jobExecutor.getActiveCount())
+                .put("queued_jobs", jobExecutor.getQueue().size())
+                .put("completed_jobs", completedJobs.get())
+                .put("config", configPath.toString());
+            if (resultCache != null) {
+                health.put("result_cache", resultCache.summary());
+            }
+            sendJson(exchange, 200, health);
+        }
+    }
+
+    /**
+     * @return the controller for the config as it is on disk right now
+     */
+    private synchronized AuditController currentController() throws IOException {
+        reloadConfigIfChanged();
+        return controller;
+    }
+
+    private synchronized void reloadConfigIfChanged() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(configPath);
+        if (controller != null && modified.equals(configModified)) {
+            return;
+        }
+
+        try {
+            controller = new AuditController(
+                configPath,
+                metricExecutor,
+                metricTimeout,
+                auditTimeout,
+                resultCache,
+                workExecutor
+            );
+            configModified = modified;
+            System.out.println("Loaded config " + configPath);
+        } catch (RuntimeException e) {
+            if (controller == null) {
+                throw e;
+            }
+            // Most likely caught mid save, keep auditing with the last good config until the file is fixed.
+            System.err.println("Could not reload config, keeping the previous one: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A local client names a localhost Host and sends no Origin. Browsers always send the Origin of a cross site
+     * POST, and a page that rebinds its own domain to 127.0.0.1 still sends its domain as the Host.
+     */
+    private static boolean isLocalRequest(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            return false;
+        }
+
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null) {
+            return false;
+        }
+        host = host.trim().toLowerCase(Locale.ROOT);
+        int port = host.lastIndexOf(':');
+        if (port > host.lastIndexOf(']')) {
+            host = host.substring(0, port);
+        }
+        return LOCAL_HOSTS.contains(host);
+    }
+
+    private boolean hasToken(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        // Constant time, so the token cannot be guessed one character at a time.
+        return MessageDigest.isEqual(
+            authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, new JSONObject().put("error", message == null ? "unknown error" : message));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -32,10 +32,16 @@ public class ConfigLoader {
     private static final Map<String, BiFunction<ArrayList<Threshold>, JSONObject, Metric>> METRIC_REGISTRY =
         Map.of(
             "cyclomatic_complexity",
-            (thresholds, metricObj) -> new CyclomaticComplexityMetric(thresholds),
+            (thresholds, metricObj) -> new CyclomaticComplexityMetric(
+                thresholds,
+                metricObj.optJSONObject("settings")
+            ),
 
             "dependency_vulnerability_exposure",
-            (thresholds, metricObj) -> new DependencyVulnerabilityExposureMetric(thresholds),
+            (thresholds, metricObj) -> new DependencyVulnerabilityExposureMetric(
+                thresholds,
+                metricObj.optJSONObject("settings")
+            ),
 
             "portability_pass_rate",
             (thresholds, metricObj) -> new PortabilityPassRateMetric(
@@ -4,23 +4,51 @@
 package com.tool.util;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+import com.tool.app.CancellationToken;
 
 //Util for locating or generating the OWSAP report
 public final class DependencyCheckReportResolver {
 
+    // Only used when a command fails, the full output is in the log file and was echoed as it ran.
+    private static final int OUTPUT_HEAD_BYTES = 4 * 1024;
+    private static final int OUTPUT_TAIL_BYTES = 16 * 1024;
+    private static final String REPORT_NAME = "dependency-check-report.json";
+    private static final String PLUGIN = "org.owasp:dependency-check-maven:12.1.0:check";
+    private static final Duration COORDINATES_TIMEOUT = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofHours(24);
+
     private DependencyCheckReportResolver() {
     }
 
+    public static Path ensureFreshReportExists(Path sourceRoot, Path suppliedReportPath) throws Exception {
+        return ensureFreshReportExists(sourceRoot, suppliedReportPath, DEFAULT_MAX_AGE);
+    }
+
     //Finds the project root by walking upward until pom.xml is found, creates reports in the file directory, if a supplied report is
-    //there it will be used instead otherwise any old report is deleted and a maven gens a new one using OWASP, if successful new path
+    //there it will be used instead. Otherwise the last generated report is reused while the dependency inputs (every pom.xml and the
+    //resolved coordinates) are unchanged and it is younger than maxAge, else maven gens a new one using OWASP. If successful the path
     //Is returned otherwise skipepd.
-    public static Path ensureFreshReportExists(Path sourceRoot, Path suppliedReportPath) throws Exception {
+    public static Path ensureFreshReportExists(Path sourceRoot, Path suppliedReportPath, Duration maxAge) throws Exception {
         Path projectRoot = findProjectRoot(sourceRoot); //Find the project root
         Path reportsDir = projectRoot.resolve("reports");   //Store gen reports
-        Path reportPath = reportsDir.resolve("dependency-check-report.json");   //Expected output path
+        Path reportPath = reportsDir.resolve(REPORT_NAME);   //Expected output path
+        Path fingerprintPath = reportsDir.resolve(REPORT_NAME + ".fingerprint"); //What the report was generated from
 
         Files.createDirectories(reportsDir); //Create if no reports path exists
 
@@ -29,85 +57,180 @@ public final class DependencyCheckReportResolver {
             return suppliedReportPath;
         }
 
-        // Always regenerate a fresh report in reports/
-        Files.deleteIfExists(reportPath);
+        //A max age of zero means always regenerate, no point fingerprinting then
+        String fingerprint = maxAge.isZero() ? null : fingerprintDependencyInputs(projectRoot);
+        if (fingerprint != null && isReusable(reportPath, fingerprintPath, fingerprint, maxAge)) {
+            System.out.println("Reusing Dependency-Check report, the dependencies are unchanged: " + reportPath);
+            return reportPath;
+        }
 
         System.out.println("Generating fresh Dependency-Check report in: " + reportPath);
 
-
-        //mvn.cmd - Windows
-        //mvn.bat - Windows
-        //mvn - macOS/Linux
-        boolean generated = tryCommands(projectRoot, reportPath, List.of(
-                List.of("mvn.cmd",
-                        "org.owasp:dependency-check-maven:12.1.0:check", //Runs the OWASP plugin
+        //The plugin writes into a scratch folder and the finished report is moved over the old one in one step,
+        //so nobody ever reads a half written report
+        Path outputDir = Files.createTempDirectory(reportsDir, ".dependency-check-");
+        try {
+            //mvn.cmd - Windows
+            //mvn.bat - Windows
+            //mvn - macOS/Linux
+            List<List<String>> commands = new ArrayList<>();
+            for (String mvn : List.of("mvn.cmd", "mvn.bat", "mvn")) {
+                commands.add(List.of(mvn,
+                        PLUGIN, //Runs the OWASP plugin
                         "-Dformats=JSON",   //Generates the JSON so the metric can parse it
-                        "-Dodc.outputDirectory=reports",    //Gen report goes into reports
+                        "-Dodc.outputDirectory=" + outputDir.toAbsolutePath(),    //Gen report goes into the scratch folder
                         "-DossindexAnalyzerEnabled=false",  //Disables or enables the OSS Index analyser
                         "-DfailOnError=false",  //Prevents Dependency check errors from failing the whole maven command
-                        "-DautoUpdate=true"), //FALSE STOPS ALL UPDATES / TRUE ALLOWS IT TO UPDATE THE TOOL (This is for DEMO)
-                List.of("mvn.bat",
-                        "org.owasp:dependency-check-maven:12.1.0:check",
-                        "-Dformats=JSON",
-                        "-Dodc.outputDirectory=reports",
-                        "-DossindexAnalyzerEnabled=false",
-                        "-DfailOnError=false",
-                        "-DautoUpdate=true"), //FALSE STOPS ALL UPDATES / TRUE ALLOWS IT TO UPDATE THE TOOL (This is for DEMO)
-                List.of("mvn",
-                        "org.owasp:dependency-check-maven:12.1.0:check",
-                        "-Dformats=JSON",
-                        "-Dodc.outputDirectory=reports",
-                        "-DossindexAnalyzerEnabled=false",
-                        "-DfailOnError=false",
-                        "-DautoUpdate=true") //FALSE STOPS ALL UPDATES / TRUE ALLOWS IT TO UPDATE THE TOOL (This is for DEMO)
-        ));
-
-        if (generated && Files.exists(reportPath)) {
-            return reportPath;
+                        "-DautoUpdate=true")); //FALSE STOPS ALL UPDATES / TRUE ALLOWS IT TO UPDATE THE TOOL (This is for DEMO)
+            }
+
+            Path generatedReport = outputDir.resolve(REPORT_NAME);
+            boolean generated = tryCommands(projectRoot, generatedReport, reportsDir.resolve("dependency-check.log"), commands);
+
+            if (generated && Files.exists(generatedReport)) {
+                moveAtomically(generatedReport, reportPath);
+                if (fingerprint != null) {
+                    Path fingerprintTemp = Files.createTempFile(reportsDir, ".fingerprint-", ".tmp");
+                    Files.writeString(fingerprintTemp, new JSONObject()
+                            .put("fingerprint", fingerprint)
+                            .put("generated_at", Instant.now().toString())
+                            .toString());
+                    moveAtomically(fingerprintTemp, fingerprintPath);
+                } else {
+                    Files.deleteIfExists(fingerprintPath);
+                }
+                return reportPath;
+            }
+        } finally {
+            deleteQuietly(outputDir);
         }
 
         return null;
     }
 
-    //Finds the root directory of the project
-    private static Path findProjectRoot(Path sourceRoot) {
-        if (sourceRoot == null) {
-            return Path.of(".").toAbsolutePath().normalize();
+    //The old report can be used if it was generated from the same inputs and is not too old
+    private static boolean isReusable(Path reportPath, Path fingerprintPath, String fingerprint, Duration maxAge) {
+        if (!Files.exists(reportPath) || !Files.exists(fingerprintPath)) {
+            return false;
+        }
+
+        try {
+            JSONObject recorded = new JSONObject(Files.readString(fingerprintPath));
+            Instant generatedAt = Instant.parse(recorded.getString("generated_at"));
+            return fingerprint.equals(recorded.getString("fingerprint"))
+                    && generatedAt.plus(maxAge).isAfter(Instant.now());
+        } catch (IOException | RuntimeException e) {
+            //Unreadable or from an older version, just generate a new one
+            return false;
+        }
+    }
+
+    //Hashes what the report depends on: the plugin and its settings, every pom.xml in the reactor and the resolved coordinates
+    private static String fingerprintDependencyInputs(Path projectRoot) throws IOException, InterruptedException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
 
-        Path current = sourceRoot.toAbsolutePath().normalize();
+        digest.update((PLUGIN + " formats=JSON ossindex=false\n").getBytes(StandardCharsets.UTF_8));
+        for (Path pom : MavenProjects.findPoms(projectRoot)) {
+            digest.update((projectRoot.relativize(pom).toString().replace('\\', '/') + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(pom));
+        }
 
-        while (current != null) {
-            if (Files.exists(current.resolve("pom.xml"))) {
-                return current;
+        List<String> coordinates = resolveCoordinates(projectRoot);
+        if (coordinates == null) {
+            //Without maven the poms have to do, they only miss changes behind version ranges and SNAPSHOTs
+            digest.update("coordinates unresolved\n".getBytes(StandardCharsets.UTF_8));
+        } else {
+            for (String coordinate : coordinates) {
+                digest.update((coordinate + "\n").getBytes(StandardCharsets.UTF_8));
             }
-            current = current.getParent();
         }
 
-        return sourceRoot.toAbsolutePath().normalize();
+        return HexFormat.of().formatHex(digest.digest());
     }
 
-    //Tries each of the maven commands until one succesfully works
-    private static boolean tryCommands(Path workingDirectory, Path expectedReport, List<List<String>> commands)
+    //Asks maven for the resolved dependency coordinates, offline so it stays quick. Null if maven cant tell, e.g. it is
+    //missing or something has never been downloaded
+    private static List<String> resolveCoordinates(Path projectRoot) throws IOException, InterruptedException {
+        Path listFile = Files.createTempFile("dependency-list-", ".txt");
+        try {
+            ProcessRunner runner = new ProcessRunner(OUTPUT_HEAD_BYTES, OUTPUT_TAIL_BYTES, null);
+            for (String mvn : List.of("mvn.cmd", "mvn.bat", "mvn")) {
+                Files.deleteIfExists(listFile);
+                ProcessRunner.Result result = runner.run(
+                        List.of(mvn, "-q", "-o", "dependency:list",
+                                "-DoutputFile=" + listFile.toAbsolutePath(),
+                                "-DappendOutput=true"), //One list for the whole reactor
+                        projectRoot,
+                        COORDINATES_TIMEOUT,
+                        null,
+                        new CancellationToken());
+                if (!result.started()) {
+                    continue; // Try next command
+                }
+                if (result.exitCode() != 0 || !Files.exists(listFile)) {
+                    return null;
+                }
+
+                try (Stream<String> lines = Files.lines(listFile)) {
+                    return lines.map(String::trim)
+                            .filter(line -> !line.isEmpty() && !line.startsWith("The following files have been resolved"))
+                            .sorted()
+                            .toList();
+                }
+            }
+            return null;
+        } finally {
+            Files.deleteIfExists(listFile);
+        }
+    }
+
+    private static void moveAtomically(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            //Only a scratch folder, not worth failing over
+        }
+    }
+
+    //Finds the root directory of the project, the source root itself when there is no pom.xml above it
+    private static Path findProjectRoot(Path sourceRoot) {
+        if (sourceRoot == null) {
+            return Path.of(".").toAbsolutePath().normalize();
+        }
+        Path projectRoot = MavenProjects.findProjectRoot(sourceRoot);
+        return projectRoot == null ? sourceRoot.toAbsolutePath().normalize() : projectRoot;
+    }
+
+    //Tries each of the maven commands until one succesfully works, the output still shows up on the console as it runs
+    //and the full log of the last attempt is kept in logFile
+    private static boolean tryCommands(Path workingDirectory, Path expectedReport, Path logFile, List<List<String>> commands)
             throws InterruptedException {
+        ProcessRunner runner = new ProcessRunner(OUTPUT_HEAD_BYTES, OUTPUT_TAIL_BYTES, System.out);
         for (List<String> command : commands) {
-            try {
-                Process process = new ProcessBuilder(command)
-                        .directory(workingDirectory.toFile())
-                        .inheritIO()
-                        .start();
-
-                int exitCode = process.waitFor();
+            ProcessRunner.Result result = runner.run(command, workingDirectory, null, logFile, new CancellationToken());
+            if (!result.started()) {
+                continue; // Try next command
+            }
 
-                if (Files.exists(expectedReport)) {
-                    return true;
-                }
+            if (Files.exists(expectedReport)) {
+                return true;
+            }
 
-                if (exitCode == 0) {
-                    return true;
-                }
-            } catch (IOException ignored) {
-                // Try next command
+            if (result.exitCode() == 0) {
+                return true;
             }
         }
         return false;
@@ -0,0 +1,219 @@
+package com.tool.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The files that differ between a git revision and the working tree, read from the local git executable.
+ * Everything else in the repository is unchanged since that revision, so the blob ids git already has for
+ * those files can stand in for hashing them. No network access is needed.
+ */
+public final class GitChangeSet {
+    private static final int GIT_TIMEOUT_SECONDS = 120;
+
+    private final String revision;
+    private final Path repositoryRoot;
+    private final Set<Path> changedFiles;
+    private final Map<Path, String> unchangedBlobIds;
+
+    private GitChangeSet(String revision, Path repositoryRoot, Set<Path> changedFiles, Map<Path, String> unchangedBlobIds) {
+        this.revision = revision;
+        this.repositoryRoot = repositoryRoot;
+        this.changedFiles = changedFiles;
+        this.unchangedBlobIds = unchangedBlobIds;
+    }
+
+    /**
+     * Ask git which files changed since the given revision.
+     * Modified, added and untracked (but not ignored) files all count as changed.
+     * @param sourceRoot any directory inside the repository
+     * @param revision the revision to compare the working tree against, e.g. origin/main
+     * @return the change set
+     * @throws IllegalArgumentException if the path is not inside a git repository or the revision is unknown
+     */
+    public static GitChangeSet resolve(Path sourceRoot, String revision) throws IOException, InterruptedException {
+        if (revision == null || revision.isBlank()) {
+            throw new IllegalArgumentException("A git revision is required");
+        }
+
+        Path workingDirectory = realPath(sourceRoot);
+        // git answers with the real path, so every path this class is asked about is compared as a real path too.
+        Path repositoryRoot = realPath(Path.of(git(workingDirectory, "rev-parse", "--show-toplevel").trim()));
+
+        // Make sure the revision exists before asking anything else, so the error is about the revision.
+        git(repositoryRoot, "rev-parse", "--verify", "--quiet", revision + "^{commit}");
+
+        Set<Path> changed = new HashSet<>();
+        for (String path : splitNul(git(repositoryRoot, "diff", "--name-only", "--no-renames", "-z", revision, "--"))) {
+            changed.add(repositoryRoot.resolve(path).normalize());
+        }
+        for (String path : splitNul(git(repositoryRoot, "ls-files", "--others", "--exclude-standard", "-z"))) {
+            changed.add(repositoryRoot.resolve(path).normalize());
+        }
+
+        // Every file at the revision that was not touched has the same content as its blob.
+        Map<Path, String> blobIds = new HashMap<>();
+        for (String line : splitNul(git(repositoryRoot, "ls-tree", "-r", "-z", revision))) {
+            // <mode> SP <type> SP <object> TAB <file>
+            int tab = line.indexOf('\t');
+            String[] header = line.substring(0, tab).split(" ");
+            if (!"blob".equals(header[1])) {
+                continue;
+            }
+
+            Path file = repositoryRoot.resolve(line.substring(tab + 1)).normalize();
+            if (!changed.contains(file)) {
+                blobIds.put(file, header[2]);
+            }
+        }
+
+        return new GitChangeSet(revision, repositoryRoot, changed, blobIds);
+    }
+
+    public String revision() {
+        return revision;
+    }
+
+    public Path repositoryRoot() {
+        return repositoryRoot;
+    }
+
+    /**
+     * @param file a file inside the repository
+     * @return true if the file was added, modified or is untracked since the revision
+     */
+    public boolean isChanged(Path file) {
+        return changedFiles.contains(realPath(file));
+    }
+
+    /**
+     * @param file a file inside the repository
+     * @return the git blob id of an unchanged file, which is also its content hash
+     */
+    public Optional<String> blobId(Path file) {
+        return Optional.ofNullable(unchangedBlobIds.get(realPath(file)));
+    }
+
+    /**
+     * @return the blob ids of every unchanged file, keyed by real path
+     */
+    public Map<Path, String> unchangedBlobIds() {
+        return unchangedBlobIds;
+    }
+
+    /**
+     * @param root only count files under this directory
+     * @return how many changed files sit under the directory
+     */
+    public long changedCountUnder(Path root) {
+        Path realRoot = realPath(root);
+        return changedFiles.stream().filter(file -> file.startsWith(realRoot)).count();
+    }
+
+    /**
+     * The path with every symbolic link resolved, so /tmp/x and /private/tmp/x are the same file.
+     * A file that does not exist (any more) gets the real path of its nearest existing parent.
+     */
+    private static Path realPath(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        Path existing = absolute;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            return absolute;
+        }
+
+        try {
+            return existing.toRealPath().resolve(existing.relativize(absolute));
+        } catch (IOException e) {
+            return absolute;
+        }
+    }
+
+    private static String git(Path workingDirectory, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(List.of(args));
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                .directory(workingDirectory.toFile())
+                .redirectErrorStream(false)
+                .start();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("--changed-since needs a local git executable: " + e.getMessage());
+        }
+
+        // Drain stderr on the side so a chatty git can never block on a full pipe.
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Thread errorReader = new Thread(() -> copyQuietly(process.getErrorStream(), errors));
+        errorReader.setDaemon(true);
+        errorReader.start();
+
+        // Stdout too, reading it here would wait on a hung git forever and the timeout below would never apply.
+        FutureTask<byte[]> outputReader = new FutureTask<>(() -> {
+            try (InputStream stdout = process.getInputStream()) {
+                return stdout.readAllBytes();
+            }
+        });
+        Thread outputThread = new Thread(outputReader);
+        outputThread.setDaemon(true);
+        outputThread.start();
+
+        if (!process.waitFor(GIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("git " + String.join(" ", args) + " timed out");
+        }
+        errorReader.join(1000);
+
+        byte[] output;
+        try {
+            output = outputReader.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read the output of git " + String.join(" ", args) + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        if (process.exitValue() != 0) {
+            String message = errors.toString(StandardCharsets.UTF_8).trim();
+            throw new IllegalArgumentException(
+                "git " + String.join(" ", args) + " failed" + (message.isEmpty() ? "" : ": " + message)
+            );
+        }
+
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    private static void copyQuietly(InputStream in, ByteArrayOutputStream out) {
+        try (in) {
+            in.transferTo(out);
+        } catch (IOException ignored) {
+            // Only used for the error message.
+        }
+    }
+
+    private static List<String> splitNul(String output) {
+        List<String> parts = new ArrayList<>();
+        for (String part : output.split("\0")) {
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,62 @@
+package com.tool.util;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finding a maven project and its pom.xml files on disk, shared by everything that reads the project's dependencies.
+ */
+public final class MavenProjects {
+
+    private MavenProjects() {
+    }
+
+    /**
+     * @return the nearest folder at or above the source root with a pom.xml, null if there is none
+     */
+    public static Path findProjectRoot(Path sourceRoot) {
+        Path current = sourceRoot.toAbsolutePath().normalize();
+        while (current != null) {
+            if (Files.isRegularFile(current.resolve("pom.xml"))) {
+                return current;
+            }
+            current = current.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * @return every pom.xml under the project root, build output and hidden folders aside, in a stable order
+     */
+    public static List<Path> findPoms(Path projectRoot) throws IOException {
+        List<Path> poms = new ArrayList<>();
+        Files.walkFileTree(projectRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(projectRoot)
+                        && (name.startsWith(".") || "target".equals(name) || "reports".equals(name) || "node_modules".equals(name))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if ("pom.xml".equals(file.getFileName().toString())) {
+                    poms.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        poms.sort(Comparator.comparing(pom -> projectRoot.relativize(pom).toString().replace('\\', '/')));
+        return poms;
+    }
+}
@@ -0,0 +1,303 @@
+package com.tool.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.tool.app.CancellationToken;
+
+/**
+ * Runs a child process and captures what it prints without holding all of it in memory.
+ *
+ * Output is read as bytes and kept as a bounded head and a bounded tail, the tail being where build tools
+ * usually print the error that matters. Everything in between is only counted, unless a log file is given,
+ * in which case the full output is spooled there as it arrives.
+ *
+ * The output is drained by a shared pool of daemon threads, idle readers are reused by the next process
+ * instead of every process starting its own thread.
+ *
+ * The pool is deliberately not bounded. Reading a pipe blocks, so a reader is busy for as long as its process runs,
+ * and a process whose reader is still queued stops once its pipe buffer (a few KB to 64 KB) is full. It then never
+ * exits, so the reader ahead of it in the queue may never free up either, e.g. when that process waits for this one,
+ * and without a timeout the caller waits forever. Java 17 has no virtual threads to make a reader per process cheap.
+ * How many processes run at once is bounded by the callers instead, the portability scheduler's slots and the
+ * audit's parallelism, so the pool never holds more threads than that, and idle ones exit after a minute.
+ */
+public final class ProcessRunner {
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final long READER_DRAIN_MILLIS = 1000;
+
+    // One reader per running process, see the class comment for why this is not bounded.
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "process-output-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * What happened to one command.
+     * @param started false if the process could not be started at all
+     * @param timedOut whether it was killed for running past its timeout
+     * @param exitCode its exit code, -1 if it did not exit on its own
+     * @param output the head and tail of what it printed, stdout and stderr merged
+     * @param totalBytes how many bytes it printed in all
+     * @param logFile where the full output was spooled, null if it was not
+     * @param message why it could not be started or was stopped, empty otherwise
+     */
+    public record Result(
+        boolean started,
+        boolean timedOut,
+        int exitCode,
+        String output,
+        long totalBytes,
+        Path logFile,
+        String message
+    ) {}
+
+    private final int headBytes;
+    private final int tailBytes;
+    private final PrintStream echo;
+
+    /**
+     * @param headBytes how many bytes from the start of the output to keep
+     * @param tailBytes how many bytes from the end of the output to keep
+     * @param echo where to copy the output as it arrives, e.g. System.out for long builds the user watches, or null
+     */
+    public ProcessRunner(int headBytes, int tailBytes, PrintStream echo) {
+        if (headBytes < 0 || tailBytes < 0) {
+            throw new IllegalArgumentException("Output limits must be >= 0");
+        }
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        this.echo = echo;
+    }
+
+    /**
+     * Run a command and wait for it.
+     * @param command the command and its arguments
+     * @param workingDir the directory to run it in, null for the current one
+     * @param timeout how long it may run, null for no limit
+     * @param logFile where to spool the full output, replaced if it exists, or null
+     * @param cancellation destroys the process when cancelled
+     * @throws java.util.concurrent.CancellationException if the run was cancelled, the process is gone by then
+     * @throws InterruptedException if interrupted while waiting, the process is destroyed first
+     */
+    public Result run(
+        List<String> command,
+        Path workingDir,
+        Duration timeout,
+        Path logFile,
+        CancellationToken cancellation
+    ) throws InterruptedException {
+        OutputStream spool = null;
+        if (logFile != null) {
+            try {
+                if (logFile.getParent() != null) {
+                    Files.createDirectories(logFile.getParent());
+                }
+                spool = new BufferedOutputStream(Files.newOutputStream(logFile));
+            } catch (IOException e) {
+                // Losing the full log should not cost us the run, the head and tail are still kept.
+                System.err.println("[PROCESS] Could not open log file " + logFile + ": " + e.getMessage());
+                logFile = null;
+            }
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (workingDir != null) {
+            builder.directory(workingDir.toFile());
+        }
+
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            closeQuietly(spool);
+            return new Result(false, false, -1, "", 0, logFile,
+                "Failed to start command: " + String.join(" ", command) + " (" + e.getMessage() + ")");
+        }
+
+        Capture capture = new Capture(headBytes, tailBytes, spool, echo);
+        Future<?> reader = READERS.submit(() -> capture.drain(process.getInputStream()));
+
+        boolean finished;
+        try (CancellationToken.Registration ignored = cancellation.onCancel(process::destroyForcibly)) {
+            if (timeout == null) {
+                process.waitFor();
+                finished = true;
+            } else {
+                finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            // Nobody is waiting for the result any more, so do not leave the process running in the background.
+            process.destroyForcibly();
+            reader.cancel(true);
+            capture.close();
+            throw e;
+        }
+
+        if (!finished) {
+            process.destroyForcibly();
+            process.waitFor(5, TimeUnit.SECONDS);
+        }
+        awaitReader(process, reader);
+        capture.close();
+
+        // A process killed because the run was cancelled says nothing about the command.
+        cancellation.throwIfCancelled();
+
+        if (!finished) {
+            return new Result(true, true, -1, capture.text(logFile), capture.total(), logFile,
+                "Timed out while running command");
+        }
+        return new Result(true, false, process.exitValue(), capture.text(logFile), capture.total(), logFile, "");
+    }
+
+    private static void awaitReader(Process process, Future<?> reader) throws InterruptedException {
+        try {
+            reader.get(READER_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Something the process started still holds the pipe open, take what we have.
+            reader.cancel(true);
+            closeQuietly(process.getInputStream());
+        } catch (ExecutionException e) {
+            // The reader records its own failures in the output.
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Nothing left to do with it.
+        }
+    }
+
+    /**
+     * The head and tail of one process's output, and the spool file if there is one.
+     * Written by one reader thread, read by the waiting thread once the reader is done.
+     */
+    private static final class Capture {
+        private final byte[] head;
+        private final byte[] tail;
+        private final OutputStream spool;
+        private final PrintStream echo;
+        private int headLength;
+        // Next write position in the tail ring, wrapping round once it is full.
+        private int tailPosition;
+        private long total;
+        private String readError;
+
+        private Capture(int headBytes, int tailBytes, OutputStream spool, PrintStream echo) {
+            this.head = new byte[headBytes];
+            this.tail = new byte[tailBytes];
+            this.spool = spool;
+            this.echo = echo;
+        }
+
+        private void drain(InputStream in) {
+            byte[] buffer = new byte[READ_BUFFER_BYTES];
+            try (in) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    accept(buffer, read);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    readError = e.getMessage();
+                }
+            }
+        }
+
+        private synchronized void accept(byte[] buffer, int length) {
+            if (spool != null) {
+                try {
+                    spool.write(buffer, 0, length);
+                } catch (IOException e) {
+                    readError = "log file: " + e.getMessage();
+                }
+            }
+            if (echo != null) {
+                echo.write(buffer, 0, length);
+                echo.flush();
+            }
+
+            int offset = 0;
+            if (headLength < head.length) {
+                int toHead = Math.min(length, head.length - headLength);
+                System.arraycopy(buffer, 0, head, headLength, toHead);
+                headLength += toHead;
+                offset = toHead;
+            }
+            total += length;
+
+            int remaining = length - offset;
+            if (remaining == 0 || tail.length == 0) {
+                return;
+            }
+            // Only the last tail.length bytes of this chunk can survive anyway.
+            if (remaining > tail.length) {
+                offset += remaining - tail.length;
+                remaining = tail.length;
+            }
+            int firstPart = Math.min(remaining, tail.length - tailPosition);
+            System.arraycopy(buffer, offset, tail, tailPosition, firstPart);
+            System.arraycopy(buffer, offset + firstPart, tail, 0, remaining - firstPart);
+            tailPosition = (tailPosition + remaining) % tail.length;
+        }
+
+        private synchronized long total() {
+            return total;
+        }
+
+        private synchronized void close() {
+            closeQuietly(spool);
+        }
+
+        private synchronized String text(Path logFile) {
+            long afterHead = total - headLength;
+            int tailLength = (int) Math.min(afterHead, tail.length);
+            long omitted = afterHead - tailLength;
+
+            byte[] ordered = new byte[tailLength];
+            if (tailLength < tail.length) {
+                System.arraycopy(tail, 0, ordered, 0, tailLength);
+            } else {
+                // The ring is full, its oldest byte is the one about to be overwritten.
+                System.arraycopy(tail, tailPosition, ordered, 0, tail.length - tailPosition);
+                System.arraycopy(tail, 0, ordered, tail.length - tailPosition, tailPosition);
+            }
+
+            StringBuilder text = new StringBuilder(headLength + tailLength + 100);
+            text.append(new String(head, 0, headLength, StandardCharsets.UTF_8));
+            if (omitted > 0) {
+                text.append("\n...").append(omitted).append(" bytes omitted");
+                if (logFile != null) {
+                    text.append(", full output in ").append(logFile);
+                }
+                text.append("...\n");
+            }
+            text.append(new String(ordered, StandardCharsets.UTF_8));
+            if (readError != null) {
+                text.append("\n[output-read-failed] ").append(readError).append('\n');
+            }
+            return text.toString();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -90,24 +91,53 @@ public class SystemTest {
     }
 
     @Test
-    void failsWhenSourceProjectDoesNotExist() {
-      try {
+    void streamingNdjsonToStdoutOnlyRedirectsOtherOutputForThatRun() throws Exception {
+        Path sourceDir = tempDir.resolve("ndjson-project");
+        Files.createDirectories(sourceDir);
+        Files.writeString(sourceDir.resolve("Demo.java"), "class Demo { void run() {} }\n");
+        Path configFile = createConfig(tempDir, """
+            [
+              {
+                "category": "Maintainability",
+                "description": "System test config",
+                "metrics": [
+                  { "type": "cyclomatic_complexity", "thresholds": { "major": 2, "minor": 1 } }
+                ]
+              }
+            ]
+        """);
+
+        PrintStream stdout = System.out;
+        int exitCode = Main.run(new String[] {
+            "-s", sourceDir.toString(),
+            "--config", configFile.toString(),
+            "--output", tempDir.resolve("out/report").toString(),
+            "--project", "Test",
+            "--should-open-report", "false",
+            "--ndjson", "-"
+        });
+
+        assertEquals(0, exitCode);
+        assertSame(stdout, System.out);
+    }
+
+    @Test
+    void failsWhenSourceProjectDoesNotExist() throws Exception {
         Path fakeProject = tempDir.resolve("does-not-exist");
         Path configFile = createConfig(tempDir, "[]");
         Path outputBase = tempDir.resolve("out/report");
         Files.createDirectories(outputBase.getParent());
-        
-        Main.main(new String[] {
+
+        int exitCode = Main.run(new String[] {
             "-s", fakeProject.toString(),
             "--config", configFile.toString(),
             "--output", tempDir.resolve("out/report").toString(),
             "--project", "Test",
             "--should-open-report", "false"
         });
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-       
+
+        assertEquals(2, exitCode);
+        assertFalse(Files.exists(fakeProject));
     }
 
     @Test
@@ -1,12 +1,19 @@
 package app;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -15,6 +22,7 @@ import com.tool.app.AuditResult;
 import com.tool.domain.Category;
 import com.tool.metrics.MetricResult;
 import com.tool.util.ConfigLoader;
+import metrics.availability.portability_tests.PortabilityTargetProbe;
 
 class AuditControllerTest {
 
@@ -79,4 +87,215 @@ class AuditControllerTest {
         assertEquals("Cyclomatic Complexity", metricResult.metric().name());
         assertEquals(2.0, metricResult.score());
     }
+
+    @Test
+    void concurrentAuditTurnsAThrowingMetricIntoAFailedResultAndKeepsConfigOrder() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        Path configPath = writeConfig(new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))));
+
+        ExecutorService executor = AuditController.newMetricExecutor(2);
+        try {
+            AuditController controller = new AuditController(configPath, executor, Duration.ofSeconds(30), null);
+            // The security metric throws when the report it was handed does not exist.
+            AuditResult result = controller.runAudit(sourceRoot, tempDir.resolve("missing-report.json"));
+
+            List<Category> categories = result.categories();
+            assertEquals("Security", categories.get(0).name());
+            assertEquals("Maintainability", categories.get(1).name());
+
+            MetricResult security = result.resultsFor(categories.get(0)).get(0);
+            assertTrue(security.failed());
+            assertTrue(security.findings().get(0).message().contains("Dependency-Check report not found"));
+
+            MetricResult maintainability = result.resultsFor(categories.get(1)).get(0);
+            assertFalse(maintainability.failed());
+            assertEquals(2.0, maintainability.score());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentAuditReportsAMetricThatRunsPastItsDeadlineAsFailed() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        Path configPath = writeConfig(new JSONArray()
+            .put(category("Availability", new JSONObject()
+                .put("type", "portability_pass_rate")
+                .put("thresholds", new JSONObject().put("critical", 0.5))
+                .put("settings", new JSONObject().put("targets", new JSONArray().put(new JSONObject()
+                    .put("name", "slow-target")
+                    .put("timeout_seconds", 60)
+                    .put("command", new JSONArray()
+                        .put(Path.of(System.getProperty("java.home"), "bin", "java").toString())
+                        .put("-cp")
+                        .put(System.getProperty("java.class.path"))
+                        .put(PortabilityTargetProbe.class.getName())
+                        .put("sleep")
+                        .put("20000")))))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))));
+
+        ExecutorService executor = AuditController.newMetricExecutor(2);
+        try {
+            AuditController controller = new AuditController(configPath, executor, Duration.ofSeconds(1), null);
+            long start = System.nanoTime();
+            AuditResult result = controller.runAudit(sourceRoot);
+            long elapsedSeconds = Duration.ofNanos(System.nanoTime() - start).toSeconds();
+
+            MetricResult availability = result.resultsFor(result.categories().get(0)).get(0);
+            assertTrue(availability.failed());
+            assertTrue(availability.findings().get(0).message().contains("metric deadline of 1 seconds exceeded"));
+            assertEquals(2.0, result.resultsFor(result.categories().get(1)).get(0).score());
+            assertTrue(elapsedSeconds < 15, "The audit should not wait for the slow target to finish");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequentialAuditTurnsAThrowingMetricIntoAFailedResult() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        Path configPath = writeConfig(new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))));
+
+        AuditController controller = new AuditController(configPath);
+        AuditResult result = controller.runAudit(sourceRoot, tempDir.resolve("missing-report.json"));
+
+        MetricResult security = result.resultsFor(result.categories().get(0)).get(0);
+        assertTrue(security.failed());
+        assertTrue(security.findings().get(0).message().contains("Dependency-Check report not found"));
+        assertEquals(2.0, result.resultsFor(result.categories().get(1)).get(0).score());
+    }
+
+    @Test
+    void sequentialAuditStillHonoursTheMetricDeadline() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        Path configPath = writeConfig(new JSONArray()
+            .put(category("Availability", new JSONObject()
+                .put("type", "portability_pass_rate")
+                .put("thresholds", new JSONObject().put("critical", 0.5))
+                .put("settings", new JSONObject().put("targets", new JSONArray().put(new JSONObject()
+                    .put("name", "slow-target")
+                    .put("timeout_seconds", 60)
+                    .put("command", new JSONArray()
+                        .put(Path.of(System.getProperty("java.home"), "bin", "java").toString())
+                        .put("-cp")
+                        .put(System.getProperty("java.class.path"))
+                        .put(PortabilityTargetProbe.class.getName())
+                        .put("sleep")
+                        .put("20000")))))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))));
+
+        // No executor, as with the default --parallelism of 1.
+        AuditController controller = new AuditController(configPath, null, Duration.ofSeconds(1), null);
+        long start = System.nanoTime();
+        AuditResult result = controller.runAudit(sourceRoot);
+        long elapsedSeconds = Duration.ofNanos(System.nanoTime() - start).toSeconds();
+
+        MetricResult availability = result.resultsFor(result.categories().get(0)).get(0);
+        assertTrue(availability.failed());
+        assertTrue(availability.findings().get(0).message().contains("metric deadline of 1 seconds exceeded"));
+        assertEquals(2.0, result.resultsFor(result.categories().get(1)).get(0).score());
+        assertTrue(elapsedSeconds < 15, "The audit should not wait for the slow target to finish");
+    }
+
+    @Test
+    void concurrentAuditTellsListenersAboutEveryResultOnce() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        Path configPath = writeConfig(new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))));
+
+        ExecutorService executor = AuditController.newMetricExecutor(2);
+        try {
+            AuditController controller = new AuditController(configPath, executor, Duration.ofSeconds(30), null);
+            List<MetricResult> streamed = new CopyOnWriteArrayList<>();
+            controller.addResultListener(streamed::add);
+
+            AuditResult result = controller.runAudit(sourceRoot, tempDir.resolve("missing-report.json"));
+
+            assertEquals(2, streamed.size());
+            for (Category category : result.categories()) {
+                // Failed metrics are streamed too, and as the very result that ends up in the report.
+                assertTrue(streamed.contains(result.resultsFor(category).get(0)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void dependencyReportIsOnlyProvidedWhenAConfiguredMetricReadsIt() throws Exception {
+        Path sourceRoot = writeSampleSource();
+        AuditController maintainabilityOnly = new AuditController(writeConfig(new JSONArray()
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1))))));
+        maintainabilityOnly.generateMissingDependencyReports(Duration.ofHours(24));
+
+        maintainabilityOnly.runAudit(sourceRoot);
+
+        // Generating would have created the reports folder and started Maven.
+        assertFalse(Files.exists(sourceRoot.resolve("reports")));
+
+        Path report = tempDir.resolve("dependency-check-report.json");
+        Files.writeString(report, "{\"dependencies\":[]}");
+        AuditController withSecurity = new AuditController(writeConfig(new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))));
+        withSecurity.generateMissingDependencyReports(Duration.ofHours(24));
+
+        AuditResult result = withSecurity.runAudit(sourceRoot, report);
+        MetricResult security = result.resultsFor(result.categories().get(0)).get(0);
+
+        assertFalse(security.failed());
+        assertEquals(0.0, security.score());
+    }
+
+    private Path writeSampleSource() throws Exception {
+        Path sourceRoot = tempDir.resolve("sample-src");
+        Files.createDirectories(sourceRoot);
+        Files.writeString(sourceRoot.resolve("Demo.java"), """
+            class Demo {
+                void run(int value) {
+                    if (value > 0) {
+                        System.out.println(value);
+                    }
+                }
+            }
+            """);
+        return sourceRoot;
+    }
+
+    private JSONObject category(String name, JSONObject metric) {
+        return new JSONObject()
+            .put("category", name)
+            .put("description", name + " checks.")
+            .put("metrics", new JSONArray().put(metric));
+    }
+
+    private Path writeConfig(JSONArray config) throws Exception {
+        Path configPath = tempDir.resolve("concurrent-config.json");
+        Files.writeString(configPath, config.toString(2));
+        return configPath;
+    }
 }
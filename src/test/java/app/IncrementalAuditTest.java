@@ -0,0 +1,120 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.app.AuditController;
+import com.tool.app.AuditResult;
+import com.tool.app.IncrementalAudit;
+import com.tool.app.ResultCache;
+import com.tool.domain.Category;
+import com.tool.metrics.MetricResult;
+
+class IncrementalAuditTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void updateOnlyParsesChangedFilesAndKeepsOtherMetricResults() throws Exception {
+        Path sourceRoot = tempDir.resolve("src");
+        Files.createDirectories(sourceRoot);
+        Files.writeString(sourceRoot.resolve("Stable.java"), "class Stable { void a() {} }\n");
+        Path edited = sourceRoot.resolve("Edited.java");
+        Files.writeString(edited, "class Edited { void b() {} }\n");
+
+        Path configPath = tempDir.resolve("config.json");
+        Files.writeString(configPath, new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1))))
+            .toString(2));
+
+        ResultCache cache = new ResultCache(tempDir.resolve("cache"), 1024 * 1024);
+        AuditController controller = new AuditController(configPath, null, null, null, cache);
+        IncrementalAudit incrementalAudit = new IncrementalAudit(controller, sourceRoot, null);
+
+        AuditResult first = incrementalAudit.runFull();
+        assertEquals(2, incrementalAudit.lastParseCount());
+        assertEquals(1.0, maintainability(first).score());
+
+        Files.writeString(edited, "class Edited { void b(boolean x) { if (x) { b(false); } } }\n");
+        AuditResult second = incrementalAudit.update(Set.of(edited));
+
+        assertEquals(1, incrementalAudit.lastParseCount());
+        assertEquals(1.5, maintainability(second).score());
+
+        // The security metric does not read sources, so its earlier result is reused as is.
+        Category security = second.categories().get(0);
+        assertSame(first.resultsFor(first.categories().get(0)).get(0), second.resultsFor(security).get(0));
+    }
+
+    @Test
+    void updateRunsTheSourceMetricsOnTheAuditsMetricExecutor() throws Exception {
+        Path sourceRoot = tempDir.resolve("src");
+        Files.createDirectories(sourceRoot);
+        Path edited = sourceRoot.resolve("Edited.java");
+        Files.writeString(edited, "class Edited { void b() {} }\n");
+
+        Path configPath = tempDir.resolve("config.json");
+        Files.writeString(configPath, new JSONArray()
+            .put(category("Security", new JSONObject()
+                .put("type", "dependency_vulnerability_exposure")
+                .put("thresholds", new JSONObject().put("critical", 60).put("info", 0))))
+            .put(category("Maintainability", new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1))))
+            .toString(2));
+
+        AtomicInteger started = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                started.incrementAndGet();
+            }
+        };
+        try {
+            AuditController controller = new AuditController(configPath, executor, Duration.ofSeconds(30), Duration.ofSeconds(60));
+            IncrementalAudit incrementalAudit = new IncrementalAudit(controller, sourceRoot, null);
+            incrementalAudit.runFull();
+            assertEquals(2, started.get());
+
+            Files.writeString(edited, "class Edited { void b(boolean x) { if (x) { b(false); } } }\n");
+            AuditResult second = incrementalAudit.update(Set.of(edited));
+
+            // Same executor and deadlines as a full audit, so a hanging metric cannot hold the watcher thread.
+            assertEquals(3, started.get());
+            assertEquals(2.0, maintainability(second).score());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static MetricResult maintainability(AuditResult result) {
+        return result.resultsFor(result.categories().get(1)).get(0);
+    }
+
+    private JSONObject category(String name, JSONObject metric) {
+        return new JSONObject()
+            .put("category", name)
+            .put("description", name + " checks.")
+            .put("metrics", new JSONArray().put(metric));
+    }
+}
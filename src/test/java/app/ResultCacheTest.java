@@ -0,0 +1,82 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.app.ResultCache;
+
+class ResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storesValuesAcrossInstancesAndCountsHitsAndMisses() throws Exception {
+        Path directory = tempDir.resolve("cache");
+        ResultCache cache = new ResultCache(directory, 1024 * 1024);
+
+        assertTrue(cache.get("metric/v1", "abc").isEmpty());
+        cache.put("metric/v1", "abc", "[1,2,3]");
+
+        ResultCache reopened = new ResultCache(directory, 1024 * 1024);
+        assertEquals(Optional.of("[1,2,3]"), reopened.get("metric/v1", "abc"));
+        assertTrue(reopened.get("metric/v2", "abc").isEmpty());
+        assertEquals(1, reopened.hits());
+        assertEquals(1, reopened.misses());
+        assertTrue(reopened.summary().contains("1 hits, 1 misses"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesOnceOverTheCap() throws Exception {
+        String value = "x".repeat(600);
+        ResultCache cache = new ResultCache(tempDir.resolve("cache"), 1500);
+
+        cache.put("metric/v1", "first", value);
+        cache.put("metric/v1", "second", value);
+        // Reading the first entry makes the second one the oldest.
+        assertTrue(cache.get("metric/v1", "first").isPresent());
+        cache.put("metric/v1", "third", value);
+
+        assertTrue(cache.sizeBytes() <= 1500);
+        assertTrue(cache.get("metric/v1", "first").isPresent());
+        assertTrue(cache.get("metric/v1", "second").isEmpty());
+        assertTrue(cache.get("metric/v1", "third").isPresent());
+    }
+
+    @Test
+    void dropsHalfWrittenAndDamagedEntries() throws Exception {
+        Path directory = tempDir.resolve("cache");
+        ResultCache cache = new ResultCache(directory, 1024 * 1024);
+        cache.put("metric/v1", "abc", "value");
+
+        Path leftover = directory.resolve("entry-crashed.tmp");
+        Files.writeString(leftover, "{\"namespace\":");
+        try (Stream<Path> entries = Files.walk(directory)) {
+            Path entry = entries.filter(p -> p.toString().endsWith(".json")).findFirst().orElseThrow();
+            Files.writeString(entry, "not json");
+        }
+
+        ResultCache reopened = new ResultCache(directory, 1024 * 1024);
+        assertFalse(Files.exists(leftover));
+        assertTrue(reopened.get("metric/v1", "abc").isEmpty());
+    }
+
+    @Test
+    void hashesContentLikeGitBlobs() {
+        // Same id as `printf 'hello\n' | git hash-object --stdin`
+        assertEquals(
+            "ce013625030ba8dba906f756967f9e9ca394464a",
+            ResultCache.contentHash("hello\n".getBytes(StandardCharsets.UTF_8))
+        );
+    }
+}
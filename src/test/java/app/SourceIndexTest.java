@@ -0,0 +1,82 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.tool.app.SourceIndex;
+
+class SourceIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parsesEachFileOnceForAllConsumers() throws Exception {
+        Path file = writeSource("Demo.java");
+        SourceIndex index = new SourceIndex(tempDir, 2, EnumSet.of(SourceIndex.Feature.TOKENS));
+
+        assertEquals(List.of(file), index.files());
+
+        CompilationUnit first = index.acquire(file).orElseThrow();
+        index.release(file);
+        CompilationUnit second = index.acquire(file).orElseThrow();
+        index.release(file);
+
+        assertSame(first, second);
+        assertEquals(1, index.parseCount());
+
+        // Both consumers are done, so the AST was dropped and a further read has to parse again.
+        index.acquire(file);
+        index.release(file);
+        assertEquals(2, index.parseCount());
+    }
+
+    @Test
+    void onlyKeepsPositionsWhenTokensAreRequested() throws Exception {
+        Path file = writeSource("Demo.java");
+
+        SourceIndex withTokens = new SourceIndex(tempDir, 1, EnumSet.of(SourceIndex.Feature.TOKENS));
+        MethodDeclaration method = withTokens.acquire(file).orElseThrow().findFirst(MethodDeclaration.class).orElseThrow();
+        assertEquals(3, method.getBegin().orElseThrow().line);
+
+        SourceIndex lean = new SourceIndex(tempDir, 1, EnumSet.noneOf(SourceIndex.Feature.class));
+        CompilationUnit leanUnit = lean.acquire(file).orElseThrow();
+        assertFalse(leanUnit.findFirst(MethodDeclaration.class).orElseThrow().getBegin().isPresent());
+        assertTrue(leanUnit.getAllContainedComments().isEmpty());
+    }
+
+    @Test
+    void reportsUnreadableFilesAsEmpty() {
+        Path missing = tempDir.resolve("Missing.java");
+        SourceIndex index = new SourceIndex(tempDir, 1, EnumSet.noneOf(SourceIndex.Feature.class));
+
+        assertTrue(index.acquire(missing).isEmpty());
+    }
+
+    private Path writeSource(String name) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, """
+            class Demo {
+                // keeps the comment handling honest
+                void run(int value) {
+                    if (value > 0) {
+                        System.out.println(value);
+                    }
+                }
+            }
+            """);
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.app.SourceWatcher;
+
+class SourceWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void foldsABurstOfSavesIntoOneBatchOfJavaFiles() throws Exception {
+        Path nested = tempDir.resolve("com/example");
+        Files.createDirectories(nested);
+        Path first = nested.resolve("First.java");
+        Files.writeString(first, "class First {}\n");
+
+        try (SourceWatcher watcher = new SourceWatcher(tempDir, Duration.ofMillis(500))) {
+            CompletableFuture<SourceWatcher.Changes> pending = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return watcher.awaitChanges();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            Files.writeString(first, "class First { void a() {} }\n");
+            Files.writeString(tempDir.resolve("notes.txt"), "not java\n");
+            // A new package directory and the file in it arrive together, before the directory is watched.
+            Path created = Files.createDirectories(tempDir.resolve("com/other")).resolve("Second.java");
+            Files.writeString(created, "class Second {}\n");
+
+            SourceWatcher.Changes changes = pending.get(20, TimeUnit.SECONDS);
+            assertTrue(changes.complete());
+            assertEquals(Set.of(first, created), changes.files());
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void keepsSavesMadeBeforeTheFirstWait() throws Exception {
+        Path file = tempDir.resolve("Early.java");
+        Files.writeString(file, "class Early {}\n");
+
+        try (SourceWatcher watcher = new SourceWatcher(tempDir, Duration.ofMillis(200))) {
+            // Saved while the first audit would still be running, nobody is waiting yet.
+            Files.writeString(file, "class Early { void a() {} }\n");
+
+            SourceWatcher.Changes changes = watcher.awaitChanges();
+            assertTrue(changes.complete());
+            assertEquals(Set.of(file), changes.files());
+        }
+    }
+}
@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import org.junit.jupiter.api.Test;
 
@@ -45,6 +46,65 @@ class CliArgsTest {
         assertEquals(Path.of("out", "custom-report"), args.outputPath());
     }
 
+    @Test
+    void parsesConcurrencyAndDeadlineOptions() {
+        CliArgs defaults = CliArgs.parse(new String[] {"--source", "demo-src"});
+        assertEquals(1, defaults.parallelism());
+        assertNull(defaults.metricTimeout());
+        assertNull(defaults.auditTimeout());
+
+        CliArgs args = CliArgs.parse(new String[] {
+            "--source", "demo-src",
+            "--parallelism", "4",
+            "--metric-timeout", "90",
+            "--audit-timeout", "600"
+        });
+
+        assertEquals(4, args.parallelism());
+        assertEquals(Duration.ofSeconds(90), args.metricTimeout());
+        assertEquals(Duration.ofSeconds(600), args.auditTimeout());
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> CliArgs.parse(new String[] {"--source", "demo-src", "--parallelism", "0"})
+        );
+    }
+
+    @Test
+    void dependencyReportMaxAgeIsGivenInHours() {
+        assertEquals(Duration.ofHours(24), CliArgs.parse(new String[] {"--source", "demo-src"}).dependencyReportMaxAge());
+        assertEquals(
+            Duration.ZERO,
+            CliArgs.parse(new String[] {"--source", "demo-src", "--dependency-report-max-age", "0"}).dependencyReportMaxAge()
+        );
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> CliArgs.parse(new String[] {"--source", "demo-src", "--dependency-report-max-age", "soon"})
+        );
+    }
+
+    @Test
+    void serveModeDoesNotNeedASource() {
+        CliArgs args = CliArgs.parse(new String[] {"serve", "--port", "0", "--workers", "3"});
+
+        assertTrue(args.serve());
+        assertNull(args.sourceRoot());
+        assertEquals(0, args.port());
+        assertEquals(3, args.serverWorkers());
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> CliArgs.parse(new String[] {"serve", "--port", "70000"})
+        );
+    }
+
+    @Test
+    void ndjsonAcceptsADashForStdout() {
+        CliArgs args = CliArgs.parse(new String[] {"--source", "demo-src", "--ndjson", "-", "--parallelism", "2"});
+
+        assertEquals("-", args.ndjsonOutput());
+        assertEquals(2, args.parallelism());
+        assertNull(CliArgs.parse(new String[] {"--source", "demo-src"}).ndjsonOutput());
+    }
+
     @Test
     void rejectsMissingSourceArgument() {
         IllegalArgumentException error = assertThrows(
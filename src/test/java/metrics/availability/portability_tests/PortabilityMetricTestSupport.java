@@ -16,6 +16,10 @@ abstract class PortabilityMetricTestSupport {
     @TempDir
     protected Path tempDir;
 
+    // Outside the project, so target logs never end up in the workspaces.
+    @TempDir
+    protected Path logDir;
+
     protected PortabilityPassRateMetric newMetric(JSONArray targets) {
         return newMetric(defaultSettings(targets));
     }
@@ -29,6 +33,7 @@ abstract class PortabilityMetricTestSupport {
             .put("count_skipped_as_failure", false)
             .put("isolate_workspaces", true)
             .put("workspace_excludes", new JSONArray().put(".git").put("target"))
+            .put("target_log_dir", logDir.toString())
             .put("targets", targets);
     }
 
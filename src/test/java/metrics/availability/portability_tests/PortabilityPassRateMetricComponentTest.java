@@ -2,12 +2,27 @@ package metrics.availability.portability_tests;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.ToolProvider;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
+import com.tool.app.ProjectContext;
+import com.tool.app.ResultCache;
+import com.tool.domain.Severity;
 import com.tool.metrics.MetricResult;
 import com.tool.metrics.availability.PortabilityPassRateMetric;
 
@@ -58,4 +73,365 @@ public class PortabilityPassRateMetricComponentTest extends PortabilityMetricTes
 
         assertEquals(0.0, result.score(), 0.0001);
     }
+
+    @Test
+    void reportsTargetsInConfigOrderAndRunsLocalTargetsOneAtATime() throws Exception {
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("slow-pass", "supported", 1.0, "sleep", "300"))
+            .put(probeTarget("fast-fail", "supported", 3.0, "assert-exists", "missing.txt")))
+            .put("cpu_slots", 4));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        assertEquals(0.75, result.score(), 0.0001);
+        assertTrue(result.findings().get(0).message().startsWith("Target 'slow-pass' PASSED"));
+        assertTrue(result.findings().get(1).message().startsWith("Target 'fast-fail' COMPATIBILITY FAILED"));
+
+        Instant[] first = runTimes(result.findings().get(0).message());
+        Instant[] second = runTimes(result.findings().get(1).message());
+        // Both are LOCAL, so even with CPU slots to spare whichever got the slot second waits for the other.
+        assertTrue(!second[0].isBefore(first[1]) || !first[0].isBefore(second[1]));
+    }
+
+    @Test
+    void snapshotWorkspacesAreIsolatedAndLeaveTheProjectAlone() throws Exception {
+        Files.createDirectories(tempDir.resolve("src/main/java"));
+        TestUtils.writeMinimalPom(tempDir);
+        String pom = Files.readString(tempDir.resolve("pom.xml"));
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("write-marker", "supported", 0.0, "write", "marker.txt"))
+            .put(probeTarget("assert-marker-missing", "supported", 1.0, "assert-missing", "marker.txt"))
+            .put(probeTarget("check-pom", "supported", 1.0, "assert-exists", "pom.xml"))
+            // Rewrites the file in place, which must reach neither the project nor the other workspaces.
+            .put(probeTarget("rewrite-pom", "supported", 1.0, "write", "pom.xml")))
+            .put("workspace_mode", "snapshot"));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        assertEquals(0.0, result.score(), 0.0001);
+        assertFalse(Files.exists(tempDir.resolve("marker.txt")));
+        assertEquals(pom, Files.readString(tempDir.resolve("pom.xml")));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void pooledDockerTargetsReuseAContainerUntilItsUsesRunOut() throws Exception {
+        Path log = tempDir.resolve("docker.log");
+        Path docker = writeStubDocker(log);
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(dockerTarget("first", "true"))
+            .put(dockerTarget("second", "false"))
+            .put(dockerTarget("third", "true")))
+            .put("docker_command", docker.toString())
+            .put("reuse_containers", true)
+            .put("container_max_uses", 2));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        assertEquals(1.0 / 3.0, result.score(), 0.0001);
+        List<String> calls = Files.readAllLines(log);
+        assertEquals(2, calls.stream().filter(call -> call.startsWith("run ")).count());
+        assertEquals(3, calls.stream().filter(call -> call.startsWith("cp ")).count());
+        // The first container served its two runs and was removed, the second one stays warm.
+        assertEquals(1, calls.stream().filter(call -> call.startsWith("rm -f ")).count());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void metricsWithTheSameContainerSettingsShareTheirContainers() throws Exception {
+        Path log = tempDir.resolve("docker.log");
+        Path docker = writeStubDocker(log);
+        JSONObject settings = defaultSettings(new JSONArray().put(dockerTarget("only", "true")))
+            .put("docker_command", docker.toString())
+            .put("reuse_containers", true)
+            .put("container_max_uses", 2);
+
+        // As after a config reload: a new metric instance with the same settings.
+        newMetric(settings).evaluate(tempDir);
+        newMetric(settings).evaluate(tempDir);
+
+        List<String> calls = Files.readAllLines(log);
+        assertEquals(1, calls.stream().filter(call -> call.startsWith("run ")).count());
+        assertEquals(2, calls.stream().filter(call -> call.startsWith("cp ")).count());
+    }
+
+    @Test
+    void sharedDependencyCacheReportsWhatItAlreadyHeld() throws Exception {
+        Path cacheDir = tempDir.resolve("m2-cache");
+        Files.createDirectories(cacheDir.resolve("repository/org/demo"));
+        Files.write(cacheDir.resolve("repository/org/demo/demo.jar"), new byte[1024 * 1024]);
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("write-output", "supported", 1.0, "write", "out.txt")))
+            .put("share_dependency_cache", true)
+            .put("dependency_cache_dir", cacheDir.toString()));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        assertEquals(0.0, result.score(), 0.0001);
+        assertTrue(result.findings().stream().anyMatch(finding -> finding.message()
+            .contains("Dependency cache: the shared repository held 1.0 MB before the targets ran and grew by 0.0 MB while they ran.")));
+        // The first build to finish warms the cache, later builds share it.
+        assertTrue(Files.exists(cacheDir.resolve(".warm")));
+    }
+
+    @Test
+    void aFailingBuildStillWarmsTheDependencyCache() throws Exception {
+        Path cacheDir = tempDir.resolve("m2-cache");
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("failing-tests", "supported", 1.0, "assert-exists", "no-such-file")))
+            .put("share_dependency_cache", true)
+            .put("dependency_cache_dir", cacheDir.toString()));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        // It got as far as running, so its dependencies resolved and later builds need not wait for each other.
+        assertEquals(1.0, result.score(), 0.0001);
+        assertTrue(Files.exists(cacheDir.resolve(".warm")));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void dockerMavenTargetsGetTheSharedRepositoryMounted() throws Exception {
+        Path log = tempDir.resolve("docker.log");
+        Path docker = writeStubDocker(log);
+        Path cacheDir = tempDir.resolve("m2-cache");
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(dockerTarget("maven-build", "mvn")))
+            .put("docker_command", docker.toString())
+            .put("share_dependency_cache", true)
+            .put("dependency_cache_dir", cacheDir.toString()));
+
+        metric.evaluate(tempDir);
+
+        String run = Files.readAllLines(log).stream().filter(call -> call.startsWith("run ")).findFirst().orElseThrow();
+        // Read-only, the container downloads into its own repository and only falls back to the shared one.
+        assertTrue(run.contains(cacheDir.resolve("repository").toAbsolutePath() + ":/var/cache/quality-auditor/m2:ro"));
+        assertTrue(run.contains("mvn -Dmaven.repo.local=/tmp/quality-auditor/m2 -Dmaven.repo.local.tail=/var/cache/quality-auditor/m2"));
+    }
+
+    @Test
+    void reusesCachedTargetResultsUntilTheWorkspaceChanges() throws Exception {
+        Path project = tempDir.resolve("project");
+        Files.createDirectories(project);
+        Files.writeString(project.resolve("App.java"), "class App {}");
+        Path ranMarker = tempDir.resolve("ran.txt");
+        ResultCache cache = new ResultCache(tempDir.resolve("cache"), 1024 * 1024);
+
+        JSONObject settings = defaultSettings(new JSONArray()
+            .put(probeTarget("write-marker", "supported", 1.0, "write", ranMarker.toString())))
+            .put("cache_target_results", true);
+        ProjectContext context = new ProjectContext(project, null, null, cache);
+
+        newMetric(settings).evaluate(context);
+        assertTrue(Files.deleteIfExists(ranMarker));
+
+        MetricResult cached = newMetric(settings).evaluate(context);
+        assertFalse(Files.exists(ranMarker));
+        assertTrue(cached.findings().get(0).message().contains("Cached result"));
+
+        newMetric(new JSONObject(settings.toString()).put("force_rerun", true)).evaluate(context);
+        assertTrue(Files.deleteIfExists(ranMarker));
+
+        Files.writeString(project.resolve("App.java"), "class App { int changed; }");
+        MetricResult rerun = newMetric(settings).evaluate(context);
+        assertTrue(Files.exists(ranMarker));
+        assertFalse(rerun.findings().get(0).message().contains("Cached result"));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void failedTargetsShowTheEndOfTheirOutputAndKeepTheFullLog() throws Exception {
+        PortabilityPassRateMetric metric = newMetric(new JSONArray().put(localTarget(
+            "noisy-build",
+            "supported",
+            1.0,
+            "sh", "-c", "i=0; while [ $i -lt 20000 ]; do echo compiling$i; i=$((i+1)); done; echo LAST-ERROR; exit 1"
+        )));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        String message = result.findings().get(0).message();
+        assertTrue(message.contains("LAST-ERROR"), message);
+        Path log = fullLog(message);
+        assertEquals(logDir, log.getParent());
+        assertTrue(log.getFileName().toString().startsWith("noisy-build-"), message);
+        assertTrue(Files.readString(log).contains("compiling10000\n"));
+
+        // Every run has a log of its own, so concurrent audits of the same target cannot mix theirs up.
+        Path secondLog = fullLog(metric.evaluate(tempDir).findings().get(0).message());
+        assertNotEquals(log, secondLog);
+        assertTrue(Files.readString(log).contains("LAST-ERROR"));
+    }
+
+    private static Path fullLog(String message) {
+        Matcher matcher = Pattern.compile("Full log: (.+?\\.log)\\.").matcher(message);
+        assertTrue(matcher.find(), message);
+        return Path.of(matcher.group(1));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void failFastCancelsTheRestOnceTheRiskIsCriticalWhateverHappens() throws Exception {
+        Path log = tempDir.resolve("docker.log");
+        Path docker = tempDir.resolve("docker");
+        // A docker whose builds never finish, unless the container is killed.
+        Files.writeString(docker, """
+            #!/bin/sh
+            echo "$*" >> '%s'
+            case "$1" in
+              info) echo "stub-1.0" ;;
+              run) exec sleep 30 ;;
+            esac
+            """.formatted(log));
+        docker.toFile().setExecutable(true);
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("required-jdk", "required", 1.0, "assert-exists", "missing.txt"))
+            .put(dockerTarget("slow-image", "mvn")))
+            .put("docker_command", docker.toString())
+            .put("cpu_slots", 2)
+            .put("fail_fast", true));
+
+        long startedAt = System.nanoTime();
+        MetricResult result = metric.evaluate(tempDir);
+        long seconds = (System.nanoTime() - startedAt) / 1_000_000_000L;
+
+        assertTrue(seconds < 15, "fail-fast took " + seconds + " s");
+        // The cancelled target keeps its weight as if it passed, so the score is the bound fail-fast stopped at.
+        assertEquals(0.5, result.score(), 0.0001);
+        assertEquals(Severity.CRITICAL, result.mostSevereThreshold().severity());
+        assertTrue(result.findings().get(1).message().contains("Target 'slow-image' CANCELLED (fail-fast"));
+        assertTrue(result.findings().get(1).message().contains("counted in weighted risk (weight=1.00), as if it had passed"));
+        assertTrue(Files.readAllLines(log).stream().anyMatch(call -> call.startsWith("rm -f portability-slow-image-")));
+    }
+
+    @Test
+    void compileOnceRunsTheOtherTargetsAgainstTheBaselineBuild() throws Exception {
+        JSONObject compileOnce = new JSONObject()
+            .put("baseline", "baseline-jdk")
+            // Only passes where the baseline's build was laid into the workspace.
+            .put("test_command", probeTarget("unused", "supported", 1.0, "assert-exists", "target/classes/App.class")
+                .getJSONArray("command"))
+            .put("release_check", true)
+            // The release check compiles into fresh output directories, the seeded classes are gone by then.
+            .put("release_check_command", probeTarget("unused", "supported", 1.0, "assert-missing", "target/classes/App.class")
+                .getJSONArray("command"));
+
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("other-jdk", "supported", 1.0, "assert-exists", "never-built.txt"))
+            .put(probeTarget("baseline-jdk", "required", 1.0, "write", "target/classes/App.class")))
+            .put("compile_once", compileOnce));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        assertEquals(0.0, result.score(), 0.0001);
+        assertTrue(result.findings().get(0).message().contains("Ran against the build of 'baseline-jdk'."));
+        // Builds happen in the isolated workspaces, never in the project.
+        assertFalse(Files.exists(tempDir.resolve("target")));
+
+        // A release check that could only pass on the seeded classes fails.
+        compileOnce.put("release_check_command", probeTarget("unused", "supported", 1.0, "assert-exists", "target/classes/App.class")
+            .getJSONArray("command"));
+        MetricResult seeded = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("other-jdk", "supported", 1.0, "assert-exists", "never-built.txt"))
+            .put(probeTarget("baseline-jdk", "required", 1.0, "write", "target/classes/App.class")))
+            .put("compile_once", compileOnce)).evaluate(tempDir);
+        assertEquals(0.5, seeded.score(), 0.0001);
+        assertTrue(seeded.findings().get(0).message().contains("COMPATIBILITY FAILED (release-check)"));
+    }
+
+    @Test
+    void bytecodePrecheckFailsTargetsMissingTheApisTheClassesUse() throws Exception {
+        Path sources = tempDir.resolve("src/main/java");
+        Files.createDirectories(sources);
+        Files.writeString(sources.resolve("App.java"), "class App { boolean empty(String s) { return s.isBlank(); } }");
+        Path classes = tempDir.resolve("target/classes");
+        Files.createDirectories(classes);
+        int exitCode = ToolProvider.getSystemJavaCompiler().run(
+            null, null, null, "--release", "11", "-d", classes.toString(), sources.resolve("App.java").toString()
+        );
+        assertEquals(0, exitCode);
+
+        Path ranMarker = logDir.resolve("java8-ran.txt");
+        PortabilityPassRateMetric metric = newMetric(defaultSettings(new JSONArray()
+            .put(probeTarget("java8", "supported", 1.0, "write", ranMarker.toString()).put("jdk_version", 8))
+            .put(probeTarget("java11", "supported", 1.0, "write", "out.txt").put("jdk_version", 11)))
+            .put("bytecode_precheck", "enforce"));
+
+        MetricResult result = metric.evaluate(tempDir);
+
+        // The Java 8 target never ran, it could not have passed.
+        assertFalse(Files.exists(ranMarker));
+        assertEquals(0.5, result.score(), 0.0001);
+        assertTrue(result.findings().get(0).message().contains("COMPATIBILITY FAILED (bytecode-precheck)"));
+        String java8Check = result.findings().get(2).message();
+        assertTrue(java8Check.contains("App is compiled for Java 11 (class file 55)"), java8Check);
+        assertTrue(java8Check.contains("missing member java/lang/String.isBlank()Z"), java8Check);
+        assertTrue(result.findings().get(3).message().contains("Nothing missing."));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void dockerProbeIsSharedAcrossEvaluationsUntilItExpires() throws Exception {
+        Path log = tempDir.resolve("docker.log");
+        Path docker = writeStubDocker(log);
+        JSONObject settings = defaultSettings(new JSONArray().put(dockerTarget("image-build", "true")))
+            .put("docker_command", docker.toString());
+
+        MetricResult first = newMetric(settings).evaluate(tempDir);
+        MetricResult second = newMetric(settings).evaluate(tempDir);
+
+        assertEquals(1, Files.readAllLines(log).stream().filter(call -> call.startsWith("info ")).count());
+        String probe = first.findings().get(1).message();
+        assertTrue(probe.matches("Docker probe: available \\(stub-1\\.0\\), took \\d+ ms\\."), probe);
+        assertTrue(second.findings().get(1).message().contains(", reused from "));
+
+        newMetric(new JSONObject(settings.toString()).put("docker_probe_ttl_seconds", 0)).evaluate(tempDir);
+        assertEquals(2, Files.readAllLines(log).stream().filter(call -> call.startsWith("info ")).count());
+
+        // A reloaded config with another probe timeout does not inherit the earlier probe and its timeout.
+        newMetric(new JSONObject(settings.toString()).put("docker_probe_timeout_seconds", 3)).evaluate(tempDir);
+        assertEquals(3, Files.readAllLines(log).stream().filter(call -> call.startsWith("info ")).count());
+    }
+
+    private JSONObject dockerTarget(String name, String command) {
+        return new JSONObject()
+            .put("name", name)
+            .put("mode", "docker")
+            .put("docker_image", "stub-image:1")
+            .put("timeout_seconds", 20)
+            .put("command", new JSONArray().put(command));
+    }
+
+    // Stands in for the docker CLI: logs every call and runs exec'd commands on the host.
+    private Path writeStubDocker(Path log) throws Exception {
+        Path docker = tempDir.resolve("docker");
+        Files.writeString(docker, """
+            #!/bin/sh
+            echo "$*" >> '%s'
+            case "$1" in
+              info) echo "stub-1.0" ;;
+              run) echo "container-$$" ;;
+              exec)
+                shift
+                while [ "$1" = "-w" ]; do shift 2; done
+                shift
+                [ "$1" = "rm" ] && exit 0
+                exec "$@" ;;
+            esac
+            """.formatted(log));
+        docker.toFile().setExecutable(true);
+        return docker;
+    }
+
+    private Instant[] runTimes(String message) {
+        Matcher matcher = Pattern.compile("Started (\\S+), finished (\\S+) \\(").matcher(message);
+        assertTrue(matcher.find(), message);
+        return new Instant[] {Instant.parse(matcher.group(1)), Instant.parse(matcher.group(2))};
+    }
 }
@@ -34,6 +34,31 @@ public class PortabilityPassRateMetricUnitTest extends PortabilityMetricTestSupp
         assertTrue(error.getMessage().contains("at least one target"));
     }
 
+    @Test
+    void rejectsCompileOnceDefaultsThatCouldPassWithoutRunningAnything() {
+        JSONObject settings = defaultSettings(new JSONArray()
+            .put(localTarget("baseline", "required", 1.0, "mvn", "-q", "clean", "compile"))
+            .put(localTarget("other", "supported", 1.0, "mvn", "-q", "clean", "compile")))
+            .put("compile_once", new JSONObject().put("baseline", "baseline"));
+
+        IllegalArgumentException noTestClasses = assertThrows(
+            IllegalArgumentException.class,
+            () -> new PortabilityPassRateMetric(defaultThresholds(), settings)
+        );
+        assertTrue(noTestClasses.getMessage().contains("does not build the test classes"));
+
+        settings.getJSONArray("targets").getJSONObject(0).put("command", new JSONArray().put("mvn").put("-q").put("test-compile"));
+        settings.getJSONObject("compile_once").put("release_check", true);
+        IllegalArgumentException noRelease = assertThrows(
+            IllegalArgumentException.class,
+            () -> new PortabilityPassRateMetric(defaultThresholds(), settings)
+        );
+        assertTrue(noRelease.getMessage().contains("needs a jdk_version"));
+
+        settings.getJSONArray("targets").getJSONObject(0).put("jdk_version", 17);
+        new PortabilityPassRateMetric(defaultThresholds(), settings);
+    }
+
     @Test
     void calculatesWeightedRiskWithoutExperimentalTargets() throws Exception {
         // Experimental targets can still fail, they just should not drag the main score down.
@@ -15,7 +15,11 @@ public final class PortabilityTargetProbe {
         switch (args[0]) {
             case "write" -> {
                 requireArgs(args, 2);
-                Files.writeString(Path.of(args[1]), "marker");
+                Path file = Path.of(args[1]);
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                Files.writeString(file, "marker");
             }
             case "assert-missing" -> {
                 requireArgs(args, 2);
@@ -1,12 +1,26 @@
 package metrics.maintainability;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.tool.app.CancellationToken;
+import com.tool.app.ProjectContext;
+import com.tool.app.ResultCache;
+import com.tool.app.SourceIndex;
+import com.tool.domain.Severity;
 import com.tool.domain.Threshold;
 import com.tool.metrics.MetricResult;
 import com.tool.metrics.maintainability.CyclomaticComplexityMetric;
@@ -15,6 +29,9 @@ import com.tool.util.ResourceUtil;
 public class CyclomaticComplexityUnitTest {
     ArrayList<Threshold> thresholds;
 
+    @TempDir
+    Path tempDir;
+
     // General cases
     @Test
     void testEmpty(){
@@ -160,4 +177,109 @@ public class CyclomaticComplexityUnitTest {
         MetricResult res = c.evaluate(p);
         assertEquals(0, res.score(), 0.1);
     }
+
+    // Parallel parsing
+    @Test
+    void testParallelMatchesSequential() throws Exception {
+        ArrayList<Threshold> thresholds = new ArrayList<>();
+        thresholds.add(new Threshold(Severity.MAJOR, 3));
+        thresholds.add(new Threshold(Severity.MINOR, 1));
+        for (String name : new String[] {"Switch1", "Switch2", "Complex1", "Complex2", "Decision1", "TryCatch2", "NotValidJava"}) {
+            Path resource = ResourceUtil.getResourcePath("metrics\\maintainability\\cyclomatic_complexity\\" + name + ".java");
+            Files.copy(resource, tempDir.resolve(name + ".java"));
+        }
+
+        CyclomaticComplexityMetric sequential = new CyclomaticComplexityMetric(thresholds);
+        CyclomaticComplexityMetric parallel = new CyclomaticComplexityMetric(thresholds, new JSONObject().put("parallelism", 4));
+        MetricResult expected = sequential.evaluate(tempDir);
+        MetricResult actual = parallel.evaluate(tempDir);
+
+        assertEquals(4, parallel.parallelism());
+        assertEquals(expected.score(), actual.score(), 0.00001);
+        assertEquals(expected.findings(), actual.findings());
+    }
+
+    @Test
+    void testZeroParallelismUsesAllProcessors(){
+        CyclomaticComplexityMetric c = new CyclomaticComplexityMetric(new ArrayList<>(), new JSONObject().put("parallelism", 0));
+        assertEquals(Runtime.getRuntime().availableProcessors(), c.parallelism());
+    }
+
+    // Result cache
+    @Test
+    void testUnchangedFilesAreServedFromTheCache() throws Exception {
+        ArrayList<Threshold> thresholds = new ArrayList<>();
+        thresholds.add(new Threshold(Severity.MAJOR, 3));
+        Path sources = tempDir.resolve("src");
+        Files.createDirectories(sources.resolve("vendor"));
+        Path switch2 = ResourceUtil.getResourcePath("metrics\\maintainability\\cyclomatic_complexity\\Switch2.java");
+        Files.copy(switch2, sources.resolve("Switch2.java"));
+        // An identical vendored copy shares the cache entry of the original.
+        Files.copy(switch2, sources.resolve("vendor").resolve("Switch2.java"));
+
+        ResultCache cache = new ResultCache(tempDir.resolve("cache"), 1024 * 1024);
+        CyclomaticComplexityMetric c = new CyclomaticComplexityMetric(thresholds);
+
+        SourceIndex firstIndex = new SourceIndex(sources, 1, EnumSet.of(SourceIndex.Feature.TOKENS));
+        MetricResult first = c.evaluate(new ProjectContext(sources, null, firstIndex, cache));
+
+        SourceIndex secondIndex = new SourceIndex(sources, 1, EnumSet.of(SourceIndex.Feature.TOKENS));
+        MetricResult second = c.evaluate(new ProjectContext(sources, null, secondIndex, cache));
+
+        assertEquals(0, secondIndex.parseCount());
+        assertEquals(first.score(), second.score(), 0.00001);
+        assertEquals(first.findings(), second.findings());
+        assertEquals(2, first.findings().size());
+        assertEquals(3, cache.hits());
+    }
+
+    // Reentrancy
+    @Test
+    void testOneInstanceEvaluatesTwoProjectsAtOnce() throws Exception {
+        ArrayList<Threshold> thresholds = new ArrayList<>();
+        thresholds.add(new Threshold(Severity.MAJOR, 3));
+        Path simple = tempDir.resolve("simple");
+        Path complex = tempDir.resolve("complex");
+        Files.createDirectories(simple);
+        Files.createDirectories(complex);
+        Files.copy(ResourceUtil.getResourcePath("metrics\\maintainability\\cyclomatic_complexity\\Empty.java"), simple.resolve("Empty.java"));
+        Files.copy(ResourceUtil.getResourcePath("metrics\\maintainability\\cyclomatic_complexity\\Switch2.java"), complex.resolve("Switch2.java"));
+
+        CyclomaticComplexityMetric c = new CyclomaticComplexityMetric(thresholds, new JSONObject().put("parallelism", 2));
+        MetricResult simpleAlone = c.evaluate(simple);
+        MetricResult complexAlone = c.evaluate(complex);
+
+        ExecutorService shared = Executors.newFixedThreadPool(2);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            ArrayList<Future<MetricResult>> runs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Path project = i % 2 == 0 ? simple : complex;
+                runs.add(callers.submit(() -> c.evaluate(new ProjectContext(project, null, null, null, shared, null))));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                MetricResult expected = i % 2 == 0 ? simpleAlone : complexAlone;
+                MetricResult actual = runs.get(i).get();
+                assertEquals(expected.score(), actual.score(), 0.00001);
+                assertEquals(expected.findings(), actual.findings());
+            }
+        } finally {
+            callers.shutdownNow();
+            shared.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCancelledRunStopsBeforeParsing() {
+        CyclomaticComplexityMetric c = new CyclomaticComplexityMetric(new ArrayList<>());
+        Path p = ResourceUtil.getResourcePath("metrics\\maintainability\\cyclomatic_complexity\\Switch2.java");
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel("audit deadline exceeded");
+
+        CancellationException error = assertThrows(
+            CancellationException.class,
+            () -> c.evaluate(new ProjectContext(p, null, null, null, null, cancellation))
+        );
+        assertEquals("audit deadline exceeded", error.getMessage());
+    }
 }
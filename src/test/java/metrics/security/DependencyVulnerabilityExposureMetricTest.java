@@ -6,7 +6,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -82,4 +89,250 @@ class DependencyVulnerabilityExposureMetricTest {
         assertTrue(result.findings().stream().anyMatch(f -> f.severity() == Severity.CRITICAL && "CVE-2026-0001".equals(f.function())));
         assertTrue(result.findings().stream().anyMatch(f -> f.severity() == Severity.INFO && "CVE-2026-0002".equals(f.function())));
     }
+
+    @Test
+    void keepsOnlyTheMostSevereVulnerabilitiesOfALargeReportInOrder() throws Exception {
+        DependencyVulnerabilityExposureMetric metric = new DependencyVulnerabilityExposureMetric(new ArrayList<>());
+        JSONArray dependencies = new JSONArray();
+        for (int d = 0; d < 20; d++) {
+            JSONArray vulnerabilities = new JSONArray();
+            for (int v = 0; v < 3; v++) {
+                // One medium per dependency is upgraded to high by its score, the rest stay low.
+                vulnerabilities.put(new JSONObject()
+                    .put("name", String.format("CVE-2026-%02d%d", d, v))
+                    .put("description", "Issue " + d + "/" + v)
+                    .put("cvssv3", new JSONObject().put("baseScore", v == 0 ? 7.0 + d / 10.0 : 2.0)));
+            }
+            // Names after the vulnerabilities and fields the metric does not read must not matter.
+            dependencies.put(new JSONObject()
+                .put("evidenceCollected", new JSONObject().put("vendorEvidence", new JSONArray().put(new JSONObject().put("value", "x"))))
+                .put("vulnerabilities", vulnerabilities)
+                .put("fileName", "lib-" + d + ".jar"));
+        }
+        dependencies.put("not a dependency");
+        Path reportPath = tempDir.resolve("large-report.json");
+        Files.writeString(reportPath, new JSONObject()
+            .put("scanInfo", new JSONObject().put("engineVersion", "12.1.0"))
+            .put("dependencies", dependencies)
+            .toString());
+
+        MetricResult result = metric.evaluate(tempDir, reportPath);
+
+        assertTrue(result.findings().get(0).message().contains("dependencies=21, vulnerabilities=60"));
+        assertTrue(result.findings().get(0).message().contains("high=20, medium=0, low=40"));
+        List<Finding> individual = result.findings().stream().filter(f -> f.function().startsWith("CVE-")).toList();
+        assertEquals(25, individual.size());
+        // Highest score first, then the lows in CVE order.
+        assertEquals("CVE-2026-190", individual.get(0).function());
+        assertEquals("lib-19.jar", individual.get(0).file());
+        assertTrue(individual.get(0).message().contains("Issue 19/0"));
+        assertEquals("CVE-2026-000", individual.get(19).function());
+        assertEquals("CVE-2026-001", individual.get(20).function());
+        assertEquals("CVE-2026-021", individual.get(24).function());
+    }
+
+    @Test
+    void offlineEngineMatchesThePomDependenciesAgainstAnOsvDump() throws Exception {
+        Path project = tempDir.resolve("offline-project");
+        Path sourceRoot = project.resolve("src").resolve("main").resolve("java");
+        Files.createDirectories(sourceRoot);
+        Files.writeString(project.resolve("pom.xml"), """
+            <project>
+              <groupId>com.example</groupId>
+              <artifactId>app</artifactId>
+              <version>1.0</version>
+              <properties><lib.version>1.2.0-beta</lib.version></properties>
+              <dependencyManagement>
+                <dependencies>
+                  <dependency><groupId>org.acme</groupId><artifactId>lib</artifactId><version>${lib.version}</version></dependency>
+                </dependencies>
+              </dependencyManagement>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>lib</artifactId></dependency>
+                <dependency><groupId>org.acme</groupId><artifactId>test-only</artifactId><version>1.0</version><scope>test</scope></dependency>
+                <dependency><groupId>org.acme</groupId><artifactId>unknown</artifactId><version>${missing.version}</version></dependency>
+              </dependencies>
+            </project>
+            """);
+
+        // lib pulls in parser [2.0,3.0), the local repository has 2.0 and 2.5.
+        Path repository = tempDir.resolve("m2");
+        Path libDir = Files.createDirectories(repository.resolve("org/acme/lib/1.2.0-beta"));
+        Files.writeString(libDir.resolve("lib-1.2.0-beta.pom"), """
+            <project>
+              <groupId>org.acme</groupId><artifactId>lib</artifactId><version>1.2.0-beta</version>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>parser</artifactId><version>[2.0,3.0)</version></dependency>
+                <dependency><groupId>org.acme</groupId><artifactId>optional</artifactId><version>1.0</version><optional>true</optional></dependency>
+              </dependencies>
+            </project>
+            """);
+        Files.createDirectories(repository.resolve("org/acme/parser/2.0"));
+        Files.createDirectories(repository.resolve("org/acme/parser/2.5"));
+
+        Path dump = Files.createDirectories(tempDir.resolve("osv"));
+        Files.writeString(dump.resolve("GHSA-1.json"), osvAdvisory("GHSA-1", "CVE-2026-1000", "org.acme:lib", "HIGH", null,
+            new JSONArray().put(new JSONObject().put("introduced", "1.0")).put(new JSONObject().put("fixed", "1.2.0"))).toString());
+        Files.writeString(dump.resolve("GHSA-2.json"), osvAdvisory("GHSA-2", null, "org.acme:lib", "LOW", null,
+            new JSONArray().put(new JSONObject().put("introduced", "0")).put(new JSONObject().put("fixed", "1.1"))).toString());
+        Files.writeString(dump.resolve("GHSA-3.json"), osvAdvisory("GHSA-3", null, "org.acme:parser", null,
+            "CVSS:3.1/AV:N/AC:L/PR:N/UI:N/S:U/C:H/I:H/A:H",
+            new JSONArray().put(new JSONObject().put("introduced", "2.1")).put(new JSONObject().put("last_affected", "2.5"))).toString());
+        Files.writeString(dump.resolve("GHSA-4.json"), osvAdvisory("GHSA-4", null, "org.acme:test-only", "CRITICAL", null,
+            new JSONArray().put(new JSONObject().put("introduced", "0"))).toString());
+
+        DependencyVulnerabilityExposureMetric metric = new DependencyVulnerabilityExposureMetric(new ArrayList<>(), new JSONObject()
+            .put("engine", "offline")
+            .put("osv_dump", dump.toString())
+            .put("vulnerability_database", tempDir.resolve("index/vulnerabilities.bin").toString())
+            .put("local_repository", repository.toString()));
+
+        MetricResult result = metric.evaluate(sourceRoot, null);
+
+        // lib 1.2.0-beta is before 1.2.0 and parser resolves to 2.5, the test scope and optional dependency are left out.
+        assertEquals(85.0, result.score());
+        assertTrue(result.findings().get(0).message().contains("dependencies=2, vulnerabilities=2, critical=1, high=1"));
+        assertTrue(result.findings().get(1).message().contains("org.acme:unknown"));
+        Finding parser = result.findings().stream().filter(f -> "GHSA-3".equals(f.function())).findFirst().orElseThrow();
+        assertEquals(Severity.CRITICAL, parser.severity());
+        assertEquals("org.acme:parser:2.5", parser.file());
+        assertTrue(parser.message().contains("CVSS 9.8"));
+        assertTrue(result.findings().stream().anyMatch(f -> "CVE-2026-1000".equals(f.function()) && "org.acme:lib:1.2.0-beta".equals(f.file())));
+        assertTrue(Files.exists(tempDir.resolve("index/vulnerabilities.bin")));
+    }
+
+    @Test
+    void offlineEngineAppliesTheConfiguredScopesToTransitiveDependencies() throws Exception {
+        Path project = tempDir.resolve("scoped-project");
+        Files.createDirectories(project);
+        Files.writeString(project.resolve("pom.xml"), """
+            <project>
+              <groupId>com.example</groupId>
+              <artifactId>app</artifactId>
+              <version>1.0</version>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>lib</artifactId><version>1.0</version></dependency>
+              </dependencies>
+            </project>
+            """);
+
+        // lib needs core to compile against and driver only at runtime, driver's own compile dependency stays runtime.
+        Path repository = tempDir.resolve("m2");
+        Files.writeString(Files.createDirectories(repository.resolve("org/acme/lib/1.0")).resolve("lib-1.0.pom"), """
+            <project>
+              <groupId>org.acme</groupId><artifactId>lib</artifactId><version>1.0</version>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>core</artifactId><version>1.0</version></dependency>
+                <dependency><groupId>org.acme</groupId><artifactId>driver</artifactId><version>1.0</version><scope>runtime</scope></dependency>
+              </dependencies>
+            </project>
+            """);
+        Files.writeString(Files.createDirectories(repository.resolve("org/acme/driver/1.0")).resolve("driver-1.0.pom"), """
+            <project>
+              <groupId>org.acme</groupId><artifactId>driver</artifactId><version>1.0</version>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>protocol</artifactId><version>1.0</version></dependency>
+              </dependencies>
+            </project>
+            """);
+
+        Path dump = Files.createDirectories(tempDir.resolve("osv"));
+        Files.writeString(dump.resolve("GHSA-1.json"), osvAdvisory("GHSA-1", null, "org.acme:driver", "CRITICAL", null,
+            new JSONArray().put(new JSONObject().put("introduced", "0"))).toString());
+        Files.writeString(dump.resolve("GHSA-2.json"), osvAdvisory("GHSA-2", null, "org.acme:protocol", "HIGH", null,
+            new JSONArray().put(new JSONObject().put("introduced", "0"))).toString());
+
+        JSONObject settings = new JSONObject()
+            .put("engine", "offline")
+            .put("osv_dump", dump.toString())
+            .put("vulnerability_database", tempDir.resolve("index/vulnerabilities.bin").toString())
+            .put("local_repository", repository.toString());
+
+        MetricResult compileOnly = new DependencyVulnerabilityExposureMetric(new ArrayList<>(),
+            new JSONObject(settings.toString()).put("scopes", new JSONArray().put("compile"))).evaluate(project, null);
+        assertEquals(0.0, compileOnly.score());
+        assertTrue(compileOnly.findings().get(0).message().contains("dependencies=2, vulnerabilities=0"));
+
+        MetricResult withRuntime = new DependencyVulnerabilityExposureMetric(new ArrayList<>(),
+            new JSONObject(settings.toString()).put("scopes", new JSONArray().put("compile").put("runtime"))).evaluate(project, null);
+        assertTrue(withRuntime.findings().get(0).message().contains("dependencies=4, vulnerabilities=2, critical=1, high=1"));
+    }
+
+    @Test
+    void offlineEngineReportsJarsThatDoNotMatchTheirRecordedChecksum() throws Exception {
+        Path project = tempDir.resolve("checksum-project");
+        Files.createDirectories(project);
+        Files.writeString(project.resolve("pom.xml"), """
+            <project>
+              <groupId>com.example</groupId>
+              <artifactId>app</artifactId>
+              <version>1.0</version>
+              <dependencies>
+                <dependency><groupId>org.acme</groupId><artifactId>good</artifactId><version>1.0</version></dependency>
+                <dependency><groupId>org.acme</groupId><artifactId>tampered</artifactId><version>1.0</version></dependency>
+              </dependencies>
+            </project>
+            """);
+
+        Path repository = tempDir.resolve("m2");
+        Path good = Files.createDirectories(repository.resolve("org/acme/good/1.0")).resolve("good-1.0.jar");
+        Files.writeString(good, "good jar");
+        Files.writeString(repository.resolve("org/acme/good/1.0/good-1.0.jar.sha1"), sha1("good jar") + "  good-1.0.jar");
+        Path tampered = Files.createDirectories(repository.resolve("org/acme/tampered/1.0")).resolve("tampered-1.0.jar");
+        Files.writeString(tampered, "tampered jar");
+        Files.writeString(repository.resolve("org/acme/tampered/1.0/tampered-1.0.jar.sha1"), sha1("original jar"));
+
+        Path dump = Files.createDirectories(tempDir.resolve("osv"));
+        Files.writeString(dump.resolve("GHSA-1.json"), osvAdvisory("GHSA-1", null, "org.acme:other", "HIGH", null,
+            new JSONArray().put(new JSONObject().put("introduced", "0"))).toString());
+
+        Path cache = tempDir.resolve("fingerprints/artifacts.tsv");
+        DependencyVulnerabilityExposureMetric metric = new DependencyVulnerabilityExposureMetric(new ArrayList<>(), new JSONObject()
+            .put("engine", "offline")
+            .put("osv_dump", dump.toString())
+            .put("vulnerability_database", tempDir.resolve("index/vulnerabilities.bin").toString())
+            .put("local_repository", repository.toString())
+            .put("fingerprint_cache", cache.toString()));
+
+        MetricResult result = metric.evaluate(project, null);
+
+        // Only the tampered jar is reported, and a checksum mismatch does not cost any score.
+        assertEquals(0.0, result.score());
+        List<Finding> mismatches = result.findings().stream().filter(f -> f.severity() == Severity.MAJOR).toList();
+        assertEquals(1, mismatches.size());
+        assertEquals(tampered.toAbsolutePath().normalize().toString(), mismatches.get(0).file());
+        assertTrue(mismatches.get(0).message().contains(sha1("tampered jar")));
+        assertTrue(Files.readString(cache).contains(sha1("good jar")));
+
+        // Same size and modification time means the jar is not read again, so the cached hash is still reported.
+        FileTime modified = Files.getLastModifiedTime(tampered);
+        Files.writeString(tampered, "original jar");
+        Files.setLastModifiedTime(tampered, modified);
+        String tamperedHash = sha1("tampered jar");
+        MetricResult cached = metric.evaluate(project, null);
+        assertTrue(cached.findings().stream().anyMatch(f -> f.severity() == Severity.MAJOR && f.message().contains(tamperedHash)));
+    }
+
+    private static String sha1(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(content.getBytes()));
+    }
+
+    private JSONObject osvAdvisory(String id, String cve, String packageName, String severity, String vector, JSONArray events) {
+        JSONObject advisory = new JSONObject()
+            .put("id", id)
+            .put("summary", id + " in " + packageName)
+            .put("affected", new JSONArray().put(new JSONObject()
+                .put("package", new JSONObject().put("ecosystem", "Maven").put("name", packageName))
+                .put("ranges", new JSONArray().put(new JSONObject().put("type", "ECOSYSTEM").put("events", events)))));
+        if (cve != null) {
+            advisory.put("aliases", new JSONArray().put(cve));
+        }
+        if (severity != null) {
+            advisory.put("database_specific", new JSONObject().put("severity", severity));
+        }
+        if (vector != null) {
+            advisory.put("severity", new JSONArray().put(new JSONObject().put("type", "CVSS_V3").put("score", vector)));
+        }
+        return advisory;
+    }
 }
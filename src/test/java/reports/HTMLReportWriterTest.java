@@ -69,6 +69,30 @@ public class HTMLReportWriterTest {
         assertFalse(html.contains(reportPathValue));
     }
 
+    @Test
+    void listsFindingsMostSevereFirstAndEscapesThem() throws Exception {
+        StubMetric metric = new StubMetric();
+        Category category = new Category("Maintainability", "Maintainability metrics", new ArrayList<>(List.of(metric)));
+        metric.setCategory(category);
+
+        ArrayList<Finding> findings = new ArrayList<>();
+        findings.add(new Finding(Severity.MINOR, "minor <first>", "A.java", "a", 1));
+        findings.add(new Finding(Severity.CRITICAL, "critical & 'quoted'", "B.java", "b", 2));
+        findings.add(new Finding(Severity.MINOR, "minor \"second\"", "C.java", "c", 3));
+
+        AuditResult auditResult = new AuditResult();
+        auditResult.addResult(new MetricResult(metric, 0.0, findings, new ArrayList<>()));
+
+        Path reportPath = tempDir.resolve("quality-report.html");
+        new HTMLReportWriter(reportPath, tempDir).writeReport(auditResult);
+
+        String html = Files.readString(reportPath);
+        int critical = html.indexOf("critical &amp; &#39;quoted&#39;");
+        int firstMinor = html.indexOf("minor &lt;first&gt;");
+        int secondMinor = html.indexOf("minor &quot;second&quot;");
+        assertTrue(critical >= 0 && critical < firstMinor && firstMinor < secondMinor);
+    }
+
     private static final class StubMetric extends Metric {
         private StubMetric() {
             super(new ArrayList<>(), "Stub Metric", "Stub metric description");
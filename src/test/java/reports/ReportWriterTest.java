@@ -1,11 +1,14 @@
 package reports;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
@@ -20,6 +23,7 @@ import com.tool.metrics.Metric;
 import com.tool.metrics.MetricResult;
 import com.tool.reports.HTMLReportWriter;
 import com.tool.reports.JSONReportWriter;
+import com.tool.reports.NDJSONReportWriter;
 
 class ReportWriterTest {
 
@@ -68,6 +72,42 @@ class ReportWriterTest {
         assertEquals("run", finding.getString("function"));
     }
 
+    @Test
+    void ndjsonWriterWritesOneLinePerMetricAndFinding() throws Exception {
+        Path reportPath = tempDir.resolve("audit-report.ndjson");
+        try (NDJSONReportWriter writer = new NDJSONReportWriter(reportPath)) {
+            writer.writeReport(sampleAuditResult());
+        }
+
+        List<String> lines = Files.readAllLines(reportPath);
+        assertEquals(2, lines.size());
+
+        JSONObject metric = new JSONObject(lines.get(0));
+        assertEquals("metric", metric.getString("type"));
+        assertEquals("Security", metric.getString("category"));
+        assertEquals(1.5, metric.getDouble("score"));
+        assertEquals("MAJOR", metric.getJSONObject("threshold").getString("severity"));
+
+        JSONObject finding = new JSONObject(lines.get(1));
+        assertEquals("finding", finding.getString("type"));
+        assertEquals("Manual Check", finding.getString("metric"));
+        assertEquals("MAJOR", finding.getString("severity"));
+        assertEquals(12, finding.getInt("line"));
+    }
+
+    @Test
+    void jsonWriterStreamsToAnyWriter() throws Exception {
+        StringWriter out = new StringWriter();
+        JSONReportWriter.write(sampleAuditResult(), out);
+
+        JSONObject metric = new JSONObject(out.toString())
+            .getJSONArray("categories").getJSONObject(0)
+            .getJSONArray("metrics").getJSONObject(0);
+        assertEquals(1.5, metric.getDouble("score"));
+        assertFalse(metric.getBoolean("failed"));
+        assertEquals("MAJOR", metric.getJSONObject("threshold").getString("severity"));
+    }
+
     private AuditResult sampleAuditResult() {
         ArrayList<Threshold> thresholds = new ArrayList<>();
         thresholds.add(new Threshold(Severity.MAJOR, 1.0));
@@ -0,0 +1,159 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.server.AuditServer;
+
+class AuditServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void auditsPostedJobsAndPicksUpConfigChanges() throws Exception {
+        Path sourceRoot = tempDir.resolve("src");
+        Files.createDirectories(sourceRoot);
+        Files.writeString(sourceRoot.resolve("Demo.java"), """
+            class Demo {
+                void run(int value) {
+                    if (value > 0) {
+                        System.out.println(value);
+                    }
+                }
+            }
+            """);
+        Path configPath = tempDir.resolve("config.json");
+        writeConfig(configPath, "Maintainability");
+
+        try (AuditServer server = new AuditServer(configPath, 0, 2, 4, null, null, null, null)) {
+            server.start();
+
+            HttpResponse<String> first = postAudit(server, new JSONObject().put("source", sourceRoot.toString()));
+            assertEquals(200, first.statusCode());
+            JSONObject category = new JSONObject(first.body()).getJSONArray("categories").getJSONObject(0);
+            assertEquals("Maintainability", category.getString("name"));
+            assertEquals(2.0, category.getJSONArray("metrics").getJSONObject(0).getDouble("score"));
+
+            writeConfig(configPath, "Code Health");
+            Files.setLastModifiedTime(configPath, FileTime.from(Instant.now().plusSeconds(5)));
+
+            HttpResponse<String> second = postAudit(server, new JSONObject().put("source", sourceRoot.toString()));
+            assertEquals("Code Health", new JSONObject(second.body())
+                .getJSONArray("categories").getJSONObject(0).getString("name"));
+        }
+    }
+
+    @Test
+    void rejectsBadJobsWithAClientError() throws Exception {
+        Path configPath = tempDir.resolve("config.json");
+        writeConfig(configPath, "Maintainability");
+
+        try (AuditServer server = new AuditServer(configPath, 0, 1, 0, null, null, null, null)) {
+            server.start();
+
+            HttpResponse<String> missingSource = postAudit(server, new JSONObject());
+            assertEquals(400, missingSource.statusCode());
+
+            HttpResponse<String> unknownPath = postAudit(server, new JSONObject().put("source", tempDir.resolve("nope").toString()));
+            assertEquals(400, unknownPath.statusCode());
+            assertTrue(new JSONObject(unknownPath.body()).getString("error").contains("does not exist"));
+
+            HttpResponse<String> health = client.send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/health")).build(),
+                HttpResponse.BodyHandlers.ofString()
+            );
+            assertEquals("ok", new JSONObject(health.body()).getString("status"));
+        }
+    }
+
+    @Test
+    void turnsAwayRequestsThatCouldComeFromAWebPage() throws Exception {
+        Path sourceRoot = tempDir.resolve("src");
+        Files.createDirectories(sourceRoot);
+        Path configPath = tempDir.resolve("config.json");
+        writeConfig(configPath, "Maintainability");
+        String job = new JSONObject().put("source", sourceRoot.toString()).toString();
+
+        try (AuditServer server = new AuditServer(configPath, 0, 1, 0, null, null, null, null)) {
+            server.start();
+            URI audit = URI.create("http://127.0.0.1:" + server.port() + "/audit");
+
+            // A cross site form post: text/plain, with the page's Origin.
+            HttpResponse<String> crossSite = client.send(HttpRequest.newBuilder(audit)
+                .header("Content-Type", "text/plain")
+                .header("Origin", "https://example.com")
+                .POST(HttpRequest.BodyPublishers.ofString(job))
+                .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(403, crossSite.statusCode());
+
+            HttpResponse<String> noToken = client.send(HttpRequest.newBuilder(audit)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(job))
+                .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(401, noToken.statusCode());
+
+            HttpResponse<String> plainText = client.send(HttpRequest.newBuilder(audit)
+                .header("Content-Type", "text/plain")
+                .header("Authorization", "Bearer " + server.token())
+                .POST(HttpRequest.BodyPublishers.ofString(job))
+                .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(415, plainText.statusCode());
+
+            // A rebound host name still arrives with the page's own Host header.
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("POST /audit HTTP/1.1\r\nHost: attacker.example:" + server.port() + "\r\n"
+                    + "Content-Type: application/json\r\nAuthorization: Bearer " + server.token() + "\r\n"
+                    + "Content-Length: " + job.getBytes(StandardCharsets.UTF_8).length + "\r\nConnection: close\r\n\r\n" + job)
+                    .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                assertTrue(statusLine.contains(" 403"), statusLine);
+            }
+
+            assertEquals(200, postAudit(server, new JSONObject().put("source", sourceRoot.toString())).statusCode());
+        }
+    }
+
+    private HttpResponse<String> postAudit(AuditServer server, JSONObject job) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/audit"))
+            .header("Content-Type", "application/json")
+            .header("Authorization", "Bearer " + server.token())
+            .POST(HttpRequest.BodyPublishers.ofString(job.toString()))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void writeConfig(Path configPath, String categoryName) throws Exception {
+        Files.writeString(configPath, new JSONArray().put(new JSONObject()
+            .put("category", categoryName)
+            .put("description", "Simple maintainability checks.")
+            .put("metrics", new JSONArray().put(new JSONObject()
+                .put("type", "cyclomatic_complexity")
+                .put("thresholds", new JSONObject().put("major", 2).put("minor", 1)))))
+            .toString(2));
+    }
+}
@@ -1,10 +1,15 @@
 package util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.json.JSONObject;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -43,4 +48,33 @@ class DependencyCheckReportResolverTest {
 
         assertEquals(projectRoot.toAbsolutePath().normalize(), resolvedRoot);
     }
+
+    @Test
+    void reusesTheLastReportWhileTheDependenciesAreUnchanged() throws Exception {
+        Path projectRoot = tempDir.resolve("unchanged-project");
+        Path sourceRoot = projectRoot.resolve("src").resolve("main").resolve("java");
+        Files.createDirectories(sourceRoot);
+        Files.writeString(projectRoot.resolve("pom.xml"), "<project/>");
+
+        Method fingerprint = DependencyCheckReportResolver.class.getDeclaredMethod("fingerprintDependencyInputs", Path.class);
+        fingerprint.setAccessible(true);
+        String current = (String) fingerprint.invoke(null, projectRoot.toAbsolutePath().normalize());
+
+        Path report = projectRoot.resolve("reports").resolve("dependency-check-report.json");
+        Files.createDirectories(report.getParent());
+        Files.writeString(report, "{\"dependencies\":[]}");
+        Files.writeString(report.resolveSibling("dependency-check-report.json.fingerprint"), new JSONObject()
+            .put("fingerprint", current)
+            .put("generated_at", Instant.now().minus(Duration.ofHours(1)).toString())
+            .toString());
+
+        Path resolvedReport = DependencyCheckReportResolver.ensureFreshReportExists(sourceRoot, null, Duration.ofHours(24));
+
+        assertEquals(report.toAbsolutePath().normalize(), resolvedReport.toAbsolutePath().normalize());
+        assertEquals("{\"dependencies\":[]}", Files.readString(report));
+
+        // A changed pom is a different fingerprint.
+        Files.writeString(projectRoot.resolve("pom.xml"), "<project><!-- changed --></project>");
+        assertNotEquals(current, fingerprint.invoke(null, projectRoot.toAbsolutePath().normalize()));
+    }
 }
@@ -0,0 +1,149 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.app.ProjectContext;
+import com.tool.app.ResultCache;
+import com.tool.app.SourceIndex;
+import com.tool.domain.Finding;
+import com.tool.domain.Severity;
+import com.tool.domain.Threshold;
+import com.tool.metrics.MetricResult;
+import com.tool.metrics.maintainability.CyclomaticComplexityMetric;
+import com.tool.util.GitChangeSet;
+
+class GitChangeSetTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path repo;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(gitAvailable(), "git is not installed");
+
+        repo = tempDir.resolve("repo");
+        Files.createDirectories(repo.resolve("src"));
+        git("init", "-q");
+        Files.writeString(repo.resolve("src/Untouched.java"), branchySource("Untouched"));
+        Files.writeString(repo.resolve("src/Edited.java"), "class Edited { void a() {} }\n");
+        git("add", "-A");
+        git("commit", "-q", "-m", "base");
+    }
+
+    @Test
+    void findsModifiedAndUntrackedFilesAndKeepsBlobIdsForTheRest() throws Exception {
+        Files.writeString(repo.resolve("src/Edited.java"), "class Edited { void b() {} }\n");
+        Files.writeString(repo.resolve("src/Added.java"), "class Added {}\n");
+
+        GitChangeSet changes = GitChangeSet.resolve(repo.resolve("src"), "HEAD");
+
+        assertTrue(changes.isChanged(repo.resolve("src/Edited.java")));
+        assertTrue(changes.isChanged(repo.resolve("src/Added.java")));
+        assertFalse(changes.isChanged(repo.resolve("src/Untouched.java")));
+        assertEquals(2, changes.changedCountUnder(repo.resolve("src")));
+
+        byte[] untouched = Files.readAllBytes(repo.resolve("src/Untouched.java"));
+        assertEquals(ResultCache.contentHash(untouched), changes.blobId(repo.resolve("src/Untouched.java")).orElseThrow());
+        assertTrue(changes.blobId(repo.resolve("src/Edited.java")).isEmpty());
+    }
+
+    @Test
+    void matchesFilesReachedThroughASymbolicLink() throws Exception {
+        Path link = tempDir.resolve("link");
+        try {
+            Files.createSymbolicLink(link, repo);
+        } catch (UnsupportedOperationException | IOException e) {
+            assumeTrue(false, "symbolic links are not supported here");
+        }
+        Files.writeString(repo.resolve("src/Edited.java"), "class Edited { void b() {} }\n");
+
+        // git reports real paths, the audit asks with the path it was given.
+        GitChangeSet changes = GitChangeSet.resolve(link.resolve("src"), "HEAD");
+
+        assertTrue(changes.isChanged(link.resolve("src/Edited.java")));
+        assertFalse(changes.isChanged(link.resolve("src/Untouched.java")));
+        assertEquals(1, changes.changedCountUnder(link.resolve("src")));
+        assertTrue(changes.blobId(link.resolve("src/Untouched.java")).isPresent());
+    }
+
+    @Test
+    void rejectsUnknownRevisions() {
+        assertThrows(IllegalArgumentException.class, () -> GitChangeSet.resolve(repo, "no-such-branch"));
+    }
+
+    @Test
+    void scopedAuditReportsOnlyChangedFilesButScoresTheWholeTree() throws Exception {
+        ArrayList<Threshold> thresholds = new ArrayList<>(List.of(new Threshold(Severity.MAJOR, 1)));
+        CyclomaticComplexityMetric metric = new CyclomaticComplexityMetric(thresholds);
+        ResultCache cache = new ResultCache(tempDir.resolve("cache"), 1024 * 1024);
+        Path sourceRoot = repo.resolve("src");
+
+        // Warm the cache the way the main branch run would.
+        MetricResult full = metric.evaluate(new ProjectContext(
+            sourceRoot, null, new SourceIndex(sourceRoot, 1, metric.sourceFeatures()), cache));
+
+        Files.writeString(repo.resolve("src/Edited.java"), branchySource("Edited"));
+        GitChangeSet changes = GitChangeSet.resolve(sourceRoot, "HEAD");
+        SourceIndex scopedIndex = new SourceIndex(sourceRoot, 1, EnumSet.of(SourceIndex.Feature.TOKENS), changes);
+        MetricResult scoped = metric.evaluate(new ProjectContext(sourceRoot, null, scopedIndex, cache));
+
+        // Only the edited file is parsed, the untouched one comes from the cache by its git blob id.
+        assertEquals(1, scopedIndex.parseCount());
+
+        // Both files now hold one method of complexity 3, so the average covers the untouched file too.
+        assertEquals(2.0, full.score());
+        assertEquals(3.0, scoped.score());
+
+        List<Finding> findings = scoped.findings();
+        assertEquals(1, findings.size());
+        assertTrue(findings.get(0).file().contains("Edited.java"));
+    }
+
+    private static String branchySource(String className) {
+        return "class " + className + " {\n"
+            + "    int pick(int a, int b) {\n"
+            + "        if (a > b && b > 0) { return a; }\n"
+            + "        return b;\n"
+            + "    }\n"
+            + "}\n";
+    }
+
+    private void git(String... args) throws Exception {
+        List<String> command = new ArrayList<>(List.of(
+            "git", "-c", "user.name=test", "-c", "user.email=test@example.com", "-c", "commit.gpgsign=false"
+        ));
+        command.addAll(List.of(args));
+
+        Process process = new ProcessBuilder(command)
+            .directory(repo.toFile())
+            .redirectErrorStream(true)
+            .start();
+        String output = new String(process.getInputStream().readAllBytes());
+        assertEquals(0, process.waitFor(), output);
+    }
+
+    private static boolean gitAvailable() {
+        try {
+            return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
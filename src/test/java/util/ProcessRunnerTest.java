@@ -0,0 +1,95 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.tool.app.CancellationToken;
+import com.tool.util.ProcessRunner;
+
+@DisabledOnOs(OS.WINDOWS)
+class ProcessRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsTheHeadAndTailAndSpoolsEverythingToTheLog() throws Exception {
+        Path log = tempDir.resolve("logs/build.log");
+        ProcessRunner runner = new ProcessRunner(64, 64, null);
+
+        ProcessRunner.Result result = runner.run(
+            List.of("sh", "-c", "echo START; i=0; while [ $i -lt 2000 ]; do echo line$i; i=$((i+1)); done; echo THE-ERROR; exit 3"),
+            tempDir,
+            Duration.ofSeconds(30),
+            log,
+            new CancellationToken()
+        );
+
+        assertTrue(result.started());
+        assertFalse(result.timedOut());
+        assertEquals(3, result.exitCode());
+        assertTrue(result.output().startsWith("START\n"), result.output());
+        assertTrue(result.output().endsWith("THE-ERROR\n"), result.output());
+        assertTrue(result.output().contains("bytes omitted, full output in " + log), result.output());
+        assertFalse(result.output().contains("line1000\n"), result.output());
+
+        String full = Files.readString(log);
+        assertEquals(Files.size(log), result.totalBytes());
+        assertTrue(full.contains("line1000\n"));
+        assertTrue(full.endsWith("THE-ERROR\n"));
+    }
+
+    @Test
+    void shortOutputIsKeptWhole() throws Exception {
+        ProcessRunner.Result result = new ProcessRunner(64, 64, null).run(
+            List.of("sh", "-c", "echo hello; echo world >&2"),
+            null,
+            null,
+            null,
+            new CancellationToken()
+        );
+
+        assertEquals(0, result.exitCode());
+        assertEquals("hello\nworld\n", result.output());
+    }
+
+    @Test
+    void killsCommandsThatRunPastTheirTimeout() throws Exception {
+        ProcessRunner.Result result = new ProcessRunner(64, 64, null).run(
+            List.of("sh", "-c", "echo waiting; sleep 30"),
+            null,
+            Duration.ofMillis(300),
+            null,
+            new CancellationToken()
+        );
+
+        assertTrue(result.started());
+        assertTrue(result.timedOut());
+        assertEquals(-1, result.exitCode());
+    }
+
+    @Test
+    void reportsCommandsThatCannotStart() throws Exception {
+        ProcessRunner.Result result = new ProcessRunner(64, 64, null).run(
+            List.of("definitely-not-a-command-" + System.nanoTime()),
+            null,
+            null,
+            null,
+            new CancellationToken()
+        );
+
+        assertFalse(result.started());
+        assertTrue(result.message().startsWith("Failed to start command"));
+    }
+}